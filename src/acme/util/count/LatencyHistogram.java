@@ -0,0 +1,211 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package acme.util.count;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A latency histogram in the style of HdrHistogram.  Values (in nanoseconds) are
+ * kept in log-linear buckets with 8 sub-buckets per power of two, so any
+ * reported percentile is within 12.5% of the true value.
+ * 
+ * Records go to one of a fixed number of stripes of buckets, picked by thread id,
+ * and are added atomically, so recording never locks and threads rarely contend.
+ * The memory used does not grow with the number of threads.  Readers merge the
+ * stripes into a Snapshot without stopping the writers, so a snapshot taken during
+ * a run may miss a few in-flight records.
+ */
+final public class LatencyHistogram extends AbstractCounter {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int NUM_BUCKETS = (Long.SIZE - SUB_BITS) * SUB;
+
+	private static final List<LatencyHistogram> all = new CopyOnWriteArrayList<LatencyHistogram>();
+
+	/* Stripe layout: NUM_BUCKETS bucket counts, then the total and the max. */
+	private static final int TOTAL = NUM_BUCKETS;
+	private static final int MAX = NUM_BUCKETS + 1;
+	private static final int WIDTH = NUM_BUCKETS + 2;
+
+	private static final int STRIPES = 16; // a power of two
+
+	private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * WIDTH);
+
+	public LatencyHistogram(String group, String name) {
+		super(group, name);
+		all.add(this);
+	}
+
+	public LatencyHistogram(String name) {
+		this(null, name);
+	}
+
+	public static List<LatencyHistogram> getAll() {
+		return Collections.unmodifiableList(all);
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public final long start() {
+		return System.nanoTime();
+	}
+
+	public final long stop(long startTime) {
+		final long elapsed = System.nanoTime() - startTime;
+		record(elapsed);
+		return elapsed;
+	}
+
+	public final void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		final int base = ((int)Thread.currentThread().getId() & (STRIPES - 1)) * WIDTH;
+		stripes.getAndIncrement(base + bucket(nanos));
+		stripes.getAndAdd(base + TOTAL, nanos);
+		long max;
+		while (nanos > (max = stripes.get(base + MAX)) && !stripes.compareAndSet(base + MAX, max, nanos)) {
+			// retry
+		}
+	}
+
+	static int bucket(long v) {
+		if (v < SUB) return (int)v;
+		final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(v)) - SUB_BITS;
+		return (shift + 1) * SUB + (int)((v >>> shift) & (SUB - 1));
+	}
+
+	/* Smallest value in the bucket. */
+	static long lowest(int bucket) {
+		if (bucket < SUB) return bucket;
+		final int shift = bucket / SUB - 1;
+		return ((long)(SUB + bucket % SUB)) << shift;
+	}
+
+	public Snapshot snapshot() {
+		final long[] merged = new long[WIDTH];
+		for (int base = 0; base < STRIPES * WIDTH; base += WIDTH) {
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				merged[i] += stripes.get(base + i);
+			}
+			merged[TOTAL] += stripes.get(base + TOTAL);
+			merged[MAX] = Math.max(merged[MAX], stripes.get(base + MAX));
+		}
+		return new Snapshot(merged);
+	}
+
+	/**
+	 * A merged, immutable view of a histogram.
+	 */
+	public static final class Snapshot {
+		private final long[] buckets;
+		private final long count;
+
+		Snapshot(long[] buckets) {
+			this.buckets = buckets;
+			long n = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				n += buckets[i];
+			}
+			this.count = n;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotal() {
+			return buckets[TOTAL];
+		}
+
+		public long getMax() {
+			return buckets[MAX];
+		}
+
+		/** Value at quantile q (0 < q <= 1), reported as the upper end of its bucket. */
+		public long getValueAt(double q) {
+			if (count == 0) return 0;
+			final long rank = Math.max(1, (long)Math.ceil(q * count));
+			long seen = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				seen += buckets[i];
+				if (seen >= rank) {
+					final long upper = i + 1 < NUM_BUCKETS ? lowest(i + 1) - 1 : Long.MAX_VALUE;
+					return Math.min(upper, getMax());
+				}
+			}
+			return getMax();
+		}
+
+		/** Upper bound and count of each non-empty bucket, for exporters. */
+		public List<long[]> getBuckets() {
+			final Vector<long[]> result = new Vector<long[]>();
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				if (buckets[i] > 0) {
+					final long upper = i + 1 < NUM_BUCKETS ? lowest(i + 1) - 1 : Long.MAX_VALUE;
+					result.add(new long[] { upper, buckets[i] });
+				}
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public long getCount() {
+		return snapshot().getCount();
+	}
+
+	@Override
+	public String get() {
+		final Snapshot s = snapshot();
+		final double ms = 1000000.0;
+		return String.format("<count>%d</count> <total>%g</total> <p50>%g</p50> <p99>%g</p99> <p999>%g</p999> <max>%g</max>", 
+				s.getCount(), s.getTotal() / ms, s.getValueAt(0.5) / ms, s.getValueAt(0.99) / ms, s.getValueAt(0.999) / ms, s.getMax() / ms);
+	}
+}
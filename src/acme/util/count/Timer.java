@@ -38,20 +38,21 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package acme.util.count;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
  * A counter that works like a stopwatch.  
  * Call start followed by stop, and it adds the interval to the total time.
- * Can be used multiple times in a row.
+ * Can be used multiple times in a row, and from multiple threads without locking.
  */
 final public class Timer extends AbstractCounter {
 
-	private long totalTime;
-	private int count = 0;
+	private final AtomicLong totalTime = new AtomicLong();
+	private final AtomicLong count = new AtomicLong();
 	
 	public Timer(String group, String name) {
 		super(group, name);
-		totalTime = 0;
 	}
 	
 	public Timer(String name) {
@@ -62,17 +63,18 @@ final public class Timer extends AbstractCounter {
 		return System.nanoTime(); 
 	}
 
-	final public synchronized long stop(long startTime) {
+	final public long stop(long startTime) {
 		long endTime = System.nanoTime();
 		long elapsed = endTime - startTime;
-		totalTime += elapsed;
-		count++;
+		totalTime.addAndGet(elapsed);
+		count.incrementAndGet();
 		return elapsed;
 	}
 
 	@Override
 	public String get() {
-		double totalTime = (this.totalTime) / 1000000;
+		final long count = this.count.get();
+		double totalTime = (this.totalTime.get()) / 1000000;
 		if (count > 0) {
 			return String.format("<total>%g</total> <count>%d</count> <ave>%g</ave>", totalTime, count, totalTime / count);
 		} else {
@@ -80,5 +82,3 @@ final public class Timer extends AbstractCounter {
 		}
 	}
 }
-
-
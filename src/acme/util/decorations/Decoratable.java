@@ -46,8 +46,11 @@ import java.util.Arrays;
  */
 public class Decoratable implements Serializable {
 
+	/** Shared by all objects that have no decorations yet, so they do not each carry an array. */
+	static final Object[] NO_DECORATIONS = new Object[0];
+
 	/** Internal array of decoration values.  NEVER ACCESS THIS DIRECTLY. */
-	Object decorations[] = new Object[2];
+	Object decorations[] = NO_DECORATIONS;
 		
 	public String getDecorationsAsString() {
 		return Arrays.asList(decorations).toString();
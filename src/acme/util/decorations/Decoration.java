@@ -69,33 +69,26 @@ public final class Decoration<T extends Decoratable, V> implements Serializable
 
 	public final V get(final T n) {
 		final Object[] vs=n.decorations;
-		try {
-			V v = (V)vs[slot];
-			if (v == null) {
-				set(n, v = defaultValue.get(n));
+		if (slot < vs.length) {
+			final V v = (V)vs[slot];
+			if (v != null) {
+				return v;
 			}
-			return v;
-		} catch (Exception e) {
-			V v = null;
-			set(n, v = defaultValue.get(n));
-			return v;
 		}
+		final V v = defaultValue.get(n);
+		set(n, v);
+		return v;
 	}
 
 
 	public final void set(final T n, final V val) {
-		try {
-			final Object[] v = n.decorations;
-			v[slot] = val;
-		} catch(Exception e) {
-			Object[] v = n.decorations;
-			if (slot >= v.length) {
-				Object[] _new = new Object[factory.allocated()];
-				System.arraycopy( v, 0, _new, 0, v.length );
-				v = n.decorations = _new;
-			}
-			v[slot] = val;
+		Object[] v = n.decorations;
+		if (slot >= v.length) {
+			Object[] _new = new Object[Math.max(factory.allocated(), slot + 1)];
+			System.arraycopy( v, 0, _new, 0, v.length );
+			v = n.decorations = _new;
 		}
+		v[slot] = val;
 	}
 
 
@@ -46,6 +46,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.Arrays;
 
+import rr.error.ErrorMessage;
 import rr.instrument.Instrumentor;
 import rr.instrument.classes.ArrayAllocSiteTracker;
 import rr.instrument.classes.CloneFixer;
@@ -197,6 +198,7 @@ public class RRMain {
 
 	protected static void runFini() {
 		Util.log("Tool Fini()");
+		ErrorMessage.flushRecords();
 		RR.applyToTools(new ToolVisitor() {
 			public void apply(Tool t) {
 				t.fini();
@@ -244,6 +246,10 @@ public class RRMain {
 		cl.add(InstrumentationFilter.fieldsToWatch);
 		cl.add(InstrumentationFilter.methodsToWatch);
 		cl.add(InstrumentationFilter.linesToWatch);
+		cl.add(InstrumentationFilter.escapeAnalysisOption);
+		cl.add(InstrumentationFilter.profileInOption);
+		cl.add(InstrumentationFilter.profileHotOption);
+		cl.add(InstrumentationFilter.profileDowngradeOption);
 		cl.add(InstrumentationFilter.methodsSupportThreadStateParam);
 		cl.add(InstrumentationFilter.noOpsOption);
 		cl.add(rr.tool.RR.valuesOption);
@@ -266,6 +272,9 @@ public class RRMain {
 		cl.add(rr.tool.RR.noxmlOption);
 		cl.add(rr.tool.RR.stackOption); 
 		cl.add(rr.tool.RR.pulseOption);
+		cl.add(rr.tool.RR.metricsOption);
+		cl.add(rr.tool.RR.metricsFileOption);
+		cl.add(rr.tool.RR.metricsFormatOption);
 		cl.add(rr.tool.RR.noTidGCOption);
 		cl.add(rr.tool.RREventGenerator.noJoinOption);  
 		cl.add(rr.tool.RREventGenerator.indicesToWatch);  
@@ -275,6 +284,7 @@ public class RRMain {
 		cl.add(ArrayStateFactory.arrayOption);
 		cl.add(Instrumentor.fieldOption);
 		cl.add(rr.barrier.BarrierMonitor.noBarrier);
+		cl.add(rr.juc.JUCMonitor.noJUC);
 		cl.add(RR.noEventReuseOption);
 		cl.add(AbstractArrayStateCache.cacheTypeOption);
 		cl.add(infinitelyRunningThreadsOption);
@@ -299,8 +309,14 @@ public class RRMain {
 		cl.add(rr.tool.RR.PIPOption);
 		cl.add(rr.tool.RR.PIPOnlyOption);
 		cl.add(rr.tool.RR.wdcRandomReorderings);
+		cl.add(rr.tool.RR.wdcRetainedRacesOption);
 		cl.add(rr.tool.RR.wdcHBOnlyOption);
 		cl.add(rr.tool.RR.wdcRemoveRaceEdge);
+		cl.add(rr.tool.RR.wdcVindicationNodes);
+		cl.add(rr.tool.RR.wdcVindicationIterations);
+		cl.add(rr.tool.RR.wdcVindicationTimeout);
+		cl.add(rr.tool.RR.wdcVindicationDeadline);
+		cl.add(rr.tool.RR.wdcBatchVindicationOption);
 		
 		cl.addGroup("Vindicator (Slow Tool)");
 		cl.add(rr.tool.RR.dcHBOption);
@@ -310,6 +326,8 @@ public class RRMain {
 		cl.add(rr.tool.RR.dcWCP_DCOption);
 		cl.add(rr.tool.RR.dcWCP_CAPOOption);
 		cl.add(rr.tool.RR.dcCAPOFullOption);
+		cl.add(rr.tool.RR.dcFTOOption);
+		cl.add(rr.tool.RR.dcLanesOption);
 		//New
 		cl.add(rr.tool.RR.dcHB_DCOption);
 		cl.add(rr.tool.RR.dcHB_CAPOOption);
@@ -322,6 +340,12 @@ public class RRMain {
 		cl.add(rr.tool.RR.pipAGGOption);
 		cl.add(rr.tool.RR.pipFTOOption);
 		cl.add(rr.tool.RR.pipREOption);
+		cl.add(rr.tool.RR.pipWorkersOption);
+
+		cl.addGroup("Sampling");
+		cl.add(rr.tool.RR.sampleOption);
+		cl.add(rr.tool.RR.sampleBudgetOption);
+		cl.add(rr.tool.RR.sampleWindowOption);
 
 		cl.addGroup("Limits");
 		cl.add(rr.tool.RR.timeOutOption);
@@ -335,6 +359,12 @@ public class RRMain {
 		cl.addOrderConstraint(rr.tool.RR.toolPathOption, rr.tool.RR.toolOption);
 		cl.addOrderConstraint(rr.tool.RR.toolOption, rr.tool.RR.toolOption);
 		cl.addOrderConstraint(rr.barrier.BarrierMonitor.noBarrier, rr.tool.RR.toolOption);
+		cl.addOrderConstraint(rr.juc.JUCMonitor.noJUC, rr.tool.RR.toolOption);
+		cl.addOrderConstraint(rr.tool.RR.metricsFileOption, rr.tool.RR.pulseOption);
+		cl.addOrderConstraint(rr.tool.RR.metricsFormatOption, rr.tool.RR.pulseOption);
+		cl.addOrderConstraint(rr.tool.RR.sampleOption, rr.tool.RR.toolOption);
+		cl.addOrderConstraint(rr.tool.RR.sampleBudgetOption, rr.tool.RR.toolOption);
+		cl.addOrderConstraint(rr.tool.RR.sampleWindowOption, rr.tool.RR.toolOption);
 
 		int n = cl.apply(argv);
 
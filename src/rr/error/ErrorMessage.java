@@ -188,6 +188,40 @@ public class ErrorMessage<T extends MetaDataInfo> {
 		}
 	}
 	
+	/**
+	 * Record an error without building any message.  Only references to the
+	 * site and to a constant description are kept, plus the two tids.  Records
+	 * are counted asynchronously, so count() is exact only after flushRecords().
+	 * The first error on each site is logged on one line.
+	 */
+	public void record(ShadowThread cur, T t, String description, int prevTid) {
+		RaceRecorder.record(this, t, description, prevTid, cur.getTid());
+	}
+
+	/**
+	 * Count all records made so far.
+	 */
+	public static void flushRecords() {
+		RaceRecorder.flush();
+	}
+
+	// Called by RaceRecorder.
+	synchronized void recorded(MetaDataInfo t, String description, int prevTid, int curTid) {
+		if (t == null || counters.get(t.getId()) < getMax()) {
+			counter++;
+			if (t != null) {
+				synchronized(ErrorMessage.class) {
+					if (counters.get(t.getId()) == 0) {
+						totalNumberOfDistinctErrors++;
+						Util.logf("%s Error: %s on %s (tid %d, then tid %d)", type, description, t, prevTid, curTid);
+					}
+					counters.inc(t.getId());
+				}
+			}
+			totalNumberOfErrors++;
+		}
+	}
+
 	/**
 	 * Return true if we have not yet printed the error for
 	 * the given meta data object.
@@ -0,0 +1,222 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.error;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import rr.meta.MetaDataInfo;
+import acme.util.Assert;
+import acme.util.count.ThreadSafeCounter;
+import acme.util.count.Timer;
+
+/**
+ * Asynchronous back end for ErrorMessage.record.  A race is captured as a few
+ * references and ints in a per-thread batch, so reporting one is allocation free
+ * and takes no shared lock.  Full batches are handed to a background reporter
+ * thread, which does the counting for each ErrorMessage and prints one line the first
+ * time a site is blamed.  If the reporter falls behind, the recording thread
+ * processes its own batch rather than blocking.
+ * 
+ * Per-site counts are exact once flush() has run.  flush() is called before
+ * the tools' fini methods and before the xml summary is written.
+ */
+final class RaceRecorder {
+
+	private static final int BATCH_SIZE = 256;
+
+	private static final ThreadSafeCounter recorded = new ThreadSafeCounter("Race Records", "Recorded");
+	private static final ThreadSafeCounter handedOff = new ThreadSafeCounter("Race Records", "Batches Handed Off");
+	private static final ThreadSafeCounter processedInline = new ThreadSafeCounter("Race Records", "Batches Processed Inline");
+	private static final Timer processTime = new Timer("Race Records", "Processing Time");
+
+	static final class Batch {
+		final ErrorMessage<?>[] messages = new ErrorMessage<?>[BATCH_SIZE];
+		final MetaDataInfo[] sites = new MetaDataInfo[BATCH_SIZE];
+		final String[] descriptions = new String[BATCH_SIZE];
+		final int[] prevTids = new int[BATCH_SIZE];
+		final int[] curTids = new int[BATCH_SIZE];
+
+		/* Written only by the owner thread, after the record itself. */
+		volatile int size;
+
+		// guarded by RaceRecorder.class
+		int processed;
+	}
+
+	/* The batch currently being filled by one thread. */
+	private static final class Slot {
+		Batch current = new Batch();
+	}
+
+	private static final CopyOnWriteArrayList<Slot> slots = new CopyOnWriteArrayList<Slot>();
+
+	private static final ThreadLocal<Slot> slot = new ThreadLocal<Slot>() {
+		@Override
+		protected Slot initialValue() {
+			Slot s = new Slot();
+			slots.add(s);
+			return s;
+		}
+	};
+
+	private static final ArrayBlockingQueue<Batch> full = new ArrayBlockingQueue<Batch>(64);
+	private static final ArrayBlockingQueue<Batch> free = new ArrayBlockingQueue<Batch>(64);
+
+	private static volatile Thread reporter;
+
+	// guarded by RaceRecorder.class: batches put on full and not yet processed, including one the reporter has taken
+	private static int pending;
+
+	static void record(ErrorMessage<?> message, MetaDataInfo site, String description, int prevTid, int curTid) {
+		final Slot s = slot.get();
+		final Batch b = s.current;
+		final int n = b.size;
+		b.messages[n] = message;
+		b.sites[n] = site;
+		b.descriptions[n] = description;
+		b.prevTids[n] = prevTid;
+		b.curTids[n] = curTid;
+		b.size = n + 1;
+		if (n + 1 == BATCH_SIZE) {
+			handOff(s, b);
+		}
+	}
+
+	private static void handOff(Slot s, Batch b) {
+		if (reporter == null) startReporter();
+		final boolean offered;
+		synchronized (RaceRecorder.class) {
+			offered = full.offer(b);
+			if (offered) pending++;
+		}
+		if (offered) {
+			handedOff.inc();
+		} else {
+			processedInline.inc();
+			process(b, true, false);
+		}
+		Batch next = free.poll();
+		if (next == null) {
+			next = new Batch();
+		}
+		s.current = next;
+	}
+
+	private static synchronized void startReporter() {
+		if (reporter != null) return;
+		reporter = new Thread("RR Race Reporter") {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Batch b = full.poll(100, TimeUnit.MILLISECONDS);
+						if (b != null) {
+							process(b, true, true);
+						}
+					}
+				} catch (InterruptedException e) {
+					// done
+				}
+			}
+		};
+		reporter.setDaemon(true);
+		reporter.start();
+	}
+
+	/* 
+	 * Count records [processed,size) of b.  Only the reporter and the owner
+	 * may recycle a batch, and only once it is full.  queued is true if b was
+	 * taken off full.
+	 */
+	private static void process(Batch b, boolean mayRecycle, boolean queued) {
+		final boolean recycle;
+		synchronized (RaceRecorder.class) {
+			final long start = processTime.start();
+			final int n = b.size;
+			for (int i = b.processed; i < n; i++) {
+				b.messages[i].recorded(b.sites[i], b.descriptions[i], b.prevTids[i], b.curTids[i]);
+				b.messages[i] = null;
+				b.sites[i] = null;
+				b.descriptions[i] = null;
+			}
+			if (n > b.processed) {
+				recorded.add(n - b.processed);
+				b.processed = n;
+			}
+			recycle = mayRecycle && n == BATCH_SIZE;
+			if (recycle) {
+				b.processed = 0;
+				b.size = 0;
+			}
+			if (queued && --pending == 0) {
+				RaceRecorder.class.notifyAll();
+			}
+			processTime.stop(start);
+		}
+		if (recycle) {
+			free.offer(b);
+		}
+	}
+
+	/**
+	 * Process every record made so far, including those in partially filled
+	 * batches.  Waits for a batch the reporter has already taken off the queue.
+	 * Records made concurrently with the flush are picked up by the next one.
+	 */
+	static void flush() {
+		try {
+			Batch b;
+			while ((b = full.poll()) != null) {
+				process(b, true, true);
+			}
+			synchronized (RaceRecorder.class) {
+				while (pending > 0) {
+					RaceRecorder.class.wait();
+				}
+			}
+			for (Slot s : slots) {
+				process(s.current, false, false);
+			}
+		} catch (Throwable e) {
+			Assert.panic(e);
+		}
+	}
+}
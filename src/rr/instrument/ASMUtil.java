@@ -179,7 +179,7 @@ public class ASMUtil implements Opcodes {
 			localVarIndex += args[i].getSize();
 
 		} 
-		mv.visitMethodInsn(opcode, owner, name, desc, false);
+		mv.visitMethodInsn(opcode, owner, name, desc, opcode == INVOKEINTERFACE);
 	}
 
 
@@ -46,6 +46,7 @@ import rr.org.objectweb.asm.ClassReader;
 import rr.org.objectweb.asm.ClassVisitor;
 import rr.org.objectweb.asm.ClassWriter;
 import rr.org.objectweb.asm.Opcodes;
+import rr.instrument.analysis.EscapeAnalysis;
 import rr.instrument.classes.AbstractOrphanFixer;
 import rr.instrument.classes.ArrayAllocSiteTracker;
 import rr.instrument.classes.ClassInitNotifier;
@@ -61,9 +62,11 @@ import rr.instrument.classes.ToolSpecificClassVisitorFactory;
 import rr.instrument.noinst.NoInstSanityChecker;
 import rr.loader.LoaderContext;
 import rr.meta.ClassInfo;
+import rr.meta.InstrumentationFilter;
 import rr.meta.MetaDataInfoMaps;
 import rr.meta.MethodInfo;
 import acme.util.Assert;
+import acme.util.count.LatencyHistogram;
 import acme.util.count.Timer;
 import acme.util.decorations.Decoration;
 import acme.util.decorations.DecorationFactory;
@@ -101,6 +104,7 @@ public class Instrumentor {
 	public static final Option<Boolean> useTestAcquireOption = new Option<Boolean>("Use TestAcquires", false);
 
 	private static final Timer insTime = new Timer("Time", "Instrumenter");
+	private static final LatencyHistogram insTimePerClass = new LatencyHistogram("Time", "Instrumenter per Class");
 
 	public static final Decoration<ClassInfo,ClassContext> classContext = 
 			MetaDataInfoMaps.getClasses().makeDecoration("class instrument context", DecorationFactory.Type.SINGLE, new DefaultValue<ClassInfo, ClassContext>() { 
@@ -193,6 +197,10 @@ public class Instrumentor {
 
 			if ((cr.getAccess() & (Opcodes.ACC_INTERFACE)) == 0) {
 
+				if (InstrumentationFilter.escapeAnalysisOption.get()) {
+					EscapeAnalysis.analyze(currentClass, cr);
+				}
+
 				ClassVisitor cv1 = new NativeMethodSanityChecker(cv0);
 				cv1 = new GuardStateInserter(cv1);
 				cv1 = new InterruptFixer(cv1);
@@ -227,7 +235,7 @@ public class Instrumentor {
 			Assert.panic(e);
 			return null;
 		}	finally {
-			insTime.stop(start);
+			insTimePerClass.record(insTime.stop(start));
 		}
 	}
 
@@ -0,0 +1,262 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.instrument.analysis;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import rr.org.objectweb.asm.ClassReader;
+import rr.org.objectweb.asm.Opcodes;
+import rr.org.objectweb.asm.tree.AbstractInsnNode;
+import rr.org.objectweb.asm.tree.ByteCodeIndexNode;
+import rr.org.objectweb.asm.tree.ClassNode;
+import rr.org.objectweb.asm.tree.InsnNode;
+import rr.org.objectweb.asm.tree.MethodNode;
+import rr.org.objectweb.asm.tree.analysis.Analyzer;
+import rr.org.objectweb.asm.tree.analysis.Frame;
+import rr.org.objectweb.asm.tree.analysis.Interpreter;
+
+import rr.RRMain;
+import rr.instrument.Constants;
+import rr.meta.ClassInfo;
+import rr.meta.MetaDataInfoMaps;
+import rr.meta.MethodInfo;
+import acme.util.Util;
+import acme.util.count.Counter;
+import acme.util.count.Timer;
+import acme.util.decorations.Decoration;
+import acme.util.decorations.DecorationFactory;
+import acme.util.decorations.NullDefault;
+
+/**
+ * Intra-procedural escape analysis run over a class before it is instrumented.
+ * 
+ * An allocation site is thread-local if no object created there can leave the
+ * allocating method.  The only call an object may be passed to without escaping
+ * is its own constructor, and only when that constructor is Object.<init> or
+ * a constructor of the class being analyzed that does not leak "this".
+ * 
+ * Field and array accesses whose target can only come from thread-local sites are
+ * recorded by byte code index, and InstrumentationFilter uses them to skip
+ * instrumenting those accesses.
+ */
+public class EscapeAnalysis implements Opcodes {
+
+	private static final Counter methodsAnalyzed = new Counter("Escape Analysis", "Methods Analyzed");
+	private static final Counter methodsFailed = new Counter("Escape Analysis", "Methods Not Analyzable");
+	private static final Counter allocSites = new Counter("Escape Analysis", "Allocation Sites");
+	private static final Counter threadLocalAllocSites = new Counter("Escape Analysis", "Thread-Local Allocation Sites");
+	private static final Counter threadLocalAccesses = new Counter("Escape Analysis", "Thread-Local Access Sites");
+	private static final Timer analysisTime = new Timer("Escape Analysis", "Time");
+
+	/*
+	 * Method name + descriptor -> byte code indices of field/array accesses on thread-local objects.
+	 * Keyed by the original method name, since instrumented methods are renamed.
+	 */
+	private static final Decoration<ClassInfo, Map<String,BitSet>> threadLocalAccessSites = 
+			MetaDataInfoMaps.getClasses().makeDecoration("thread-local access sites", DecorationFactory.Type.SINGLE, new NullDefault<ClassInfo, Map<String,BitSet>>());
+
+	/*
+	 * Stand-in allocation site for "this" inside constructors.
+	 */
+	private static final AbstractInsnNode THIS_SITE = new InsnNode(NOP);
+
+	private static class EscapeAnalyzer extends Analyzer<EscapeValue> {
+
+		public EscapeAnalyzer(Interpreter<EscapeValue> interpreter) {
+			super(interpreter);
+		}
+
+		@Override
+		protected Frame<EscapeValue> computeInitialFrame(final String owner, final MethodNode m) {
+			Frame<EscapeValue> current = super.computeInitialFrame(owner, m);
+			if (m.name.equals("<init>")) {
+				current.setLocal(0, new EscapeValue(THIS_SITE));
+			}
+			return current;
+		}
+	}
+
+	private static class MethodResult {
+		final MethodNode method;
+		final Frame<EscapeValue>[] frames;
+		final EscapeInterpreter interp;
+
+		MethodResult(MethodNode method, Frame<EscapeValue>[] frames, EscapeInterpreter interp) {
+			this.method = method;
+			this.frames = frames;
+			this.interp = interp;
+		}
+	}
+
+	public static void analyze(ClassInfo rrClass, ClassReader cr) {
+		long start = analysisTime.start();
+		try {
+			ClassNode cn = new ClassNode();
+			cr.accept(cn, ClassReader.SKIP_FRAMES);
+
+			HashMap<String, MethodResult> results = new HashMap<String, MethodResult>();
+			for (MethodNode m : cn.methods) {
+				if ((m.access & (ACC_ABSTRACT | ACC_NATIVE)) != 0) continue;
+				EscapeInterpreter interp = new EscapeInterpreter(cn.name);
+				try {
+					Frame<EscapeValue>[] frames = new EscapeAnalyzer(interp).analyze(cn.name, m);
+					results.put(m.name + m.desc, new MethodResult(m, frames, interp));
+					methodsAnalyzed.inc();
+				} catch (Exception e) {
+					// leave the method fully instrumented.
+					if (RRMain.slowMode()) Util.log("Escape analysis failed for " + cn.name + "." + m.name + m.desc + ": " + e);
+					methodsFailed.inc();
+				}
+			}
+
+			Set<String> leakingConstructors = leakingConstructors(results);
+
+			Map<String,BitSet> sites = new HashMap<String,BitSet>();
+			for (Map.Entry<String, MethodResult> e : results.entrySet()) {
+				BitSet b = threadLocalAccesses(e.getValue(), results, leakingConstructors);
+				if (!b.isEmpty()) {
+					sites.put(e.getKey(), b);
+					threadLocalAccesses.add(b.cardinality());
+				}
+			}
+			if (!sites.isEmpty()) {
+				threadLocalAccessSites.set(rrClass, sites);
+			}
+		} finally {
+			analysisTime.stop(start);
+		}
+	}
+
+	public static boolean isThreadLocalAccess(MethodInfo m, int bci) {
+		Map<String,BitSet> sites = threadLocalAccessSites.get(m.getOwner());
+		if (sites == null || bci < 0) return false;
+		BitSet b = sites.get(Constants.recoverOriginalNameFromMangled(m.getName()) + m.getDescriptor());
+		return b != null && b.get(bci);
+	}
+
+	/*
+	 * Constructors of the class that may leak "this", computed as a fixed point
+	 * over constructors that delegate to this(...).  Constructors we could not analyze leak.
+	 */
+	private static Set<String> leakingConstructors(HashMap<String, MethodResult> results) {
+		Set<String> leaking = new HashSet<String>();
+		for (Map.Entry<String, MethodResult> e : results.entrySet()) {
+			if (e.getValue().interp.getEscaped().contains(THIS_SITE)) {
+				leaking.add(e.getKey());
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Map.Entry<String, MethodResult> e : results.entrySet()) {
+				if (!e.getKey().startsWith("<init>") || leaking.contains(e.getKey())) continue;
+				for (Map.Entry<String, Set<AbstractInsnNode>> call : e.getValue().interp.getPassedToConstructor().entrySet()) {
+					if (call.getValue().contains(THIS_SITE) && (leaking.contains(call.getKey()) || !results.containsKey(call.getKey()))) {
+						leaking.add(e.getKey());
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		return leaking;
+	}
+
+	private static BitSet threadLocalAccesses(MethodResult r, HashMap<String, MethodResult> results, Set<String> leakingConstructors) {
+		Set<AbstractInsnNode> escaped = new HashSet<AbstractInsnNode>(r.interp.getEscaped());
+		escaped.add(THIS_SITE);
+		for (Map.Entry<String, Set<AbstractInsnNode>> call : r.interp.getPassedToConstructor().entrySet()) {
+			if (leakingConstructors.contains(call.getKey()) || !results.containsKey(call.getKey())) {
+				escaped.addAll(call.getValue());
+			}
+		}
+
+		BitSet b = new BitSet();
+		int bci = -1;
+		for (int i = 0; i < r.method.instructions.size(); i++) {
+			AbstractInsnNode insn = r.method.instructions.get(i);
+			if (insn instanceof ByteCodeIndexNode) {
+				bci = ((ByteCodeIndexNode)insn).index;
+				continue;
+			}
+			Frame<EscapeValue> f = r.frames[i];
+			if (f == null) continue;
+			int depth;
+			switch (insn.getOpcode()) {
+				case NEW:
+				case NEWARRAY:
+				case ANEWARRAY:
+				case MULTIANEWARRAY:
+					allocSites.inc();
+					if (!escaped.contains(insn)) threadLocalAllocSites.inc();
+					continue;
+				case GETFIELD:
+					depth = 1; 
+					break;
+				case PUTFIELD:
+				case IALOAD: case LALOAD: case FALOAD: case DALOAD:
+				case AALOAD: case BALOAD: case CALOAD: case SALOAD:
+					depth = 2; 
+					break;
+				case IASTORE: case LASTORE: case FASTORE: case DASTORE:
+				case AASTORE: case BASTORE: case CASTORE: case SASTORE:
+					depth = 3; 
+					break;
+				default:
+					continue;
+			}
+			EscapeValue target = f.getStack(f.getStackSize() - depth);
+			if (target.isOnlyFromSites() && !containsAny(escaped, target.getSites())) {
+				b.set(bci);
+			}
+		}
+		return b;
+	}
+
+	private static boolean containsAny(Set<AbstractInsnNode> escaped, Set<AbstractInsnNode> sites) {
+		for (AbstractInsnNode n : sites) {
+			if (escaped.contains(n)) return true;
+		}
+		return false;
+	}
+}
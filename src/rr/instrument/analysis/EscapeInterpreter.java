@@ -0,0 +1,238 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.instrument.analysis;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import rr.org.objectweb.asm.Opcodes;
+import rr.org.objectweb.asm.Type;
+import rr.org.objectweb.asm.tree.AbstractInsnNode;
+import rr.org.objectweb.asm.tree.FieldInsnNode;
+import rr.org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import rr.org.objectweb.asm.tree.LdcInsnNode;
+import rr.org.objectweb.asm.tree.MethodInsnNode;
+import rr.org.objectweb.asm.tree.analysis.Interpreter;
+
+/**
+ * Tracks allocation sites through a method body and records every
+ * site whose object may leave the method: stored into a field, a static,
+ * or an array, passed to a method, returned, or thrown.
+ * 
+ * Passing an object to a constructor of the class being analyzed is
+ * recorded separately, since whether that constructor leaks "this" is
+ * only known once all constructors in the class have been analyzed.
+ */
+public class EscapeInterpreter extends Interpreter<EscapeValue> implements Opcodes {
+
+	protected final String owner;
+	protected final Set<AbstractInsnNode> escaped = new HashSet<AbstractInsnNode>();
+	protected final HashMap<String, Set<AbstractInsnNode>> passedToConstructor = new HashMap<String, Set<AbstractInsnNode>>();
+
+	public EscapeInterpreter(String owner) {
+		super(ASM5);
+		this.owner = owner;
+	}
+
+	public Set<AbstractInsnNode> getEscaped() {
+		return escaped;
+	}
+
+	public HashMap<String, Set<AbstractInsnNode>> getPassedToConstructor() {
+		return passedToConstructor;
+	}
+
+	protected void escape(EscapeValue value) {
+		escaped.addAll(value.getSites());
+	}
+
+	protected static EscapeValue valueOfSize(int size) {
+		return size == 2 ? EscapeValue.DOUBLE_VALUE : EscapeValue.SINGLE_VALUE;
+	}
+
+	@Override
+	public EscapeValue newValue(final Type type) {
+		if (type == Type.VOID_TYPE) {
+			return null;
+		}
+		return valueOfSize(type == null ? 1 : type.getSize());
+	}
+
+	@Override
+	public EscapeValue newOperation(final AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+			case NEW:
+				return new EscapeValue(insn);
+			case ACONST_NULL:
+				return EscapeValue.NULL_VALUE;
+			case LCONST_0:
+			case LCONST_1:
+			case DCONST_0:
+			case DCONST_1:
+				return EscapeValue.DOUBLE_VALUE;
+			case LDC: {
+				Object cst = ((LdcInsnNode) insn).cst;
+				return valueOfSize(cst instanceof Long || cst instanceof Double ? 2 : 1);
+			}
+			case GETSTATIC:
+				return valueOfSize(Type.getType(((FieldInsnNode) insn).desc).getSize());
+			default:
+				return EscapeValue.SINGLE_VALUE;
+		}
+	}
+
+	@Override
+	public EscapeValue copyOperation(final AbstractInsnNode insn, final EscapeValue value) {
+		return value;
+	}
+
+	@Override
+	public EscapeValue unaryOperation(final AbstractInsnNode insn, final EscapeValue value) {
+		switch (insn.getOpcode()) {
+			case NEWARRAY:
+			case ANEWARRAY:
+				return new EscapeValue(insn);
+			case CHECKCAST:
+				return value;
+			case PUTSTATIC:
+			case ARETURN:
+			case ATHROW:
+				escape(value);
+				return null;
+			case LNEG:
+			case DNEG:
+			case I2L:
+			case I2D:
+			case L2D:
+			case F2L:
+			case F2D:
+			case D2L:
+				return EscapeValue.DOUBLE_VALUE;
+			case GETFIELD:
+				return valueOfSize(Type.getType(((FieldInsnNode) insn).desc).getSize());
+			default:
+				return EscapeValue.SINGLE_VALUE;
+		}
+	}
+
+	@Override
+	public EscapeValue binaryOperation(final AbstractInsnNode insn, final EscapeValue value1, final EscapeValue value2) {
+		switch (insn.getOpcode()) {
+			case PUTFIELD:
+				escape(value2);
+				return null;
+			case LALOAD:
+			case DALOAD:
+			case LADD:
+			case DADD:
+			case LSUB:
+			case DSUB:
+			case LMUL:
+			case DMUL:
+			case LDIV:
+			case DDIV:
+			case LREM:
+			case DREM:
+			case LSHL:
+			case LSHR:
+			case LUSHR:
+			case LAND:
+			case LOR:
+			case LXOR:
+				return EscapeValue.DOUBLE_VALUE;
+			default:
+				return EscapeValue.SINGLE_VALUE;
+		}
+	}
+
+	@Override
+	public EscapeValue ternaryOperation(final AbstractInsnNode insn, final EscapeValue value1, final EscapeValue value2, final EscapeValue value3) {
+		if (insn.getOpcode() == AASTORE) {
+			escape(value3);
+		}
+		return null;
+	}
+
+	@Override
+	public EscapeValue naryOperation(final AbstractInsnNode insn, final List<? extends EscapeValue> values) {
+		switch (insn.getOpcode()) {
+			case MULTIANEWARRAY:
+				return new EscapeValue(insn);
+			case INVOKEDYNAMIC:
+				for (EscapeValue v : values) {
+					escape(v);
+				}
+				return newValue(Type.getReturnType(((InvokeDynamicInsnNode) insn).desc));
+			default: {
+				MethodInsnNode m = (MethodInsnNode) insn;
+				int first = 0;
+				if (insn.getOpcode() == INVOKESPECIAL && m.name.equals("<init>")) {
+					EscapeValue receiver = values.get(0);
+					if (m.owner.equals(owner)) {
+						String key = m.name + m.desc;
+						Set<AbstractInsnNode> s = passedToConstructor.get(key);
+						if (s == null) {
+							s = new HashSet<AbstractInsnNode>();
+							passedToConstructor.put(key, s);
+						}
+						s.addAll(receiver.getSites());
+					} else if (!m.owner.equals("java/lang/Object")) {
+						escape(receiver);
+					}
+					first = 1;
+				}
+				for (int i = first; i < values.size(); i++) {
+					escape(values.get(i));
+				}
+				return newValue(Type.getReturnType(m.desc));
+			}
+		}
+	}
+
+	@Override
+	public void returnOperation(final AbstractInsnNode insn, final EscapeValue value, final EscapeValue expected) {
+	}
+
+	@Override
+	public EscapeValue merge(final EscapeValue v, final EscapeValue w) {
+		return v.merge(w);
+	}
+}
@@ -0,0 +1,124 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.instrument.analysis;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import rr.org.objectweb.asm.tree.AbstractInsnNode;
+import rr.org.objectweb.asm.tree.analysis.Value;
+
+/**
+ * Abstract value used by the escape analysis.  A reference value
+ * is the set of allocation sites (NEW, NEWARRAY, ANEWARRAY, MULTIANEWARRAY
+ * instructions) it may have come from, plus a flag indicating whether it
+ * may also refer to an object created somewhere we don't track
+ * (parameters, field loads, method results, ...).
+ */
+public class EscapeValue implements Value {
+
+	private static final Set<AbstractInsnNode> NO_SITES = Collections.emptySet();
+
+	public static final EscapeValue SINGLE_VALUE = new EscapeValue(1, NO_SITES, true);
+	public static final EscapeValue DOUBLE_VALUE = new EscapeValue(2, NO_SITES, true);
+	public static final EscapeValue NULL_VALUE = new EscapeValue(1, NO_SITES, false);
+
+	protected final int size;
+	protected final Set<AbstractInsnNode> sites;
+	protected final boolean other;
+
+	protected EscapeValue(int size, Set<AbstractInsnNode> sites, boolean other) {
+		this.size = size;
+		this.sites = sites;
+		this.other = other;
+	}
+
+	public EscapeValue(AbstractInsnNode site) {
+		this(1, Collections.singleton(site), false);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public Set<AbstractInsnNode> getSites() {
+		return sites;
+	}
+
+	/*
+	 * True if the value refers only to objects allocated at tracked sites.
+	 */
+	public boolean isOnlyFromSites() {
+		return !other && !sites.isEmpty();
+	}
+
+	public EscapeValue merge(EscapeValue v) {
+		if (this.equals(v)) return this;
+		if (this.size != v.size) return this.size == 1 ? SINGLE_VALUE : DOUBLE_VALUE;
+		Set<AbstractInsnNode> s;
+		if (v.sites.isEmpty() || this.sites.containsAll(v.sites)) {
+			s = this.sites;
+		} else if (this.sites.isEmpty() || v.sites.containsAll(this.sites)) {
+			s = v.sites;
+		} else {
+			s = new HashSet<AbstractInsnNode>(this.sites);
+			s.addAll(v.sites);
+		}
+		return new EscapeValue(size, s, this.other || v.other);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (!(o instanceof EscapeValue)) return false;
+		EscapeValue v = (EscapeValue)o;
+		return size == v.size && other == v.other && sites.equals(v.sites);
+	}
+
+	@Override
+	public int hashCode() {
+		return sites.hashCode() + (other ? 1 : 0) + size;
+	}
+
+	@Override
+	public String toString() {
+		return (other ? "?" : "") + sites.size();
+	}
+}
@@ -50,14 +50,12 @@ import rr.meta.ClassInfo;
 import rr.meta.ClassInfo.State;
 import rr.meta.FieldInfo;
 import rr.meta.InstrumentationFilter;
-import rr.meta.MetaDataAllocator;
-import rr.meta.MetaDataInfo;
-import rr.meta.MetaDataInfoKeys;
 import rr.meta.MetaDataInfoMaps;
-import rr.meta.MetaDataInfoVisitor;
-import rr.meta.SourceLocation;
 import acme.util.Assert;
 import acme.util.Util;
+import acme.util.decorations.Decoration;
+import acme.util.decorations.DecorationFactory.Type;
+import acme.util.decorations.DefaultValue;
 import acme.util.count.Counter;
 
 public class ClassInitNotifier extends RRClassAdapter {
@@ -109,7 +107,7 @@ public class ClassInitNotifier extends RRClassAdapter {
 			//   finished.
 			if (opcode == Opcodes.GETSTATIC) {
 				ClassInfo class1 = MetaDataBuilder.preLoad(owner);
-				super.visitLdcInsn(ClassInitNotifier.getClass(owner).id);
+				super.visitLdcInsn(class1.getId());
 				super.visitMethodInsn(Opcodes.INVOKESTATIC, "rr/instrument/classes/ClassInitNotifier", "__$rr_static_access", "(I)V", false);
 			}
 		} 
@@ -140,44 +138,26 @@ public class ClassInitNotifier extends RRClassAdapter {
 		}
 	}
 
-	private static class StaticInitInfo extends MetaDataInfo {
-		private final boolean done[] = new boolean[RR.maxTidOption.get()];
-		private final ClassInfo c;
-		final int id;
-		public StaticInitInfo (int id, String name) {
-			super(id, SourceLocation.NULL);
-			c = MetaDataInfoMaps.getClass(name);
-			this.id = id;
+	/*
+	 * The threads that have already seen each class accessed.  Kept on the ClassInfo, whose
+	 * id is baked into the instrumented code, so classes read back from the -dump cache
+	 * find it the same way as freshly instrumented ones.
+	 */
+	private static final Decoration<ClassInfo, boolean[]> staticAccessDone = MetaDataInfoMaps.getClasses().makeDecoration("ClassInitNotifier:StaticAccessDone", Type.MULTIPLE,
+			new DefaultValue<ClassInfo, boolean[]>() {
+		public boolean[] get(ClassInfo c) {
+			return new boolean[RR.maxTidOption.get()];
 		}
-		@Override
-		protected String computeKey() {
-			return c.getKey();
-		}
-		@Override
-		public void accept(MetaDataInfoVisitor v) {
-			// TODO Auto-generated method stub
-
-		}
-	}
-	private static final MetaDataAllocator<StaticInitInfo> classes = new MetaDataAllocator<StaticInitInfo>(new StaticInitInfo[0]);
-
-	public static StaticInitInfo getClass(String className) {		
-		StaticInitInfo x = classes.get(MetaDataInfoKeys.getClassKey(className));
-		if (x == null) {
-			x = new StaticInitInfo(classes.size(), className);
-			classes.put(x);
-		} 
-		return x;
-	}
-
+	});
 
 	public static final void __$rr_static_access(int id) {
-		StaticInitInfo info = classes.get(id);
+		final ClassInfo c = MetaDataInfoMaps.getClasses().get(id);
+		final boolean[] done = staticAccessDone.get(c);
 		ShadowThread td = ShadowThread.getCurrentShadowThread();
 		int tid = td.getTid();
-		if (!info.done[tid]) {
-			info.done[tid] = true;
-			rr.tool.RREventGenerator.classAccessEvent(info.c, td);
+		if (!done[tid]) {
+			done[tid] = true;
+			rr.tool.RREventGenerator.classAccessEvent(c, td);
 		}
 	}
 
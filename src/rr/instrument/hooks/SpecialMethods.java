@@ -39,6 +39,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package rr.instrument.hooks;
 
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import rr.org.objectweb.asm.ClassWriter;
 import rr.org.objectweb.asm.Opcodes;
@@ -59,11 +60,15 @@ public class SpecialMethods implements Opcodes {
 
 	protected static Vector<SpecialMethodCallBack> hooks = new Vector<SpecialMethodCallBack>();
 	private static int thunkCount;
+
+	// The hooks matching each method key, so a call does not run every hook's pattern.
+	private static final ConcurrentHashMap<String, SpecialMethodCallBack[]> hooksForKey = new ConcurrentHashMap<String, SpecialMethodCallBack[]>();
 	
 	public static SpecialMethodCallBack addHook(String classPattern, String methodString, SpecialMethodListener listener) {
 		SpecialMethodCallBack hook = new SpecialMethodCallBack(classPattern, methodString);
 		hook.addListener(listener);
 		hooks.add(hook);
+		hooksForKey.clear();
 		
  		String m = hook.getKey();
  		InstrumentationFilter.methodsToWatch.get().addFirst("-" + m);
@@ -72,11 +77,24 @@ public class SpecialMethods implements Opcodes {
 	}
 	
 	public static void invoke0(String key, boolean isPre, Object[] args, ShadowThread td) {
-		for (SpecialMethodCallBack h : hooks) {
-			if (h.matches(key)) {
-				h.invoke(isPre, args, td);
+		for (SpecialMethodCallBack h : matchingHooks(key)) {
+			h.invoke(isPre, args, td);
+		}
+	}
+
+	private static SpecialMethodCallBack[] matchingHooks(String key) {
+		SpecialMethodCallBack[] matching = hooksForKey.get(key);
+		if (matching == null) {
+			Vector<SpecialMethodCallBack> v = new Vector<SpecialMethodCallBack>();
+			for (SpecialMethodCallBack h : hooks) {
+				if (h.matches(key)) {
+					v.add(h);
+				}
 			}
+			matching = v.toArray(new SpecialMethodCallBack[v.size()]);
+			hooksForKey.put(key, matching);
 		}
+		return matching;
 	}
 	
 	public static void invoke(String key, boolean isPre, ShadowThread td) {
@@ -112,6 +130,9 @@ public class SpecialMethods implements Opcodes {
 		"(Ljava/lang/String;ZLjava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;Lrr/state/ShadowThread;)V",
 	};
 	
+	/** Name prefix of the thunk classes made by tryReplace, which are dumped to tsr/. */
+	public static final String THUNK_PREFIX = "__$rr_TSRThunk_";
+
 	public static boolean anyMatches(MethodInfo m) {
 		for (SpecialMethodCallBack h : hooks) {
 			if (h.matches(m.getKey())) {
@@ -131,7 +152,7 @@ public class SpecialMethods implements Opcodes {
 		Util.logf("Creating listener specific replacement for %s", method);
 
 		final Type thunkType;
-		String className = "__$rr_TSRThunk_" + enclosing.getOwner().getName().replace('/', '_') + "_" + thunkCount++;
+		String className = THUNK_PREFIX + enclosing.getOwner().getName().replace('/', '_') + "_" + thunkCount++;
 		thunkType = Type.getObjectType(className);
 		Method invokeMethod = new Method("invoke", method.getDescriptor());
 		invokeMethod = new Method("invoke", ASMUtil.addTypeToDescriptor(invokeMethod.getDescriptor(), Type.getObjectType(method.getOwner().getName().replace('.','/')), 0));
@@ -158,9 +179,9 @@ public class SpecialMethods implements Opcodes {
 			
 			callWithPromotionToObject(mv, key, true, invokeMethod);
 			
-			if (opcode == INVOKEVIRTUAL) {
+			if (opcode == INVOKEVIRTUAL || opcode == INVOKEINTERFACE) {
 				mv.visitVarInsn(ALOAD, 0);
-				ASMUtil.callMethodInOtherClass(INVOKEVIRTUAL, method.getOwner().getName(), method.getName(), method.getDescriptor(), mv, 1);
+				ASMUtil.callMethodInOtherClass(opcode, method.getOwner().getName(), method.getName(), method.getDescriptor(), mv, 1);
 			} else {
 				ASMUtil.callMethodInOtherClass(INVOKESTATIC, method.getOwner().getName(), method.getName(), method.getDescriptor(), mv, 0);
 			}
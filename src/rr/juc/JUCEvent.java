@@ -0,0 +1,110 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.juc;
+
+import rr.event.Event;
+import rr.state.ShadowThread;
+import acme.util.Util;
+
+/**
+ * A shared acquire or release of a java.util.concurrent synchronizer generated by a JUCMonitor.
+ */
+public class JUCEvent<T> extends Event {
+
+	/** The tool's state for the synchronizer. */
+	protected T sync;
+
+	/** The synchronizer object of the target program. */
+	protected Object target;
+
+	/** Whether the current thread is acquiring. */
+	protected boolean acquiring;
+
+	/**
+	 * How many times the current thread held the lock of a condition it is waiting on.
+	 */
+	protected int holds;
+
+	/**
+	 * RoadRunner internal method.
+	 */
+	public JUCEvent(ShadowThread td) {
+		super(td);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("JUC(%d,%s,%s)", getThread().getTid(), Util.objectToIdentityString(target), acquiring ? "Acquire":"Release");
+	}
+
+	public T getSync() {
+		return sync;
+	}
+
+	public Object getTarget() {
+		return target;
+	}
+
+	public boolean isAcquiring() {
+		return acquiring;
+	}
+
+	/**
+	 * RoadRunner internal method.
+	 */
+	public void setSync(T sync, Object target, boolean acquiring) {
+		this.sync = sync;
+		this.target = target;
+		this.acquiring = acquiring;
+	}
+
+	/**
+	 * RoadRunner internal method.
+	 */
+	public int getHolds() {
+		return holds;
+	}
+
+	/**
+	 * RoadRunner internal method.
+	 */
+	public void setHolds(int holds) {
+		this.holds = holds;
+	}
+}
@@ -0,0 +1,62 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.juc;
+
+/**
+ * Receives the shared synchronization that a JUCMonitor models on behalf of a tool.
+ * Exclusive locks are reported through the tool's usual acquire, release, and wait
+ * handlers instead.
+ */
+public interface JUCListener<T> {
+	/**
+	 * Method called by a JUC monitor when a thread has acquired a synchronizer in
+	 * shared mode: returning from a latch await, a semaphore acquire, or a read or
+	 * write lock.  Every earlier shared release of the same synchronizer state happens 
+	 * before it.  A read lock only acquires what write locks release, and vice versa.
+	 */
+	public void postAcquireShared(JUCEvent<T> je);
+
+	/**
+	 * Method called by a JUC monitor when a thread is about to release a synchronizer
+	 * in shared mode: counting down a latch, releasing a semaphore, or unlocking a read
+	 * or write lock.
+	 */
+	public void preReleaseShared(JUCEvent<T> je);
+
+}
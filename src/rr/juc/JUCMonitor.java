@@ -0,0 +1,359 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.juc;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import rr.event.WaitEvent;
+import rr.instrument.hooks.SpecialMethodCallBack;
+import rr.instrument.hooks.SpecialMethodListener;
+import rr.instrument.hooks.SpecialMethods;
+import rr.meta.AcquireInfo;
+import rr.meta.InstrumentationFilter;
+import rr.meta.MetaDataInfoMaps;
+import rr.meta.ReleaseInfo;
+import rr.meta.SourceLocation;
+import rr.meta.WaitInfo;
+import rr.state.ShadowLock;
+import rr.state.ShadowThread;
+import rr.tool.RR;
+import rr.tool.RREventGenerator;
+import acme.util.Assert;
+import acme.util.Util;
+import acme.util.WeakResourceManager;
+import acme.util.decorations.Decoration;
+import acme.util.decorations.DecorationFactory;
+import acme.util.decorations.DefaultValue;
+import acme.util.option.CommandLine;
+import acme.util.option.CommandLineOption;
+
+/**
+ * Models the synchronizers of java.util.concurrent at the calls the target program
+ * makes to them, rather than through the volatile accesses and CASes inside them,
+ * which are not instrumented.  Create a monitor in your Tool's constructor:
+ * <pre>
+ * 		new JUCMonitor<SyncState>(this, new DefaultValue<Object,SyncState>() {
+ *			public SyncState get(Object k) {
+ *				return new SyncState();
+ *			}
+ *		});
+ *	</pre>
+ *  ReentrantLock and the write lock of a ReentrantReadWriteLock become ordinary lock
+ *  acquires and releases, and waiting on one of their Conditions becomes a wait, all
+ *  delivered through the tool chain.  Latches, semaphores, and read locks have no owner,
+ *  so they are reported to the listener as shared acquires and releases, which the tool
+ *  should treat like reads and writes of a volatile.  A ReentrantReadWriteLock has
+ *  two synchronizer states, so that readers are ordered after writers and writers after
+ *  readers and writers, but readers not after each other: the write lock releases to the
+ *  first, which read locks acquire, and read locks release to the second, which the write
+ *  lock acquires.
+ *  <p>
+ *  Acquires that may have failed (tryAcquire, timed awaits) are reported as shared
+ *  acquires anyway.  That can only add happens-before edges, so it may hide races
+ *  but never reports false ones.  Exclusive tryLock is only reported when it got the lock.
+ *  Locks may be released in any order, not only innermost first.
+ *  <p>
+ *  Executors and Futures are not modeled: the hand-off through ExecutorService.submit or
+ *  execute and the result returned by Future.get create no happens-before edge here, so
+ *  races between a task and the code that submitted it or waited on it may be reported.
+ */
+public class JUCMonitor<T> implements SpecialMethodListener {
+
+	protected final DefaultValue<Object,T> defaultValue;
+	protected final JUCListener<T> listener;
+
+	/**
+	 * Option to turn off modeling of java.util.concurrent synchronizers.
+	 */
+	public static final CommandLineOption<Boolean> noJUC = 
+		CommandLine.makeBoolean("nojuc", false, CommandLineOption.Kind.STABLE, "Do not model java.util.concurrent locks, conditions, latches, and semaphores, even if monitor is installed.");
+
+	private static final String LOCKS = "java.util.concurrent.locks.";
+
+	private static final String[] LOCK_CLASSES = { 
+		LOCKS + "Lock", LOCKS + "ReentrantLock", LOCKS + "ReentrantReadWriteLock\\$ReadLock", LOCKS + "ReentrantReadWriteLock\\$WriteLock"  
+	};
+
+	private static final String[] LOCK_METHODS = { 
+		"void lock()", "void lockInterruptibly()", "boolean tryLock()", "boolean tryLock(long, java.util.concurrent.TimeUnit)", "void unlock()" 
+	};
+
+	private static final String[] CONDITION_CLASSES = { 
+		LOCKS + "Condition", LOCKS + "AbstractQueuedSynchronizer\\$ConditionObject" 
+	};
+
+	private static final String[] CONDITION_METHODS = { 
+		"void await()", "void awaitUninterruptibly()", "long awaitNanos(long)", "boolean await(long, java.util.concurrent.TimeUnit)", "boolean awaitUntil(java.util.Date)" 
+	};
+
+	private static final String[] LATCH_METHODS = { 
+		"void countDown()", "void await()", "boolean await(long, java.util.concurrent.TimeUnit)" 
+	};
+
+	private static final String[] SEMAPHORE_METHODS = { 
+		"void acquire()", "void acquire(int)", "void acquireUninterruptibly()", "void acquireUninterruptibly(int)", 
+		"boolean tryAcquire()", "boolean tryAcquire(int)", "boolean tryAcquire(long, java.util.concurrent.TimeUnit)", "boolean tryAcquire(int, long, java.util.concurrent.TimeUnit)",
+		"void release()", "void release(int)" 
+	};
+
+	// The AbstractQueuedSynchronizer behind each lock and condition, so that a lock, its
+	// conditions, and the two halves of a read-write lock all map to the same object.
+	private static final Field reentrantLockSync = field(ReentrantLock.class, "sync");
+	private static final Field readLockSync = field(ReentrantReadWriteLock.ReadLock.class, "sync");
+	private static final Field writeLockSync = field(ReentrantReadWriteLock.WriteLock.class, "sync");
+	private static final Field conditionOwner = field(AbstractQueuedSynchronizer.ConditionObject.class, "this$0");
+
+	private final Decoration<ShadowThread, JUCEvent<T>> events = 
+		ShadowThread.makeDecoration("juc event ", DecorationFactory.Type.MULTIPLE, new DefaultValue<ShadowThread, JUCEvent<T>>() {
+
+			public JUCEvent<T> get(ShadowThread t) {
+				return new JUCEvent<T>(t);
+			}
+
+		});
+
+	private final WeakResourceManager<Object, T> syncs = new WeakResourceManager<Object, T>() {
+		@Override
+		protected T make(Object k) {
+			return defaultValue.get(k);
+		}
+	};
+
+	// The releases of read locks, which only the write lock of the same synchronizer acquires
+	private final WeakResourceManager<Object, T> readerSyncs = new WeakResourceManager<Object, T>() {
+		@Override
+		protected T make(Object k) {
+			return defaultValue.get(k);
+		}
+	};
+
+	private final AcquireInfo acquireInfo;
+	private final ReleaseInfo releaseInfo;
+	private final WaitInfo waitInfo;
+
+	public JUCMonitor(JUCListener<T> listener, DefaultValue<Object,T> defaultValue) {
+		this.defaultValue = defaultValue;
+		this.listener = listener;
+		this.acquireInfo = MetaDataInfoMaps.makeAcquire(SourceLocation.NULL, null);
+		this.releaseInfo = MetaDataInfoMaps.makeRelease(SourceLocation.NULL, null);
+		this.waitInfo = MetaDataInfoMaps.makeWait(SourceLocation.NULL, null);
+
+		if (!noJUC.get()) {
+			addHooks(LOCK_CLASSES, LOCK_METHODS);
+			addHooks(CONDITION_CLASSES, CONDITION_METHODS);
+			addHooks(new String[] { "java.util.concurrent.CountDownLatch" }, LATCH_METHODS);
+			addHooks(new String[] { "java.util.concurrent.Semaphore" }, SEMAPHORE_METHODS);
+			Util.log("Turning off Instrumentation for all classes in java.util.concurrent: see -nojuc");
+			InstrumentationFilter.classesToWatch.get().addFirst("-java.util.concurrent..*");
+		}
+	}
+
+	private void addHooks(String[] classPatterns, String[] methods) {
+		for (String c : classPatterns) {
+			for (String m : methods) {
+				SpecialMethods.addHook(c, m, this);
+			}
+		}
+	}
+
+	private static Field field(Class<?> c, String name) {
+		try {
+			final Field f = c.getDeclaredField(name);
+			f.setAccessible(true);
+			return f;
+		} catch (Exception e) {
+			Util.log("Cannot find " + c.getName() + "." + name + ": " + e);
+			return null;
+		}
+	}
+
+	private static Object get(Field f, Object o) {
+		if (f == null) return null;
+		try {
+			return f.get(o);
+		} catch (IllegalAccessException e) {
+			Assert.panic(e);
+			return null;
+		}
+	}
+
+	/*
+	 * The object standing for lock, which is the synchronizer it shares with its conditions
+	 * and the other half of a read-write lock.
+	 */
+	private static Object syncOf(Object lock) {
+		final Object sync;
+		if (lock instanceof ReentrantLock) {
+			sync = get(reentrantLockSync, lock);
+		} else if (lock instanceof ReentrantReadWriteLock.WriteLock) {
+			sync = get(writeLockSync, lock);
+		} else {
+			sync = get(readLockSync, lock);
+		}
+		return sync != null ? sync : lock;
+	}
+
+	private static int holdCount(Object lock) {
+		if (lock instanceof ReentrantLock) {
+			return ((ReentrantLock)lock).getHoldCount();
+		} else {
+			return ((ReentrantReadWriteLock.WriteLock)lock).getHoldCount();
+		}
+	}
+
+	private static boolean isReadWrite(Object sync) {
+		return readLockSync != null && readLockSync.getType().isInstance(sync);
+	}
+
+	private void postAcquire(Object lock, ShadowThread td) {
+		final Object sync = syncOf(lock);
+		final ShadowLock ld = ShadowLock.get(sync);
+		final int held = ld.getHoldingThread() == td ? ld.get() : 0;
+		if (holdCount(lock) > held) { // tryLock may have failed
+			RREventGenerator.acquire(sync, acquireInfo.getId(), td);
+			if (held == 0 && lock instanceof ReentrantReadWriteLock.WriteLock) {
+				postAcquireShared(readerSyncs.get(sync), sync, td);
+			}
+		}
+	}
+
+	private void preRelease(Object lock, ShadowThread td) {
+		final Object sync = syncOf(lock);
+		final ShadowLock ld = ShadowLock.get(sync);
+		if (ld.getHoldingThread() == td && ld.get() > 0) {
+			if (ld.get() == 1 && lock instanceof ReentrantReadWriteLock.WriteLock) {
+				preReleaseShared(syncs.get(sync), sync, td);
+			}
+			RREventGenerator.release(sync, releaseInfo.getId(), td);
+		}
+	}
+
+	private void preAwait(Object condition, ShadowThread td) {
+		final JUCEvent<T> e = events.get(td);
+		e.setHolds(0);
+		final Object sync = get(conditionOwner, condition);
+		if (sync == null) return;
+		final ShadowLock ld = ShadowLock.get(sync);
+		if (ld.getHoldingThread() != td || ld.get() == 0) return;
+
+		final int holds = ld.get();
+		if (isReadWrite(sync)) {
+			preReleaseShared(syncs.get(sync), sync, td);
+		}
+		final WaitEvent we = td.getWaitEvent();
+		we.setInfo(waitInfo);
+		we.setLock(ld);
+		RR.getTool().preWait(we);
+		ld.set(0, null); // await releases every hold of the lock
+		e.setHolds(holds);
+	}
+
+	private void postAwait(Object condition, ShadowThread td) {
+		final JUCEvent<T> e = events.get(td);
+		final int holds = e.getHolds();
+		if (holds == 0) return;
+		e.setHolds(0);
+		final Object sync = get(conditionOwner, condition);
+		final ShadowLock ld = ShadowLock.get(sync);
+
+		ld.set(holds, td);  // await reacquired the lock
+		final WaitEvent we = td.getWaitEvent();
+		we.setInfo(waitInfo);
+		we.setLock(ld);
+		RR.getTool().postWait(we);
+		if (isReadWrite(sync)) {
+			postAcquireShared(readerSyncs.get(sync), sync, td);
+		}
+	}
+
+	private void postAcquireShared(T state, Object sync, ShadowThread td) {
+		final JUCEvent<T> e = events.get(td);
+		e.setSync(state, sync, true);
+		listener.postAcquireShared(e);
+		e.setSync(null, null, true);
+	}
+
+	private void preReleaseShared(T state, Object sync, ShadowThread td) {
+		final JUCEvent<T> e = events.get(td);
+		e.setSync(state, sync, false);
+		listener.preReleaseShared(e);
+		e.setSync(null, null, false);
+	}
+
+	/**
+	 * RoadRunner internal method.
+	 */
+	public void invoked(SpecialMethodCallBack hook, boolean isPre, Object[] args, ShadowThread td) {
+		final Object target = args[0];
+		final String name = hook.getMethod().getName();
+		if (target instanceof ReentrantLock || target instanceof ReentrantReadWriteLock.WriteLock) {
+			if (name.equals("unlock")) {
+				if (isPre) preRelease(target, td);
+			} else if (!isPre) {
+				postAcquire(target, td);
+			}
+		} else if (target instanceof ReentrantReadWriteLock.ReadLock) {
+			final Object sync = syncOf(target);
+			if (name.equals("unlock")) {
+				if (isPre) preReleaseShared(readerSyncs.get(sync), sync, td);
+			} else if (!isPre) {
+				postAcquireShared(syncs.get(sync), sync, td);
+			}
+		} else if (target instanceof Condition) {
+			if (isPre) {
+				preAwait(target, td);
+			} else {
+				postAwait(target, td);
+			}
+		} else if (target instanceof CountDownLatch || target instanceof Semaphore) {
+			if (name.equals("countDown") || name.equals("release")) {
+				if (isPre) preReleaseShared(syncs.get(target), target, td);
+			} else if (!isPre) {
+				postAcquireShared(syncs.get(target), target, td);
+			}
+		}
+		// Any other Lock or Condition is the target program's own, and so is instrumented.
+	}
+}
@@ -1,8 +1,12 @@
 package rr.loader;
 
 import rr.RRMain;
+import rr.instrument.hooks.SpecialMethods;
 import rr.org.objectweb.asm.ClassReader;
+import rr.org.objectweb.asm.ClassVisitor;
 import rr.org.objectweb.asm.ClassWriter;
+import rr.org.objectweb.asm.MethodVisitor;
+import rr.org.objectweb.asm.Opcodes;
 import rr.meta.ClassInfo;
 import rr.meta.FieldInfo;
 import rr.meta.InstrumentationFilter;
@@ -46,12 +50,10 @@ public class InstrumentingDefineClassLoader implements DefineClassListener {
 				byte[] bytes2 = Loader.readFromFileCache("classes", rrClass.getName());
 				if (bytes2 != null) {
 					Util.logf("Found cached version of %s", name);
-					MetaDataBuilder.preLoadFully(currentLoader, new ClassReader(bytes2));
-					for (FieldInfo f : rrClass.getFields()) {
-						if (InstrumentationFilter.shouldInstrument(f)) {
-							f.getUpdater();
-						}
-					}
+					// Updaters are made on first access, once the class is defined.
+					final ClassReader cached = new ClassReader(bytes2);
+					MetaDataBuilder.preLoadFully(currentLoader, cached);
+					defineCachedThunks(currentLoader, cached);
 					return bytes2;
 				}
 				try {
@@ -73,6 +75,30 @@ public class InstrumentingDefineClassLoader implements DefineClassListener {
 		}
 	}
 
+	/*
+	 * A cached class calls the thunks SpecialMethods made for its hooked calls when
+	 * it was instrumented.  Define them from the dumped tsr/ class files.
+	 */
+	private static void defineCachedThunks(final LoaderContext loader, ClassReader cached) {
+		cached.accept(new ClassVisitor(Opcodes.ASM5) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM5) {
+					@Override
+					public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+						if (owner.startsWith(SpecialMethods.THUNK_PREFIX)) {
+							final byte[] thunk = Loader.readFromFileCache("tsr", owner);
+							if (thunk == null) {
+								Assert.fail("No cached thunk %s.  Rerun with -dump.", owner);
+							}
+							loader.defineClass(owner, thunk);
+						}
+					}
+				};
+			}
+		}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+	}
+
 }
 
 
@@ -0,0 +1,155 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.meta;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import acme.util.Assert;
+import acme.util.Util;
+
+/**
+ * Per-access-site profile written by the ProfileTool and read back by 
+ * InstrumentationFilter (-profileIn) on later runs.
+ * 
+ * The file is plain text, one site per line: 
+ * <pre>
+ *    count raced shared key
+ * </pre>
+ * where key is the key of the FieldAccessInfo or ArrayAccessInfo for the site.
+ * Writing to an existing profile merges into it: counts are summed and the 
+ * raced/shared bits are or-ed, so a profile accumulates over many runs.
+ */
+public class AccessProfile {
+
+	public static class Entry {
+		public long count;
+		public boolean raced;
+		public boolean shared;
+
+		public Entry(long count, boolean raced, boolean shared) {
+			this.count = count;
+			this.raced = raced;
+			this.shared = shared;
+		}
+
+		public void merge(Entry other) {
+			count += other.count;
+			raced |= other.raced;
+			shared |= other.shared;
+		}
+	}
+
+	protected final Map<String,Entry> entries = new TreeMap<String,Entry>();
+
+	public Entry get(String key) {
+		return entries.get(key);
+	}
+
+	public void add(String key, Entry e) {
+		Entry old = entries.get(key);
+		if (old == null) {
+			entries.put(key, e);
+		} else {
+			old.merge(e);
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public static AccessProfile read(String fileName) {
+		AccessProfile profile = new AccessProfile();
+		File file = new File(fileName);
+		if (!file.exists()) {
+			return profile;
+		}
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith("#") || line.trim().length() == 0) continue;
+					String parts[] = line.split(" ", 4);
+					if (parts.length != 4) {
+						Assert.warn("Bad line in access profile %s: %s", fileName, line);
+						continue;
+					}
+					profile.add(parts[3], new Entry(Long.parseLong(parts[0]), parts[1].equals("1"), parts[2].equals("1")));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			Assert.panic(e);
+		} catch (NumberFormatException e) {
+			Assert.panic(e);
+		}
+		return profile;
+	}
+
+	/*
+	 * Merge this profile into the profile already stored in fileName, if any, and write the result.
+	 */
+	public void write(String fileName) {
+		AccessProfile merged = read(fileName);
+		for (Map.Entry<String,Entry> e : entries.entrySet()) {
+			merged.add(e.getKey(), e.getValue());
+		}
+		try {
+			PrintWriter out = new PrintWriter(new FileWriter(fileName));
+			out.println("# count raced shared key");
+			for (Map.Entry<String,Entry> e : merged.entries.entrySet()) {
+				Entry v = e.getValue();
+				out.println(v.count + " " + (v.raced ? 1 : 0) + " " + (v.shared ? 1 : 0) + " " + e.getKey());
+			}
+			out.close();
+		} catch (IOException e) {
+			Assert.panic(e);
+		}
+		Util.logf("Wrote access profile for %d sites to %s", merged.size(), fileName);
+	}
+}
@@ -38,8 +38,11 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package rr.meta;
 
+import rr.instrument.analysis.EscapeAnalysis;
 import acme.util.StringMatchResult;
 import acme.util.StringMatcher;
+import acme.util.Util;
+import acme.util.count.Counter;
 import acme.util.decorations.Decoration;
 import acme.util.decorations.DecorationFactory;
 import acme.util.decorations.DefaultValue;
@@ -90,10 +93,76 @@ public class InstrumentationFilter {
 					s = s.substring(0, s.lastIndexOf(":"));
 					return shouldInstrument(enclosing.getOwner()) &&		
 							linesToWatch.get().test(s) == StringMatchResult.ACCEPT &&
-							shouldInstrument(enclosing);
+							shouldInstrument(enclosing) &&
+							!isThreadLocalAccess(op) &&
+							!isDowngradedByProfile(op);
 				}	
 			});
 
+	private static final Counter threadLocalFieldAccessesSkipped = new Counter("Escape Analysis", "Field Access Sites Not Instrumented");
+	private static final Counter threadLocalArrayAccessesSkipped = new Counter("Escape Analysis", "Array Access Sites Not Instrumented");
+
+	/*
+	 * True if escapeAnalysisOption is on and op accesses an object that never
+	 * leaves the allocating method (see EscapeAnalysis).  Volatile accesses are 
+	 * always kept, since tools may treat them as synchronization.
+	 */
+	private static boolean isThreadLocalAccess(OperationInfo op) {
+		if (!escapeAnalysisOption.get()) return false;
+		if (op instanceof FieldAccessInfo) {
+			FieldInfo field = ((FieldAccessInfo)op).getField();
+			if (field.isStatic() || field.isVolatile()) return false;
+			if (EscapeAnalysis.isThreadLocalAccess(op.getEnclosing(), op.getLoc().getOffset())) {
+				threadLocalFieldAccessesSkipped.inc();
+				return true;
+			}
+		} else if (op instanceof ArrayAccessInfo) {
+			if (EscapeAnalysis.isThreadLocalAccess(op.getEnclosing(), op.getLoc().getOffset())) {
+				threadLocalArrayAccessesSkipped.inc();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final Counter profileDowngradedSites = new Counter("Profile", "Access Sites Not Instrumented");
+	private static final Counter profileCandidateSites = new Counter("Profile", "Access Sites Eligible But Instrumented");
+	private static final Counter profileKeptSites = new Counter("Profile", "Access Sites Instrumented");
+
+	private static AccessProfile profile;
+
+	/*
+	 * True if op is a hot field access site in the profile given by profileInOption that  
+	 * never raced and was never shared, and profileDowngradeOption is set.  Without 
+	 * profileDowngradeOption such sites are only logged and counted.  Array sites are never 
+	 * downgraded: the profile cannot tell whether the array a site touches is also touched 
+	 * at another site in another thread.
+	 */
+	private static boolean isDowngradedByProfile(OperationInfo op) {
+		if (profileInOption.get().equals("")) return false;
+		if (!(op instanceof FieldAccessInfo)) return false;
+		if (((FieldAccessInfo)op).getField().isVolatile()) return false;
+		synchronized(InstrumentationFilter.class) {
+			if (profile == null) {
+				profile = AccessProfile.read(profileInOption.get());
+				Util.logf("Read access profile for %d sites from %s", profile.size(), profileInOption.get());
+			}
+		}
+		AccessProfile.Entry e = profile.get(op.getKey());
+		if (e != null && e.count >= profileHotOption.get() && !e.raced && !e.shared) {
+			if (!profileDowngradeOption.get()) {
+				Util.logf("Profile: could skip %s (count=%d, never raced or shared), use -profileDowngrade to do so", op.getKey(), e.count);
+				profileCandidateSites.inc();
+				return false;
+			}
+			Util.logf("Profile: not instrumenting %s (count=%d, never raced or shared)", op.getKey(), e.count);
+			profileDowngradedSites.inc();
+			return true;
+		}
+		profileKeptSites.inc();
+		return false;
+	}
+
 
 	public static final Decoration<MethodInfo,Boolean> supportsThreadStateParam  = 
 			MetaDataInfoMaps.getMethods().makeDecoration("supportThreadStateParam", DecorationFactory.Type.SINGLE, new DefaultValue<MethodInfo, Boolean>() { 
@@ -125,6 +194,18 @@ public class InstrumentationFilter {
 					"   -classes=\"+.*moo.*\" -classes=\"-.*cow.*\" ignores classes with cow in name, except if they have moo in the name",
 					"-java..*", "-javax..*", "-com.sun..*", "-sun..*", "-rr..*", "-tools..*", "-acme..*", "-.*__\\$rr_.*", "-org.xml..*");
 
+	public static CommandLineOption<Boolean> escapeAnalysisOption  = 
+			CommandLine.makeBoolean("escapeAnalysis", false, CommandLineOption.Kind.EXPERIMENTAL, "Do not instrument field and array accesses on objects that provably never escape the method allocating them.");
+
+	public static CommandLineOption<String> profileInOption  = 
+			CommandLine.makeString("profileIn", "", CommandLineOption.Kind.EXPERIMENTAL, "Access profile written by the PROF tool on earlier runs.  Reports the hot field access sites in it that never raced and were never shared.  See -profileDowngrade.");
+
+	public static CommandLineOption<Boolean> profileDowngradeOption  = 
+			CommandLine.makeBoolean("profileDowngrade", false, CommandLineOption.Kind.EXPERIMENTAL, "Do not instrument the sites reported by -profileIn.  Unsound: races at those sites in this run are missed, including races with sites that were instrumented.");
+
+	public static CommandLineOption<Long> profileHotOption  = 
+			CommandLine.makeLong("profileHot", 10000, CommandLineOption.Kind.EXPERIMENTAL, "Minimum access count (summed over profiled runs) for a site to be considered hot by -profileIn.");
+
 	public static CommandLineOption<StringMatcher> methodsSupportThreadStateParam  = 
 			CommandLine.makeStringMatcher("shadowThread", StringMatchResult.ACCEPT, CommandLineOption.Kind.DEPRECATED, "Specifies which methods can be tranformed into version that take a ShadowThread parameter.  No longer used --- JVMs have faster direct access to thread local data than before.",
 					"-.*");
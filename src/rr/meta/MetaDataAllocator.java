@@ -39,6 +39,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package rr.meta;
 
 import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -55,43 +56,61 @@ import acme.util.decorations.SingletonValue;
 
 public class MetaDataAllocator<S extends MetaDataInfo> implements Iterable<S>, Serializable {
 
-	protected S mapById[];
+	/*
+	 * Infos by id, in fixed size chunks so that growing only copies the small array of
+	 * chunks.  Lookups take no lock: put stores the info before the volatile write of
+	 * chunks, so a reader that sees an id also sees its info.
+	 */
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final Class<?> infoClass;
+	private volatile S chunks[][];
 	protected final ConcurrentHashMap<String, S> map = new ConcurrentHashMap<String,S>();
 	protected final DecorationFactory<S> decorations = new DecorationFactory<S>();
 
-	private static <T> T[] copyOf(T[] original, int newLength) {
-		T[] copy = (T[]) java.lang.reflect.Array.newInstance(original.getClass().getComponentType(), newLength);
-		System.arraycopy(original, 0, copy, 0,
-				Math.min(original.length, newLength));
-		return copy;
+	@SuppressWarnings("unchecked")
+	public MetaDataAllocator(S[] bogusArray) {
+		infoClass = bogusArray.getClass().getComponentType();
+		chunks = (S[][])Array.newInstance(bogusArray.getClass(), 1);
+		chunks[0] = newChunk();
 	}
 
-	public MetaDataAllocator(S[] bogusArray) {
-		mapById = copyOf(bogusArray, 128);
+	@SuppressWarnings("unchecked")
+	private S[] newChunk() {
+		return (S[])Array.newInstance(infoClass, CHUNK_SIZE);
 	}
 
-	public synchronized S get(final String key) {
+	public S get(final String key) {
 		return map.get(key);
 	}
 
+	/** The info with this id, or null if there is none. */
 	public S get(final int id) {
-		S s = mapById[id];
-		return s;
+		final S c[][] = chunks;
+		final int i = id >>> CHUNK_BITS;
+		if (i >= c.length || c[i] == null) {
+			return null;
+		}
+		return c[i][id & CHUNK_MASK];
 	}
 
 	public int size() {
 		return map.size();
 	}
 
-	private synchronized void resize(final int n) {
-		mapById = copyOf(mapById, n);
-	}
-
 	public synchronized S put(final S t) {
-		if (t.id >= mapById.length) {
-			resize(t.id * 2);
+		S c[][] = chunks;
+		final int i = t.id >>> CHUNK_BITS;
+		if (i >= c.length) {
+			c = Arrays.copyOf(c, Math.max(c.length * 2, i + 1));
+		}
+		if (c[i] == null) {
+			c[i] = newChunk();
 		}
-		mapById[t.id] = t;
+		c[i][t.id & CHUNK_MASK] = t;
+		chunks = c;
 		return map.put(t.getKey(), t);
 	}
 
@@ -38,10 +38,6 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package rr.meta;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 
 import rr.instrument.Constants;
@@ -77,57 +73,37 @@ public class MetaDataInfoMaps {
 
 	private static final GlobalMetaDataInfoDecorations globalDecorations;
 
-	static final private <T extends MetaDataInfo> MetaDataAllocator<T> read(final String name, final ObjectInputStream in) throws Exception {
-		return Util.log(new TimedExpr<MetaDataAllocator<T>>("Loading " + name + "...") {
-			@Override
-			public MetaDataAllocator<T> run() throws Exception {
-				return (MetaDataAllocator<T>)in.readObject();
-			}
-		});
-	}
-
 	static { 
+		classes = new MetaDataAllocator<ClassInfo>(new ClassInfo[0]);
+		fields = new MetaDataAllocator<FieldInfo>(new FieldInfo[0]);
+		methods = new MetaDataAllocator<MethodInfo>(new MethodInfo[0]);
+		acquires = new MetaDataAllocator<AcquireInfo>(new AcquireInfo[0]);
+		releases = new MetaDataAllocator<ReleaseInfo>(new ReleaseInfo[0]);	
+		starts = new MetaDataAllocator<StartInfo>(new StartInfo[0]);
+		waits  = new MetaDataAllocator<WaitInfo>(new WaitInfo[0]);
+		joins = new MetaDataAllocator<JoinInfo>(new JoinInfo[0]);
+		interrupts = new MetaDataAllocator<InterruptInfo>(new InterruptInfo[0]);
+		fieldAccesses = new MetaDataAllocator<FieldAccessInfo>(new FieldAccessInfo[0]);
+		arrayAccesses = new MetaDataAllocator<ArrayAccessInfo>(new ArrayAccessInfo[0]);
+		invokes = new MetaDataAllocator<InvokeInfo>(new InvokeInfo[0]);
+
+		opDecorations = new DecorationFactory<OperationInfo>();
+		globalDecorations = new GlobalMetaDataInfoDecorations();
+
 		String s = metaOption.get();
 		if (s == null) {
 			Util.logf("Creating Fresh Meta Data");
-			classes = new MetaDataAllocator<ClassInfo>(new ClassInfo[0]);
-			fields = new MetaDataAllocator<FieldInfo>(new FieldInfo[0]);
-			methods = new MetaDataAllocator<MethodInfo>(new MethodInfo[0]);
-			acquires = new MetaDataAllocator<AcquireInfo>(new AcquireInfo[0]);
-			releases = new MetaDataAllocator<ReleaseInfo>(new ReleaseInfo[0]);	
-			starts = new MetaDataAllocator<StartInfo>(new StartInfo[0]);
-			waits  = new MetaDataAllocator<WaitInfo>(new WaitInfo[0]);
-			joins = new MetaDataAllocator<JoinInfo>(new JoinInfo[0]);
-			interrupts = new MetaDataAllocator<InterruptInfo>(new InterruptInfo[0]);
-			fieldAccesses = new MetaDataAllocator<FieldAccessInfo>(new FieldAccessInfo[0]);
-			arrayAccesses = new MetaDataAllocator<ArrayAccessInfo>(new ArrayAccessInfo[0]);
-			invokes = new MetaDataAllocator<InvokeInfo>(new InvokeInfo[0]);
-
-			opDecorations = new DecorationFactory<OperationInfo>();
-			globalDecorations = new GlobalMetaDataInfoDecorations();
-
 		} else {
 			try {
 				final String file = s + "/rr.meta";
-				Util.logf("Loading Meta Data from %s...", file);
-				ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-				classes = read("classes", in); 
-				fields = read("fields", in);
-				methods = read("methods", in);
-				acquires = read("acquires", in);
-				releases = read("releases", in);
-				starts = read("starts", in);
-				waits  = read("waits", in); 
-				joins =  read("joins", in); 
-				interrupts =  read("interrupts", in); 
-				fieldAccesses = read("field accesses", in); 
-				arrayAccesses = read("array accesses", in);
-				invokes = read("invokes", in);
-
-				Util.log("decorations...");
-				opDecorations = (DecorationFactory<OperationInfo>)in.readObject();
-				globalDecorations = (GlobalMetaDataInfoDecorations)in.readObject();
-				in.close();
+				Util.log(new TimedExpr<Object>("Loading Meta Data from " + file) {
+					@Override
+					public Object run() throws Exception {
+						MetaDataSnapshot.read(file);
+						return null;
+					}
+				});
+				Util.logf("Loaded %d classes, %d fields, %d methods", classes.size(), fields.size(), methods.size());
 			} catch (Exception e) {
 				Assert.panic(e);
 				throw new RuntimeException(e);
@@ -138,22 +114,7 @@ public class MetaDataInfoMaps {
 
 	public static void dump(String file) {
 		try {
-			ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-			out.writeObject(getClasses());
-			out.writeObject(getFields());
-			out.writeObject(getMethods());
-			out.writeObject(getAcquires());
-			out.writeObject(getReleases());
-			out.writeObject(getStarts());
-			out.writeObject(getWaits());
-			out.writeObject(getJoins());
-			out.writeObject(getInterrupts());
-			out.writeObject(getFieldAccesses());
-			out.writeObject(getArrayAccesses());
-			out.writeObject(getInvokes());
-			out.writeObject(getOpDecorations());
-			out.writeObject(getGlobalDecorations());
-			out.close();
+			MetaDataSnapshot.write(file);
 		} catch (Exception e) {
 			Assert.panic(e);
 		}
@@ -219,11 +180,17 @@ public class MetaDataInfoMaps {
 
 	public static MethodInfo getMethod(ClassInfo rrType, String name, String signature) {
 		Assert.assertTrue(signature != null);
-		MethodInfo x = getMethods().get(MetaDataInfoKeys.getMethodKey(rrType, name, signature));
+		final String key = MetaDataInfoKeys.getMethodKey(rrType, name, signature);
+		MethodInfo x = getMethods().get(key);
 		if (x == null) {
-			boolean isSynthetic = Constants.isSyntheticName(name);
-			x = new MethodInfo(getMethods().size(), SourceLocation.NULL, rrType, name, signature, isSynthetic);
-			getMethods().put(x);
+			synchronized (getMethods()) {
+				x = getMethods().get(key);
+				if (x == null) {
+					boolean isSynthetic = Constants.isSyntheticName(name);
+					x = new MethodInfo(getMethods().size(), SourceLocation.NULL, rrType, name, signature, isSynthetic);
+					getMethods().put(x);
+				}
+			}
 		} 
 		rrType.addMethod(x);
 
@@ -231,22 +198,34 @@ public class MetaDataInfoMaps {
 	}
 
 	public static ClassInfo getClass(String className) {		
-		ClassInfo x = getClasses().get(MetaDataInfoKeys.getClassKey(className));
+		final String key = MetaDataInfoKeys.getClassKey(className);
+		ClassInfo x = getClasses().get(key);
 		if (x == null) {
-//			System.err.println("NOT FOUND:" + className);
-			boolean isSynthetic = Constants.isSyntheticName(className);
-			x = new ClassInfo(getClasses().size(), SourceLocation.NULL, className, isSynthetic);
-			getClasses().put(x);
+			// lookups take no lock, so only the thread that misses re-checks and allocates the id under one
+			synchronized (getClasses()) {
+				x = getClasses().get(key);
+				if (x == null) {
+					boolean isSynthetic = Constants.isSyntheticName(className);
+					x = new ClassInfo(getClasses().size(), SourceLocation.NULL, className, isSynthetic);
+					getClasses().put(x);
+				}
+			}
 		} 
 		return x;
 	}
 
 	public static FieldInfo getField(ClassInfo rrClass, String name, String descriptor) {
-		FieldInfo x = getFields().get(MetaDataInfoKeys.getFieldKey(rrClass, name, descriptor));
+		final String key = MetaDataInfoKeys.getFieldKey(rrClass, name, descriptor);
+		FieldInfo x = getFields().get(key);
 		if (x == null) {
-			boolean isSynthetic = Constants.isSyntheticName(name);
-			x = new FieldInfo(getFields().size(), SourceLocation.NULL, rrClass, name, descriptor, isSynthetic);
-			getFields().put(x);
+			synchronized (getFields()) {
+				x = getFields().get(key);
+				if (x == null) {
+					boolean isSynthetic = Constants.isSyntheticName(name);
+					x = new FieldInfo(getFields().size(), SourceLocation.NULL, rrClass, name, descriptor, isSynthetic);
+					getFields().put(x);
+				}
+			}
 		} 
 		rrClass.addField(x);
 		return x;
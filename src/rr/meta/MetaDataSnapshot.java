@@ -0,0 +1,401 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.meta;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Vector;
+
+import acme.util.Assert;
+
+/**
+ * The binary form of the metadata saved by -dump and reloaded with -meta/RR_META_DATA.
+ * <p>
+ * Every string is written once to a table up front and referred to by index, and every
+ * info refers to the classes, fields, and methods it mentions by id, so reading is a
+ * single pass over a memory-mapped file with no reflection.  Layout:
+ * <pre>
+ *   magic, version
+ *   strings:  count, (length, utf-8 bytes)*
+ *   classes:  count, (name, synthetic, state, isClass)*
+ *   fields:   count, (owner, name, descriptor, synthetic, final, volatile, static)*
+ *   methods:  count, (owner, name, descriptor, synthetic, flagsSet, static, native, synchronized)*
+ *   for each class: super, interfaces, fields, methods
+ *   static fields in offset order
+ *   locations of classes, fields, and methods
+ *   acquires, releases, starts, waits, joins, interrupts:  count, (loc, enclosing)*
+ *   field accesses:  count, (loc, enclosing, isWrite, field)*
+ *   array accesses:  count, (loc, enclosing, isWrite)*
+ *   invokes:  count, (loc, enclosing, method)*
+ * </pre>
+ * Ids are implicit in the order of each section, and -1 stands for null.  Decorations
+ * hold the state of tools for one run and are not saved.
+ */
+final class MetaDataSnapshot {
+
+	private static final int MAGIC = 0x52524d44; // "RRMD"
+	private static final int VERSION = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private MetaDataSnapshot() { }
+
+	/******/
+
+	static void write(String file) throws IOException {
+		final HashMap<String,Integer> strings = new HashMap<String,Integer>();
+		final Vector<String> table = new Vector<String>();
+		for (ClassInfo c : byId(MetaDataInfoMaps.getClasses())) {
+			intern(strings, table, c.name);
+		}
+		for (FieldInfo f : byId(MetaDataInfoMaps.getFields())) {
+			intern(strings, table, f.name);
+			intern(strings, table, f.descriptor);
+		}
+		for (MethodInfo m : byId(MetaDataInfoMaps.getMethods())) {
+			intern(strings, table, m.name);
+			intern(strings, table, m.desc);
+		}
+		for (MetaDataAllocator<? extends MetaDataInfo> a : allocators()) {
+			for (MetaDataInfo info : byId(a)) {
+				if (info.loc != SourceLocation.NULL) {
+					intern(strings, table, info.loc.getFile());
+				}
+			}
+		}
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(table.size());
+			for (String s : table) {
+				final byte[] b = s.getBytes(UTF8);
+				out.writeInt(b.length);
+				out.write(b);
+			}
+
+			final Vector<ClassInfo> classes = byId(MetaDataInfoMaps.getClasses());
+			out.writeInt(classes.size());
+			for (ClassInfo c : classes) {
+				out.writeInt(strings.get(c.name));
+				out.writeBoolean(c.isSynthetic);
+				out.writeByte(c.state.ordinal());
+				out.writeBoolean(c.isClass);
+			}
+
+			final Vector<FieldInfo> fields = byId(MetaDataInfoMaps.getFields());
+			out.writeInt(fields.size());
+			for (FieldInfo f : fields) {
+				out.writeInt(f.rrClass.id);
+				out.writeInt(strings.get(f.name));
+				out.writeInt(strings.get(f.descriptor));
+				out.writeBoolean(f.isSynthetic);
+				out.writeBoolean(f.isFinal);
+				out.writeBoolean(f.isVolatile);
+				out.writeBoolean(f.isStatic);
+			}
+
+			final Vector<MethodInfo> methods = byId(MetaDataInfoMaps.getMethods());
+			out.writeInt(methods.size());
+			for (MethodInfo m : methods) {
+				out.writeInt(m.owner.id);
+				out.writeInt(strings.get(m.name));
+				out.writeInt(strings.get(m.desc));
+				out.writeBoolean(m.isSynthetic);
+				out.writeBoolean(m.flagsSet);
+				out.writeBoolean(m.isStatic);
+				out.writeBoolean(m.isNative);
+				out.writeBoolean(m.isSynchronized);
+			}
+
+			for (ClassInfo c : classes) {
+				out.writeInt(id(c.superClass));
+				writeIds(out, c.interfaces);
+				writeIds(out, c.fields);
+				writeIds(out, c.methods);
+			}
+			writeIds(out, FieldInfo.statics);
+
+			for (MetaDataInfo info : classes) writeLoc(out, strings, info.loc);
+			for (MetaDataInfo info : fields) writeLoc(out, strings, info.loc);
+			for (MetaDataInfo info : methods) writeLoc(out, strings, info.loc);
+
+			writeOps(out, strings, MetaDataInfoMaps.getAcquires());
+			writeOps(out, strings, MetaDataInfoMaps.getReleases());
+			writeOps(out, strings, MetaDataInfoMaps.getStarts());
+			writeOps(out, strings, MetaDataInfoMaps.getWaits());
+			writeOps(out, strings, MetaDataInfoMaps.getJoins());
+			writeOps(out, strings, MetaDataInfoMaps.getInterrupts());
+
+			final Vector<FieldAccessInfo> fieldAccesses = byId(MetaDataInfoMaps.getFieldAccesses());
+			out.writeInt(fieldAccesses.size());
+			for (FieldAccessInfo op : fieldAccesses) {
+				writeOp(out, strings, op);
+				out.writeBoolean(op.isWrite);
+				out.writeInt(op.field.id);
+			}
+
+			final Vector<ArrayAccessInfo> arrayAccesses = byId(MetaDataInfoMaps.getArrayAccesses());
+			out.writeInt(arrayAccesses.size());
+			for (ArrayAccessInfo op : arrayAccesses) {
+				writeOp(out, strings, op);
+				out.writeBoolean(op.isWrite);
+			}
+
+			final Vector<InvokeInfo> invokes = byId(MetaDataInfoMaps.getInvokes());
+			out.writeInt(invokes.size());
+			for (InvokeInfo op : invokes) {
+				writeOp(out, strings, op);
+				out.writeInt(id(op.method));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static Vector<MetaDataAllocator<? extends MetaDataInfo>> allocators() {
+		final Vector<MetaDataAllocator<? extends MetaDataInfo>> v = new Vector<MetaDataAllocator<? extends MetaDataInfo>>();
+		v.add(MetaDataInfoMaps.getClasses());
+		v.add(MetaDataInfoMaps.getFields());
+		v.add(MetaDataInfoMaps.getMethods());
+		v.add(MetaDataInfoMaps.getAcquires());
+		v.add(MetaDataInfoMaps.getReleases());
+		v.add(MetaDataInfoMaps.getStarts());
+		v.add(MetaDataInfoMaps.getWaits());
+		v.add(MetaDataInfoMaps.getJoins());
+		v.add(MetaDataInfoMaps.getInterrupts());
+		v.add(MetaDataInfoMaps.getFieldAccesses());
+		v.add(MetaDataInfoMaps.getArrayAccesses());
+		v.add(MetaDataInfoMaps.getInvokes());
+		return v;
+	}
+
+	/*
+	 * The infos of an allocator in id order.  Ids are handed out densely from the
+	 * allocator's size, so the result holds info i at index i.
+	 */
+	private static <S extends MetaDataInfo> Vector<S> byId(MetaDataAllocator<S> a) {
+		final int n = a.size();
+		final Vector<S> v = new Vector<S>(n);
+		for (int i = 0; i < n; i++) {
+			final S s = a.get(i);
+			Assert.assertTrue(s != null && s.id == i, "Meta data ids are not dense at " + i);
+			v.add(s);
+		}
+		return v;
+	}
+
+	private static void intern(HashMap<String,Integer> strings, Vector<String> table, String s) {
+		if (!strings.containsKey(s)) {
+			strings.put(s, table.size());
+			table.add(s);
+		}
+	}
+
+	private static int id(MetaDataInfo info) {
+		return info == null ? -1 : info.id;
+	}
+
+	private static void writeIds(DataOutputStream out, Vector<? extends MetaDataInfo> infos) throws IOException {
+		out.writeInt(infos.size());
+		for (MetaDataInfo info : infos) {
+			out.writeInt(info.id);
+		}
+	}
+
+	private static void writeLoc(DataOutputStream out, HashMap<String,Integer> strings, SourceLocation loc) throws IOException {
+		if (loc == SourceLocation.NULL) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(strings.get(loc.getFile()));
+			out.writeInt(id(loc.getMethod()));
+			out.writeInt(loc.getLine());
+			out.writeInt(loc.getOffset());
+		}
+	}
+
+	private static void writeOp(DataOutputStream out, HashMap<String,Integer> strings, OperationInfo op) throws IOException {
+		writeLoc(out, strings, op.loc);
+		out.writeInt(id(op.enclosing));
+	}
+
+	private static void writeOps(DataOutputStream out, HashMap<String,Integer> strings, MetaDataAllocator<? extends OperationInfo> a) throws IOException {
+		final Vector<? extends OperationInfo> ops = byId(a);
+		out.writeInt(ops.size());
+		for (OperationInfo op : ops) {
+			writeOp(out, strings, op);
+		}
+	}
+
+	/******/
+
+	/**
+	 * Fills the empty allocators of MetaDataInfoMaps from file.
+	 */
+	static void read(String file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final ByteBuffer in;
+		try {
+			in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+
+		if (in.remaining() < 8 || in.getInt() != MAGIC) {
+			Assert.fail(file + " is not a RoadRunner meta data snapshot.  Rerun with -dump to recreate it.");
+		}
+		final int version = in.getInt();
+		if (version != VERSION) {
+			Assert.fail(file + " has meta data snapshot version " + version + " but version " + VERSION + " is needed.  Rerun with -dump to recreate it.");
+		}
+
+		final String[] strings = new String[in.getInt()];
+		for (int i = 0; i < strings.length; i++) {
+			final byte[] b = new byte[in.getInt()];
+			in.get(b);
+			strings[i] = new String(b, UTF8).intern();
+		}
+
+		final ClassInfo.State[] states = ClassInfo.State.values();
+		final ClassInfo[] classes = new ClassInfo[in.getInt()];
+		for (int i = 0; i < classes.length; i++) {
+			final ClassInfo c = new ClassInfo(i, SourceLocation.NULL, strings[in.getInt()], bool(in));
+			c.state = states[in.get()];
+			c.isClass = bool(in);
+			classes[i] = c;
+			MetaDataInfoMaps.getClasses().put(c);
+		}
+
+		final FieldInfo[] fields = new FieldInfo[in.getInt()];
+		for (int i = 0; i < fields.length; i++) {
+			final FieldInfo f = new FieldInfo(i, SourceLocation.NULL, classes[in.getInt()], strings[in.getInt()], strings[in.getInt()], bool(in));
+			f.isFinal = bool(in);
+			f.isVolatile = bool(in);
+			f.isStatic = bool(in);
+			fields[i] = f;
+			MetaDataInfoMaps.getFields().put(f);
+		}
+
+		final MethodInfo[] methods = new MethodInfo[in.getInt()];
+		for (int i = 0; i < methods.length; i++) {
+			final MethodInfo m = new MethodInfo(i, SourceLocation.NULL, classes[in.getInt()], strings[in.getInt()], strings[in.getInt()], bool(in));
+			m.flagsSet = bool(in);
+			m.isStatic = bool(in);
+			m.isNative = bool(in);
+			m.isSynchronized = bool(in);
+			methods[i] = m;
+			MetaDataInfoMaps.getMethods().put(m);
+		}
+
+		for (ClassInfo c : classes) {
+			c.superClass = get(classes, in.getInt());
+			for (int n = in.getInt(); n > 0; n--) c.interfaces.add(classes[in.getInt()]);
+			for (int n = in.getInt(); n > 0; n--) c.fields.add(fields[in.getInt()]);
+			for (int n = in.getInt(); n > 0; n--) c.methods.add(methods[in.getInt()]);
+		}
+		for (int n = in.getInt(); n > 0; n--) FieldInfo.statics.add(fields[in.getInt()]);
+
+		for (MetaDataInfo info : classes) info.loc = readLoc(in, strings, methods);
+		for (MetaDataInfo info : fields) info.loc = readLoc(in, strings, methods);
+		for (MetaDataInfo info : methods) info.loc = readLoc(in, strings, methods);
+
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			MetaDataInfoMaps.getAcquires().put(new AcquireInfo(i, readLoc(in, strings, methods), get(methods, in.getInt())));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			MetaDataInfoMaps.getReleases().put(new ReleaseInfo(i, readLoc(in, strings, methods), get(methods, in.getInt())));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			MetaDataInfoMaps.getStarts().put(new StartInfo(i, readLoc(in, strings, methods), get(methods, in.getInt())));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			MetaDataInfoMaps.getWaits().put(new WaitInfo(i, readLoc(in, strings, methods), get(methods, in.getInt())));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			MetaDataInfoMaps.getJoins().put(new JoinInfo(i, readLoc(in, strings, methods), get(methods, in.getInt())));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			MetaDataInfoMaps.getInterrupts().put(new InterruptInfo(i, readLoc(in, strings, methods), get(methods, in.getInt())));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			final SourceLocation loc = readLoc(in, strings, methods);
+			final MethodInfo enclosing = get(methods, in.getInt());
+			final boolean isWrite = bool(in);
+			MetaDataInfoMaps.getFieldAccesses().put(new FieldAccessInfo(i, loc, enclosing, isWrite, fields[in.getInt()]));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			final SourceLocation loc = readLoc(in, strings, methods);
+			final MethodInfo enclosing = get(methods, in.getInt());
+			MetaDataInfoMaps.getArrayAccesses().put(new ArrayAccessInfo(i, loc, enclosing, bool(in)));
+		}
+		for (int i = 0, n = in.getInt(); i < n; i++) {
+			final SourceLocation loc = readLoc(in, strings, methods);
+			final MethodInfo enclosing = get(methods, in.getInt());
+			MetaDataInfoMaps.getInvokes().put(new InvokeInfo(i, loc, get(methods, in.getInt()), enclosing));
+		}
+		Assert.assertTrue(!in.hasRemaining(), "Trailing bytes in meta data snapshot " + file);
+	}
+
+	private static boolean bool(ByteBuffer in) {
+		return in.get() != 0;
+	}
+
+	private static <S extends MetaDataInfo> S get(S[] infos, int id) {
+		return id == -1 ? null : infos[id];
+	}
+
+	private static SourceLocation readLoc(ByteBuffer in, String[] strings, MethodInfo[] methods) {
+		final int file = in.getInt();
+		if (file == -1) {
+			return SourceLocation.NULL;
+		}
+		final MethodInfo method = get(methods, in.getInt());
+		final int line = in.getInt();
+		return new SourceLocation(strings[file], method, line, in.getInt());
+	}
+}
@@ -111,6 +111,9 @@ final public class LastTool extends Tool {
 	public void stop(ShadowThread td) {
 	}
 
+	@Override
+	public boolean mayReuseTid(int tid, ShadowThread parent) { return true; }
+
 
 	@Override
 	public void volatileAccess(VolatileAccessEvent fae) { }
@@ -0,0 +1,160 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.simple;
+
+import java.util.HashMap;
+
+import rr.annotations.Abbrev;
+import rr.error.ErrorMessages;
+import rr.event.AccessEvent;
+import rr.meta.AccessInfo;
+import rr.meta.AccessProfile;
+import rr.meta.ArrayAccessInfo;
+import rr.meta.FieldAccessInfo;
+import rr.meta.FieldInfo;
+import rr.meta.MetaDataInfoMaps;
+import rr.meta.OperationInfo;
+import rr.state.ShadowThread;
+import rr.tool.RR;
+import rr.tool.Tool;
+import acme.util.decorations.Decoration;
+import acme.util.decorations.DecorationFactory;
+import acme.util.decorations.NullDefault;
+import acme.util.option.CommandLine;
+import acme.util.option.CommandLineOption;
+
+/**
+ * Records, for each field and array access site, how often it executes, whether 
+ * a downstream tool reported a race on it, and whether it was shared.  The profile 
+ * is merged into the file given by -profileOut at fini, and can be fed back
+ * into later runs with -profileIn.  Use at the front of a chain, eg: -tool=PROF:FT2.
+ * 
+ * A site is shared if more than one thread executed it, or, for field accesses, if 
+ * any other site accessing the same field ran in a different thread.  Array sites 
+ * have no such cross-site check, so -profileIn never downgrades them.
+ */
+
+@Abbrev("PROF")
+final public class ProfileTool extends Tool {
+
+	public static final CommandLineOption<String> profileOutOption = 
+			CommandLine.makeString("profileOut", "rr.profile", CommandLineOption.Kind.EXPERIMENTAL, "File to which the PROF tool merges the access profile for this run.");
+
+	private static class SiteProfile {
+		long count;
+		ShadowThread thread;
+		boolean multipleThreads;
+	}
+
+	private static final Decoration<OperationInfo, SiteProfile> siteProfile = 
+			MetaDataInfoMaps.getOpDecorations().make("access profile", DecorationFactory.Type.MULTIPLE, new NullDefault<OperationInfo, SiteProfile>());
+
+	public ProfileTool(String name, Tool next, CommandLine commandLine) {
+		super(name, next, commandLine);
+		commandLine.add(profileOutOption);
+		// fast paths of later tools would hide accesses from us.
+		RR.nofastPathOption.set(true);
+	}
+
+	@Override
+	public void access(AccessEvent fae) {
+		final AccessInfo info = fae.getAccessInfo();
+		SiteProfile p = siteProfile.get(info);
+		if (p == null) {
+			synchronized(siteProfile) {
+				p = siteProfile.get(info);
+				if (p == null) {
+					p = new SiteProfile();
+					siteProfile.set(info, p);
+				}
+			}
+		}
+		// unsynchronized: counts are approximate.
+		p.count++;
+		// the shared bit is exact: first hits by two threads must not both claim the site.
+		final ShadowThread td = fae.getThread();
+		if (p.thread != td && !p.multipleThreads) {
+			synchronized(siteProfile) {
+				if (p.thread == null) {
+					p.thread = td;
+				} else if (p.thread != td) {
+					p.multipleThreads = true;
+				}
+			}
+		}
+		super.access(fae);
+	}
+
+	@Override
+	public void fini() {
+		// field -> thread seen at its sites, or null if more than one.
+		HashMap<FieldInfo, ShadowThread> fieldThreads = new HashMap<FieldInfo, ShadowThread>();
+		HashMap<FieldInfo, Boolean> fieldShared = new HashMap<FieldInfo, Boolean>();
+		for (FieldAccessInfo fa : MetaDataInfoMaps.getFieldAccesses()) {
+			SiteProfile p = siteProfile.get(fa);
+			if (p == null) continue;
+			FieldInfo f = fa.getField();
+			boolean shared = p.multipleThreads || fieldShared.containsKey(f);
+			if (!shared) {
+				ShadowThread t = fieldThreads.get(f);
+				if (t == null) {
+					fieldThreads.put(f, p.thread);
+				} else if (t != p.thread) {
+					shared = true;
+				}
+			}
+			if (shared) fieldShared.put(f, true);
+		}
+
+		AccessProfile profile = new AccessProfile();
+		for (FieldAccessInfo fa : MetaDataInfoMaps.getFieldAccesses()) {
+			SiteProfile p = siteProfile.get(fa);
+			boolean raced = ErrorMessages.numErrorsOnFieldAccess(fa) > 0 || ErrorMessages.numErrorsOnField(fa.getField()) > 0;
+			if (p == null && !raced) continue;
+			profile.add(fa.getKey(), new AccessProfile.Entry(p == null ? 0 : p.count, raced, fieldShared.containsKey(fa.getField())));
+		}
+		for (ArrayAccessInfo aa : MetaDataInfoMaps.getArrayAccesses()) {
+			SiteProfile p = siteProfile.get(aa);
+			boolean raced = ErrorMessages.numErrorsOnArray(aa) > 0;
+			if (p == null && !raced) continue;
+			profile.add(aa.getKey(), new AccessProfile.Entry(p == null ? 0 : p.count, raced, p != null && p.multipleThreads));
+		}
+		profile.write(profileOutOption.get());
+	}
+}
@@ -119,6 +119,13 @@ public class SplitTool extends Tool {
 		super.stop(td);
 	}
 
+	@Override
+	public boolean mayReuseTid(int tid, ShadowThread parent) {
+		return firstNext.mayReuseTid(tid, parent) &&
+		secondNext.mayReuseTid(tid, parent) &&
+		super.mayReuseTid(tid, parent);
+	}
+
 	@Override
 	public void classInitialized(ClassInitializedEvent ce) {
 		firstNext.classInitialized(ce);
@@ -39,6 +39,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package rr.state;
 
 import java.lang.ref.WeakReference;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
@@ -106,6 +107,9 @@ public class ShadowThread extends Decoratable implements ShadowVar {
 	// protected by ShadowThread.class
 	private static final ShadowThread tidMap[] = new ShadowThread[rr.tool.RR.maxTidOption.get()];
 
+	// protected by ShadowThread.class: tids of stopped threads that no new thread has taken over
+	private static final BitSet stoppedTids = new BitSet();
+
 	/** 
 	 * The RoadRunner thread id of the thread.  
 	 */
@@ -141,10 +145,17 @@ public class ShadowThread extends Decoratable implements ShadowVar {
 	private final MethodEvent blockStack[] = RR.noEnterOption.get() ? new MethodEvent[0] : new MethodEvent[8*1024]; 
 	private int blockCount = 0;
 
+	/*
+	 * Per-thread counts for all ThreadCounters, indexed by counter slot.  
+	 * Allocated on first use and only written by this thread.
+	 */
+	long counterBlock[];
+
 	/*** Creation ***/
 
 	private static final Counter threadDataCounter = new Counter("ShadowThread", "Count");
 	private static final HighWaterMark maxCounter = new HighWaterMark("ShadowThread", "Max Live");
+	private static final Counter tidReuses = new Counter("ShadowThread", "Tids Reused");
 
 	/**
 	 * @RRInternal
@@ -178,10 +189,20 @@ public class ShadowThread extends Decoratable implements ShadowVar {
 	public int invokeId = InvokeInfo.NULL_ID;
 
 
+	/*
+	 * The lowest tid that was never used, or that a stopped thread held and the tools
+	 * let the new thread take over (see Tool.mayReuseTid).  A stopped thread's tid stays 
+	 * reserved in stoppedTids until then, so that its epochs stay distinct from those
+	 * of unrelated threads.  tidMap drops the stopped ShadowThread itself.
+	 */
 	// require ShadowThread.class
-	private static synchronized int allocTid(ShadowThread newThread) {
+	private static synchronized int allocTid(ShadowThread newThread, ShadowThread parent) {
 		for (int i = 0; i < tidMap.length; i++) {
-			if (tidMap[i] == null) {
+			if (tidMap[i] == null && (!stoppedTids.get(i) || RR.getTool().mayReuseTid(i, parent))) {
+				if (stoppedTids.get(i)) {
+					stoppedTids.clear(i);
+					tidReuses.inc();
+				}
 				tidMap[i] = newThread;
 				maxCounter.set(i+1);
 				return i;
@@ -197,7 +218,7 @@ public class ShadowThread extends Decoratable implements ShadowVar {
 	protected ShadowThread(Thread thread, ShadowThread parent) {
 		Assert.assertTrue(thread != null, "Null Thread!");
 
-		int tid = allocTid(this);
+		int tid = allocTid(this, parent);
 		this.tid = tid;
 		this.parent = parent;
 		this.thread = new WeakReference<Thread>(thread);
@@ -258,15 +279,23 @@ public class ShadowThread extends Decoratable implements ShadowVar {
 
 	/**
 	 * Called when a lock is released.  Return null if still held.
+	 * j.u.c. locks need not be released innermost-first, so the released
+	 * lock is removed from wherever it sits in the held-lock stack.
 	 */
 	public final ShadowLock release(Object lock) {
-		ShadowLock ld = get(lock);
-		if (ld.dec(this) == 0) {
-			lockDataCount--;
-			return ld;
-		} else {
-			return null;
+		for (int i = lockDataCount - 1; i >= 0; i--) {
+			ShadowLock ld = lockDataMap[i];
+			if (ld.getLock() == lock) {
+				if (ld.dec(this) != 0) {
+					return null;
+				}
+				System.arraycopy(lockDataMap, i + 1, lockDataMap, i, lockDataCount - 1 - i);
+				lockDataMap[--lockDataCount] = null;
+				return ld;
+			}
 		}
+		Assert.panic("Releasing lock not held by " + this + ": " + Util.objectToIdentityString(lock));
+		return null;
 	}
 
 
@@ -481,10 +510,13 @@ public class ShadowThread extends Decoratable implements ShadowVar {
 			stopped.setToTrue();
 		}
 
+		ThreadCounter.retire(st);
+
 		synchronized (ShadowThread.class) {
 			Util.log("Terminating thread: " + st); 
 			if (!RR.noTidGCOption.get() && tidMap[st.tid] == st) {
 				tidMap[st.tid] = null;
+				stoppedTids.set(st.tid);
 			}
 		}
 	}
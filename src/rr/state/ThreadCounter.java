@@ -0,0 +1,234 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package rr.state;
+
+import java.util.ArrayList;
+
+import acme.util.count.AbstractCounter;
+
+/**
+ * A counter whose per-thread counts live in a block of longs stored directly in
+ * each ShadowThread.  All ThreadCounters share the block, each using one slot, so
+ * bumping several counters for one event touches the same line of memory, and no
+ * array sized by -maxTid is needed.
+ * 
+ * Blocks are allocated the first time a thread counts anything and are only
+ * written by their owner.  Reads from other threads (pulse tasks and the final
+ * report) are unsynchronized snapshots.  Once a thread has stopped running, its
+ * counts are folded into a shared total, so recycled tids do not lose or mix counts.
+ * 
+ * The reported counting time is an estimate: the number of updates times the
+ * cost of one increment, as timed by a calibration loop when the report is
+ * generated.  The updates themselves are not timed.
+ */
+public final class ThreadCounter extends AbstractCounter {
+
+	// all guarded by ThreadCounter.class
+	private static int numSlots = 0;
+	private static final ArrayList<ShadowThread> owners = new ArrayList<ShadowThread>();
+	private static long retired[] = new long[0];
+
+	private final int slot;
+
+	public ThreadCounter(String group, String name) {
+		super(group, name);
+		synchronized (ThreadCounter.class) {
+			slot = numSlots++;
+		}
+	}
+
+	public final void inc(ShadowThread st) {
+		final long block[] = st.counterBlock;
+		if (block != null && slot < block.length) {
+			block[slot]++;
+		} else {
+			block(st)[slot]++;
+		}
+	}
+
+	public final void add(ShadowThread st, long n) {
+		final long block[] = st.counterBlock;
+		if (block != null && slot < block.length) {
+			block[slot] += n;
+		} else {
+			block(st)[slot] += n;
+		}
+	}
+
+	/** The count for a single thread since it last started counting. */
+	public final long getLocal(ShadowThread st) {
+		final long block[] = st.counterBlock;
+		return block != null && slot < block.length ? block[slot] : 0;
+	}
+
+	@Override
+	public long getCount() {
+		synchronized (ThreadCounter.class) {
+			long total = slot < retired.length ? retired[slot] : 0;
+			for (ShadowThread st : owners) {
+				final long block[] = st.counterBlock;
+				if (block != null && slot < block.length) {
+					total += block[slot];
+				}
+			}
+			return total;
+		}
+	}
+
+	@Override
+	public String get() {
+		return String.format("%,10d", getCount());
+	}
+
+	/*
+	 * Allocate or grow the block for st, which must be the current thread.  Blocks
+	 * grow when counters are created after the thread started counting.
+	 */
+	private static synchronized long[] block(ShadowThread st) {
+		final long old[] = st.counterBlock;
+		final long block[] = new long[(numSlots + 7) & ~7];
+		if (old == null) {
+			owners.add(st);
+			blocksAllocated++;
+		} else {
+			System.arraycopy(old, 0, block, 0, old.length);
+		}
+		st.counterBlock = block;
+		return block;
+	}
+
+	/**
+	 * Fold the counts of a terminated thread into the shared totals.  Should the
+	 * thread count again, it starts a fresh block.  Only done when called by the
+	 * thread itself or once it is no longer alive, so no update can land in a
+	 * block after it is folded.  A block that is not folded stays live and is
+	 * still summed by getCount.
+	 */
+	static void retire(ShadowThread st) {
+		final Thread thread = st.getThread();
+		if (thread != null && thread != Thread.currentThread() && thread.isAlive()) return;
+		synchronized (ThreadCounter.class) {
+			fold(st);
+		}
+	}
+
+	private static void fold(ShadowThread st) {
+		final long block[] = st.counterBlock;
+		if (block == null) return;
+		if (retired.length < block.length) {
+			final long grown[] = new long[block.length];
+			System.arraycopy(retired, 0, grown, 0, retired.length);
+			retired = grown;
+		}
+		for (int i = 0; i < block.length; i++) {
+			retired[i] += block[i];
+		}
+		owners.remove(st);
+		st.counterBlock = null;
+	}
+
+	/*** Cost of counting ***/
+
+	private static int blocksAllocated = 0;
+	private static double nsPerUpdate = -1;
+
+	private static synchronized long totalUpdates() {
+		long total = 0;
+		for (long x : retired) total += x;
+		for (ShadowThread st : owners) {
+			final long block[] = st.counterBlock;
+			if (block != null) {
+				for (long x : block) total += x;
+			}
+		}
+		return total;
+	}
+
+	/*
+	 * Time increments on a private block, after a warm up, to estimate the
+	 * cost of one update.  Only done when the report is generated.  This is a
+	 * calibration, not a measurement of the updates the run made.
+	 */
+	private static synchronized double nsPerUpdate() {
+		if (nsPerUpdate < 0) {
+			final long block[] = new long[8];
+			final int n = 10 * 1000 * 1000;
+			long sink = 0;
+			for (int round = 0; round < 2; round++) {
+				final long start = System.nanoTime();
+				for (int i = 0; i < n; i++) {
+					block[i & 7]++;
+				}
+				sink += block[0];
+				nsPerUpdate = (double)(System.nanoTime() - start) / n;
+			}
+			if (sink == 0) nsPerUpdate = 0;
+		}
+		return nsPerUpdate;
+	}
+
+	static {
+		new AbstractCounter("ThreadCounter", "Blocks Allocated") {
+			@Override
+			public String get() {
+				synchronized (ThreadCounter.class) {
+					return String.format("%,d", blocksAllocated);
+				}
+			}
+		};
+		new AbstractCounter("ThreadCounter", "Updates") {
+			@Override
+			public String get() {
+				return String.format("%,d", totalUpdates());
+			}
+		};
+		new AbstractCounter("ThreadCounter", "Calibrated ns Per Update") {
+			@Override
+			public String get() {
+				return String.format("%.2f", nsPerUpdate());
+			}
+		};
+		new AbstractCounter("ThreadCounter", "Estimated Counting Time (ms, Updates x Calibrated ns)") {
+			@Override
+			public String get() {
+				return String.format("%.2f", totalUpdates() * nsPerUpdate() / 1000000.0);
+			}
+		};
+	}
+}
@@ -74,7 +74,7 @@ public class StateExtensionTransformer implements ClassFileTransformer {
 			return null;
 		}
 
-		if (className.equals("rr/state/ShadowThread")) {
+		if (ThreadStateExtensionAgent.isExtendedState(className)) {
 			return transformThreadState(definingLoader, className,
 					classBeingRedefined, protectionDomain,
 					bytes);
@@ -92,8 +92,8 @@ public class StateExtensionTransformer implements ClassFileTransformer {
 
 	public void addField(ThreadStateFieldExtension f) {
 		for (ThreadStateFieldExtension o : fields) {
-			if (o.name.equals(f.name)) { 
-				Assert.warn("Potential ThreadState field extension name clash: '%s'", o.name);
+			if (o.name.equals(f.name) && o.owner.equals(f.owner)) { 
+				Assert.warn("Potential state field extension name clash: '%s' on %s", o.name, o.owner);
 			}
 		}
 		fields.add(f);
@@ -113,7 +113,7 @@ public class StateExtensionTransformer implements ClassFileTransformer {
 			for (ThreadStateFieldExtension f : fields) {
 				if (f.owner.equals(className)) {
 					Util.log("Adding field " + f.name + " to " + f.owner + " (" + f.origin + ")");
-					this.visitField(Opcodes.ACC_PUBLIC, f.name + "_" + f.origin.replace("/", "_"), f.desc, null, null);					
+					this.visitField(f.access(), f.fieldName(), f.desc, null, null);					
 				}
 			}
 			super.visitEnd();
@@ -158,11 +158,11 @@ public class StateExtensionTransformer implements ClassFileTransformer {
 			//if (owner.equals(className)) {  Conflicts are now the user's problem...
 				for (ThreadStateFieldExtension f : fields) {
 				//	if (f.origin.equals(className)) {
-						if (name.equals("ts_get_" + f.name)) {
-							super.visitFieldInsn(GETFIELD, f.owner, f.name + "_" + f.origin.replace("/", "_"), f.desc);
+						if (name.equals(f.getterName())) {
+							super.visitFieldInsn(GETFIELD, f.owner, f.fieldName(), f.desc);
 							return;
-						} else if (name.equals("ts_set_" + f.name)) {
-							super.visitFieldInsn(PUTFIELD, f.owner, f.name + "_" + f.origin.replace("/", "_"), f.desc);
+						} else if (name.equals(f.setterName())) {
+							super.visitFieldInsn(PUTFIELD, f.owner, f.fieldName(), f.desc);
 							return;
 						}	
 				//	}
@@ -193,7 +193,7 @@ public class StateExtensionTransformer implements ClassFileTransformer {
 			for (ThreadStateFieldExtension f : fields) {
 				if (f.owner.equals(className)) {
 					Util.log("Adding field " + f.name + " to " + f.owner  + " (" + f.origin + ")");
-					this.visitField(Opcodes.ACC_PUBLIC, f.name + "_" + f.origin.replace("/", "_"), f.desc, null, null);					
+					this.visitField(f.access(), f.fieldName(), f.desc, null, null);					
 				}
 			}
 			super.visitEnd();
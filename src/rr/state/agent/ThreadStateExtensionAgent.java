@@ -62,12 +62,22 @@ public class ThreadStateExtensionAgent {
 	public enum InstrumentationMode { INST, REP, NOINST };
 	
 
-	private static final String FIELD_ACCESSOR_NAME_PREFIX = "ts_get";
+	/*
+	 * Accessor prefixes and the state classes that get a field for each getter a tool declares.
+	 * A tool's ts_get_x(ShadowThread)/ts_set_x(ShadowThread, V) become a field x on ShadowThread,
+	 * ls_get_x/ls_set_x a field on ShadowLock, and vs_get_x/vs_set_x a field on ShadowVolatile.
+	 * These classes must not be loaded before the tools are registered.
+	 */
+	private static final String[][] EXTENDED_STATES = {
+		{ "ts", "rr/state/ShadowThread" },
+		{ "ls", "rr/state/ShadowLock" },
+		{ "vs", "rr/state/ShadowVolatile" },
+	};
 
 	static private final StateExtensionTransformer trans = new StateExtensionTransformer();
 
 	public static CommandLineOption<Boolean> noDecorationInline = 
-		CommandLine.makeBoolean("noDecInline", false, CommandLineOption.Kind.EXPERIMENTAL, "Turn off Thread State Decoration Inlining.");
+		CommandLine.makeBoolean("noDecInline", false, CommandLineOption.Kind.EXPERIMENTAL, "Turn off Thread, Lock and Volatile State Decoration Inlining.");
 
 
 	public static void premain(String agentArgs, Instrumentation inst) {
@@ -112,9 +122,12 @@ public class ThreadStateExtensionAgent {
 		@Override
 		public MethodVisitor visitMethod(int access, String name, String desc,
 				String signature, String[] exceptions) {
-			if (name.startsWith(FIELD_ACCESSOR_NAME_PREFIX)) {
-				ThreadStateFieldExtension f = new ThreadStateFieldExtension(owner, "rr/state/ShadowThread", name.substring(7), Type.getReturnType(desc).getDescriptor());
-				trans.addField(f);
+			for (String[] state : EXTENDED_STATES) {
+				final String getter = state[0] + "_get_";
+				if (name.startsWith(getter)) {
+					ThreadStateFieldExtension f = new ThreadStateFieldExtension(owner, state[1], state[0], name.substring(getter.length()), Type.getReturnType(desc).getDescriptor());
+					trans.addField(f);
+				}
 			}
 			return super.visitMethod(access, name, desc, signature, exceptions);
 		}
@@ -122,9 +135,16 @@ public class ThreadStateExtensionAgent {
 	}
 
 
+	static boolean isExtendedState(String className) {
+		for (String[] state : EXTENDED_STATES) {
+			if (state[1].equals(className)) return true;
+		}
+		return false;
+	}
+
 	public static void registerTool(final ToolLoader loader, final String name, final InputStream in) {
 		if (noDecorationInline.get()) { 
-			Util.log("Skipping ShadowThread extension for " + name);
+			Util.log("Skipping state extension for " + name);
 			return;
 		}
 
@@ -38,16 +38,41 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package rr.state.agent;
 
+import rr.org.objectweb.asm.Opcodes;
+
 public class ThreadStateFieldExtension {
 	public final String origin;
 	public final String owner;
+	public final String prefix;
 	public final String desc;
 	public final String name;
 	
-	public ThreadStateFieldExtension(String origin, String owner, String name, String desc) {
+	public ThreadStateFieldExtension(String origin, String owner, String prefix, String name, String desc) {
 		this.owner = owner;
 		this.origin = origin;
+		this.prefix = prefix;
 		this.desc = desc;
 		this.name = name;
 	}
+	
+	public String getterName() {
+		return prefix + "_get_" + name;
+	}
+	
+	public String setterName() {
+		return prefix + "_set_" + name;
+	}
+	
+	public String fieldName() {
+		return name + "_" + origin.replace("/", "_");
+	}
+	
+	/*
+	 * Thread state keeps plain fields, as before.  Lock and volatile state is created lazily
+	 * by whichever thread gets there first and read without a lock, so those fields are 
+	 * volatile to publish it safely.
+	 */
+	public int access() {
+		return prefix.equals("ts") ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PUBLIC | Opcodes.ACC_VOLATILE;
+	}
 }
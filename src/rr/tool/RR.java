@@ -68,6 +68,7 @@ import rr.state.ShadowThread;
 import rr.tool.tasks.CountTask;
 import rr.tool.tasks.GCRunner;
 import rr.tool.tasks.MemoryStatsTask;
+import rr.tool.tasks.MetricsTask;
 import rr.tool.tasks.ThreadStacksTask;
 import rr.tool.tasks.TimeOutTask;
 import acme.util.Assert;
@@ -119,7 +120,17 @@ public class RR {
 			CommandLine.makeString("xml", "log.xml", CommandLineOption.Kind.STABLE, "Log file name for the xml summary printed at the end of the run.");
 
 	public static CommandLineOption<String> pulseOption =
-			CommandLine.makeString("pulse", "", CommandLineOption.Kind.EXPERIMENTAL, "Install periodic tasks (stacks,stats,counts).  Example: -pulse=stacks:counts", new Runnable() { public void run() { RR.createTasks(); } } );
+			CommandLine.makeString("pulse", "", CommandLineOption.Kind.EXPERIMENTAL, "Install periodic tasks (stacks,stats,counts,metrics).  Example: -pulse=stacks:counts", new Runnable() { public void run() { RR.createTasks(); } } );
+
+	public static CommandLineOption<Boolean> metricsOption =
+			CommandLine.makeBoolean("metrics", false, CommandLineOption.Kind.EXPERIMENTAL, "Record latency histograms for acquire/release handlers and GC pauses.  Use -pulse=metrics to export them.",
+					new Runnable() { public void run() { RREventGenerator.timeSyncHandlers = true; MetricsTask.installGCListener(); } } );
+
+	public static CommandLineOption<String> metricsFileOption =
+			CommandLine.makeString("metricsFile", "rr.metrics", CommandLineOption.Kind.EXPERIMENTAL, "File written by the metrics pulse task.");
+
+	public static CommandLineOption<String> metricsFormatOption =
+			CommandLine.makeString("metricsFormat", "json", CommandLineOption.Kind.EXPERIMENTAL, "Format for -metricsFile: json (one line appended per pulse) or prom (Prometheus text, replaced each pulse).");
 
 	public static CommandLineOption<Integer> timeOutOption =
 			CommandLine.makeInteger("maxTime", 0, CommandLineOption.Kind.STABLE, "Maximum execution time in seconds.",
@@ -212,12 +223,30 @@ public class RR {
 	public static final CommandLineOption<Integer> wdcRandomReorderings =
 			CommandLine.makeInteger("wdcRandomReorderings", 0, CommandLineOption.Kind.EXPERIMENTAL, "Do many re-reorderings where events are picked randomly, and check against earliest-first reorder.");
 	
+	public static final CommandLineOption<Integer> wdcRetainedRacesOption =
+			CommandLine.makeInteger("wdcRetainedRaces", 0, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Dynamic instances kept for vindication per static race, the shortest by event distance.  0 keeps every instance.  A bound can leave a static race unverified when its kept instances are all refuted, and bounds the races vindicated, not the memory of the event graph.");
+	
 	public static final CommandLineOption<Boolean> wdcHBOnlyOption =
 			CommandLine.makeBoolean("wdcHBOnly", false, CommandLineOption.Kind.EXPERIMENTAL, "Enable only analysis of HB relation.");
 
 	public static final CommandLineOption<Boolean> wdcRemoveRaceEdge =
 			CommandLine.makeBoolean("wdcRemoveRaceEdge", false, CommandLineOption.Kind.EXPERIMENTAL, "Remove the edge between racing accesses before vindication.");
 	
+	public static final CommandLineOption<Long> wdcVindicationNodes =
+			CommandLine.makeLong("wdcVindicationNodes", 0, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Graph nodes the vindication of one race may visit before its verdict is unknown. 0 is no limit.");
+	
+	public static final CommandLineOption<Integer> wdcVindicationIterations =
+			CommandLine.makeInteger("wdcVindicationIterations", 0, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Fixed point and reordering iterations the vindication of one race may run before its verdict is unknown. 0 is no limit.");
+	
+	public static final CommandLineOption<Integer> wdcVindicationTimeout =
+			CommandLine.makeInteger("wdcVindicationTimeout", 0, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Milliseconds the vindication of one race may take before its verdict is unknown. 0 is no limit.");
+	
+	public static final CommandLineOption<Integer> wdcVindicationDeadline =
+			CommandLine.makeInteger("wdcVindicationDeadline", 0, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Milliseconds for vindicating all races; races left when it passes are reported unknown. 0 is no limit.");
+	
+	public static final CommandLineOption<Boolean> wdcBatchVindicationOption =
+			CommandLine.makeBoolean("wdcBatchVindication", false, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Vindicate the retained races ordered by window, and share between races with a common access the reachability answers whose path uses no edge added by vindication.  The first instance vindicated of a static race is then the earliest, not the shortest.  Answers are not shared under -wdcRemoveRaceEdge.");
+	
 	
 	
 	public static final CommandLineOption<Boolean> dcHBOption =
@@ -240,6 +269,12 @@ public class RR {
 	
 	public static final CommandLineOption<Boolean> dcCAPOFullOption =
 			CommandLine.makeBoolean("dcCAPOFull", false, CommandLineOption.Kind.EXPERIMENTAL, "Enable WCP + DC + CAPO analysis.");
+	
+	public static final CommandLineOption<Boolean> dcFTOOption =
+			CommandLine.makeBoolean("dcFTO", false, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Under -dcWCP_DC, -dcWCP_CAPO and -dcCAPOFull, check HB and WCP races against the last write's epoch and each thread's last read, and let WCP share HB's variable state.  DC and CAPO keep full clocks.  A race edge still joins the racing accesses' full HB clocks, so races are classified as without this option (e.g. test.EpochRaceEdge).");
+	
+	public static final CommandLineOption<Boolean> dcLanesOption =
+			CommandLine.makeBoolean("dcLanes", false, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: WDCTool | Under -dcWCP_DC, -dcWCP_CAPO and -dcCAPOFull, analyze HB and WCP on a replay thread from per-thread event logs.  The application threads only maintain DC and CAPO and the constraint graph.  Lane races are added to the static race counts at the end of the run and are not reported through fieldErrors, and only the last HB or WCP race found at each access is kept, not the most recent prior access.  Lane races reclassify DC and CAPO races at the same access and never add races (e.g. test.LaneRaceEdge).");
 	//New
 	public static final CommandLineOption<Boolean> dcHB_DCOption =
 			CommandLine.makeBoolean("dcHB_DC", false, CommandLineOption.Kind.EXPERIMENTAL, "Enable HB + DC analysis.");
@@ -269,6 +304,18 @@ public class RR {
 	public static final CommandLineOption<Boolean> pipREOption =
 			CommandLine.makeBoolean("pipRE", false, CommandLineOption.Kind.EXPERIMENTAL, "Enable Rule(a) optimization.");
 	
+	public static final CommandLineOption<Integer> pipWorkersOption =
+			CommandLine.makeInteger("pipWorkers", 0, CommandLineOption.Kind.EXPERIMENTAL, "Eligible Tools: PIPTool | Under -pipHB, analyze on this many worker threads from per-thread event logs.  The application threads only append their events.  0 analyzes on the application threads.");
+	
+	public static final CommandLineOption<Boolean> sampleOption =
+			CommandLine.makeBoolean("sample", false, CommandLineOption.Kind.EXPERIMENTAL, "Analyze data accesses only in sampled windows (FT2, PIP).  Synchronization is always tracked.");
+	
+	public static final CommandLineOption<Integer> sampleBudgetOption =
+			CommandLine.makeInteger("sampleBudget", 20, CommandLineOption.Kind.EXPERIMENTAL, "Target overhead (percent) of access analysis under -sample.  The sampling rate adapts to stay within it.");
+	
+	public static final CommandLineOption<Integer> sampleWindowOption =
+			CommandLine.makeInteger("sampleWindow", 1000, CommandLineOption.Kind.EXPERIMENTAL, "Average number of accesses in each window under -sample.");
+	
 	public static final StringMatcher toolCode = new StringMatcher(StringMatchResult.REJECT, "+acme..*", "+rr..*", "+java..*");
 
 	private static volatile boolean shuttingDown = false;
@@ -433,6 +480,7 @@ public class RR {
 		} else {
 			xml();
 		}
+		MetricsTask.flush();
 		Util.quietOption.set(false);
 		Util.logf("Time = %d", endTime - startTime);
 		final String dump = Instrumentor.dumpClassOption.get();
@@ -459,6 +507,8 @@ public class RR {
 				Util.addToPeriodicTasks(new MemoryStatsTask());
 			} else if (t.equals("counts")) {
 				Util.addToPeriodicTasks(new CountTask());
+			} else if (t.equals("metrics")) {
+				Util.addToPeriodicTasks(new MetricsTask());
 			} else {
 				Assert.panic("Bad Task: " + t);
 			}
@@ -510,6 +560,7 @@ public class RR {
 	private static void xml() {
 		if (inXml) return;
 		inXml = true;
+		ErrorMessage.flushRecords();
 
 		StringWriter sOut = new StringWriter();
 		Writer outputWriter = noxmlOption.get() ? Util.openLogFile(xmlFileOption.get()) :
@@ -76,6 +76,7 @@ import acme.util.AtomicFlag;
 import acme.util.ResourceManager;
 import acme.util.Util;
 import acme.util.Yikes;
+import acme.util.count.LatencyHistogram;
 import acme.util.option.CommandLine;
 import acme.util.option.CommandLineOption;
 
@@ -101,6 +102,11 @@ public class RREventGenerator extends RR {
 
 	protected static int maxArrayIndex = Integer.MAX_VALUE;
 
+	/* Set by -metrics. */
+	static boolean timeSyncHandlers = false;
+	private static final LatencyHistogram acquireTime = new LatencyHistogram("Handlers", "Acquire");
+	private static final LatencyHistogram releaseTime = new LatencyHistogram("Handlers", "Release");
+
 	protected static boolean matches(final int index) {
 		return true || index <= maxArrayIndex;
 	} 
@@ -234,7 +240,13 @@ public class RREventGenerator extends RR {
 				ae.setInfo(MetaDataInfoMaps.getAcquires().get(lockAcquireId));
 				ae.setLock(ld);
 
-				firstAcquire.acquire(ae); 
+				if (timeSyncHandlers) {
+					final long start = acquireTime.start();
+					firstAcquire.acquire(ae);
+					acquireTime.stop(start);
+				} else {
+					firstAcquire.acquire(ae);
+				}
 				ae.setLock(null);
 			} 
 		} catch (Throwable e) {
@@ -249,7 +261,13 @@ public class RREventGenerator extends RR {
 				ReleaseEvent re = td.getReleaseEvent();
 				re.setLock(ld);
 				re.setInfo(MetaDataInfoMaps.getReleases().get(lockReleaseId));
-				firstRelease.release(re);
+				if (timeSyncHandlers) {
+					final long start = releaseTime.start();
+					firstRelease.release(re);
+					releaseTime.stop(start);
+				} else {
+					firstRelease.release(re);
+				}
 			}
 		} catch (Throwable e) {
 			Assert.panic(e);
@@ -222,6 +222,15 @@ public abstract class Tool  {
 		next.stop(td);
 	}	
 
+	/** Called when a thread forked by parent (null for a thread without one) needs a tid
+	 * and tid was held by a stopped thread.  Return false unless the new thread may take over 
+	 * tid, e.g. because the stopped thread's final epoch is already ordered before the new thread.
+	 * By default, passes the question to the next tool in the chain, and the last tool agrees.
+	 * */
+	public boolean mayReuseTid(int tid, ShadowThread parent) { 
+		return next.mayReuseTid(tid, parent); 
+	}
+
 	/** Called for each access event (read or write) in the target program. 
 	 * By default, passes the event to the next tool in the chain.
 	 * */
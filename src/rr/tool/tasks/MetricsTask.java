@@ -0,0 +1,184 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package rr.tool.tasks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import rr.tool.RR;
+import acme.util.Assert;
+import acme.util.Util;
+import acme.util.count.LatencyHistogram;
+import acme.util.time.PeriodicTaskStmt;
+
+/**
+ * Periodically writes every LatencyHistogram to -metricsFile, either as one JSON
+ * object per line (appended on each run of the task) or in the Prometheus text
+ * format (the file is replaced on each run, as a node exporter textfile).
+ */
+public class MetricsTask extends PeriodicTaskStmt {
+
+	private static final LatencyHistogram gcPauseTime = new LatencyHistogram("GC", "Pause Time");
+
+	private static MetricsTask task;
+
+	private final File file;
+	private final boolean prometheus;
+	private final long startTime;
+
+	public MetricsTask() {
+		super("Metrics", 5000);
+		String format = RR.metricsFormatOption.get();
+		Assert.assertTrue(format.equals("json") || format.equals("prom"), "Bad metrics format: " + format);
+		this.prometheus = format.equals("prom");
+		this.file = new File(RR.metricsFileOption.get());
+		this.startTime = System.currentTimeMillis();
+		if (!prometheus) file.delete();
+		task = this;
+	}
+
+	/** Write a final set of metrics if the task is installed. */
+	public static void flush() {
+		if (task != null) task.run();
+	}
+
+	/** Record the duration of every collection in the "GC: Pause Time" histogram. */
+	public static void installGCListener() {
+		NotificationListener listener = new NotificationListener() {
+			public void handleNotification(Notification notification, Object handback)  {
+				if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+					GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+					gcPauseTime.record(info.getGcInfo().getDuration() * 1000000L);
+				}
+			}
+		};
+		for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter) {
+				Util.log("Adding Pause Time Listener to GC " + gc.getName());
+				((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void run() {
+		try {
+			if (prometheus) {
+				File tmp = new File(file.getPath() + ".tmp");
+				PrintWriter out = new PrintWriter(new FileWriter(tmp));
+				writePrometheus(out);
+				out.close();
+				if (!tmp.renameTo(file)) {
+					file.delete();
+					tmp.renameTo(file);
+				}
+			} else {
+				PrintWriter out = new PrintWriter(new FileWriter(file, true));
+				writeJSON(out);
+				out.close();
+			}
+		} catch (IOException e) {
+			Assert.warn("Could not write metrics to %s: %s", file, e);
+		}
+	}
+
+	private void writeJSON(PrintWriter out) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"elapsedMs\":").append(System.currentTimeMillis() - startTime).append(",\"histograms\":[");
+		boolean first = true;
+		for (LatencyHistogram h : LatencyHistogram.getAll()) {
+			LatencyHistogram.Snapshot s = h.snapshot();
+			if (!first) sb.append(',');
+			first = false;
+			sb.append("{\"name\":\"").append(escape(fullName(h))).append('"');
+			sb.append(",\"count\":").append(s.getCount());
+			sb.append(",\"totalNs\":").append(s.getTotal());
+			sb.append(",\"p50Ns\":").append(s.getValueAt(0.5));
+			sb.append(",\"p90Ns\":").append(s.getValueAt(0.9));
+			sb.append(",\"p99Ns\":").append(s.getValueAt(0.99));
+			sb.append(",\"p999Ns\":").append(s.getValueAt(0.999));
+			sb.append(",\"maxNs\":").append(s.getMax());
+			sb.append('}');
+		}
+		sb.append("]}");
+		out.println(sb);
+	}
+
+	private void writePrometheus(PrintWriter out) {
+		for (LatencyHistogram h : LatencyHistogram.getAll()) {
+			LatencyHistogram.Snapshot s = h.snapshot();
+			String metric = "rr_" + fullName(h).toLowerCase().replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "") + "_seconds";
+			out.printf("# HELP %s %s%n", metric, fullName(h));
+			out.printf("# TYPE %s histogram%n", metric);
+			long cumulative = 0;
+			for (long[] b : s.getBuckets()) {
+				cumulative += b[1];
+				if (b[0] != Long.MAX_VALUE) {
+					out.printf("%s_bucket{le=\"%s\"} %d%n", metric, seconds(b[0]), cumulative);
+				}
+			}
+			out.printf("%s_bucket{le=\"+Inf\"} %d%n", metric, s.getCount());
+			out.printf("%s_sum %s%n", metric, seconds(s.getTotal()));
+			out.printf("%s_count %d%n", metric, s.getCount());
+		}
+	}
+
+	private static String fullName(LatencyHistogram h) {
+		return h.getGroup() == null ? h.getName() : h.getGroup() + ": " + h.getName();
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
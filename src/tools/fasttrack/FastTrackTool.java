@@ -70,8 +70,10 @@ import rr.state.ShadowLock;
 import rr.state.ShadowThread;
 import rr.state.ShadowVar;
 import rr.state.ShadowVolatile;
+import rr.state.ThreadCounter;
 import rr.tool.RR;
 import rr.tool.Tool;
+import tools.util.AccessSampler;
 import tools.util.Epoch;
 import tools.util.VectorClock;
 import acme.util.Assert;
@@ -79,7 +81,6 @@ import acme.util.Util;
 import acme.util.Yikes;
 import acme.util.count.AggregateCounter;
 import acme.util.count.Counter;
-import acme.util.count.ThreadLocalCounter;
 import acme.util.decorations.Decoration;
 import acme.util.decorations.DecorationFactory;
 import acme.util.decorations.DecorationFactory.Type;
@@ -110,6 +111,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 
 	private static final boolean COUNT_OPERATIONS = RRMain.slowMode();
 	private static final int INIT_VECTOR_CLOCK_SIZE = 4;
+	private static final boolean SAMPLE = RR.sampleOption.get();
 
 	public final ErrorMessage<FieldInfo> fieldErrors = ErrorMessages.makeFieldErrorMessage("FastTrack");
 	public final ErrorMessage<ArrayAccessInfo> arrayErrors = ErrorMessages.makeArrayErrorMessage("FastTrack");
@@ -172,6 +174,31 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 	protected static VectorClock ts_get_V(ShadowThread st) { Assert.panic("Bad");	return null; }
 	protected static void ts_set_V(ShadowThread st, VectorClock V) { Assert.panic("Bad");  }
 
+	// Only used with -sample.  Accesses left in the current window: > 0 analyzed, < 0 skipped.
+	protected static int ts_get_sampleCountdown(ShadowThread st) { Assert.panic("Bad");	return -1;	}
+	protected static void ts_set_sampleCountdown(ShadowThread st, int c) { Assert.panic("Bad");  }
+
+	protected static AccessSampler ts_get_sampler(ShadowThread st) { Assert.panic("Bad");	return null; }
+	protected static void ts_set_sampler(ShadowThread st, AccessSampler sampler) { Assert.panic("Bad");  }
+
+	/*
+	 * True if the access falls in a skipped sampling window.  Skipping only drops
+	 * accesses from the history, so it may miss races but never reports a false one.
+	 */
+	protected static boolean skipAccess(final ShadowThread st) {
+		int c = ts_get_sampleCountdown(st);
+		if (c == 0) {
+			c = ts_get_sampler(st).nextWindow();
+		}
+		if (c > 0) {
+			ts_set_sampleCountdown(st, c - 1);
+			return false;
+		} else {
+			ts_set_sampleCountdown(st, c + 1);
+			return true;
+		}
+	}
+
 
 	protected void maxAndIncEpochAndCV(ShadowThread st, VectorClock other, OperationInfo info) {
 		final int tid = st.getTid();
@@ -243,6 +270,10 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			Util.log("Initial E for " + tid + ": " + Epoch.toString(ts_get_E(st)));
 		}
 
+		if (SAMPLE && ts_get_sampler(st) == null) {
+			ts_set_sampler(st, new AccessSampler(st.getTid()));
+		}
+
 		super.create(event);
 
 	}
@@ -255,7 +286,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		maxEpochAndCV(st, lockV, event.getInfo());
 
 		super.acquire(event);
-		if (COUNT_OPERATIONS) acquire.inc(st.getTid());
+		if (COUNT_OPERATIONS) acquire.inc(st);
 	}
 
 
@@ -270,7 +301,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		incEpochAndCV(st, event.getInfo());
 
 		super.release(event);
-		if (COUNT_OPERATIONS) release.inc(st.getTid());
+		if (COUNT_OPERATIONS) release.inc(st);
 	}
 
 	static FTVarState ts_get_badVarState(ShadowThread st) { Assert.panic("Bad");	return null;	}
@@ -316,28 +347,28 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 
 
 	// Counters for relative frequencies of each rule
-	private static final ThreadLocalCounter readSameEpoch = new ThreadLocalCounter("FT", "Read Same Epoch", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readSharedSameEpoch = new ThreadLocalCounter("FT", "ReadShared Same Epoch", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readExclusive = new ThreadLocalCounter("FT", "Read Exclusive", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readShare = new ThreadLocalCounter("FT", "Read Share", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readShared = new ThreadLocalCounter("FT", "Read Shared", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeReadError = new ThreadLocalCounter("FT", "Write-Read Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeSameEpoch = new ThreadLocalCounter("FT", "Write Same Epoch", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeExclusive = new ThreadLocalCounter("FT", "Write Exclusive", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeShared = new ThreadLocalCounter("FT", "Write Shared", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeWriteError = new ThreadLocalCounter("FT", "Write-Write Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readWriteError = new ThreadLocalCounter("FT", "Read-Write Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter sharedWriteError = new ThreadLocalCounter("FT", "Shared-Write Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter acquire = new ThreadLocalCounter("FT", "Acquire", RR.maxTidOption.get());
-	private static final ThreadLocalCounter release = new ThreadLocalCounter("FT", "Release", RR.maxTidOption.get());
-	private static final ThreadLocalCounter fork = new ThreadLocalCounter("FT", "Fork", RR.maxTidOption.get());
-	private static final ThreadLocalCounter join = new ThreadLocalCounter("FT", "Join", RR.maxTidOption.get());
-	private static final ThreadLocalCounter barrier = new ThreadLocalCounter("FT", "Barrier", RR.maxTidOption.get());
-	private static final ThreadLocalCounter wait = new ThreadLocalCounter("FT", "Wait", RR.maxTidOption.get());
-	private static final ThreadLocalCounter vol = new ThreadLocalCounter("FT", "Volatile", RR.maxTidOption.get());
+	private static final ThreadCounter readSameEpoch = new ThreadCounter("FT", "Read Same Epoch");
+	private static final ThreadCounter readSharedSameEpoch = new ThreadCounter("FT", "ReadShared Same Epoch");
+	private static final ThreadCounter readExclusive = new ThreadCounter("FT", "Read Exclusive");
+	private static final ThreadCounter readShare = new ThreadCounter("FT", "Read Share");
+	private static final ThreadCounter readShared = new ThreadCounter("FT", "Read Shared");
+	private static final ThreadCounter writeReadError = new ThreadCounter("FT", "Write-Read Error");
+	private static final ThreadCounter writeSameEpoch = new ThreadCounter("FT", "Write Same Epoch");
+	private static final ThreadCounter writeExclusive = new ThreadCounter("FT", "Write Exclusive");
+	private static final ThreadCounter writeShared = new ThreadCounter("FT", "Write Shared");
+	private static final ThreadCounter writeWriteError = new ThreadCounter("FT", "Write-Write Error");
+	private static final ThreadCounter readWriteError = new ThreadCounter("FT", "Read-Write Error");
+	private static final ThreadCounter sharedWriteError = new ThreadCounter("FT", "Shared-Write Error");
+	private static final ThreadCounter acquire = new ThreadCounter("FT", "Acquire");
+	private static final ThreadCounter release = new ThreadCounter("FT", "Release");
+	private static final ThreadCounter fork = new ThreadCounter("FT", "Fork");
+	private static final ThreadCounter join = new ThreadCounter("FT", "Join");
+	private static final ThreadCounter barrier = new ThreadCounter("FT", "Barrier");
+	private static final ThreadCounter wait = new ThreadCounter("FT", "Wait");
+	private static final ThreadCounter vol = new ThreadCounter("FT", "Volatile");
 
 	
-	private static final ThreadLocalCounter other = new ThreadLocalCounter("FT", "Other", RR.maxTidOption.get());
+	private static final ThreadCounter other = new ThreadCounter("FT", "Other");
 
 	static {
 		AggregateCounter reads = new AggregateCounter("FT", "Total Reads", readSameEpoch, readSharedSameEpoch, readExclusive, readShare, readShared, writeReadError);
@@ -353,10 +384,10 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		/* optional */ {
 			final int/*epoch*/ r = sx.R;
 			if (r == e) {
-				if (COUNT_OPERATIONS) readSameEpoch.inc(st.getTid());
+				if (COUNT_OPERATIONS) readSameEpoch.inc(st);
 				return;
 			} else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
-				if (COUNT_OPERATIONS) readSharedSameEpoch.inc(st.getTid());
+				if (COUNT_OPERATIONS) readSharedSameEpoch.inc(st);
 				return;
 			}
 		}
@@ -369,7 +400,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			final int tid = st.getTid();
 			
 			if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
-				if (COUNT_OPERATIONS) writeReadError.inc(tid);
+				if (COUNT_OPERATIONS) writeReadError.inc(st);
 				error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
 				// best effort recovery: 
 				return;
@@ -378,10 +409,10 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			if (r != Epoch.READ_SHARED) {
 				final int rTid = Epoch.tid(r);
 				if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
-					if (COUNT_OPERATIONS) readExclusive.inc(tid);
+					if (COUNT_OPERATIONS) readExclusive.inc(st);
 					sx.R = e;
 				} else {
-					if (COUNT_OPERATIONS) readShare.inc(tid);
+					if (COUNT_OPERATIONS) readShare.inc(st);
 					int initSize = Math.max(Math.max(rTid,tid)+1, INIT_VECTOR_CLOCK_SIZE); 
 					sx.makeCV(initSize);
 					sx.set(rTid, r);
@@ -389,7 +420,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 					sx.R = Epoch.READ_SHARED;
 				}
 			} else {
-				if (COUNT_OPERATIONS) readShared.inc(tid);
+				if (COUNT_OPERATIONS) readShared.inc(st);
 				sx.set(tid, e);					
 			}
 		}
@@ -398,6 +429,8 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 
 	public static boolean readFastPath(final ShadowVar shadow, final ShadowThread st) {
 		if (shadow instanceof FTVarState) {
+			if (SAMPLE && skipAccess(st)) return true;
+
 			final FTVarState sx = ((FTVarState)shadow);
 
 			final int/*epoch*/ e = ts_get_E(st);
@@ -405,10 +438,10 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			/* optional */ {
 				final int/*epoch*/ r = sx.R;
 				if (r == e) {
-					if (COUNT_OPERATIONS) readSameEpoch.inc(st.getTid());
+					if (COUNT_OPERATIONS) readSameEpoch.inc(st);
 					return true;
 				} else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
-					if (COUNT_OPERATIONS) readSharedSameEpoch.inc(st.getTid());
+					if (COUNT_OPERATIONS) readSharedSameEpoch.inc(st);
 					return true;
 				}
 			}
@@ -427,10 +460,10 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 				if (r != Epoch.READ_SHARED) {
 					final int rTid = Epoch.tid(r);
 					if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
-						if (COUNT_OPERATIONS) readExclusive.inc(tid);
+						if (COUNT_OPERATIONS) readExclusive.inc(st);
 						sx.R = e;
 					} else {
-						if (COUNT_OPERATIONS) readShare.inc(tid);
+						if (COUNT_OPERATIONS) readShare.inc(st);
 						int initSize = Math.max(Math.max(rTid,tid)+1, INIT_VECTOR_CLOCK_SIZE); 
 						sx.makeCV(initSize);
 						sx.set(rTid, r);
@@ -438,7 +471,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 						sx.R = Epoch.READ_SHARED;
 					}
 				} else {
-					if (COUNT_OPERATIONS) readShared.inc(tid);
+					if (COUNT_OPERATIONS) readShared.inc(st);
 					sx.set(tid, e);					
 				}
 				return true;
@@ -457,7 +490,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		/* optional */ {
 			final int/*epoch*/ w = sx.W;
 			if (w == e) {
-				if (COUNT_OPERATIONS) writeSameEpoch.inc(st.getTid());
+				if (COUNT_OPERATIONS) writeSameEpoch.inc(st);
 				return;
 			}
 		}
@@ -469,7 +502,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			final VectorClock tV = ts_get_V(st);
 
 			if (wTid != tid /* optimization */ && !Epoch.leq(w, tV.get(wTid))) {
-				if (COUNT_OPERATIONS) writeWriteError.inc(tid);
+				if (COUNT_OPERATIONS) writeWriteError.inc(st);
 				error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid);
 			}
 			
@@ -477,19 +510,19 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			if (r != Epoch.READ_SHARED) {
 				final int rTid = Epoch.tid(r);
 				if (rTid != tid /* optimization */ && !Epoch.leq(r, tV.get(rTid))) {
-					if (COUNT_OPERATIONS) readWriteError.inc(tid);
+					if (COUNT_OPERATIONS) readWriteError.inc(st);
 					error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid);
 				} else {
-					if (COUNT_OPERATIONS) writeExclusive.inc(tid);
+					if (COUNT_OPERATIONS) writeExclusive.inc(st);
 				}
 			} else {
 				if (sx.anyGt(tV)) {
 					for (int prevReader = sx.nextGt(tV, 0); prevReader > -1; prevReader = sx.nextGt(tV, prevReader + 1)) {
 						error(event, sx, "Read(Shared)-Write Race", "Read by ", prevReader, "Write by ", tid);
 					}
-					if (COUNT_OPERATIONS) sharedWriteError.inc(tid);
+					if (COUNT_OPERATIONS) sharedWriteError.inc(st);
 				} else {
-					if (COUNT_OPERATIONS) writeShared.inc(tid);
+					if (COUNT_OPERATIONS) writeShared.inc(st);
 				}
 			}
 			sx.W = e;
@@ -499,6 +532,8 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 	// only count events when returning true;
 	public static boolean writeFastPath(final ShadowVar shadow, final ShadowThread st) {
 		if (shadow instanceof FTVarState) {
+			if (SAMPLE && skipAccess(st)) return true;
+
 			final FTVarState sx = ((FTVarState)shadow);
 
 			final int/*epoch*/ E = ts_get_E(st);
@@ -506,7 +541,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			/* optional */ {
 				final int/*epoch*/ w = sx.W;
 				if (w == E) {
-					if (COUNT_OPERATIONS) writeSameEpoch.inc(st.getTid());
+					if (COUNT_OPERATIONS) writeSameEpoch.inc(st);
 					return true;
 				}
 			}
@@ -529,13 +564,13 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 						ts_set_badVarState(st, sx);
 						return false;
 					}
-					if (COUNT_OPERATIONS) writeExclusive.inc(tid);
+					if (COUNT_OPERATIONS) writeExclusive.inc(st);
 				} else {
 					if (sx.anyGt(tV)) {
 						ts_set_badVarState(st, sx);
 						return false;
 					}
-					if (COUNT_OPERATIONS) writeShared.inc(tid);
+					if (COUNT_OPERATIONS) writeShared.inc(st);
 				}
 				sx.W = E;
 				return true;
@@ -562,7 +597,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		}
 
 		super.volatileAccess(event);
-		if (COUNT_OPERATIONS) vol.inc(st.getTid());
+		if (COUNT_OPERATIONS) vol.inc(st);
 	}
 
 
@@ -586,7 +621,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		incEpochAndCV(st, event.getInfo());
 
 		super.preStart(event);
-		if (COUNT_OPERATIONS) fork.inc(st.getTid());
+		if (COUNT_OPERATIONS) fork.inc(st);
 	}
 
 
@@ -597,7 +632,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			maxEpochPerTid.set(st.getTid(), ts_get_E(st));
 		}
 		super.stop(st);
-		if (COUNT_OPERATIONS) other.inc(st.getTid());
+		if (COUNT_OPERATIONS) other.inc(st);
 	}
 
 	// t joined on u
@@ -615,7 +650,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		// the proof in the original FastTrack rules.
 
 		super.postJoin(event);	
-		if (COUNT_OPERATIONS) join.inc(st.getTid());
+		if (COUNT_OPERATIONS) join.inc(st);
 	}
 
 
@@ -626,7 +661,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		lockV.max(ts_get_V(st)); // we hold lock, so no need to sync here...
 		incEpochAndCV(st, event.getInfo());
 		super.preWait(event);
-		if (COUNT_OPERATIONS) wait.inc(st.getTid());
+		if (COUNT_OPERATIONS) wait.inc(st);
 	}
 
 	@Override
@@ -635,7 +670,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		final VectorClock lockV = getV(event.getLock());
 		maxEpochAndCV(st, lockV, event.getInfo()); // we hold lock here
 		super.postWait(event);
-		if (COUNT_OPERATIONS) wait.inc(st.getTid());
+		if (COUNT_OPERATIONS) wait.inc(st);
 	}
 
 	public static String toString(final ShadowThread td) {
@@ -654,7 +689,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			barrierV.max(ts_get_V(st));
 			vectorClockForBarrierEntry.set(st, barrierV);
 		}
-		if (COUNT_OPERATIONS) barrier.inc(st.getTid());
+		if (COUNT_OPERATIONS) barrier.inc(st);
 	}
 
 	public void postDoBarrier(BarrierEvent<FTBarrierState> event) {
@@ -665,7 +700,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			barrierObj.stopUsingOldVectorClock(barrierV);
 			maxAndIncEpochAndCV(st, barrierV, null);
 		}
-		if (COUNT_OPERATIONS) this.barrier.inc(st.getTid());
+		if (COUNT_OPERATIONS) this.barrier.inc(st);
 	}
 
 	///
@@ -680,7 +715,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 		}
 		incEpochAndCV(st, null);
 		super.classInitialized(event);
-		if (COUNT_OPERATIONS) other.inc(st.getTid());
+		if (COUNT_OPERATIONS) other.inc(st);
 	}
 
 	@Override
@@ -690,7 +725,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
 			final VectorClock initTime = classInitTime.get(event.getRRClass());
 			maxEpochAndCV(st, initTime, null);
 		}
-		if (COUNT_OPERATIONS) other.inc(st.getTid());
+		if (COUNT_OPERATIONS) other.inc(st);
 	}
 
 
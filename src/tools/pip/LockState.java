@@ -10,6 +10,7 @@ import acme.util.identityhash.WeakIdentityHashMap;
 import rr.state.ShadowLock;
 import rr.state.ShadowThread;
 import rr.state.ShadowVar;
+import tools.util.ReplayOrder;
 import tools.util.VectorClock;
 import tools.wdc.PerThreadQueue;
 
@@ -17,6 +18,9 @@ public class LockState extends VectorClock {
 
 	private final ShadowLock peer;
 	
+	//Under PIPTool.DECOUPLED, the order of the acquires and releases, issued while the program holds the lock
+	final ReplayOrder replayOrder = PIPTool.DECOUPLED ? new ReplayOrder() : null;
+	
 	public LockState(ShadowLock peer, int size) {
 		super(size);
 		this.peer = peer;
@@ -1,6 +1,7 @@
 package tools.pip;
 
 import acme.util.Util;
+import tools.util.ReplayOrder;
 import tools.util.VectorClock;
 
 public class PIPBarrierState {
@@ -9,6 +10,9 @@ public class PIPBarrierState {
 	
 	private VectorClock clock;
 	
+	//Under PIPTool.DECOUPLED, the order of the barrier entries and exits, issued while synchronized on this
+	final ReplayOrder replayOrder = PIPTool.DECOUPLED ? new ReplayOrder() : null;
+	
 	public PIPBarrierState(Object k, int size) {
 		clock = new VectorClock(size);
 		barrier = k;
@@ -7,9 +7,7 @@ import java.util.HashSet;
 import acme.util.Assert;
 import acme.util.Util;
 import acme.util.count.AggregateCounter;
-import acme.util.count.ThreadLocalCounter;
 import acme.util.decorations.Decoration;
-import acme.util.decorations.DecorationFactory;
 import acme.util.decorations.DecorationFactory.Type;
 import acme.util.decorations.DefaultValue;
 import acme.util.identityhash.WeakIdentityHashMap;
@@ -18,6 +16,9 @@ import rr.annotations.Abbrev;
 import rr.barrier.BarrierEvent;
 import rr.barrier.BarrierListener;
 import rr.barrier.BarrierMonitor;
+import rr.juc.JUCEvent;
+import rr.juc.JUCListener;
+import rr.juc.JUCMonitor;
 import rr.error.ErrorMessage;
 import rr.error.ErrorMessages;
 import rr.event.AccessEvent;
@@ -34,8 +35,10 @@ import rr.event.StartEvent;
 import rr.event.VolatileAccessEvent;
 import rr.event.WaitEvent;
 import rr.instrument.classes.ArrayAllocSiteTracker;
+import rr.meta.AccessInfo;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.ClassInfo;
+import rr.meta.FieldAccessInfo;
 import rr.meta.FieldInfo;
 import rr.meta.MetaDataInfoMaps;
 import rr.meta.OperationInfo;
@@ -43,14 +46,20 @@ import rr.state.ShadowLock;
 import rr.state.ShadowThread;
 import rr.state.ShadowVar;
 import rr.state.ShadowVolatile;
+import rr.state.ThreadCounter;
 import rr.tool.RR;
 import rr.tool.Tool;
+import tools.util.AccessSampler;
 import tools.util.Epoch;
+import tools.util.EventLog;
+import tools.util.LogReplayer;
+import tools.util.ReplayOrder;
 import tools.util.VectorClock;
+import tools.util.VolatileJoinCache;
 import tools.wdc.PerThreadQueue;
 
 @Abbrev("PIP")
-public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
+public class PIPTool extends Tool implements BarrierListener<PIPBarrierState>, JUCListener<PIPVolatileState>, LogReplayer.Handler {
 
 	private static final boolean COUNT_EVENTS = RR.countEventOption.get();
 	private static final boolean COUNT_RACES = RR.countRaceOption.get();
@@ -66,76 +75,100 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	// Optimizations
 	private static final boolean FTO = RR.pipFTOOption.get();
 	private static final boolean ST = RR.pipREOption.get();
+	private static final boolean SAMPLE = RR.sampleOption.get();
+	
+	// HB analyzed by worker threads from the events the application threads append to their EventLogs, see replay().
+	// The other relations consult the thread's held locks and the live threads at each event, so they are analyzed inline.
+	private static final int WORKERS = RR.pipWorkersOption.get();
+	static final boolean DECOUPLED = HB && WORKERS > 0;
+	
+	// Record kinds under DECOUPLED
+	private static final int ACCESS = 0;            // arg = isWrite, a = PIPVarState, b = AccessInfo
+	private static final int ACQUIRE = 1;           // arg = after wait, a = LockState
+	private static final int RELEASE = 2;           // arg = before wait, a = LockState
+	private static final int VOLATILE = 3;          // arg = isWrite, a = PIPVolatileState
+	private static final int VOLATILE_CREATED = 4;  // a = PIPVolatileState
+	private static final int SHARED_RELEASE = 5;    // a = PIPVolatileState of a JUC synchronizer
+	private static final int SHARED_ACQUIRE = 6;    // a = PIPVolatileState of a JUC synchronizer
+	private static final int CLASS_INITIALIZED = 7; // a = ClassInfo
+	private static final int CLASS_ACCESSED = 8;    // a = ClassInfo, also before a static access
+	private static final int START = 9;             // a = the forked thread's EventLog
+	private static final int JOIN = 10;             // a = the joined thread's EventLog
+	private static final int BARRIER_ENTER = 11;    // a = PIPBarrierState
+	private static final int BARRIER_EXIT = 12;     // a = PIPBarrierState
 	
 	private static final boolean DEBUG = RR.debugOption.get();
 	
 	// Counters for relative frequencies of each access type
-	private static final ThreadLocalCounter readSameEpoch = new ThreadLocalCounter("PIP", "Read Same Epoch", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readSharedSameEpoch = new ThreadLocalCounter("PIP", "Read Shared Same Epoch", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readExclusive = new ThreadLocalCounter("PIP", "Read Exclusive", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readOwned = new ThreadLocalCounter("PIP", "Read Owned", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readShare = new ThreadLocalCounter("PIP", "Read Share", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readShared = new ThreadLocalCounter("PIP", "Read Shared", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readSharedOwned = new ThreadLocalCounter("PIP", "Read Shared Owned", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeReadError = new ThreadLocalCounter("PIP", "Write-Read Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeSameEpoch = new ThreadLocalCounter("PIP", "Write Same Epoch", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeExclusive = new ThreadLocalCounter("PIP", "Write Exclusive", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeOwned = new ThreadLocalCounter("PIP", "Write Owned", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeShared = new ThreadLocalCounter("PIP", "Write Shared", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeWriteError = new ThreadLocalCounter("PIP", "Write-Write Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readWriteError = new ThreadLocalCounter("PIP", "Read-Write Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter sharedWriteError = new ThreadLocalCounter("PIP", "Shared-Write Error", RR.maxTidOption.get());
-	private static final ThreadLocalCounter acquire = new ThreadLocalCounter("PIP", "Acquire", RR.maxTidOption.get());
-	private static final ThreadLocalCounter release = new ThreadLocalCounter("PIP", "Release", RR.maxTidOption.get());
-	private static final ThreadLocalCounter fork = new ThreadLocalCounter("PIP", "Fork", RR.maxTidOption.get());
-	private static final ThreadLocalCounter join = new ThreadLocalCounter("PIP", "Join", RR.maxTidOption.get());
-	private static final ThreadLocalCounter barrier = new ThreadLocalCounter("PIP", "Barrier", RR.maxTidOption.get());
-	private static final ThreadLocalCounter preWait = new ThreadLocalCounter("PIP", "Pre Wait", RR.maxTidOption.get());
-	private static final ThreadLocalCounter postWait = new ThreadLocalCounter("PIP", "Post Wait", RR.maxTidOption.get());
-	private static final ThreadLocalCounter classInit = new ThreadLocalCounter("PIP", "Class Initialized", RR.maxTidOption.get());
-	private static final ThreadLocalCounter classAccess = new ThreadLocalCounter("PIP", "Class Accessed", RR.maxTidOption.get());
-	private static final ThreadLocalCounter vol = new ThreadLocalCounter("PIP", "Volatile", RR.maxTidOption.get());
-	
-	private static final ThreadLocalCounter readFP = new ThreadLocalCounter("PIP", "Read Fast Path Taken", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeFP = new ThreadLocalCounter("PIP", "Write Fast Path Taken", RR.maxTidOption.get());
+	private static final ThreadCounter readSameEpoch = new ThreadCounter("PIP", "Read Same Epoch");
+	private static final ThreadCounter readSharedSameEpoch = new ThreadCounter("PIP", "Read Shared Same Epoch");
+	private static final ThreadCounter readExclusive = new ThreadCounter("PIP", "Read Exclusive");
+	private static final ThreadCounter readOwned = new ThreadCounter("PIP", "Read Owned");
+	private static final ThreadCounter readShare = new ThreadCounter("PIP", "Read Share");
+	private static final ThreadCounter readShared = new ThreadCounter("PIP", "Read Shared");
+	private static final ThreadCounter readSharedOwned = new ThreadCounter("PIP", "Read Shared Owned");
+	private static final ThreadCounter writeReadError = new ThreadCounter("PIP", "Write-Read Error");
+	private static final ThreadCounter writeSameEpoch = new ThreadCounter("PIP", "Write Same Epoch");
+	private static final ThreadCounter writeExclusive = new ThreadCounter("PIP", "Write Exclusive");
+	private static final ThreadCounter writeOwned = new ThreadCounter("PIP", "Write Owned");
+	private static final ThreadCounter writeShared = new ThreadCounter("PIP", "Write Shared");
+	private static final ThreadCounter writeWriteError = new ThreadCounter("PIP", "Write-Write Error");
+	private static final ThreadCounter readWriteError = new ThreadCounter("PIP", "Read-Write Error");
+	private static final ThreadCounter sharedWriteError = new ThreadCounter("PIP", "Shared-Write Error");
+	private static final ThreadCounter acquire = new ThreadCounter("PIP", "Acquire");
+	private static final ThreadCounter release = new ThreadCounter("PIP", "Release");
+	private static final ThreadCounter fork = new ThreadCounter("PIP", "Fork");
+	private static final ThreadCounter join = new ThreadCounter("PIP", "Join");
+	private static final ThreadCounter barrier = new ThreadCounter("PIP", "Barrier");
+	private static final ThreadCounter preWait = new ThreadCounter("PIP", "Pre Wait");
+	private static final ThreadCounter postWait = new ThreadCounter("PIP", "Post Wait");
+	private static final ThreadCounter classInit = new ThreadCounter("PIP", "Class Initialized");
+	private static final ThreadCounter classAccess = new ThreadCounter("PIP", "Class Accessed");
+	private static final ThreadCounter vol = new ThreadCounter("PIP", "Volatile");
+	private static final ThreadCounter volReadJoined = new ThreadCounter("PIP", "Volatile Reads Already Joined");
+	private static final ThreadCounter jucAcquire = new ThreadCounter("PIP", "JUC Shared Acquire");
+	private static final ThreadCounter jucRelease = new ThreadCounter("PIP", "JUC Shared Release");
+	
+	private static final ThreadCounter readFP = new ThreadCounter("PIP", "Read Fast Path Taken");
+	private static final ThreadCounter writeFP = new ThreadCounter("PIP", "Write Fast Path Taken");
 	
 	// Counters for relative frequencies of each access type at fast paths
-	private static final ThreadLocalCounter readSameEpochFP = new ThreadLocalCounter("PIP", "Read Same Epoch FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readSharedSameEpochFP = new ThreadLocalCounter("PIP", "Read Shared Same Epoch FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readExclusiveFP = new ThreadLocalCounter("PIP", "Read Exclusive FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readOwnedFP = new ThreadLocalCounter("PIP", "Read Owned FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readShareFP = new ThreadLocalCounter("PIP", "Read Share FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readSharedFP = new ThreadLocalCounter("PIP", "Read Shared FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readSharedOwnedFP = new ThreadLocalCounter("PIP", "Read Shared Owned FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeSameEpochFP = new ThreadLocalCounter("PIP", "Write Same Epoch FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeExclusiveFP = new ThreadLocalCounter("PIP", "Write Exclusive FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeOwnedFP = new ThreadLocalCounter("PIP", "Write Owned FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeSharedFP = new ThreadLocalCounter("PIP", "Write Shared FP", RR.maxTidOption.get());
+	private static final ThreadCounter readSameEpochFP = new ThreadCounter("PIP", "Read Same Epoch FP");
+	private static final ThreadCounter readSharedSameEpochFP = new ThreadCounter("PIP", "Read Shared Same Epoch FP");
+	private static final ThreadCounter readExclusiveFP = new ThreadCounter("PIP", "Read Exclusive FP");
+	private static final ThreadCounter readOwnedFP = new ThreadCounter("PIP", "Read Owned FP");
+	private static final ThreadCounter readShareFP = new ThreadCounter("PIP", "Read Share FP");
+	private static final ThreadCounter readSharedFP = new ThreadCounter("PIP", "Read Shared FP");
+	private static final ThreadCounter readSharedOwnedFP = new ThreadCounter("PIP", "Read Shared Owned FP");
+	private static final ThreadCounter writeSameEpochFP = new ThreadCounter("PIP", "Write Same Epoch FP");
+	private static final ThreadCounter writeExclusiveFP = new ThreadCounter("PIP", "Write Exclusive FP");
+	private static final ThreadCounter writeOwnedFP = new ThreadCounter("PIP", "Write Owned FP");
+	private static final ThreadCounter writeSharedFP = new ThreadCounter("PIP", "Write Shared FP");
 	
 	// Counters for relative frequencies of accesses while lock is held and not held
-	private static final ThreadLocalCounter writeIN = new ThreadLocalCounter("PIP", "Write accesses Inside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeINFP = new ThreadLocalCounter("PIP", "Write accesses Inside Critical Sections succeeding Fast Path", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeOUT = new ThreadLocalCounter("PIP", "Write accesses Outside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter writeOUTFP = new ThreadLocalCounter("PIP", "Write accesses Outside Critical Sections succeeding Fast Path", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readIN = new ThreadLocalCounter("PIP", "Read accesses Inside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readINFP = new ThreadLocalCounter("PIP", "Read accesses Inside Critical Sections succeeding Fast Path", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readOUT = new ThreadLocalCounter("PIP", "Read accesses Outside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readOUTFP = new ThreadLocalCounter("PIP", "Read accesses Outside Critical Sections succeeding Fast Path", RR.maxTidOption.get());
+	private static final ThreadCounter writeIN = new ThreadCounter("PIP", "Write accesses Inside Critical Sections");
+	private static final ThreadCounter writeINFP = new ThreadCounter("PIP", "Write accesses Inside Critical Sections succeeding Fast Path");
+	private static final ThreadCounter writeOUT = new ThreadCounter("PIP", "Write accesses Outside Critical Sections");
+	private static final ThreadCounter writeOUTFP = new ThreadCounter("PIP", "Write accesses Outside Critical Sections succeeding Fast Path");
+	private static final ThreadCounter readIN = new ThreadCounter("PIP", "Read accesses Inside Critical Sections");
+	private static final ThreadCounter readINFP = new ThreadCounter("PIP", "Read accesses Inside Critical Sections succeeding Fast Path");
+	private static final ThreadCounter readOUT = new ThreadCounter("PIP", "Read accesses Outside Critical Sections");
+	private static final ThreadCounter readOUTFP = new ThreadCounter("PIP", "Read accesses Outside Critical Sections succeeding Fast Path");
 	
 	// Counters for relative frequencies of ``extra'' metadata 
-	private static final ThreadLocalCounter extraWriteSetFP = new ThreadLocalCounter("PIP", "Extra Write Set FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter extraWriteCheckFP = new ThreadLocalCounter("PIP", "Extra Write Check FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter extraWriteUpdateFP = new ThreadLocalCounter("PIP", "Extra Write Update FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter extraReadCheckFP = new ThreadLocalCounter("PIP", "Extra Read Check FP", RR.maxTidOption.get());
-	private static final ThreadLocalCounter extraReadUpdateFP = new ThreadLocalCounter("PIP", "Extra Read Update FP", RR.maxTidOption.get());
+	private static final ThreadCounter extraWriteSetFP = new ThreadCounter("PIP", "Extra Write Set FP");
+	private static final ThreadCounter extraWriteCheckFP = new ThreadCounter("PIP", "Extra Write Check FP");
+	private static final ThreadCounter extraWriteUpdateFP = new ThreadCounter("PIP", "Extra Write Update FP");
+	private static final ThreadCounter extraReadCheckFP = new ThreadCounter("PIP", "Extra Read Check FP");
+	private static final ThreadCounter extraReadUpdateFP = new ThreadCounter("PIP", "Extra Read Update FP");
 	
-	private static final ThreadLocalCounter other = new ThreadLocalCounter("PIP", "Other", RR.maxTidOption.get());
+	private static final ThreadCounter other = new ThreadCounter("PIP", "Other");
 	
 	// Counters for relative frequencies of nested locks held during Rd/Wr events
-	private static final ThreadLocalCounter holdLocks = new ThreadLocalCounter("PIP", "Holding Lock during Access Event", RR.maxTidOption.get());
-	private static final ThreadLocalCounter oneLockHeld = new ThreadLocalCounter("PIP", "One Lock Held", RR.maxTidOption.get());
-	private static final ThreadLocalCounter twoNestedLocksHeld = new ThreadLocalCounter("PIP", "Two Nested Locks Held", RR.maxTidOption.get());
-	private static final ThreadLocalCounter threeNestedLocksHeld = new ThreadLocalCounter("PIP", "Three Nested Locks Held", RR.maxTidOption.get());
+	private static final ThreadCounter holdLocks = new ThreadCounter("PIP", "Holding Lock during Access Event");
+	private static final ThreadCounter oneLockHeld = new ThreadCounter("PIP", "One Lock Held");
+	private static final ThreadCounter twoNestedLocksHeld = new ThreadCounter("PIP", "Two Nested Locks Held");
+	private static final ThreadCounter threeNestedLocksHeld = new ThreadCounter("PIP", "Three Nested Locks Held");
 	
 	static {
 		AggregateCounter reads = new AggregateCounter("PIP", "Total Reads", readSameEpoch, readSharedSameEpoch, readExclusive, readShare, readShared, writeReadError);
@@ -149,6 +182,9 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	public final ErrorMessage<ArrayAccessInfo> arrayErrors = ErrorMessages.makeArrayErrorMessage("PIP");
 	private final VectorClock maxEpochPerTid = new VectorClock(INIT_VECTOR_CLOCK_SIZE);
 	
+	private final LogReplayer replayer = DECOUPLED ? new LogReplayer("PIP Worker", WORKERS, this) : null;
+	private final ReplayOrder classOrder = DECOUPLED ? new ReplayOrder() : null; //class initializations and accesses, issued under classInitTime
+	
 	public static final Decoration<ClassInfo, VectorClock> classInitTime = MetaDataInfoMaps.getClasses().makeDecoration("PIP:ClassInitTime", Type.MULTIPLE,
 			new DefaultValue<ClassInfo, VectorClock>() {
 		public VectorClock get(ClassInfo st) {
@@ -170,6 +206,11 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				return new PIPBarrierState(k, INIT_VECTOR_CLOCK_SIZE);
 			}
 		});
+		new JUCMonitor<PIPVolatileState>(this, new DefaultValue<Object,PIPVolatileState>() {
+			public PIPVolatileState get(Object k) {
+				return new PIPVolatileState(null, INIT_VECTOR_CLOCK_SIZE);
+			}
+		});
 		//Remove error reporting limit for comparison with PIP tools
 		fieldErrors.setMax(Integer.MAX_VALUE);
 		arrayErrors.setMax(Integer.MAX_VALUE);
@@ -212,6 +253,41 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	protected static HeldLS ts_get_heldlsWDCST(ShadowThread st) { Assert.panic("Bad"); return null; }
 	protected static void ts_set_heldlsWDCST(ShadowThread st, HeldLS heldLS) { Assert.panic("Bad"); }
 	
+	//Sampling
+	protected static int ts_get_sampleCountdown(ShadowThread st) { Assert.panic("Bad"); return -1; }
+	protected static void ts_set_sampleCountdown(ShadowThread st, int c) { Assert.panic("Bad"); }
+	
+	protected static AccessSampler ts_get_sampler(ShadowThread st) { Assert.panic("Bad"); return null; }
+	protected static void ts_set_sampler(ShadowThread st, AccessSampler sampler) { Assert.panic("Bad"); }
+	
+	//Volatile reads
+	protected static VolatileJoinCache ts_get_volJoins(ShadowThread st) { Assert.panic("Bad"); return null; }
+	protected static void ts_set_volJoins(ShadowThread st, VolatileJoinCache volJoins) { Assert.panic("Bad"); }
+	
+	//Barriers
+	protected static VectorClock ts_get_barrierV(ShadowThread st) { Assert.panic("Bad"); return null; }
+	protected static void ts_set_barrierV(ShadowThread st, VectorClock V) { Assert.panic("Bad"); }
+	
+	//The thread's events for the workers under DECOUPLED
+	protected static EventLog ts_get_eventLog(ShadowThread st) { Assert.panic("Bad"); return null; }
+	protected static void ts_set_eventLog(ShadowThread st, EventLog log) { Assert.panic("Bad"); }
+	
+	// Accesses inside critical sections feed the lock-based rules of WCP/DC/WDC, so only HB may skip them.
+	static final boolean skipAccess(final ShadowThread td) {
+		if (!HB && td.getNumLocksHeld() > 0) return false;
+		int c = ts_get_sampleCountdown(td);
+		if (c == 0) {
+			c = ts_get_sampler(td).nextWindow();
+		}
+		if (c > 0) {
+			ts_set_sampleCountdown(td, c - 1);
+			return false;
+		} else {
+			ts_set_sampleCountdown(td, c + 1);
+			return true;
+		}
+	}
+	
 	static final HeldLS getHLS(final ShadowThread td) {
 		if (WCP && ST) {
 			return ts_get_heldlsWCPST(td);
@@ -238,6 +314,39 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		}
 	}
 	
+	//The held locks of td with a shallow reference to each lock's Cm.
+	//Nodes of previous whose lock is still held at the same depth with the same Cm are reused, so only locks acquired since are allocated.
+	static final HeldLS heldLocks(final ShadowThread td, final HeldLS previous) {
+		final int depth = td.getNumLocksHeld();
+		int sharedDepth = 0;
+		for (HeldLS held = previous; held != null; held = held.outer) sharedDepth++;
+		HeldLS shared = previous;
+		while (sharedDepth > depth) {
+			shared = shared.outer;
+			sharedDepth--;
+		}
+		int level = sharedDepth - 1;
+		for (HeldLS held = shared; held != null; held = held.outer, level--) {
+			if (held.lock != td.getHeldLock(level) || held.vc != getCm(held.lock)) {
+				shared = held.outer;
+				sharedDepth = level;
+			}
+		}
+		HeldLS thrLock = shared;
+		for (int i = sharedDepth; i < depth; i++) {
+			ShadowLock heldLock = td.getHeldLock(i);
+			thrLock = new HeldLS(heldLock, getCm(heldLock), thrLock);
+		}
+		return thrLock;
+	}
+	
+	static final VectorClock getCm(final ShadowLock ld) {
+		if (WCP) return ((WCPSTLockState)getV(ld)).Cm;
+		if (DC) return ((DCSTLockState)getV(ld)).Cm;
+		if (DEBUG) Assert.assertTrue(WDC);
+		return ((WDCSTLockState)getV(ld)).Cm;
+	}
+	
 	static final VectorClock getV(final ShadowThread td) {
 		if (HB) {
 			return ts_get_vHB(td);
@@ -302,69 +411,105 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		}
 	}
 	
-	static final Decoration<ShadowLock,LockState> lockVhb = ShadowLock.makeDecoration("PIPhb:ShadowLock", DecorationFactory.Type.MULTIPLE, 
-			new DefaultValue<ShadowLock,LockState>() { public LockState get(final ShadowLock lock) { return new LockState(lock, INIT_VECTOR_CLOCK_SIZE); }});
-	
-	static final Decoration<ShadowLock,WCPLockState> lockVwcp = ShadowLock.makeDecoration("PIPwcp:ShadowLock", DecorationFactory.Type.MULTIPLE, 
-			new DefaultValue<ShadowLock,WCPLockState>() { public WCPLockState get(final ShadowLock lock) { return new WCPLockState(lock, INIT_VECTOR_CLOCK_SIZE); }});
+	//Lock and volatile states live in fields the agent adds to ShadowLock and ShadowVolatile, like the ts_ fields on ShadowThread.
+	//Only one analysis runs at a time, so a lock needs a single field for its state.
+	//The agent makes these fields volatile, so the unlocked reads in getV below see fully constructed states.
+	protected static LockState ls_get_lockState(ShadowLock ld) { Assert.panic("Bad"); return null; }
+	protected static void ls_set_lockState(ShadowLock ld, LockState lockState) { Assert.panic("Bad"); }
 	
-	static final Decoration<ShadowLock,WCPSTLockState> lockVwcpST = ShadowLock.makeDecoration("PIPwcpST:ShadowLock", DecorationFactory.Type.MULTIPLE, 
-			new DefaultValue<ShadowLock,WCPSTLockState>() { public WCPSTLockState get(final ShadowLock lock) { return new WCPSTLockState(lock, INIT_VECTOR_CLOCK_SIZE); }});
+	protected static PIPVolatileState vs_get_volState(ShadowVolatile vd) { Assert.panic("Bad"); return null; }
+	protected static void vs_set_volState(ShadowVolatile vd, PIPVolatileState volState) { Assert.panic("Bad"); }
 	
-	static final Decoration<ShadowLock,DCLockState> lockVdc = ShadowLock.makeDecoration("PIPdc:ShadowLock", DecorationFactory.Type.MULTIPLE, 
-			new DefaultValue<ShadowLock,DCLockState>() { public DCLockState get(final ShadowLock lock) { return new DCLockState(lock, INIT_VECTOR_CLOCK_SIZE); }});
+	protected static PIPVolatileState vs_get_volStateWCPHB(ShadowVolatile vd) { Assert.panic("Bad"); return null; }
+	protected static void vs_set_volStateWCPHB(ShadowVolatile vd, PIPVolatileState volState) { Assert.panic("Bad"); }
 	
-	static final Decoration<ShadowLock,DCSTLockState> lockVdcST = ShadowLock.makeDecoration("PIPdcST:ShadowLock", DecorationFactory.Type.MULTIPLE, 
-			new DefaultValue<ShadowLock,DCSTLockState>() { public DCSTLockState get(final ShadowLock lock) { return new DCSTLockState(lock, INIT_VECTOR_CLOCK_SIZE); }});
-	
-	static final Decoration<ShadowLock,WDCLockState> lockVwdc = ShadowLock.makeDecoration("PIPWDC:ShadowLock", DecorationFactory.Type.MULTIPLE, 
-			new DefaultValue<ShadowLock,WDCLockState>() { public WDCLockState get(final ShadowLock lock) { return new WDCLockState(lock, INIT_VECTOR_CLOCK_SIZE); }});
+	static final LockState getV(final ShadowLock ld) {
+		final LockState lockState = ls_get_lockState(ld);
+		if (lockState != null) return lockState;
+		return makeLockState(ld);
+	}
 	
-	static final Decoration<ShadowLock,WDCSTLockState> lockVwdcST = ShadowLock.makeDecoration("PIPWDCST:ShadowLock", DecorationFactory.Type.MULTIPLE, 
-			new DefaultValue<ShadowLock,WDCSTLockState>() { public WDCSTLockState get(final ShadowLock lock) { return new WDCSTLockState(lock, INIT_VECTOR_CLOCK_SIZE); }});
+	static final LockState makeLockState(final ShadowLock ld) {
+		synchronized (ld) {
+			LockState lockState = ls_get_lockState(ld);
+			if (lockState == null) {
+				lockState = newLockState(ld);
+				ls_set_lockState(ld, lockState);
+			}
+			return lockState;
+		}
+	}
 	
-	static final LockState getV(final ShadowLock ld) {
+	static final LockState newLockState(final ShadowLock ld) {
 		if (HB) {
-			return lockVhb.get(ld);
+			return new LockState(ld, INIT_VECTOR_CLOCK_SIZE);
 		}
 		if (WCP) {
-			if (ST)	return lockVwcpST.get(ld);
-			if (!ST) return lockVwcp.get(ld);
+			if (ST)	return new WCPSTLockState(ld, INIT_VECTOR_CLOCK_SIZE);
+			if (!ST) return new WCPLockState(ld, INIT_VECTOR_CLOCK_SIZE);
 		}
 		if (DC) {
-			if (ST) return lockVdcST.get(ld);
-			if (!ST) return lockVdc.get(ld);
+			if (ST) return new DCSTLockState(ld, INIT_VECTOR_CLOCK_SIZE);
+			if (!ST) return new DCLockState(ld, INIT_VECTOR_CLOCK_SIZE);
 		}
 		if (WDC) {
-			if (ST) return lockVwdcST.get(ld);
-			if (!ST) return lockVwdc.get(ld);
+			if (ST) return new WDCSTLockState(ld, INIT_VECTOR_CLOCK_SIZE);
+			if (!ST) return new WDCLockState(ld, INIT_VECTOR_CLOCK_SIZE);
 		}
 		Assert.assertTrue(false); //Should never get here
 		return null;
 	}
 	
-	static final Decoration<ShadowVolatile,PIPVolatileState> volatileV = ShadowVolatile.makeDecoration("PIP:shadowVolatile", DecorationFactory.Type.MULTIPLE,
-			new DefaultValue<ShadowVolatile,PIPVolatileState>() { public PIPVolatileState get(final ShadowVolatile vol) { return new PIPVolatileState(vol, INIT_VECTOR_CLOCK_SIZE); }});
-	
-	static final Decoration<ShadowVolatile,PIPVolatileState> volatileVwcpHB = ShadowVolatile.makeDecoration("PIPwcpHB:shadowVolatile", DecorationFactory.Type.MULTIPLE,
-			new DefaultValue<ShadowVolatile,PIPVolatileState>() { public PIPVolatileState get(final ShadowVolatile vol) { return new PIPVolatileState(vol, INIT_VECTOR_CLOCK_SIZE); }});
+	static final PIPVolatileState getV(final ShadowVolatile vd) {
+		final PIPVolatileState volState = vs_get_volState(vd);
+		if (volState != null) return volState;
+		synchronized (vd) {
+			PIPVolatileState newVolState = vs_get_volState(vd);
+			if (newVolState == null) {
+				newVolState = new PIPVolatileState(vd, INIT_VECTOR_CLOCK_SIZE);
+				vs_set_volState(vd, newVolState);
+			}
+			return newVolState;
+		}
+	}
 	
-	static final PIPVolatileState getV(final ShadowVolatile ld) {
-		return volatileV.get(ld);
+	//WCP's HB clock for a volatile
+	static final PIPVolatileState getVwcpHB(final ShadowVolatile vd) {
+		final PIPVolatileState volState = vs_get_volStateWCPHB(vd);
+		if (volState != null) return volState;
+		synchronized (vd) {
+			PIPVolatileState newVolState = vs_get_volStateWCPHB(vd);
+			if (newVolState == null) {
+				newVolState = new PIPVolatileState(vd, INIT_VECTOR_CLOCK_SIZE);
+				vs_set_volStateWCPHB(vd, newVolState);
+			}
+			return newVolState;
+		}
 	}
 	
 	@Override
 	public ShadowVar makeShadowVar(final AccessEvent event) {
 		if (event.getKind() == Kind.VOLATILE) {
 			final ShadowThread st = event.getThread();
-			final VectorClock volV = getV(((VolatileAccessEvent)event).getShadowVolatile());
+			final PIPVolatileState volV = getV(((VolatileAccessEvent)event).getShadowVolatile());
+			if (DECOUPLED) {
+				synchronized(volV) {
+					ts_get_eventLog(st).appendOrdered(VOLATILE_CREATED, 0, volV, null, volV.replayOrder);
+				}
+				return super.makeShadowVar(event);
+			}
 			volV.max(getV(st));
+			volV.wrote();
 			if (WCP) {
-				final VectorClock volVhb = volatileVwcpHB.get(((VolatileAccessEvent)event).getShadowVolatile());
+				final VectorClock volVhb = getVwcpHB(((VolatileAccessEvent)event).getShadowVolatile());
 				volVhb.max(ts_get_vHB(st));
 			}
 			return super.makeShadowVar(event);
 		} else {
+			if (DECOUPLED) {
+				//The thread's epoch is the workers' to read, and the logged access sets the state when replayed
+				return new PIPVarState(event.isWrite(), Epoch.ZERO, FTO);
+			}
 			if ((WCP && ST) || (DC && ST) || (WDC && ST)) {
 				STVarState x;
 				if (WCP) {
@@ -448,9 +593,45 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				if (PRINT_EVENTS) Util.log("Initial Epoch for " + tid + ": " + Epoch.toString(ts_get_eHB(td)));
 			}
 		}
+		if (SAMPLE && ts_get_sampler(td) == null) {
+			ts_set_sampler(td, new AccessSampler(td.getTid()));
+		}
+		//A forked thread's log opens when the workers replay its fork
+		if (DECOUPLED && ts_get_eventLog(td) == null) {
+			ts_set_eventLog(td, replayer.newLog(td, td.getParent() == null));
+		}
 		super.create(event);
 	}
 	
+	@Override
+	public void stop(ShadowThread td) {
+		if (DECOUPLED) {
+			ts_get_eventLog(td).close();
+		} else {
+			//A thread that takes over the tid continues from the last epoch, see mayReuseTid
+			synchronized(maxEpochPerTid) {
+				maxEpochPerTid.set(td.getTid(), WCP ? ts_get_eHB(td) : getE(td));
+			}
+		}
+		super.stop(td);
+	}
+	
+	//A new thread continues the stopped thread's clock component from its last epoch, which is sound for every relation once the stopped thread is ordered before it:
+	//then its epochs compare as ordered before everything that knows about the new thread, as if they were one thread.
+	//So the clock the fork passes on must already cover the last epoch. Threads without a fork edge never take over a tid.
+	//Under DECOUPLED the last epoch is only known once the workers have replayed the stopped thread, so tids are not reused.
+	@Override
+	public boolean mayReuseTid(int tid, ShadowThread parent) {
+		if (DECOUPLED || parent == null) return false;
+		final int/*epoch*/ last;
+		synchronized(maxEpochPerTid) {
+			last = maxEpochPerTid.get(tid);
+		}
+		//Called by parent on itself while forking, so its clocks are stable
+		final VectorClock forkV = WCP ? ts_get_vHB(parent) : getV(parent);
+		return Epoch.leq(last, forkV.get(tid)) && super.mayReuseTid(tid, parent);
+	}
+	
 	@Override
 	public void init() {
 		if (COUNT_EVENTS) {
@@ -460,6 +641,10 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			Util.log("WDC analysis: " + WDC);
 			Util.log("FTO enabled: " + FTO);
 			Util.log("ST enabled: " + ST);
+			Util.log("Decoupled workers: " + (DECOUPLED ? WORKERS : 0));
+		}
+		if (WORKERS > 0 && !DECOUPLED) {
+			Util.log("-pipWorkers only applies to -pipHB, analyzing on the application threads");
 		}
 		if (ST) {
 			Assert.assertTrue(FTO);
@@ -468,6 +653,9 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	
 	@Override
 	public void fini() {
+		if (DECOUPLED) {
+			replayer.finish();
+		}
 		StaticRace.reportRaces();
 	}
 	
@@ -495,11 +683,14 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	
 	@Override
 	public void acquire(final AcquireEvent event) {
-		if (COUNT_EVENTS) acquire.inc(event.getThread().getTid());
+		if (COUNT_EVENTS) acquire.inc(event.getThread());
 		
 		final ShadowThread td = event.getThread();
 		
-		if (HB || WCP || DC || (WDC && ST)) {
+		if (DECOUPLED) {
+			final LockState lockV = getV(event.getLock());
+			ts_get_eventLog(td).appendOrdered(ACQUIRE, 0, lockV, null, lockV.replayOrder);
+		} else if (HB || WCP || DC || (WDC && ST)) {
 			final ShadowLock lock = event.getLock();
 			
 			handleAcquire(td, lock, event.getInfo());
@@ -573,17 +764,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				lockData.Cm.set(td.getTid(), Epoch.make(td.getTid(), Epoch.MAX_CLOCK)); //To indicate shallow copy Cm has not been set by release event yet
 				if (PRINT_EVENTS) Util.log(lockData.Cm.toString());
 				//Update last Rule(a) metadata
-				//Build a new list of held locks
-				WCPSTLockState outerMostLock = (WCPSTLockState)getV(td.getHeldLock(0));
-				HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-				setHLS(td, thrLock);
-				for (int i = 1; i < td.getNumLocksHeld(); i++) {
-					ShadowLock heldLock = td.getHeldLock(i);
-					WCPSTLockState heldLockData = (WCPSTLockState)getV(heldLock);
-					//Store a shallow reference to Cm: from outer most to inner most lock held
-					thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-					thrLock = thrLock.next;
-				}
+				//Update the held locks, sharing the nodes of outer locks still held
+				setHLS(td, heldLocks(td, getHLS(td)));
 			}
 			if (!ST) {
 				VectorClock wcpUnionPO = new VectorClock(getV(td));
@@ -636,17 +818,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				lockData.Cm.set(td.getTid(), Epoch.make(td.getTid(), Epoch.MAX_CLOCK)); //To indicate shallow copy Cm has not been set by release event yet
 				if (PRINT_EVENTS) Util.log(lockData.Cm.toString());
 				//Update last Rule(a) metadata
-				//Build a new list of held locks
-				DCSTLockState outerMostLock = (DCSTLockState)getV(td.getHeldLock(0));
-				HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-				setHLS(td, thrLock);
-				for (int i = 1; i < td.getNumLocksHeld(); i++) {
-					ShadowLock heldLock = td.getHeldLock(i);
-					DCSTLockState heldLockData = (DCSTLockState)getV(heldLock);
-					//Store a shallow reference to Cm: from outer most to inner most lock held
-					thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-					thrLock = thrLock.next;
-				}
+				//Update the held locks, sharing the nodes of outer locks still held
+				setHLS(td, heldLocks(td, getHLS(td)));
 			}
 			if (!ST) {
 				//Rule (b)
@@ -678,17 +851,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			lockData.Cm.set(td.getTid(), Epoch.make(td.getTid(), Epoch.MAX_CLOCK)); //To indicate shallow copy Cm has not been set by release event yet
 			if (PRINT_EVENTS) Util.log(lockData.Cm.toString() + "|tid: " + td.getTid() + "|c at t: " + Epoch.clock(lockData.Cm.get(td.getTid())));
 			//Update last Rule(a) metadata
-			//Build a new list of held locks
-			WDCSTLockState outerMostLock = (WDCSTLockState)getV(td.getHeldLock(0));
-			HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-			setHLS(td, thrLock);
-			for (int i = 1; i < td.getNumLocksHeld(); i++) {
-				ShadowLock heldLock = td.getHeldLock(i);
-				WDCSTLockState heldLockData = (WDCSTLockState)getV(heldLock);
-				//Store a shallow reference to Cm: from outer most to inner most lock held
-				thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-				thrLock = thrLock.next;
-			}
+			//Update the held locks, sharing the nodes of outer locks still held
+			setHLS(td, heldLocks(td, getHLS(td)));
 		}
 		
 		if (!HB) {
@@ -748,17 +912,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				lockData.Cm.set(td.getTid(), Epoch.make(td.getTid(), Epoch.MAX_CLOCK)); //To indicate shallow copy Cm has not been set by release event yet
 				if (PRINT_EVENTS) Util.log(lockData.Cm.toString());
 				//Update last Rule(a) metadata
-				//Build a new list of held locks
-				WCPSTLockState outerMostLock = (WCPSTLockState)getV(td.getHeldLock(0));
-				HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-				setHLS(td, thrLock);
-				for (int i = 1; i < td.getNumLocksHeld(); i++) {
-					ShadowLock heldLock = td.getHeldLock(i);
-					WCPSTLockState heldLockData = (WCPSTLockState)getV(heldLock);
-					//Store a shallow reference to Cm: from outer most to inner most lock held
-					thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-					thrLock = thrLock.next;
-				}
+				//Update the held locks, sharing the nodes of outer locks still held
+				setHLS(td, heldLocks(td, getHLS(td)));
 			}
 			if (!ST) {
 				VectorClock wcpUnionPO = new VectorClock(getV(td));
@@ -811,17 +966,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				lockData.Cm.set(td.getTid(), Epoch.make(td.getTid(), Epoch.MAX_CLOCK)); //To indicate shallow copy Cm has not been set by release event yet
 				if (PRINT_EVENTS) Util.log(lockData.Cm.toString());
 				//Update last Rule(a) metadata
-				//Build a new list of held locks
-				DCSTLockState outerMostLock = (DCSTLockState)getV(td.getHeldLock(0));
-				HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-				setHLS(td, thrLock);
-				for (int i = 1; i < td.getNumLocksHeld(); i++) {
-					ShadowLock heldLock = td.getHeldLock(i);
-					DCSTLockState heldLockData = (DCSTLockState)getV(heldLock);
-					//Store a shallow reference to Cm: from outer most to inner most lock held
-					thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-					thrLock = thrLock.next;
-				}
+				//Update the held locks, sharing the nodes of outer locks still held
+				setHLS(td, heldLocks(td, getHLS(td)));
 			}
 			if (!ST) {
 				//Rule (b)
@@ -853,17 +999,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			lockData.Cm.set(td.getTid(), Epoch.make(td.getTid(), Epoch.MAX_CLOCK)); //To indicate shallow copy Cm has not been set by release event yet
 			if (PRINT_EVENTS) Util.log(lockData.Cm.toString());
 			//Update last Rule(a) metadata
-			//Build a new list of held locks
-			WDCSTLockState outerMostLock = (WDCSTLockState)getV(td.getHeldLock(0));
-			HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-			setHLS(td, thrLock);
-			for (int i = 1; i < td.getNumLocksHeld(); i++) {
-				ShadowLock heldLock = td.getHeldLock(i);
-				WDCSTLockState heldLockData = (WDCSTLockState)getV(heldLock);
-				//Store a shallow reference to Cm: from outer most to inner most lock held
-				thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-				thrLock = thrLock.next;
-			}
+			//Update the held locks, sharing the nodes of outer locks still held
+			setHLS(td, heldLocks(td, getHLS(td)));
 		}
 		
 		incAtAcquire(td);
@@ -874,9 +1011,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		final ShadowThread td = event.getThread();
 		final LockState lockV = getV(event.getLock());
 		
-		if (COUNT_EVENTS) release.inc(td.getTid());
+		if (COUNT_EVENTS) release.inc(td);
 		
-		handleRelease(td, lockV, event.getInfo());
+		if (DECOUPLED) {
+			ts_get_eventLog(td).appendOrdered(RELEASE, 0, lockV, null, lockV.replayOrder);
+		} else {
+			handleRelease(td, lockV, event.getInfo());
+		}
 		
 		if (PRINT_EVENTS) Util.log("rel("+event.getLock()+") by T"+td.getTid()); //Util.log("rel("+Util.objectToIdentityString(event.getLock())+") by T"+td.getTid());
 		super.release(event);
@@ -903,21 +1044,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				lockData.Cm.copy(ts_get_vHB(td));
 				if (PRINT_EVENTS) Util.log(lockData.Cm.toString());
 				//Update last Rule(a) metadata
-				//Build a new list of held locks
-				if (td.getNumLocksHeld() == 0) {
-					setHLS(td, null);
-				} else {
-					WCPSTLockState outerMostLock = (WCPSTLockState)getV(td.getHeldLock(0));
-					HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-					setHLS(td, thrLock);
-					for (int i = 1; i < td.getNumLocksHeld(); i++) {
-						ShadowLock heldLock = td.getHeldLock(i);
-						WCPSTLockState heldLockData = (WCPSTLockState)getV(heldLock);
-						//Store a shallow reference to Cm: from outer most to inner most lock held
-						thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-						thrLock = thrLock.next;
-					}
-				}
+				//Update the held locks, sharing the nodes of outer locks still held
+				setHLS(td, heldLocks(td, getHLS(td)));
 			}
 			if (!ST) {
 				VectorClock wcpUnionPO = new VectorClock(tV);
@@ -971,21 +1099,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				lockData.Cm.copy(getV(td));
 				if (PRINT_EVENTS) Util.log(lockData.Cm.toString());
 				//Update last Rule(a) metadata
-				//Build a new list of held locks
-				if (td.getNumLocksHeld() == 0) {
-					setHLS(td, null);
-				} else {
-					DCSTLockState outerMostLock = (DCSTLockState)getV(td.getHeldLock(0));
-					HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-					setHLS(td, thrLock);
-					for (int i = 1; i < td.getNumLocksHeld(); i++) {
-						ShadowLock heldLock = td.getHeldLock(i);
-						DCSTLockState heldLockData = (DCSTLockState)getV(heldLock);
-						//Store a shallow reference to Cm: from outer most to inner most lock held
-						thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-						thrLock = thrLock.next;
-					}
-				}
+				//Update the held locks, sharing the nodes of outer locks still held
+				setHLS(td, heldLocks(td, getHLS(td)));
 			}
 			if (!ST) {
 				//Rule (b)
@@ -1029,21 +1144,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				lockData.Cm.copy(getV(td));
 				if (PRINT_EVENTS) Util.log("AFTER: " + lockData.Cm.toString() + " |max epoch: " + Epoch.clock(Epoch.MAX_CLOCK));
 				//Update last Rule(a) metadata
-				//Build a new list of held locks
-				if (td.getNumLocksHeld() == 0) {
-					setHLS(td, null);
-				} else {
-					WDCSTLockState outerMostLock = (WDCSTLockState)getV(td.getHeldLock(0));
-					HeldLS thrLock = new HeldLS(td.getHeldLock(0), outerMostLock.Cm); //Outer most lock held
-					setHLS(td, thrLock);
-					for (int i = 1; i < td.getNumLocksHeld(); i++) {
-						ShadowLock heldLock = td.getHeldLock(i);
-						WDCSTLockState heldLockData = (WDCSTLockState)getV(heldLock);
-						//Store a shallow reference to Cm: from outer most to inner most lock held
-						thrLock.next = new HeldLS(heldLock, heldLockData.Cm);
-						thrLock = thrLock.next;
-					}
-				}
+				//Update the held locks, sharing the nodes of outer locks still held
+				setHLS(td, heldLocks(td, getHLS(td)));
 			}
 			if (!ST) {
 				//Rule (a)
@@ -1200,6 +1302,9 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	}
 	
 	public static boolean readFastPath(final ShadowVar orig, final ShadowThread td) {
+		if (SAMPLE && skipAccess(td)) return true;
+		if (DECOUPLED) return false; //access() logs it for the workers
+		
 		final PIPVarState sx = ((PIPVarState)orig);
 
 		int/*epoch*/ e;
@@ -1212,12 +1317,12 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		/* optional */ {
 			final int/*epoch*/ r = sx.R;
 			if (r == e) {
-				if (COUNT_EVENTS) readSameEpochFP.inc(td.getTid());
-				if (COUNT_EVENTS) readFP.inc(td.getTid());
+				if (COUNT_EVENTS) readSameEpochFP.inc(td);
+				if (COUNT_EVENTS) readFP.inc(td);
 				return true;
 			} else if (r == Epoch.READ_SHARED && sx.get(td.getTid()) == e) {
-				if (COUNT_EVENTS) readSharedSameEpochFP.inc(td.getTid());
-				if (COUNT_EVENTS) readFP.inc(td.getTid());
+				if (COUNT_EVENTS) readSharedSameEpochFP.inc(td);
+				if (COUNT_EVENTS) readFP.inc(td);
 				return true;
 			}
 		}
@@ -1233,13 +1338,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				
 				if (COUNT_EVENTS) {
 					if (td.getNumLocksHeld() > 0) {
-						holdLocks.inc(tid);
+						holdLocks.inc(td);
 						if (td.getNumLocksHeld() == 1) {
-							oneLockHeld.inc(tid);
+							oneLockHeld.inc(td);
 						} else if (td.getNumLocksHeld() == 2) {
-							twoNestedLocksHeld.inc(tid);
+							twoNestedLocksHeld.inc(td);
 						} else if (td.getNumLocksHeld() == 3) {
-							threeNestedLocksHeld.inc(tid);
+							threeNestedLocksHeld.inc(td);
 						}
 					}
 				}
@@ -1248,31 +1353,19 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				if (ST) {
 					STVarState xSTCount = (STVarState)sx;
 					if (xSTCount.Ew != null && !xSTCount.Ew.isEmpty()) {
-						if (COUNT_EVENTS) {
-							extraReadCheckFP.inc(td.getTid());
-							//Check if any update occurs at least once
-							boolean update = false;
-							for (int i = 0; i < td.getNumLocksHeld(); i++) { //outer most to inner most
-								ShadowLock lock = td.getHeldLock(i);
-								for (int prevTid : xSTCount.Ew.keySet()) {
-									if (prevTid != tid && xSTCount.Ew.get(prevTid).containsKey(lock)) {
-										extraReadUpdateFP.inc(td.getTid());
-										update = true;
-										break;
-									}
-								}
-								if (update) break;
-							}
-						}
-							
+						if (COUNT_EVENTS) extraReadCheckFP.inc(td);
+						boolean update = false; //only counted
+						final TidLockClocks Ew = xSTCount.Ew;
 						for (int i = 0; i < td.getNumLocksHeld(); i++) { //outer most to inner most
 							ShadowLock lock = td.getHeldLock(i);
-							for (int prevTid : xSTCount.Ew.keySet()) {
-								if (prevTid != tid && xSTCount.Ew.get(prevTid).containsKey(lock)) {
-									maxEpochAndCV(td, xSTCount.Ew.get(prevTid).get(lock));
+							for (int j = 0; j < Ew.size(); j++) {
+								if (Ew.lock(j) == lock && Ew.tid(j) != tid) {
+									maxEpochAndCV(td, Ew.clock(j));
+									update = true;
 								}
 							}
 						}
+						if (COUNT_EVENTS && update) extraReadUpdateFP.inc(td);
 					}
 					
 					if (r != Epoch.READ_SHARED) { //read epoch
@@ -1283,17 +1376,18 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							xST.Rm = getHLS(td);
 							//Update last access metadata
 							sx.R = e; //readOwned
-							if (COUNT_EVENTS) readOwnedFP.inc(tid);
+							if (COUNT_EVENTS) readOwnedFP.inc(td);
 							if (PRINT_EVENTS) Util.log("rd owned FP");
 						} else {
 							STVarState xST = (STVarState)sx;
-							HeldLS rdLock = xST.Rm;
+							HeldLS rdLock = HeldLS.outerMost(xST.Rm);
 							//If prior access was not protected by a lock and the prior access is not ordered to the current access
 							//Or if the outer most lock protecting the prior access is not ordered to the current access then read-share
 							//Otherwise, read-exclusive
 							if ((rdLock == null && !Epoch.leq(r, tV.get(rTid))) || (rdLock != null && !Epoch.leq(rdLock.vc.get(rTid), tV.get(rTid)))) {
 								//Rule(a) Check
-								HeldLS wrLock = xST.Wm;
+								final HeldLS wrLocks = xST.Wm;
+								HeldLS wrLock = HeldLS.outerMost(wrLocks);
 								while (wrLock != null) {
 									if (wTid != tid) {
 										if (Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid))) {
@@ -1307,7 +1401,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 											break;
 										}
 									}
-									wrLock = wrLock.next;
+									wrLock = wrLocks.inside(wrLock);
 								}
 								if (wrLock == null && wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race. wrLock is null if Rule(a) is not established. wTid != tid is guaranteed since rTid != tid
 									ts_set_badVarState(td, sx);
@@ -1325,7 +1419,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 								sx.set(rTid, r);
 								sx.set(tid, e);
 								sx.R = Epoch.READ_SHARED; //readShare
-								if (COUNT_EVENTS) readShareFP.inc(tid);
+								if (COUNT_EVENTS) readShareFP.inc(td);
 								if (PRINT_EVENTS) Util.log("rd share FP");
 							} else { //Read-Exclusive
 								//Rule(a) Check is unneeded for read-exclusive case since the prior write access is ordered to the current read access
@@ -1333,7 +1427,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 								xST.Rm = getHLS(td);
 								//Update last access metadata
 								sx.R = e; //readExclusive
-								if (COUNT_EVENTS) readExclusiveFP.inc(tid);
+								if (COUNT_EVENTS) readExclusiveFP.inc(td);
 								if (PRINT_EVENTS) Util.log("rd exclusive FP");
 							}
 						}
@@ -1345,12 +1439,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							xST.setSharedHeldLS(tid, getHLS(td));
 							//Update last access metadata
 							sx.set(tid, e); //readSharedOwnedq
-							if (COUNT_EVENTS) readSharedOwnedFP.inc(tid);
+							if (COUNT_EVENTS) readSharedOwnedFP.inc(td);
 							if (PRINT_EVENTS) Util.log("rd shared owned FP");
 						} else {
 							//Rule(a) Check
 							STVarState xST = (STVarState)sx;
-							HeldLS wrLock = xST.Wm;
+							final HeldLS wrLocks = xST.Wm;
+							HeldLS wrLock = HeldLS.outerMost(wrLocks);
 							while (wrLock != null) {
 								if (wTid != tid) {
 									if (Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid))) {
@@ -1364,7 +1459,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 										break;
 									}
 								}
-								wrLock = wrLock.next;
+								wrLock = wrLocks.inside(wrLock);
 							}
 							if (wrLock == null && wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race. wrLock is null if Rule(a) is not established.
 								ts_set_badVarState(td, sx);
@@ -1375,7 +1470,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							xST.setSharedHeldLS(tid, getHLS(td));
 							//Update last access metadata
 							sx.set(tid, e); //readShared
-							if (COUNT_EVENTS) readSharedFP.inc(tid);
+							if (COUNT_EVENTS) readSharedFP.inc(td);
 							if (PRINT_EVENTS) Util.log("rd shared FP");
 						}
 					}
@@ -1430,7 +1525,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						if (rTid == tid) { //Read-Owned
 							//Update last access metadata
 							sx.R = e; //readOwned
-							if (COUNT_EVENTS) readOwnedFP.inc(tid);
+							if (COUNT_EVENTS) readOwnedFP.inc(td);
 						} else {
 							if (!Epoch.leq(r, tV.get(rTid))) { //Read-Share
 								if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race.
@@ -1444,18 +1539,18 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 								sx.set(rTid, r);
 								sx.set(tid, e);
 								sx.R = Epoch.READ_SHARED; //readShare
-								if (COUNT_EVENTS) readShareFP.inc(tid);
+								if (COUNT_EVENTS) readShareFP.inc(td);
 							} else { //Read-Exclusive
 								//Update last access metadata
 								sx.R = e; //readExclusive
-								if (COUNT_EVENTS) readExclusiveFP.inc(tid);
+								if (COUNT_EVENTS) readExclusiveFP.inc(td);
 							}
 						}
 					} else { //read vector
 						if (Epoch.clock(sx.get(tid)) != Epoch.ZERO) { //Read-Shared-Owned
 							//Update last access metadata
 							sx.set(tid, e); //readSharedOwned
-							if (COUNT_EVENTS) readSharedOwnedFP.inc(tid);
+							if (COUNT_EVENTS) readSharedOwnedFP.inc(td);
 						} else {
 							if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race.
 								ts_set_badVarState(td, sx);
@@ -1464,7 +1559,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							} //Read-Shared
 							//Update last access metadata
 							sx.set(tid, e); //readShared
-							if (COUNT_EVENTS) readSharedFP.inc(tid);
+							if (COUNT_EVENTS) readSharedFP.inc(td);
 						}
 					}
 				}
@@ -1483,7 +1578,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						if (rTid == tid || Epoch.leq(r, tV.get(rTid))) { //Read-Exclusive
 							//Update last access metadata
 							sx.R = e; //readExclusive
-							if (COUNT_EVENTS) readExclusiveFP.inc(tid);
+							if (COUNT_EVENTS) readExclusiveFP.inc(td);
 						} else { //Read-Share
 							//Update last access metadata
 							int initSize = Math.max(Math.max(rTid, tid)+1, INIT_VECTOR_CLOCK_SIZE);
@@ -1491,24 +1586,24 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							sx.set(rTid, r);
 							sx.set(tid, e);
 							sx.R = Epoch.READ_SHARED; //readShare
-							if (COUNT_EVENTS) readShareFP.inc(tid);
+							if (COUNT_EVENTS) readShareFP.inc(td);
 						}
 					} else { //read vector
 						//Update last access metadata
 						sx.set(tid, e); //readShared
-						if (COUNT_EVENTS) readSharedFP.inc(tid);
+						if (COUNT_EVENTS) readSharedFP.inc(td);
 					}
 				}
 				
 				//Counting and WCP update
-				if (COUNT_EVENTS) readFP.inc(td.getTid());
+				if (COUNT_EVENTS) readFP.inc(td);
 				if (COUNT_EVENTS) {
 					if (td.getNumLocksHeld() == 0) {
-						readOUT.inc(td.getTid());
-						readOUTFP.inc(td.getTid());
+						readOUT.inc(td);
+						readOUTFP.inc(td);
 					} else {
-						readIN.inc(td.getTid());
-						readINFP.inc(td.getTid());
+						readIN.inc(td);
+						readINFP.inc(td);
 					}
 				}
 				if (WCP) tV.set(tid, getE(td)); //revert WCP union PO
@@ -1519,7 +1614,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		}
 	}
 	
-	protected void read(final AccessEvent event, final ShadowThread td, final PIPVarState x) {
+	//event is null when the access is replayed under DECOUPLED
+	protected void read(final AccessEvent event, final AccessInfo info, final ShadowThread td, final PIPVarState x) {
 		int/*epoch*/ e;
 		if (WCP) {
 			e = ts_get_eHB(td);
@@ -1529,19 +1625,19 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		
 		if (COUNT_EVENTS) {
 			if (td.getNumLocksHeld() == 0) {
-				readOUT.inc(td.getTid());
+				readOUT.inc(td);
 			} else {
-				readIN.inc(td.getTid());
+				readIN.inc(td);
 			}
 		}
 		
 		/* optional */ {
 			final int/*epoch*/ r = x.R;
 			if (r == e) {
-				if (COUNT_EVENTS) readSameEpoch.inc(td.getTid());
+				if (COUNT_EVENTS) readSameEpoch.inc(td);
 				return;
 			} else if (r == Epoch.READ_SHARED && x.get(td.getTid()) == e) {
-				if (COUNT_EVENTS) readSharedSameEpoch.inc(td.getTid());
+				if (COUNT_EVENTS) readSharedSameEpoch.inc(td);
 				return;
 			}
 		}
@@ -1556,13 +1652,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			
 			if (COUNT_EVENTS) {
 				if (td.getNumLocksHeld() > 0) {
-					holdLocks.inc(tid);
+					holdLocks.inc(td);
 					if (td.getNumLocksHeld() == 1) {
-						oneLockHeld.inc(tid);
+						oneLockHeld.inc(td);
 					} else if (td.getNumLocksHeld() == 2) {
-						twoNestedLocksHeld.inc(tid);
+						twoNestedLocksHeld.inc(td);
 					} else if (td.getNumLocksHeld() == 3) {
-						threeNestedLocksHeld.inc(tid);
+						threeNestedLocksHeld.inc(td);
 					}
 				}
 			}
@@ -1577,16 +1673,17 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						xST.Rm = getHLS(td);
 						//Update last access metadata
 						x.R = e; //readOwned
-						if (COUNT_EVENTS) readOwned.inc(tid);
+						if (COUNT_EVENTS) readOwned.inc(td);
 					} else {
 						STVarState xST = (STVarState)x;
-						HeldLS rdLock = xST.Rm;
+						HeldLS rdLock = HeldLS.outerMost(xST.Rm);
 						//If prior access was not protected by a lock and the prior access is not ordered to the current access
 						//Or if the outer most lock protecting the prior access is not ordered to the current access then read-share
 						//Otherwise, read-exclusive
 						if ((rdLock == null && !Epoch.leq(r, tV.get(rTid))) || (rdLock != null && !Epoch.leq(rdLock.vc.get(rTid), tV.get(rTid)))) {
 							//Rule(a) Check
-							HeldLS wrLock = xST.Wm;
+							final HeldLS wrLocks = xST.Wm;
+							HeldLS wrLock = HeldLS.outerMost(wrLocks);
 							while (wrLock != null) {
 								if (wTid != tid && !Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid)) && td.equals(wrLock.lock.getHoldingThread())) {
 									//Establish Rule(a) and avoid checking for write-read race
@@ -1596,11 +1693,11 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 									if (WCP) tV.set(tid, ts_get_eHB(td)); //WCP union PO
 									break;
 								}
-								wrLock = wrLock.next;
+								wrLock = wrLocks.inside(wrLock);
 							}
 							if (wrLock == null && wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race. wrLock is null if Rule(a) is not established.
-								error(event, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
-								if (COUNT_EVENTS) writeReadError.inc(tid);
+								error(event, info, td, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
+								if (COUNT_EVENTS) writeReadError.inc(td);
 							} //Read-Share
 							//Update last Rule(a) metadata
 							int initSharedHeldLSSize = Math.max(Math.max(rTid, tid)+1, INIT_VECTOR_CLOCK_SIZE);
@@ -1613,13 +1710,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							x.set(rTid, r);
 							x.set(tid, e);
 							x.R = Epoch.READ_SHARED; //readShare
-							if (COUNT_EVENTS) readShare.inc(tid);
+							if (COUNT_EVENTS) readShare.inc(td);
 						} else { //Read-Exclusive, Rule(a) Check is unneeded for read-exclusive case since the prior write access is ordered to the current read access
 							//Update last Rule(a) metadata
 							xST.Rm = getHLS(td);
 							//Update last access metadata
 							x.R = e; //readExclusive
-							if (COUNT_EVENTS) readExclusive.inc(tid);
+							if (COUNT_EVENTS) readExclusive.inc(td);
 						}
 					}
 				} else { //read vector
@@ -1629,11 +1726,12 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						xST.setSharedHeldLS(tid, getHLS(td));
 						//Update last access metadata
 						x.set(tid, e); //readSharedOwned
-						if (COUNT_EVENTS) readSharedOwned.inc(tid);
+						if (COUNT_EVENTS) readSharedOwned.inc(td);
 					} else {
 						//Rule(a) Check
 						STVarState xST = (STVarState)x;
-						HeldLS wrLock = xST.Wm;
+						final HeldLS wrLocks = xST.Wm;
+						HeldLS wrLock = HeldLS.outerMost(wrLocks);
 						while (wrLock != null) {
 							if (wTid != tid && !Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid)) && td.equals(wrLock.lock.getHoldingThread())) {
 								//Establish Rule(a) and avoid check for write-read race
@@ -1643,17 +1741,17 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 								if (WCP) tV.set(tid, ts_get_eHB(td)); //WCP union PO
 								break;
 							}
-							wrLock = wrLock.next;
+							wrLock = wrLocks.inside(wrLock);
 						}
 						if (wrLock == null && wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race. wrLock is null if Rule(a) is not established.
-							error(event, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
-							if (COUNT_EVENTS) writeReadError.inc(tid);
+							error(event, info, td, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
+							if (COUNT_EVENTS) writeReadError.inc(td);
 						} //Read-Shared
 						//Update last Rule(a) metadata
 						xST.setSharedHeldLS(tid, getHLS(td));
 						//Update last access metadata
 						x.set(tid, e); //readShared
-						if (COUNT_EVENTS) readShared.inc(tid);
+						if (COUNT_EVENTS) readShared.inc(td);
 					}
 				}
 			}
@@ -1665,13 +1763,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 					if (rTid == tid) { //Read-Owned
 						//Update last access metadata
 						x.R = e; //readOwned
-						if (COUNT_EVENTS) readOwned.inc(tid);
+						if (COUNT_EVENTS) readOwned.inc(td);
 					} else {
 						if (!Epoch.leq(r, tV.get(rTid))) { //Read-Share
 							if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race.
 								if (PRINT_EVENTS) Util.log("wr-rd share error");
-								error(event, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
-								if (COUNT_EVENTS) writeReadError.inc(tid);
+								error(event, info, td, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
+								if (COUNT_EVENTS) writeReadError.inc(td);
 							} //Read-Share
 							//Update last access metadata
 							int initSize = Math.max(Math.max(rTid, tid)+1, INIT_VECTOR_CLOCK_SIZE);
@@ -1679,27 +1777,27 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							x.set(rTid, r);
 							x.set(tid, e);
 							x.R = Epoch.READ_SHARED; //readShare
-							if (COUNT_EVENTS) readShare.inc(tid);
+							if (COUNT_EVENTS) readShare.inc(td);
 						} else { //Read-Exclusive
 							//Update last access metadata
 							x.R = e; //readExclusive
-							if (COUNT_EVENTS) readExclusive.inc(tid);
+							if (COUNT_EVENTS) readExclusive.inc(td);
 						}
 					}
 				} else { //read vector
 					if (Epoch.clock(x.get(tid)) != Epoch.ZERO) { //Read-Shared-Owned
 						//Update last access metadata
 						x.set(tid, e); //readSharedOwned
-						if (COUNT_EVENTS) readSharedOwned.inc(tid);
+						if (COUNT_EVENTS) readSharedOwned.inc(td);
 					} else {
 						if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) { //Write-Read Race.
 							if (PRINT_EVENTS) Util.log("wr-rd shared error");
-							error(event, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
-							if (COUNT_EVENTS) writeReadError.inc(tid);
+							error(event, info, td, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
+							if (COUNT_EVENTS) writeReadError.inc(td);
 						} //Read-Shared
 						//Update last access metadata
 						x.set(tid, e); //readShared
-						if (COUNT_EVENTS) readShared.inc(tid);
+						if (COUNT_EVENTS) readShared.inc(td);
 					}
 				}
 			}
@@ -1708,8 +1806,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			if (!ST && !FTO) {
 				//Write-Read Race Check.
 				if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
-					error(event, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
-					if (COUNT_EVENTS) writeReadError.inc(tid);
+					error(event, info, td, x, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
+					if (COUNT_EVENTS) writeReadError.inc(td);
 				}
 				
 				if (r != Epoch.READ_SHARED) { //read epoch
@@ -1717,7 +1815,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 					if (rTid == tid || Epoch.leq(r, tV.get(rTid))) { //Read-Exclusive
 						//Update last access metadata
 						x.R = e; //readExclusive
-						if (COUNT_EVENTS) readExclusive.inc(tid);
+						if (COUNT_EVENTS) readExclusive.inc(td);
 					} else { //Read-Share
 						//Update last access metadata
 						int initSize = Math.max(Math.max(rTid, tid)+1, INIT_VECTOR_CLOCK_SIZE);
@@ -1725,12 +1823,12 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						x.set(rTid, r);
 						x.set(tid, e);
 						x.R = Epoch.READ_SHARED; //readShare
-						if (COUNT_EVENTS) readShare.inc(tid);
+						if (COUNT_EVENTS) readShare.inc(td);
 					}
 				} else { //read vector
 					//Update last access metadata
 					x.set(tid, e); //readShared
-					if (COUNT_EVENTS) readShared.inc(tid);
+					if (COUNT_EVENTS) readShared.inc(td);
 				}
 			}
 			
@@ -1739,6 +1837,9 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	}
 	
 	public static boolean writeFastPath(final ShadowVar orig, final ShadowThread td) {
+		if (SAMPLE && skipAccess(td)) return true;
+		if (DECOUPLED) return false; //access() logs it for the workers
+		
 		final PIPVarState sx = ((PIPVarState)orig);
 
 		int/*epoch*/ E;
@@ -1751,8 +1852,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		/* optional */ {
 			final int/*epoch*/ w = sx.W;
 			if (w == E) {
-				if (COUNT_EVENTS) writeSameEpochFP.inc(td.getTid());
-				if (COUNT_EVENTS) writeFP.inc(td.getTid());
+				if (COUNT_EVENTS) writeSameEpochFP.inc(td);
+				if (COUNT_EVENTS) writeFP.inc(td);
 				return true;
 			}
 		}
@@ -1767,13 +1868,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				
 				if (COUNT_EVENTS) {
 					if (td.getNumLocksHeld() > 0) {
-						holdLocks.inc(tid);
+						holdLocks.inc(td);
 						if (td.getNumLocksHeld() == 1) {
-							oneLockHeld.inc(tid);
+							oneLockHeld.inc(td);
 						} else if (td.getNumLocksHeld() == 2) {
-							twoNestedLocksHeld.inc(tid);
+							twoNestedLocksHeld.inc(td);
 						} else if (td.getNumLocksHeld() == 3) {
-							threeNestedLocksHeld.inc(tid);
+							threeNestedLocksHeld.inc(td);
 						}
 					}
 				}
@@ -1782,40 +1883,26 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				if (ST) {
 					STVarState xSTCount = (STVarState)sx;
 					if (xSTCount.Er != null && !xSTCount.Er.isEmpty()) {
-						if (COUNT_EVENTS) {
-							extraWriteCheckFP.inc(td.getTid());
-							//Check if any update occurs at least once
-							boolean update = false;
-							for (int i = 0; i < td.getNumLocksHeld(); i++) { //outer most to inner most
-								ShadowLock lock = td.getHeldLock(i);
-								for (int prevTid : xSTCount.Er.keySet()) {
-									if (prevTid != tid && xSTCount.Er.get(prevTid).containsKey(lock)) {
-										extraWriteUpdateFP.inc(td.getTid());
-										update = true;
-										break;
-									}
-								}
-								if (update) break;
-							}
-						}
-							
+						if (COUNT_EVENTS) extraWriteCheckFP.inc(td);
+						boolean update = false; //only counted
+						final TidLockClocks Er = xSTCount.Er;
 						for (int i = 0; i < td.getNumLocksHeld(); i++) { //outer most to inner most
 							ShadowLock lock = td.getHeldLock(i);
-							for (int prevTid : xSTCount.Er.keySet()) {
-								if (prevTid != tid && xSTCount.Er.get(prevTid).containsKey(lock)) {
-									maxEpochAndCV(td, xSTCount.Er.get(prevTid).get(lock));
-									xSTCount.Er.get(prevTid).remove(lock);
-									if (xSTCount.Er.get(prevTid).isEmpty()) xSTCount.Er.remove(prevTid);
-										
-									if (xSTCount.Ew != null && xSTCount.Ew.get(prevTid) != null) xSTCount.Ew.get(prevTid).remove(lock);
-									if (xSTCount.Ew != null && xSTCount.Ew.get(prevTid) != null && xSTCount.Ew.get(prevTid).isEmpty()) xSTCount.Ew.remove(prevTid);
+							for (int j = Er.size() - 1; j >= 0; j--) { //backwards, since removal refills slot j from the end
+								final int prevTid = Er.tid(j);
+								if (Er.lock(j) == lock && prevTid != tid) {
+									maxEpochAndCV(td, Er.clock(j));
+									update = true;
+									Er.remove(j);
+									if (xSTCount.Ew != null) xSTCount.Ew.remove(prevTid, lock);
 								}
 							}
 						}
-						xSTCount.Er.remove(tid);
-						if (xSTCount.Er.isEmpty()) xSTCount.Er = null;
+						if (COUNT_EVENTS && update) extraWriteUpdateFP.inc(td);
+						Er.removeTid(tid);
+						if (Er.isEmpty()) xSTCount.Er = null;
 						if (xSTCount.Ew != null) {
-							xSTCount.Ew.remove(tid);
+							xSTCount.Ew.removeTid(tid);
 							if (xSTCount.Ew.isEmpty()) xSTCount.Ew = null;
 						}
 					}
@@ -1831,34 +1918,35 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							//Update last access metadata
 							sx.W = E;
 							sx.R = E;
-							if (COUNT_EVENTS) writeOwnedFP.inc(tid);
+							if (COUNT_EVENTS) writeOwnedFP.inc(td);
 						} else {
 							//Check Rule(a)
 							STVarState xST = (STVarState)sx;
 							if (COUNT_EVENTS) {
 								boolean set = false;
-								HeldLS rdLock = xST.Rm;
+								HeldLS rdLock = HeldLS.outerMost(xST.Rm);
 								if (rdLock != null) {
 									if (Epoch.leq(rdLock.vc.get(rTid), tV.get(rTid))) { //Outer most lock already ordered to the current access
 									} else if (td.equals(rdLock.lock.getHoldingThread())) { //Outer most lock conflicts with current access
 									} else {
-										extraWriteSetFP.inc(td.getTid());
+										extraWriteSetFP.inc(td);
 										set = true;
 									}
 								}
 								if (!set) {
-									HeldLS wrLock = xST.Wm;
+									HeldLS wrLock = HeldLS.outerMost(xST.Wm);
 									if (wrLock != null) {
 										if (Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid))) {
 										} else if (td.equals(wrLock.lock.getHoldingThread())) {
 										} else {
-											extraWriteSetFP.inc(td.getTid());
+											extraWriteSetFP.inc(td);
 										}
 									}
 								}
 							}
 							
-							HeldLS rdLock = xST.Rm;
+							final HeldLS rdLocks = xST.Rm;
+							HeldLS rdLock = HeldLS.outerMost(rdLocks);
 							while (rdLock != null) {
 								if (Epoch.leq(rdLock.vc.get(rTid), tV.get(rTid))) {
 									break; //Outer most lock already ordered to the current access
@@ -1870,34 +1958,25 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 									if (WCP) tV.set(tid, ts_get_eHB(td)); //WCP union PO
 									break;
 								} else {
-									if (xST.Er == null)  xST.Er = new HashMap<Integer/*tid*/, HashMap<ShadowLock, VectorClock>>();
-									HashMap<ShadowLock, VectorClock> rEL = xST.Er.get(rTid);
-									if (rEL == null) {
-										rEL = new HashMap<ShadowLock, VectorClock>();
-									}
-									rEL.put(rdLock.lock, rdLock.vc);
-									xST.Er.put(rTid, rEL);
+									if (xST.Er == null)  xST.Er = new TidLockClocks();
+									xST.Er.put(rTid, rdLock.lock, rdLock.vc);
 								}
-								rdLock = rdLock.next;
+								rdLock = rdLocks.inside(rdLock);
 							}
 							
 							//Is Write
-							HeldLS wrLock = xST.Wm;
+							final HeldLS wrLocks = xST.Wm;
+							HeldLS wrLock = HeldLS.outerMost(wrLocks);
 							while (wrLock != null) {
 								if (Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid))) {
 									break;
 								} else if (td.equals(wrLock.lock.getHoldingThread())) {
 									break;
 								} else {
-									if (xST.Ew == null)  xST.Ew = new HashMap<Integer/*tid*/, HashMap<ShadowLock, VectorClock>>();
-									HashMap<ShadowLock, VectorClock> wEL = xST.Ew.get(wTid);
-									if (wEL == null) {
-										wEL = new HashMap<ShadowLock, VectorClock>();
-									}
-									wEL.put(wrLock.lock, wrLock.vc);
-									xST.Ew.put(wTid, wEL);
+									if (xST.Ew == null)  xST.Ew = new TidLockClocks();
+									xST.Ew.put(wTid, wrLock.lock, wrLock.vc);
 								}
-								wrLock = wrLock.next;
+								wrLock = wrLocks.inside(wrLock);
 							}
 							
 							if (rdLock == null && !Epoch.leq(r, tV.get(rTid))) {
@@ -1911,7 +1990,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							//Update last access metadata
 							sx.W = E;
 							sx.R = E;
-							if (COUNT_EVENTS) writeExclusiveFP.inc(tid);
+							if (COUNT_EVENTS) writeExclusiveFP.inc(td);
 						}
 					} else { //read vector
 						//Rule(a) Check is pushed to slow path for all threads if a read by any thread races with the current write access
@@ -1925,12 +2004,12 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							if (COUNT_EVENTS) {
 								boolean set = false;
 								for (int prevRdTid = 0; prevRdTid < xST.SharedRm.length; prevRdTid++) {
-									HeldLS rdShrLock = xST.getSharedHeldLS(prevRdTid);
+									HeldLS rdShrLock = HeldLS.outerMost(xST.getSharedHeldLS(prevRdTid));
 									if (rdShrLock != null && prevRdTid != tid) {
 										if (Epoch.leq(rdShrLock.vc.get(prevRdTid), tV.get(prevRdTid))) {
 										} else if (td.equals(rdShrLock.lock.getHoldingThread())) { //Outer most lock conflicts with current access
 										} else {
-											extraWriteSetFP.inc(td.getTid());
+											extraWriteSetFP.inc(td);
 											set = true;
 										}
 									}
@@ -1938,19 +2017,20 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 								}
 								//Is Write
 								if (!set) {
-									HeldLS wrLock = xST.Wm;
+									HeldLS wrLock = HeldLS.outerMost(xST.Wm);
 									if (wrLock != null) {
 										if (Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid))) {
 										} else if (td.equals(wrLock.lock.getHoldingThread())) {
 										} else {
-											extraWriteSetFP.inc(td.getTid());
+											extraWriteSetFP.inc(td);
 										}
 									}
 								}
 							}
 							
 							for (int prevRdTid = 0; prevRdTid < xST.SharedRm.length; prevRdTid++) {
-								HeldLS rdShrLock = xST.getSharedHeldLS(prevRdTid);
+								final HeldLS rdShrLocks = xST.getSharedHeldLS(prevRdTid);
+								HeldLS rdShrLock = HeldLS.outerMost(rdShrLocks);
 								while (rdShrLock != null) {
 									if (prevRdTid != tid) {
 										if (Epoch.leq(rdShrLock.vc.get(prevRdTid), tV.get(prevRdTid))) {
@@ -1963,35 +2043,26 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 											if (WCP) tV.set(tid, ts_get_eHB(td)); //WCP union PO
 											break;
 										} else {
-											if (xST.Er == null)  xST.Er = new HashMap<Integer/*tid*/, HashMap<ShadowLock, VectorClock>>();
-											HashMap<ShadowLock, VectorClock> rShrEL = xST.Er.get(prevRdTid);
-											if (rShrEL == null) {
-												rShrEL = new HashMap<ShadowLock, VectorClock>();
-											}
-											rShrEL.put(rdShrLock.lock, rdShrLock.vc);
-											xST.Er.put(prevRdTid, rShrEL);
+											if (xST.Er == null)  xST.Er = new TidLockClocks();
+											xST.Er.put(prevRdTid, rdShrLock.lock, rdShrLock.vc);
 										}
 									}
-									rdShrLock = rdShrLock.next;
+									rdShrLock = rdShrLocks.inside(rdShrLock);
 								}
 								
 								//Is Write
-								HeldLS wrLock = xST.Wm;
+								final HeldLS wrLocks = xST.Wm;
+								HeldLS wrLock = HeldLS.outerMost(wrLocks);
 								while (wrLock != null) {
 									if (Epoch.leq(wrLock.vc.get(wTid), tV.get(wTid))) {
 										break;
 									} else if (td.equals(wrLock.lock.getHoldingThread())) {
 										break;
 									} else {
-										if (xST.Ew == null)  xST.Ew = new HashMap<Integer/*tid*/, HashMap<ShadowLock, VectorClock>>();
-										HashMap<ShadowLock, VectorClock> wEL = xST.Ew.get(wTid);
-										if (wEL == null) {
-											wEL = new HashMap<ShadowLock, VectorClock>();
-										}
-										wEL.put(wrLock.lock, wrLock.vc);
-										xST.Ew.put(wTid, wEL);
+										if (xST.Ew == null)  xST.Ew = new TidLockClocks();
+										xST.Ew.put(wTid, wrLock.lock, wrLock.vc);
 									}
-									wrLock = wrLock.next;
+									wrLock = wrLocks.inside(wrLock);
 								}
 							}
 							//Update last Rule(a) metadata
@@ -2001,7 +2072,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							//Update last access metadata
 							sx.W = E;
 							sx.R = E;
-							if (COUNT_EVENTS) writeSharedFP.inc(tid);
+							if (COUNT_EVENTS) writeSharedFP.inc(td);
 						}
 					}
 				}
@@ -2072,7 +2143,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							//Update last access metadata
 							sx.W = E;
 							sx.R = E;
-							if (COUNT_EVENTS) writeOwnedFP.inc(tid);
+							if (COUNT_EVENTS) writeOwnedFP.inc(td);
 						} else {
 							if (!Epoch.leq(r, tV.get(rTid))) {
 								ts_set_badVarState(td, sx);
@@ -2082,7 +2153,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							//Update last access metadata
 							sx.W = E;
 							sx.R = E;
-							if (COUNT_EVENTS) writeExclusiveFP.inc(tid);
+							if (COUNT_EVENTS) writeExclusiveFP.inc(td);
 						}
 					} else { //read vector
 						if (sx.anyGt(tV)) {
@@ -2093,7 +2164,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						//Update last access metadata
 						sx.W = E;
 						sx.R = E;
-						if (COUNT_EVENTS) writeSharedFP.inc(tid);
+						if (COUNT_EVENTS) writeSharedFP.inc(td);
 					}
 				}
 				
@@ -2115,7 +2186,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							if (WCP) tV.set(tid, getE(td)); //revert WCP union PO
 							return false;
 						}
-						if (COUNT_EVENTS) writeExclusiveFP.inc(tid);
+						if (COUNT_EVENTS) writeExclusiveFP.inc(td);
 					} else {	
 						//Read(Shr)-Write Race Check.
 						if (sx.anyGt(tV)) {
@@ -2123,7 +2194,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							if (WCP) tV.set(tid, getE(td)); //revert WCP union PO
 							return false;
 						}
-						if (COUNT_EVENTS) writeSharedFP.inc(tid);
+						if (COUNT_EVENTS) writeSharedFP.inc(td);
 					}
 					
 					//Update last access metadata
@@ -2131,14 +2202,14 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				}
 				
 				//Counting and WCP update
-				if (COUNT_EVENTS) writeFP.inc(td.getTid());
+				if (COUNT_EVENTS) writeFP.inc(td);
 				if (COUNT_EVENTS) {
 					if (td.getNumLocksHeld() == 0) {
-						writeOUT.inc(td.getTid());
-						writeOUTFP.inc(td.getTid());
+						writeOUT.inc(td);
+						writeOUTFP.inc(td);
 					} else {
-						writeIN.inc(td.getTid());
-						writeINFP.inc(td.getTid());
+						writeIN.inc(td);
+						writeINFP.inc(td);
 					}
 				}
 				if (WCP) tV.set(tid, getE(td)); //revert WCP union PO
@@ -2149,7 +2220,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		}
 	}
 	
-	protected void write(final AccessEvent event, final ShadowThread td, final PIPVarState x) {
+	//event is null when the access is replayed under DECOUPLED
+	protected void write(final AccessEvent event, final AccessInfo info, final ShadowThread td, final PIPVarState x) {
 		int/*epoch*/ e;
 		if (WCP) {
 			e = ts_get_eHB(td);
@@ -2159,16 +2231,16 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		
 		if (COUNT_EVENTS) {
 			if (td.getNumLocksHeld() == 0) {
-				writeOUT.inc(td.getTid());
+				writeOUT.inc(td);
 			} else {
-				writeIN.inc(td.getTid());
+				writeIN.inc(td);
 			}
 		}
 		
 		/* optional */ {
 			final int/*epoch*/ w = x.W;
 			if (w == e) {
-				if (COUNT_EVENTS) writeSameEpoch.inc(td.getTid());
+				if (COUNT_EVENTS) writeSameEpoch.inc(td);
 				return;
 			}
 		}
@@ -2182,13 +2254,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			
 			if (COUNT_EVENTS) {
 				if (td.getNumLocksHeld() > 0) {
-					holdLocks.inc(tid);
+					holdLocks.inc(td);
 					if (td.getNumLocksHeld() == 1) {
-						oneLockHeld.inc(tid);
+						oneLockHeld.inc(td);
 					} else if (td.getNumLocksHeld() == 2) {
-						twoNestedLocksHeld.inc(tid);
+						twoNestedLocksHeld.inc(td);
 					} else if (td.getNumLocksHeld() == 3) {
-						threeNestedLocksHeld.inc(tid);
+						threeNestedLocksHeld.inc(td);
 					}
 				}
 			}
@@ -2211,11 +2283,12 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						//Update last access metadata
 						x.W = e;
 						x.R = e;
-						if (COUNT_EVENTS) writeOwned.inc(tid);
+						if (COUNT_EVENTS) writeOwned.inc(td);
 					} else {
 						//Check Rule(a)
 						STVarState xST = (STVarState)x;
-						HeldLS rdLock = xST.Rm;
+						final HeldLS rdLocks = xST.Rm;
+						HeldLS rdLock = HeldLS.outerMost(rdLocks);
 						while (rdLock != null) {
 							if (!Epoch.leq(rdLock.vc.get(rTid), tV.get(rTid)) && td.equals(rdLock.lock.getHoldingThread())) {
 								//Establish Rule(a) and avoid checking for read-write race
@@ -2225,7 +2298,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 								if (WCP) tV.set(tid, ts_get_eHB(td)); //WCP union PO
 								break;
 							}
-							rdLock = rdLock.next;
+							rdLock = rdLocks.inside(rdLock);
 						}
 						if (rdLock == null && !Epoch.leq(r, tV.get(rTid))) {
 							shortestRaceTid = rTid;
@@ -2234,8 +2307,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						}
 						// Report shortest race
 						if (shortestRaceTid >= 0) {
-							error(event, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
-							if (COUNT_EVENTS) readWriteError.inc(tid);
+							error(event, info, td, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
+							if (COUNT_EVENTS) readWriteError.inc(td);
 						} //Write-Exclusive
 						//Update last Rule(a) metadata
 						xST.Wm = getHLS(td);
@@ -2243,13 +2316,14 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						//Update last access metadata
 						x.W = e;
 						x.R = e;
-						if (COUNT_EVENTS) writeExclusive.inc(tid);
+						if (COUNT_EVENTS) writeExclusive.inc(td);
 					}
 				} else { //read vector
 					//Rule(a) Check
 					STVarState xST = (STVarState)x;
 					for (int prevRdTid = 0; prevRdTid < xST.SharedRm.length; prevRdTid++) {
-						HeldLS rdShrLock = xST.getSharedHeldLS(prevRdTid);
+						final HeldLS rdShrLocks = xST.getSharedHeldLS(prevRdTid);
+						HeldLS rdShrLock = HeldLS.outerMost(rdShrLocks);
 						while (rdShrLock != null) {
 							if (prevRdTid != tid && !Epoch.leq(rdShrLock.vc.get(prevRdTid), tV.get(prevRdTid)) && td.equals(rdShrLock.lock.getHoldingThread())) {
 								//Establish Rule(a); Race Check already done
@@ -2259,7 +2333,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 								if (WCP) tV.set(tid, ts_get_eHB(td)); //WCP union PO
 								break;
 							}
-							rdShrLock = rdShrLock.next;
+							rdShrLock = rdShrLocks.inside(rdShrLock);
 						}
 						if (rdShrLock == null && prevRdTid != tid && !Epoch.leq(x.get(prevRdTid), tV.get(prevRdTid))) {
 							shortestRaceTid = prevRdTid;
@@ -2269,8 +2343,8 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 					}
 					// Report shortest race
 					if (shortestRaceTid >= 0) {
-						error(event, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
-						if (COUNT_EVENTS) sharedWriteError.inc(tid);
+						error(event, info, td, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
+						if (COUNT_EVENTS) sharedWriteError.inc(td);
 					} //Write-Shared
 					//Update last Rule(a) metadata
 					xST.Wm = getHLS(td);
@@ -2279,7 +2353,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 					//Update last access metadata
 					x.W = e;
 					x.R = e;
-					if (COUNT_EVENTS) writeShared.inc(tid);
+					if (COUNT_EVENTS) writeShared.inc(td);
 				}
 			}
 			
@@ -2292,7 +2366,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						//Update last access metadata
 						x.W = e;
 						x.R = e;
-						if (COUNT_EVENTS) writeOwned.inc(tid);
+						if (COUNT_EVENTS) writeOwned.inc(td);
 					} else {
 						if (!Epoch.leq(r, tV.get(rTid))) {
 							if (PRINT_EVENTS) Util.log("rd-wr exclusive error");
@@ -2302,13 +2376,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						}
 						// Report shortest race
 						if (shortestRaceTid >= 0) {
-							error(event, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
-							if (COUNT_EVENTS) readWriteError.inc(tid);
+							error(event, info, td, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
+							if (COUNT_EVENTS) readWriteError.inc(td);
 						} //Write-Exclusive
 						//Update last access metadata
 						x.W = e;
 						x.R = e;
-						if (COUNT_EVENTS) writeExclusive.inc(tid);
+						if (COUNT_EVENTS) writeExclusive.inc(td);
 					}
 				} else { //read vector
 					if (x.anyGt(tV)) {
@@ -2322,13 +2396,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 					}
 					// Report shortest race
 					if (shortestRaceTid >= 0) {
-						error(event, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
-						if (COUNT_EVENTS) sharedWriteError.inc(tid);
+						error(event, info, td, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
+						if (COUNT_EVENTS) sharedWriteError.inc(td);
 					} //Write-Shared
 					//Update last access metadata
 					x.W = e;
 					x.R = e;
-					if (COUNT_EVENTS) writeShared.inc(tid);
+					if (COUNT_EVENTS) writeShared.inc(td);
 				}
 			}
 			
@@ -2339,7 +2413,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 					shortestRaceTid = wTid;
 					shortestRaceIsWrite = true;
 					shortestRaceType = "Write-Write Race";
-					if (COUNT_EVENTS) writeWriteError.inc(tid);
+					if (COUNT_EVENTS) writeWriteError.inc(td);
 				}
 				
 				final int/*epoch*/ r = x.R;
@@ -2350,9 +2424,9 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 						shortestRaceTid = rTid;
 						shortestRaceIsWrite = false;
 						shortestRaceType = "Read-Write Race";
-						if (COUNT_EVENTS) readWriteError.inc(tid);
+						if (COUNT_EVENTS) readWriteError.inc(td);
 					}
-					if (COUNT_EVENTS) writeExclusive.inc(tid);
+					if (COUNT_EVENTS) writeExclusive.inc(td);
 				} else {	
 					//Read(Shr)-Write Race Check.
 					if (x.anyGt(tV)) {
@@ -2361,14 +2435,14 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 							shortestRaceIsWrite = false;
 							shortestRaceType = "Read(Shared)-Write Race";
 						}
-						if (COUNT_EVENTS) sharedWriteError.inc(tid);
+						if (COUNT_EVENTS) sharedWriteError.inc(td);
 					}
-					if (COUNT_EVENTS) writeShared.inc(tid);
+					if (COUNT_EVENTS) writeShared.inc(td);
 				}
 				
 				//Update vector clocks to make execution race free
 				if (shortestRaceTid >= 0) {
-					error(event, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
+					error(event, info, td, x, shortestRaceType, shortestRaceIsWrite ? "Write by " : "Read by ", shortestRaceTid, "Write by ", tid);
 				}
 				
 				//Update last access metadata
@@ -2387,6 +2461,17 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		if (orig instanceof PIPVarState) {
 			Object target = event.getTarget();
 			
+			if (DECOUPLED) {
+				final EventLog log = ts_get_eventLog(td);
+				if (target == null) {
+					synchronized(classInitTime) {
+						log.appendOrdered(CLASS_ACCESSED, 0, ((FieldAccessEvent)event).getInfo().getField().getOwner(), null, classOrder);
+					}
+				}
+				log.append(ACCESS, event.isWrite() ? 1 : 0, orig, event.getAccessInfo());
+				return;
+			}
+			
 			if (target == null) {
 				
 				synchronized(classInitTime) {
@@ -2409,13 +2494,13 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				if (!ST && !FTO) {
 					final int tid = td.getTid();
 					if (td.getNumLocksHeld() > 0) {
-						holdLocks.inc(tid);
+						holdLocks.inc(td);
 						if (td.getNumLocksHeld() == 1) {
-							oneLockHeld.inc(tid);
+							oneLockHeld.inc(td);
 						} else if (td.getNumLocksHeld() == 2) {
-							twoNestedLocksHeld.inc(tid);
+							twoNestedLocksHeld.inc(td);
 						} else if (td.getNumLocksHeld() == 3) {
-							threeNestedLocksHeld.inc(tid);
+							threeNestedLocksHeld.inc(td);
 						}
 					}
 				}
@@ -2497,10 +2582,10 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			
 			if (event.isWrite()) {
 				PIPVarState x = (PIPVarState)orig;
-				write(event, td, x);
+				write(event, event.getAccessInfo(), td, x);
 			} else {
 				PIPVarState x = (PIPVarState)orig;
-				read(event, td, x);
+				read(event, event.getAccessInfo(), td, x);
 			}
 			
 			if (PRINT_EVENTS) {
@@ -2528,16 +2613,37 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 	public void volatileAccess(final VolatileAccessEvent event) {
 		final ShadowThread td = event.getThread();
 		final PIPVolatileState vd = getV(event.getShadowVolatile());
-		final VectorClock volV = getV(event.getShadowVolatile());
 		
-		if (COUNT_EVENTS) vol.inc(td.getTid());
+		if (COUNT_EVENTS) vol.inc(td);
+		
+		if (DECOUPLED) {
+			synchronized(vd) {
+				ts_get_eventLog(td).appendOrdered(VOLATILE, event.isWrite() ? 1 : 0, vd, null, vd.replayOrder);
+			}
+		} else {
+			handleVolatileAccess(td, vd, event.isWrite());
+		}
+		
+		if (PRINT_EVENTS) {
+			String fieldName = event.getInfo().getField().getName();
+			if (event.isWrite()) {
+				Util.log("volatile wr("+ fieldName +") by T"+td.getTid());
+			} else {
+				Util.log("volatile rd("+ fieldName +") by T"+td.getTid());
+			}
+		}
+		super.volatileAccess(event);
+	}
+	
+	public void handleVolatileAccess(final ShadowThread td, final PIPVolatileState vd, final boolean isWrite) {
+		final VectorClock volV = vd;
 		
 		//Vindicator synchronizes on volV, but FT2 does not.
-		if(event.isWrite()) {
+		if(isWrite) {
 			final VectorClock tV = getV(td);
 			if (WCP) {
-				final VectorClock volVhb = volatileVwcpHB.get(event.getShadowVolatile());
-				final PIPVolatileState vdhb = volatileVwcpHB.get(event.getShadowVolatile());
+				final VectorClock volVhb = getVwcpHB(vd.getPeer());
+				final PIPVolatileState vdhb = getVwcpHB(vd.getPeer());
 				//incomming rd-wr edge
 				ts_get_vHB(td).max(vdhb.readsJoined);
 				ts_get_vWCP(td).max(vdhb.readsJoined);
@@ -2546,6 +2652,7 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				ts_get_vWCP(td).max(volVhb);
 				//outgoing wr-wr and wr-rd edge
 				volV.max(ts_get_vHB(td));
+				vd.wrote();
 				ts_set_eWCP(td, ts_get_vWCP(td).get(td.getTid()));
 				
 				volVhb.max(ts_get_vHB(td));
@@ -2559,13 +2666,14 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				tV.max(volV);//volV -> vd.write
 				//outgoing wr-wr and wr-rd edge
 				volV.max(tV);
+				vd.wrote();
 				incEpochAndCV(td);
 			}
 		} else {
 			final VectorClock tV = getV(td);
 			if (WCP) {
-				final VectorClock volVhb = volatileVwcpHB.get(event.getShadowVolatile());
-				final PIPVolatileState vdhb = volatileVwcpHB.get(event.getShadowVolatile());
+				final VectorClock volVhb = getVwcpHB(vd.getPeer());
+				final PIPVolatileState vdhb = getVwcpHB(vd.getPeer());
 				//incomming wr-rd edge
 				ts_get_vHB(td).max(volVhb);
 				ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
@@ -2577,32 +2685,45 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
 			}
 			if (!WCP) {
-				//incomming wr-rd edge
-				maxEpochAndCV(td, volV);//volV -> vd.write
+				//incomming wr-rd edge, unless this thread already joined the latest write
+				VolatileJoinCache volJoins = ts_get_volJoins(td);
+				if (volJoins == null) {
+					volJoins = new VolatileJoinCache();
+					ts_set_volJoins(td, volJoins);
+				}
+				final int writeVersion = vd.getWriteVersion();
+				if (!volJoins.joined(vd, vd.id, writeVersion)) {
+					maxEpochAndCV(td, volV);//volV -> vd.write
+					volJoins.record(vd, vd.id, writeVersion);
+				} else if (COUNT_EVENTS) {
+					volReadJoined.inc(td);
+				}
 				//outgoing rd-wr edge
 				vd.readsJoined.max(tV);
 				incEpochAndCV(td);
 			}
 		}
-		
-		if (PRINT_EVENTS) {
-			String fieldName = event.getInfo().getField().getName();
-			if (event.isWrite()) {
-				Util.log("volatile wr("+ fieldName +") by T"+td.getTid());
-			} else {
-				Util.log("volatile rd("+ fieldName +") by T"+td.getTid());
-			}
-		}
-		super.volatileAccess(event);
 	}
 	
 	@Override
 	public void preStart(final StartEvent event) {
 		final ShadowThread td = event.getThread();
 		final ShadowThread forked = event.getNewThread();
-		final VectorClock tV = getV(td);
 		
-		if (COUNT_EVENTS) fork.inc(td.getTid());
+		if (COUNT_EVENTS) fork.inc(td);
+		
+		if (DECOUPLED) {
+			ts_get_eventLog(td).append(START, 0, ts_get_eventLog(forked), null);
+		} else {
+			handleFork(td, forked);
+		}
+		
+		if (PRINT_EVENTS) Util.log("preStart by T"+td.getTid());
+		super.preStart(event);
+	}
+	
+	public void handleFork(final ShadowThread td, final ShadowThread forked) {
+		final VectorClock tV = getV(td);
 		
 		//FT2 inc, Vindicator claims not needed since create() does an increment
 		if (WCP) {
@@ -2617,9 +2738,6 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 			maxEpochAndCV(forked, tV);
 			incEpochAndCV(td);
 		}
-		
-		if (PRINT_EVENTS) Util.log("preStart by T"+td.getTid());
-		super.preStart(event);
 	}
 	
 	@Override
@@ -2627,8 +2745,21 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		final ShadowThread td = event.getThread();
 		final ShadowThread joining = event.getJoiningThread();
 		
-		if (COUNT_EVENTS) join.inc(td.getTid());
+		if (COUNT_EVENTS) join.inc(td);
 		
+		//The joined thread's events are all replayed before the join
+		if (DECOUPLED) {
+			final EventLog joiningLog = ts_get_eventLog(joining);
+			ts_get_eventLog(td).appendAfter(JOIN, 0, joiningLog, null, joiningLog);
+		} else {
+			handleJoin(td, joining);
+		}
+		
+		if (PRINT_EVENTS) Util.log("postJoin by T"+td.getTid());
+		super.postJoin(event);
+	}
+	
+	public void handleJoin(final ShadowThread td, final ShadowThread joining) {
 		if (WCP) {
 			ts_get_vHB(td).max(ts_get_vHB(joining));
 			ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
@@ -2639,28 +2770,33 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		if (!WCP) {
 			maxEpochAndCV(td, getV(joining));
 		}
-		
-		if (PRINT_EVENTS) Util.log("postJoin by T"+td.getTid());
-		super.postJoin(event);
 	}
 	
 	@Override
 	public void preWait(WaitEvent event) {
 		final ShadowThread td = event.getThread();
 		
-		if (COUNT_EVENTS) preWait.inc(td.getTid());
+		if (COUNT_EVENTS) preWait.inc(td);
 		
+		if (DECOUPLED) {
+			final LockState lockV = getV(event.getLock());
+			ts_get_eventLog(td).appendOrdered(RELEASE, 1, lockV, null, lockV.replayOrder);
+		} else {
+			handlePreWait(td, getV(event.getLock()), event.getInfo());
+		}
+		
+		if (PRINT_EVENTS) Util.log("preWait by T"+td.getTid());
+		super.preWait(event);
+	}
+	
+	public void handlePreWait(ShadowThread td, LockState lockV, OperationInfo info) {
 		if (HB) {
-			final VectorClock lockV = getV(event.getLock());
 			lockV.max(getV(td)); // we hold lock, so no need to sync here...
 			incEpochAndCV(td);
 		}
 		if (!HB) {
-			handleRelease(td, getV(event.getLock()), event.getInfo());
+			handleRelease(td, lockV, info);
 		}
-		
-		if (PRINT_EVENTS) Util.log("preWait by T"+td.getTid());
-		super.preWait(event);
 	}
 	
 	@Override
@@ -2668,45 +2804,192 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 		final ShadowThread td = event.getThread();
 		final ShadowLock lock = event.getLock();
 		
-		if (COUNT_EVENTS) postWait.inc(td.getTid());
+		if (COUNT_EVENTS) postWait.inc(td);
+		
+		if (DECOUPLED) {
+			final LockState lockV = getV(lock);
+			ts_get_eventLog(td).appendOrdered(ACQUIRE, 1, lockV, null, lockV.replayOrder);
+		} else {
+			handlePostWait(td, lock, event.getInfo());
+		}
 		
+		if (PRINT_EVENTS) Util.log("postWait by T"+td.getTid());
+		super.postWait(event);
+	}
+	
+	public void handlePostWait(ShadowThread td, ShadowLock lock, OperationInfo info) {
 		if (HB) {
 			maxEpochAndCV(td, getV(lock)); // we hold lock here
 		}
 		if (!HB) {
-			handleAcquireHardEdge(td, lock, event.getInfo());
+			handleAcquireHardEdge(td, lock, info);
 		}
-		
-		if (PRINT_EVENTS) Util.log("postWait by T"+td.getTid());
-		super.postWait(event);
 	}
 	
 	@Override
 	public void preDoBarrier(BarrierEvent<PIPBarrierState> be) {
-		// TODO Auto-generated method stub
-		Assert.assertTrue(false);
+		final ShadowThread td = be.getThread();
+		final PIPBarrierState barrierObj = be.getBarrier();
+		
+		if (COUNT_EVENTS) barrier.inc(td);
+		
+		if (DECOUPLED) {
+			synchronized(barrierObj) {
+				ts_get_eventLog(td).appendOrdered(BARRIER_ENTER, 0, barrierObj, null, barrierObj.replayOrder);
+			}
+		} else {
+			handleEnterBarrier(td, barrierObj);
+		}
 		
+		if (PRINT_EVENTS) Util.log("preDoBarrier by T"+td.getTid());
+	}
+	
+	public void handleEnterBarrier(final ShadowThread td, final PIPBarrierState barrierObj) {
+		//Every thread entering a round joins the same clock, which it picks up again on exit
+		synchronized(barrierObj) {
+			final VectorClock barrierV = barrierObj.enterBarrier();
+			if (WCP) {
+				barrierV.max(ts_get_vHB(td));
+				ts_get_vHB(td).tick(td.getTid());
+				ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
+			}
+			if (!WCP) {
+				barrierV.max(getV(td));
+				incEpochAndCV(td);
+			}
+			ts_set_barrierV(td, barrierV);
+		}
 	}
 
 	@Override
 	public void postDoBarrier(BarrierEvent<PIPBarrierState> be) {
-		// TODO Auto-generated method stub
-		Assert.assertTrue(false);
+		final ShadowThread td = be.getThread();
+		final PIPBarrierState barrierObj = be.getBarrier();
+		
+		if (COUNT_EVENTS) barrier.inc(td);
+		
+		if (DECOUPLED) {
+			synchronized(barrierObj) {
+				ts_get_eventLog(td).appendOrdered(BARRIER_EXIT, 0, barrierObj, null, barrierObj.replayOrder);
+			}
+		} else {
+			handleExitBarrier(td, barrierObj);
+		}
+		
+		if (PRINT_EVENTS) Util.log("postDoBarrier by T"+td.getTid());
+	}
+	
+	public void handleExitBarrier(final ShadowThread td, final PIPBarrierState barrierObj) {
+		//A barrier is an all-to-all hard edge, so every relation takes the whole round's clock
+		synchronized(barrierObj) {
+			final VectorClock barrierV = ts_get_barrierV(td);
+			barrierObj.stopUsingOldVectorClock(barrierV);
+			if (WCP) {
+				ts_get_vHB(td).max(barrierV);
+				ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
+				
+				getV(td).max(barrierV);
+				ts_set_eWCP(td, ts_get_vWCP(td).get(td.getTid()));
+			}
+			if (!WCP) {
+				maxEpochAndCV(td, barrierV);
+			}
+			ts_set_barrierV(td, null);
+		}
+	}
+	
+	//A shared release of a JUC synchronizer is handled like class initialization and a shared acquire like a class access
+	@Override
+	public void preReleaseShared(JUCEvent<PIPVolatileState> je) {
+		final ShadowThread td = je.getThread();
+		final PIPVolatileState syncV = je.getSync();
+		
+		if (COUNT_EVENTS) jucRelease.inc(td);
+		
+		if (DECOUPLED) {
+			synchronized(syncV) {
+				ts_get_eventLog(td).appendOrdered(SHARED_RELEASE, 0, syncV, null, syncV.replayOrder);
+			}
+		} else {
+			handleReleaseShared(td, syncV);
+		}
 		
+		if (PRINT_EVENTS) Util.log("juc release by T"+td.getTid());
+	}
+	
+	public void handleReleaseShared(final ShadowThread td, final VectorClock syncV) {
+		synchronized(syncV) {
+			if (WCP) {
+				syncV.max(ts_get_vHB(td));
+				ts_get_vHB(td).tick(td.getTid());
+				ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
+			}
+			if (!WCP) {
+				syncV.max(getV(td));
+				incEpochAndCV(td);
+			}
+		}
+	}
+	
+	@Override
+	public void postAcquireShared(JUCEvent<PIPVolatileState> je) {
+		final ShadowThread td = je.getThread();
+		final PIPVolatileState syncV = je.getSync();
+		
+		if (COUNT_EVENTS) jucAcquire.inc(td);
+		
+		if (DECOUPLED) {
+			synchronized(syncV) {
+				ts_get_eventLog(td).appendOrdered(SHARED_ACQUIRE, 0, syncV, null, syncV.replayOrder);
+			}
+		} else {
+			handleAcquireShared(td, syncV);
+		}
+		
+		if (PRINT_EVENTS) Util.log("juc acquire by T"+td.getTid());
+	}
+	
+	public void handleAcquireShared(final ShadowThread td, final VectorClock syncV) {
+		synchronized(syncV) {
+			if (WCP) {
+				ts_get_vHB(td).max(syncV);
+				ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
+				
+				getV(td).max(syncV);
+				ts_set_eWCP(td, ts_get_vWCP(td).get(td.getTid()));
+			}
+			if (!WCP) {
+				maxEpochAndCV(td, syncV);
+			}
+		}
 	}
 	
 	@Override
 	public void classInitialized(ClassInitializedEvent event) {
 		final ShadowThread td = event.getThread();
-		final VectorClock tV = getV(td);
 		
-		if (COUNT_EVENTS) classInit.inc(td.getTid());
+		if (COUNT_EVENTS) classInit.inc(td);
+		
+		if (DECOUPLED) {
+			synchronized(classInitTime) {
+				ts_get_eventLog(td).appendOrdered(CLASS_INITIALIZED, 0, event.getRRClass(), null, classOrder);
+			}
+		} else {
+			handleClassInitialized(td, event.getRRClass());
+		}
+		
+		if (PRINT_EVENTS) Util.log("classInitialized by T"+td.getTid());
+		super.classInitialized(event);
+	}
+	
+	public void handleClassInitialized(final ShadowThread td, final ClassInfo rrClass) {
+		final VectorClock tV = getV(td);
 		
 		synchronized(classInitTime) {
-			VectorClock initTime = classInitTime.get(event.getRRClass());
+			VectorClock initTime = classInitTime.get(rrClass);
 			initTime.max(tV);
 			if (WCP) {
-				VectorClock initTimehb = classInitTimeWCPHB.get(event.getRRClass());
+				VectorClock initTimehb = classInitTimeWCPHB.get(rrClass);
 				initTimehb.max(ts_get_vHB(td));
 			}
 		
@@ -2718,21 +3001,30 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				incEpochAndCV(td);
 			}
 		}
-		
-		if (PRINT_EVENTS) Util.log("classInitialized by T"+td.getTid());
-		super.classInitialized(event);
 	}
 	
 	@Override
 	public void classAccessed(ClassAccessedEvent event) {
 		final ShadowThread td = event.getThread();
 		
-		if (COUNT_EVENTS) classAccess.inc(td.getTid());
+		if (COUNT_EVENTS) classAccess.inc(td);
+		
+		if (DECOUPLED) {
+			synchronized(classInitTime) {
+				ts_get_eventLog(td).appendOrdered(CLASS_ACCESSED, 0, event.getRRClass(), null, classOrder);
+			}
+		} else {
+			handleClassAccessed(td, event.getRRClass());
+		}
 		
+		if (PRINT_EVENTS) Util.log("classAccessed by T"+td.getTid());
+	}
+	
+	public void handleClassAccessed(final ShadowThread td, final ClassInfo rrClass) {
 		synchronized(classInitTime) {
-			final VectorClock initTime = classInitTime.get(event.getRRClass());
+			final VectorClock initTime = classInitTime.get(rrClass);
 			if (WCP) {
-				final VectorClock initTimehb = classInitTimeWCPHB.get(event.getRRClass());
+				final VectorClock initTimehb = classInitTimeWCPHB.get(rrClass);
 				ts_get_vHB(td).max(initTimehb);
 				ts_set_eHB(td, ts_get_vHB(td).get(td.getTid()));
 				
@@ -2743,70 +3035,117 @@ public class PIPTool extends Tool implements BarrierListener<PIPBarrierState> {
 				maxEpochAndCV(td, initTime);
 			}
 		}
-		
-		if (PRINT_EVENTS) Util.log("classAccessed by T"+td.getTid());
+	}
+	
+	/*
+	 * Analyze one record of the thread's log on a worker (DECOUPLED), with the
+	 * handlers the application threads use otherwise.  Each log is replayed by
+	 * one worker at a time in program order, so a thread's clocks are only
+	 * touched by the worker replaying it.  Lock, volatile, JUC, barrier and class
+	 * records replay in the order the application issued them (see ReplayOrder),
+	 * so every worker sees each synchronization object's operations in the order
+	 * they ran.
+	 */
+	public void replay(final EventLog log, final int kind, final int arg, final Object a, final Object b) {
+		final ShadowThread td = log.td;
+		switch (kind) {
+		case ACCESS:
+			if (arg != 0) {
+				write(null, (AccessInfo)b, td, (PIPVarState)a);
+			} else {
+				read(null, (AccessInfo)b, td, (PIPVarState)a);
+			}
+			break;
+		case ACQUIRE:
+			if (arg != 0) {
+				handlePostWait(td, ((LockState)a).getPeer(), null);
+			} else {
+				handleAcquire(td, ((LockState)a).getPeer(), null);
+			}
+			break;
+		case RELEASE:
+			if (arg != 0) {
+				handlePreWait(td, (LockState)a, null);
+			} else {
+				handleRelease(td, (LockState)a, null);
+			}
+			break;
+		case VOLATILE:
+			handleVolatileAccess(td, (PIPVolatileState)a, arg != 0);
+			break;
+		case VOLATILE_CREATED: {
+			final PIPVolatileState volV = (PIPVolatileState)a;
+			volV.max(getV(td));
+			volV.wrote();
+			break;
+		}
+		case SHARED_RELEASE:
+			handleReleaseShared(td, (PIPVolatileState)a);
+			break;
+		case SHARED_ACQUIRE:
+			handleAcquireShared(td, (PIPVolatileState)a);
+			break;
+		case CLASS_INITIALIZED:
+			handleClassInitialized(td, (ClassInfo)a);
+			break;
+		case CLASS_ACCESSED:
+			handleClassAccessed(td, (ClassInfo)a);
+			break;
+		case START: {
+			final EventLog forkedLog = (EventLog)a;
+			handleFork(td, forkedLog.td);
+			forkedLog.open();
+			break;
+		}
+		case JOIN:
+			handleJoin(td, ((EventLog)a).td);
+			break;
+		case BARRIER_ENTER:
+			handleEnterBarrier(td, (PIPBarrierState)a);
+			break;
+		case BARRIER_EXIT:
+			handleExitBarrier(td, (PIPBarrierState)a);
+			break;
+		}
 	}
 	
 	public static String toString(final ShadowThread td) {
 		return String.format("[tid=%-2d C=%s E=%s]", td.getTid(), getV(td), Epoch.toString(getE(td)));
 	}
 	
-	protected void recordRace(final AccessEvent event) {
-		StaticRace staticRace = new StaticRace(event.getAccessInfo().getLoc());
+	protected void recordRace(final AccessInfo info) {
+		StaticRace staticRace = new StaticRace(info.getLoc());
 		StaticRace.addRace(staticRace);
 	}
 	
-	protected void error(final AccessEvent event, final PIPVarState x, final String description, final String prevOp, final int prevTid, final String curOp, final int curTid) {
+	//event is null when the access is replayed under DECOUPLED
+	protected void error(final AccessEvent event, final AccessInfo info, final ShadowThread td, final PIPVarState x, final String description, final String prevOp, final int prevTid, final String curOp, final int curTid) {
 		if (COUNT_RACES) {
-			recordRace(event);
+			recordRace(info);
 			// Don't bother printing error during performance execution. All race information is collected using StaticRace now.
 			//Update: ErrorMessage has added errorQuite so that race counting prints nothing during execution.
 			if (COUNT_EVENTS) {
-				if (event instanceof FieldAccessEvent) {
-					fieldError((FieldAccessEvent) event, x, description, prevOp, prevTid, curOp, curTid);
+				if (info instanceof FieldAccessInfo) {
+					fieldError(td, (FieldAccessInfo) info, x, description, prevOp, prevTid, curOp, curTid);
 				} else {
-					arrayError((ArrayAccessEvent) event, x, description, prevOp, prevTid, curOp, curTid);
+					arrayError((ArrayAccessEvent) event, td, (ArrayAccessInfo) info, x, description, prevOp, prevTid, curOp, curTid);
 				}
 			}
 		}
 	}
 	
-	protected void fieldError(final FieldAccessEvent event, final PIPVarState x, final String description, final String prevOp, final int prevTid, final String curOp, final int curTid) {
-		final FieldInfo fd = event.getInfo().getField();
-		final ShadowThread td = event.getThread();
-		final Object target = event.getTarget();
-		
-		fieldErrors.errorQuite(td,
-				fd, 
-				"Shadow State",		x,
-				"Current Thread",	toString(td),
-				"Class",			(target==null?fd.getOwner():target.getClass()),
-				"Field",			Util.objectToIdentityString(target) + "." + fd,
-				"Message",			description,
-				"Previous Op",		prevOp + " " + ShadowThread.get(prevTid),
-				"Current Op",		curOp + " " + ShadowThread.get(curTid),
-				"Stack",			ShadowThread.stackDumpForErrorMessage(td));
+	protected void fieldError(final ShadowThread td, final FieldAccessInfo info, final PIPVarState x, final String description, final String prevOp, final int prevTid, final String curOp, final int curTid) {
+		fieldErrors.record(td, info.getField(), description, prevTid);
 		
 		if (DEBUG) Assert.assertTrue(prevTid != curTid);
 	}
 	
-	protected void arrayError(final ArrayAccessEvent event, final PIPVarState x, final String description, final String prevOp, final int prevTid, final String curOp, final int curTid) {
-		final ShadowThread td = event.getThread();
-		final Object target = event.getTarget();
-		
-		arrayErrors.errorQuite(td,
-				event.getInfo(),
-				"Alloc Site",		ArrayAllocSiteTracker.get(target),
-				"Shadow State",		x,
-				"Current Thread",	toString(td),
-				"Array",			Util.objectToIdentityString(target) + "[" + event.getIndex() + "]",
-				"Message",			description,
-				"Previous Op",		prevOp + " " + ShadowThread.get(prevTid),
-				"Current Op",		curOp + " " + ShadowThread.get(curTid),
-				"Stack",			ShadowThread.stackDumpForErrorMessage(td));
+	protected void arrayError(final ArrayAccessEvent event, final ShadowThread td, final ArrayAccessInfo info, final PIPVarState x, final String description, final String prevOp, final int prevTid, final String curOp, final int curTid) {
+		arrayErrors.record(td, info, description, prevTid);
 		
 		if (DEBUG) Assert.assertTrue(prevTid != curTid);
 		
-		event.getArrayState().specialize();
+		//A replayed access no longer has the array at hand, so its array keeps a coarse shadow
+		if (event != null) event.getArrayState().specialize();
 	}
 }
@@ -1,6 +1,6 @@
 package tools.pip;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 import rr.state.ShadowLock;
 import rr.state.ShadowVar;
@@ -41,14 +41,112 @@ public class PIPVarState extends VectorClock implements ShadowVar {
 	}
 }
 
+/* A thread's held locks as a persistent stack: each node points to the node of the lock held just outside it.
+ * A snapshot is a reference to the innermost node, so snapshots taken at different depths share the nodes of their outer locks,
+ * a release only drops back to an existing node and an acquire pushes one node. Nodes are never modified once built. */
 class HeldLS {
-	ShadowLock lock;
-	VectorClock vc;
-	HeldLS next = null;
+	final ShadowLock lock;
+	final VectorClock vc;
+	final HeldLS outer;
 	
-	public HeldLS (ShadowLock lock, VectorClock vc) {
+	public HeldLS (ShadowLock lock, VectorClock vc, HeldLS outer) {
 		this.lock = lock;
 		this.vc = vc;
+		this.outer = outer;
+	}
+	
+	//The node of the outer most lock held, or null if held is null
+	static HeldLS outerMost(HeldLS held) {
+		if (held != null) {
+			while (held.outer != null) {
+				held = held.outer;
+			}
+		}
+		return held;
+	}
+	
+	//The node of the lock held just inside of held in this snapshot, or null if held is the inner most lock
+	HeldLS inside(HeldLS held) {
+		if (held == this) return null;
+		HeldLS inner = this;
+		while (inner.outer != held) {
+			inner = inner.outer;
+		}
+		return inner;
+	}
+}
+
+/* Critical section vector clocks keyed by (tid, lock), as kept for the extra Rule(a) writes and reads of an STVarState.
+ * A variable rarely has more than one or two entries, so they sit in parallel arrays that are searched linearly.
+ * Lookups neither box the tid nor allocate. Removal moves the last entry into the freed slot. */
+class TidLockClocks {
+	private int[] tids = new int[2];
+	private ShadowLock[] locks = new ShadowLock[2];
+	private VectorClock[] clocks = new VectorClock[2];
+	private int size = 0;
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int tid(int i) {
+		return tids[i];
+	}
+
+	public ShadowLock lock(int i) {
+		return locks[i];
+	}
+
+	public VectorClock clock(int i) {
+		return clocks[i];
+	}
+
+	public void put(int tid, ShadowLock lock, VectorClock vc) {
+		for (int i = 0; i < size; i++) {
+			if (tids[i] == tid && locks[i] == lock) {
+				clocks[i] = vc;
+				return;
+			}
+		}
+		if (size == tids.length) {
+			tids = Arrays.copyOf(tids, size * 2);
+			locks = Arrays.copyOf(locks, size * 2);
+			clocks = Arrays.copyOf(clocks, size * 2);
+		}
+		tids[size] = tid;
+		locks[size] = lock;
+		clocks[size] = vc;
+		size++;
+	}
+
+	public void remove(int i) {
+		size--;
+		tids[i] = tids[size];
+		locks[i] = locks[size];
+		clocks[i] = clocks[size];
+		locks[size] = null;
+		clocks[size] = null;
+	}
+
+	public void remove(int tid, ShadowLock lock) {
+		for (int i = 0; i < size; i++) {
+			if (tids[i] == tid && locks[i] == lock) {
+				remove(i);
+				return;
+			}
+		}
+	}
+
+	public void removeTid(int tid) {
+		for (int i = size - 1; i >= 0; i--) {
+			if (tids[i] == tid) {
+				remove(i);
+			}
+		}
 	}
 }
 
@@ -57,8 +155,8 @@ class STVarState extends PIPVarState {
 	HeldLS Rm = null;
 	HeldLS[] SharedRm = null;
 	
-	HashMap<Integer/*tid*/, HashMap<ShadowLock, VectorClock>> Ew = null;
-	HashMap<Integer/*tid*/, HashMap<ShadowLock, VectorClock>> Er = null;
+	TidLockClocks Ew = null;
+	TidLockClocks Er = null;
 	
 	public STVarState(boolean isWrite, int epoch, boolean isOwned) {
 		super(isWrite, epoch, isOwned);
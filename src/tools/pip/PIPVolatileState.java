@@ -1,15 +1,31 @@
 package tools.pip;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import acme.util.Util;
 import rr.state.ShadowVolatile;
+import tools.util.ReplayOrder;
 import tools.util.VectorClock;
+import tools.util.VolatileJoinCache;
 
 public class PIPVolatileState extends VectorClock {
 
+	private static final AtomicIntegerFieldUpdater<PIPVolatileState> WRITE_VERSION =
+			AtomicIntegerFieldUpdater.newUpdater(PIPVolatileState.class, "writeVersion");
+	
 	private final ShadowVolatile peer;
 	
 	public VectorClock readsJoined;
 	
+	//Bumped after each change to the write clock, so readers can tell whether they already joined it.
+	//Volatile accesses are not synchronized, so the bump is atomic and comes after the clock is updated.
+	private volatile int writeVersion;
+	
+	final int id = VolatileJoinCache.nextId();
+	
+	//Under PIPTool.DECOUPLED, the order of the accesses (or JUC operations), issued while synchronized on this
+	final ReplayOrder replayOrder = PIPTool.DECOUPLED ? new ReplayOrder() : null;
+	
 	public PIPVolatileState(ShadowVolatile peer, int size) {
 		super(size);
 		this.peer = peer;
@@ -20,6 +36,14 @@ public class PIPVolatileState extends VectorClock {
 		return peer;
 	}
 	
+	public int getWriteVersion() {
+		return writeVersion;
+	}
+	
+	public void wrote() {
+		WRITE_VERSION.incrementAndGet(this);
+	}
+	
 	@Override
 	public synchronized String toString() {
 		return String.format("[peer %s: %s]", Util.objectToIdentityString(peer), super.toString());
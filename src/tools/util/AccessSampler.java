@@ -0,0 +1,156 @@
+/******************************************************************************
+
+Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package tools.util;
+
+import acme.util.count.AbstractCounter;
+import acme.util.count.ThreadSafeCounter;
+import rr.tool.RR;
+
+/**
+ * Per-thread schedule for sampling data accesses.  A thread's accesses are
+ * split into windows of roughly -sampleWindow accesses, and each window is
+ * either analyzed or skipped.  Synchronization is never skipped, so the
+ * clocks stay exact and a skipped access can only hide races, never cause
+ * a false one.
+ * 
+ * The fraction of analyzed windows adapts to the -sampleBudget: at every
+ * window boundary the time per access is measured, and the rate is lowered
+ * when analyzed windows run more than budget percent slower than skipped ones.
+ * 
+ * Instances are owned by a single thread and are not synchronized.
+ */
+public final class AccessSampler {
+
+	private static final int WINDOW = Math.max(2, RR.sampleWindowOption.get());
+	private static final double BUDGET = RR.sampleBudgetOption.get() / 100.0;
+	private static final double MIN_RATE = 0.001;
+
+	/* Force a skipped window this often to keep the baseline timing current. */
+	private static final int REFRESH_PERIOD = 64;
+
+	private static final ThreadSafeCounter sampledWindows = new ThreadSafeCounter("Sampling", "Sampled Windows");
+	private static final ThreadSafeCounter skippedWindows = new ThreadSafeCounter("Sampling", "Skipped Windows");
+	private static final ThreadSafeCounter analyzedAccesses = new ThreadSafeCounter("Sampling", "Accesses Analyzed");
+	private static final ThreadSafeCounter skippedAccesses = new ThreadSafeCounter("Sampling", "Accesses Skipped");
+	static {
+		new AbstractCounter("Sampling", "Coverage") {
+			@Override
+			public String get() {
+				long a = analyzedAccesses.getCount();
+				long total = a + skippedAccesses.getCount();
+				return total == 0 ? "-" : String.format("%.2f%%", 100.0 * a / total);
+			}
+		};
+	}
+
+	private int seed;
+
+	private double nsPerSampledAccess = -1;
+	private double nsPerSkippedAccess = -1;
+	private double rate = 1.0;
+	private double credit = 0;
+	private int windows = 0;
+
+	/* Signed length of the window in progress, and when it started. */
+	private int current = 0;
+	private long start;
+
+	public AccessSampler(int tid) {
+		this.seed = 0x9E3779B9 * (tid + 1);
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Close the current window and choose the next one.  Returns the length of the
+	 * next window: positive if its accesses are to be analyzed, and negative if
+	 * they are to be skipped.
+	 */
+	public int nextWindow() {
+		final long now = System.nanoTime();
+		if (current > 0) {
+			nsPerSampledAccess = average(nsPerSampledAccess, (double)(now - start) / current);
+			sampledWindows.inc();
+			analyzedAccesses.add(current);
+		} else if (current < 0) {
+			nsPerSkippedAccess = average(nsPerSkippedAccess, (double)(now - start) / -current);
+			skippedWindows.inc();
+			skippedAccesses.add(-current);
+		}
+		updateRate();
+
+		final boolean sample;
+		if (nsPerSampledAccess < 0 || nsPerSkippedAccess < 0) {
+			sample = current <= 0;
+		} else if (++windows % REFRESH_PERIOD == 0) {
+			sample = false;
+		} else {
+			credit += rate;
+			sample = credit >= 1.0;
+			if (sample) credit -= 1.0;
+		}
+
+		final int length = WINDOW / 2 + (nextRandom() >>> 1) % WINDOW;
+		current = sample ? length : -length;
+		start = System.nanoTime();
+		return current;
+	}
+
+	private void updateRate() {
+		if (nsPerSampledAccess < 0 || nsPerSkippedAccess <= 0) return;
+		final double extra = nsPerSampledAccess / nsPerSkippedAccess - 1.0;
+		rate = extra <= BUDGET ? 1.0 : Math.max(MIN_RATE, BUDGET / extra);
+	}
+
+	private static double average(double old, double sample) {
+		return old < 0 ? sample : 0.75 * old + 0.25 * sample;
+	}
+
+	private int nextRandom() {
+		int x = seed;
+		x ^= x << 13;
+		x ^= x >>> 17;
+		x ^= x << 5;
+		seed = x;
+		return x;
+	}
+
+	public double getRate() {
+		return rate;
+	}
+}
@@ -0,0 +1,202 @@
+/******************************************************************************
+
+Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package tools.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import acme.util.count.ThreadSafeCounter;
+import rr.state.ShadowThread;
+
+/**
+ * One thread's events, in program order, for a LogReplayer to analyze on
+ * another thread.  A record is a kind, an int and two references.  It may
+ * carry a gate that holds it back until a ReplayOrder, or another log, has
+ * been replayed far enough.
+ * 
+ * Appends must be serialized.  A log is appended to by its thread, or by
+ * another thread while it holds the lock that the tool always holds when
+ * appending to that log.  Only the replayer that has claimed a log reads it.
+ * 
+ * The log is a ring of CAPACITY records.  An append to a full log waits for
+ * the replayer, so the application runs at most CAPACITY records ahead of the
+ * analysis of each thread.
+ */
+public final class EventLog {
+
+	public static final int CAPACITY = 1 << 12; // power of 2
+	private static final int MASK = CAPACITY - 1;
+
+	private static final ThreadSafeCounter appendsBlocked = new ThreadSafeCounter("Event Logs", "Appends Waiting For Replay");
+
+	public final ShadowThread td;
+	public final int tid;
+	private final LogReplayer replayer;
+
+	private final int[] kinds = new int[CAPACITY];
+	private final int[] args = new int[CAPACITY];
+	private final Object[] as = new Object[CAPACITY];
+	private final Object[] bs = new Object[CAPACITY];
+	private final Object[] gates = new Object[CAPACITY];
+	private final long[] gateValues = new long[CAPACITY];
+
+	private volatile long tail; // records appended
+	private volatile long head; // records replayed
+	private long headSeen;      // the appender's last read of head
+
+	private volatile boolean open;
+	private volatile boolean closed;
+	final AtomicBoolean claimed = new AtomicBoolean();
+
+	EventLog(LogReplayer replayer, ShadowThread td, boolean open) {
+		this.replayer = replayer;
+		this.td = td;
+		this.tid = td.getTid();
+		this.open = open;
+	}
+
+	/** Append a record that may replay as soon as the records before it have. */
+	public void append(int kind, int arg, Object a, Object b) {
+		put(kind, arg, a, b, null, 0);
+	}
+
+	/** Append a record that replays in the order of its call to order.issue(), see ReplayOrder. */
+	public void appendOrdered(int kind, int arg, Object a, Object b, ReplayOrder order) {
+		put(kind, arg, a, b, order, order.issue());
+	}
+
+	/** Append a record that replays only after every record appended to other so far. */
+	public void appendAfter(int kind, int arg, Object a, Object b, EventLog other) {
+		put(kind, arg, a, b, other, other.tail);
+	}
+
+	private void put(int kind, int arg, Object a, Object b, Object gate, long gateValue) {
+		final long t = tail;
+		if (t - headSeen >= CAPACITY) {
+			waitForRoom(t);
+		}
+		final int i = (int)t & MASK;
+		kinds[i] = kind;
+		args[i] = arg;
+		as[i] = a;
+		bs[i] = b;
+		gates[i] = gate;
+		gateValues[i] = gateValue;
+		tail = t + 1; // publish
+	}
+
+	private void waitForRoom(long t) {
+		appendsBlocked.inc();
+		int spins = 0;
+		while (t - (headSeen = head) >= CAPACITY) {
+			if (replayer.isFinished()) {
+				// Nobody replays any more, so records are dropped.
+				headSeen = t - CAPACITY + 1;
+				return;
+			}
+			if (++spins < 64) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(50000);
+			}
+		}
+	}
+
+	/** Let the replayer start on a log made closed to replay, e.g. for a thread not forked yet.  Called by the replayer. */
+	public void open() {
+		open = true;
+	}
+
+	/** No more records will be appended.  The replayer drops the log once it has replayed them. */
+	public void close() {
+		closed = true;
+	}
+
+	/** The records appended so far. */
+	public long appended() {
+		return tail;
+	}
+
+	final boolean isDone() {
+		return closed && head == tail;
+	}
+
+	final boolean isDrained() {
+		return !open || head == tail;
+	}
+
+	/*
+	 * Replay the records at the head whose gates are open, in order.  Requires
+	 * the claim on this log.  Returns the number of records replayed.
+	 */
+	final int replay(LogReplayer.Handler handler) {
+		if (!open) return 0;
+		long h = head;
+		final long t = tail;
+		int n = 0;
+		while (h < t) {
+			final int i = (int)h & MASK;
+			final Object gate = gates[i];
+			final long gateValue = gateValues[i];
+			if (gate != null && !isPassable(gate, gateValue)) break;
+			handler.replay(this, kinds[i], args[i], as[i], bs[i]);
+			as[i] = null;
+			bs[i] = null;
+			gates[i] = null;
+			if (gate instanceof ReplayOrder) {
+				((ReplayOrder)gate).replayed = gateValue + 1;
+			}
+			head = ++h;
+			n++;
+		}
+		return n;
+	}
+
+	private static boolean isPassable(Object gate, long gateValue) {
+		if (gate instanceof ReplayOrder) {
+			return ((ReplayOrder)gate).replayed == gateValue;
+		}
+		return ((EventLog)gate).head >= gateValue;
+	}
+
+	@Override
+	public String toString() {
+		return "[T" + tid + " head=" + head + " tail=" + tail + (open ? "" : " unopened") + (closed ? " closed" : "") + "]";
+	}
+}
@@ -0,0 +1,188 @@
+/******************************************************************************
+
+Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package tools.util;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import acme.util.Assert;
+import acme.util.count.ThreadSafeCounter;
+import rr.state.ShadowThread;
+
+/**
+ * Worker threads that analyze the events threads append to their EventLogs,
+ * off the application threads.  A worker claims a log, replays the records at
+ * its head until one is gated (see EventLog), and moves on to the next log.
+ * So each log is replayed in program order, and records on different logs in
+ * the order their gates impose.  With several workers the handler runs
+ * concurrently for different threads, as the tool's handlers would in the
+ * application; with one worker it never does.
+ */
+public final class LogReplayer {
+
+	/** Analysis of one record.  log.tid is the thread that made the record. */
+	public interface Handler {
+		void replay(EventLog log, int kind, int arg, Object a, Object b);
+	}
+
+	private static final long IDLE_NANOS = 20000;
+
+	private static final ThreadSafeCounter replayed = new ThreadSafeCounter("Event Logs", "Records Replayed");
+
+	private final String name;
+	private final Handler handler;
+	private final Thread[] workers;
+	private final CopyOnWriteArrayList<EventLog> logs = new CopyOnWriteArrayList<EventLog>();
+	private final AtomicLong records = new AtomicLong(); // replayed so far
+	private final AtomicLongArray passes;                // by each worker over all logs
+
+	private volatile boolean started;
+	private volatile boolean finished;
+
+	public LogReplayer(String name, int workers, Handler handler) {
+		this.name = name;
+		this.handler = handler;
+		this.workers = new Thread[Math.max(1, workers)];
+		this.passes = new AtomicLongArray(this.workers.length);
+	}
+
+	/**
+	 * A new log for td.  A log that is not open is not replayed until the
+	 * handler opens it, e.g. on replaying the fork of its thread.
+	 */
+	public EventLog newLog(ShadowThread td, boolean open) {
+		if (!started) start();
+		final EventLog log = new EventLog(this, td, open);
+		logs.add(log);
+		return log;
+	}
+
+	private synchronized void start() {
+		if (started) return;
+		for (int i = 0; i < workers.length; i++) {
+			final int worker = i;
+			workers[i] = new Thread(name + " " + i) {
+				@Override
+				public void run() {
+					work(worker);
+				}
+			};
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		started = true;
+	}
+
+	private void work(int worker) {
+		try {
+			while (!finished) {
+				final int n = replayAll();
+				passes.incrementAndGet(worker);
+				if (n == 0) {
+					LockSupport.parkNanos(IDLE_NANOS);
+				}
+			}
+		} catch (Throwable e) {
+			Assert.panic(e);
+		}
+	}
+
+	private int replayAll() {
+		int n = 0;
+		for (EventLog log : logs) {
+			if (log.claimed.compareAndSet(false, true)) {
+				try {
+					n += log.replay(handler);
+					if (log.isDone()) logs.remove(log);
+				} finally {
+					log.claimed.set(false);
+				}
+			}
+		}
+		if (n > 0) {
+			records.addAndGet(n);
+			replayed.add(n);
+		}
+		return n;
+	}
+
+	/*
+	 * Whether every open log is drained.  A replay may open a log while the logs
+	 * are checked, so the check only counts if no record was replayed from
+	 * before it until every worker has made a full pass after it.
+	 */
+	private boolean isDrained() {
+		final long before = records.get();
+		for (EventLog log : logs) {
+			if (!log.isDrained()) return false;
+		}
+		for (int i = 0; i < workers.length; i++) {
+			final long pass = passes.get(i) + 2;
+			while (passes.get(i) < pass) {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+		return records.get() == before;
+	}
+
+	boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Wait until every record appended so far has been replayed, then stop the
+	 * workers.  Records appended afterwards are dropped.
+	 */
+	public void finish() {
+		if (!started) return;
+		while (!isDrained()) {
+			LockSupport.parkNanos(IDLE_NANOS);
+		}
+		finished = true;
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Assert.panic(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/******************************************************************************
+
+Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package tools.util;
+
+/**
+ * The order in which the operations on one synchronization object happened,
+ * so that a LogReplayer can replay them in that order although they sit in
+ * different threads' EventLogs.  The application side issues a sequence
+ * number for each operation and the replay side admits the operation once all
+ * earlier ones have been replayed.
+ * 
+ * issue() is not synchronized: the caller must be serialized with the other
+ * operations on the object, e.g. by holding the program's lock on it for
+ * acquires and releases, or the tool's lock on its analysis state otherwise.
+ */
+public final class ReplayOrder {
+
+	private long issued;
+
+	// Operations replayed so far.  Written by the replayer that replays the operation.
+	volatile long replayed;
+
+	/** The sequence number of the next operation, in the order of the calls. */
+	public long issue() {
+		return issued++;
+	}
+
+	@Override
+	public String toString() {
+		return "[issued=" + issued + " replayed=" + replayed + "]";
+	}
+}
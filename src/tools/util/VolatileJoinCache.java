@@ -0,0 +1,86 @@
+/******************************************************************************
+
+Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package tools.util;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The write version of each volatile a thread last joined, in a small
+ * direct-mapped table owned by the thread.  A volatile's state bumps its
+ * version whenever its write clock grows, so a read that finds the version
+ * it already joined has nothing new to join.  Thread clocks only grow, so
+ * the entry stays valid until the next write.  Two volatiles that map to the
+ * same slot evict each other, which costs an extra join and nothing else.
+ * Slots hold their volatile state weakly, so the cache does not keep the
+ * state of collected volatiles alive.
+ * 
+ * Instances are owned by a single thread and are not synchronized.
+ */
+public final class VolatileJoinCache {
+
+	private static final int SIZE = 16; // power of 2
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final WeakReference<Object>[] volatiles = new WeakReference[SIZE];
+	private final int[] versions = new int[SIZE];
+
+	/** Spreads volatile states over the slots.  Ids need not be unique. */
+	public static int nextId() {
+		return nextId.getAndIncrement();
+	}
+
+	/** True if the owning thread has joined the write clock of vol at version. */
+	public boolean joined(Object vol, int id, int version) {
+		final int slot = id & (SIZE - 1);
+		final WeakReference<Object> ref = volatiles[slot];
+		return ref != null && ref.get() == vol && versions[slot] == version;
+	}
+
+	public void record(Object vol, int id, int version) {
+		final int slot = id & (SIZE - 1);
+		final WeakReference<Object> ref = volatiles[slot];
+		if (ref == null || ref.get() != vol) {
+			volatiles[slot] = new WeakReference<Object>(vol); // only when the slot changes hands
+		}
+		versions[slot] = version;
+	}
+}
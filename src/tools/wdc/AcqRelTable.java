@@ -0,0 +1,61 @@
+package tools.wdc;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import rr.state.ShadowLock;
+
+/**
+ * The acquire or release nodes found by one traversal of vindication, at most one
+ * per lock and thread.  Nodes of a lock are held in an array indexed by thread id,
+ * so recording a node does not hash or box the thread.  A table is cleared and
+ * reused by the next traversal.
+ */
+final class AcqRelTable {
+
+	private final IdentityHashMap<ShadowLock,AcqRelNode[]> nodesByLock = new IdentityHashMap<ShadowLock,AcqRelNode[]>();
+
+	/** Keeps node if it is the latest in total order seen for its lock and thread. */
+	void keepLatest(AcqRelNode node) {
+		final AcqRelNode[] nodes = nodesFor(node);
+		final AcqRelNode current = nodes[node.threadID];
+		if (current == null || node.eventNumber > current.eventNumber) {
+			nodes[node.threadID] = node;
+		}
+	}
+
+	/** Keeps node if it is the earliest in total order seen for its lock and thread. */
+	void keepEarliest(AcqRelNode node) {
+		final AcqRelNode[] nodes = nodesFor(node);
+		final AcqRelNode current = nodes[node.threadID];
+		if (current == null || node.eventNumber < current.eventNumber) {
+			nodes[node.threadID] = node;
+		}
+	}
+
+	private AcqRelNode[] nodesFor(AcqRelNode node) {
+		AcqRelNode[] nodes = nodesByLock.get(node.shadowLock);
+		if (nodes == null) {
+			nodes = new AcqRelNode[Math.max(4, node.threadID + 1)];
+			nodesByLock.put(node.shadowLock, nodes);
+		} else if (node.threadID >= nodes.length) {
+			nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, node.threadID + 1));
+			nodesByLock.put(node.shadowLock, nodes);
+		}
+		return nodes;
+	}
+
+	Set<ShadowLock> locks() {
+		return nodesByLock.keySet();
+	}
+
+	/** The nodes kept for lock indexed by thread id, with null for threads that have none, or null if there are none. */
+	AcqRelNode[] get(ShadowLock lock) {
+		return nodesByLock.get(lock);
+	}
+
+	void clear() {
+		nodesByLock.clear();
+	}
+}
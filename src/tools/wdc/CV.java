@@ -164,6 +164,15 @@ public class CV implements Serializable {
 		return false; 
 	}
 
+	/* Return true if this and other agree on every entry except tid's. */
+	final public boolean equalsExcept(CV other, int tid) {
+		final int len = Math.max(this.a.length, other.a.length);
+		for(int i = 0; i < len; i++) {
+			if (i != tid && this.get(i) != other.get(i)) return false;
+		}
+		return true;
+	}
+
 	/*
 	 * Returns next index i>=start such that c1.a[i]>c2.a[i],
 	 * or -1 if no such. 
@@ -0,0 +1,190 @@
+package tools.wdc;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The sources or sinks of an EventNode once it has more than one.  The list is a
+ * chain of chunks, each twice the size of the one before.  Appends reserve a slot
+ * by CAS on the chunk's reserved count and then publish the node into the slot.
+ * Removal overwrites the slot with REMOVED, and slots are never reused.  An
+ * iterator returns every node published before it reaches the node's slot, and
+ * skips reserved slots whose node is not yet published.
+ *
+ * Once a removal leaves at most one live node, or more tombstones than live
+ * nodes, the remover seals the list and replaces it in its EventNode field (see
+ * EventNode.removeNode) with EMPTY_NODES, the one live node, or a compacted
+ * list.  Sealing stops further reservations, so adds and removes that find the
+ * list sealed wait for the replacement and retry on it.  Only that wait blocks.
+ */
+final class EdgeList extends AtomicReferenceArray<Object> implements Iterable<EventNode> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Object REMOVED = new Object();
+	private static final int FIRST_CHUNK = 4;
+
+	// reserved of a sealed chunk, and the chunk that ends a sealed chain
+	private static final int SEALED = Integer.MAX_VALUE;
+	private static final EdgeList SEALED_CHUNK = new EdgeList(0);
+
+	private static final AtomicIntegerFieldUpdater<EdgeList> RESERVED =
+			AtomicIntegerFieldUpdater.newUpdater(EdgeList.class, "reserved");
+	private static final AtomicReferenceFieldUpdater<EdgeList,EdgeList> NEXT =
+			AtomicReferenceFieldUpdater.newUpdater(EdgeList.class, EdgeList.class, "next");
+
+	private static final AtomicIntegerFieldUpdater<EdgeList> REPLACED =
+			AtomicIntegerFieldUpdater.newUpdater(EdgeList.class, "replaced");
+
+	static {
+		SEALED_CHUNK.reserved = SEALED;
+	}
+
+	private volatile int reserved;
+	private volatile EdgeList next;
+	private volatile int replaced; // first chunk only: 1 once sealed for replacement
+
+	EdgeList(EventNode first, EventNode second) {
+		super(FIRST_CHUNK);
+		set(0, first);
+		set(1, second);
+		reserved = 2;
+	}
+
+	private EdgeList(int capacity) {
+		super(capacity);
+	}
+
+	/* Appends node.  Returns false if the list is sealed, in which case node must go into its replacement. */
+	boolean add(EventNode node) {
+		for (EdgeList chunk = this; chunk != null; chunk = chunk.nextChunk()) {
+			int i;
+			while ((i = chunk.reserved) < chunk.length()) {
+				if (RESERVED.compareAndSet(chunk, i, i + 1)) {
+					chunk.set(i, node);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private EdgeList nextChunk() {
+		EdgeList n = next;
+		if (n == null) {
+			if (reserved == SEALED) return null;
+			n = new EdgeList(2 * length());
+			if (!NEXT.compareAndSet(this, null, n)) {
+				n = next;
+			}
+		}
+		return n;
+	}
+
+	boolean remove(EventNode node) {
+		for (EdgeList chunk = this; chunk != null; chunk = chunk.next) {
+			final int n = Math.min(chunk.reserved, chunk.length());
+			for (int i = 0; i < n; i++) {
+				if (chunk.get(i) == node && chunk.compareAndSet(i, node, REMOVED)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	boolean isSealed() {
+		return replaced != 0;
+	}
+
+	/*
+	 * What this list should become after a removal: EMPTY_NODES, its one live node, or a
+	 * compacted list once tombstones outnumber live nodes.  A non-null result seals the
+	 * list, and the caller must install the result in place of it.  null if the list 
+	 * should stay, or another thread is already replacing it.
+	 */
+	Iterable<EventNode> replacement() {
+		int slots = 0;
+		int live = 0;
+		for (EdgeList chunk = this; chunk != null; chunk = chunk.next) {
+			final int n = Math.min(chunk.reserved, chunk.length());
+			for (int i = 0; i < n; i++) {
+				final Object o = chunk.get(i);
+				if (o != null) {
+					slots++;
+					if (o != REMOVED) live++;
+				}
+			}
+		}
+		if (live > 1 && slots - live <= live) return null;
+		if (!REPLACED.compareAndSet(this, 0, 1)) return null;
+
+		// Stop reservations, and wait for reserved slots to be published
+		for (EdgeList chunk = this; chunk != SEALED_CHUNK; chunk = chunk.next) {
+			final int n = Math.min(RESERVED.getAndSet(chunk, SEALED), chunk.length());
+			for (int i = 0; i < n; i++) {
+				while (chunk.get(i) == null) {
+					Thread.yield();
+				}
+			}
+			NEXT.compareAndSet(chunk, null, SEALED_CHUNK);
+		}
+
+		final Iterator<EventNode> nodes = iterator();
+		if (!nodes.hasNext()) return EventNode.EMPTY_NODES;
+		final EventNode first = nodes.next();
+		if (!nodes.hasNext()) return first;
+		final EdgeList list = new EdgeList(first, nodes.next());
+		while (nodes.hasNext()) {
+			list.add(nodes.next());
+		}
+		return list;
+	}
+
+	@Override
+	public Iterator<EventNode> iterator() {
+		return new Iterator<EventNode>() {
+			EdgeList chunk = EdgeList.this;
+			int index = 0;
+			EventNode nextNode = advance();
+
+			private EventNode advance() {
+				while (chunk != null) {
+					final int n = Math.min(chunk.reserved, chunk.length());
+					while (index < n) {
+						final Object o = chunk.get(index++);
+						if (o != null && o != REMOVED) {
+							return (EventNode)o;
+						}
+					}
+					chunk = chunk.next;
+					index = 0;
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return nextNode != null;
+			}
+
+			@Override
+			public EventNode next() {
+				final EventNode result = nextNode;
+				if (result == null) {
+					throw new NoSuchElementException();
+				}
+				nextNode = advance();
+				return result;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
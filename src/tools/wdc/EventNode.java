@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -18,9 +20,15 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Stack;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import acme.util.Assert;
 import acme.util.Util;
+import rr.meta.AccessInfo;
+import rr.meta.ArrayAccessInfo;
+import rr.meta.FieldAccessInfo;
+import rr.meta.MetaDataInfoMaps;
 import rr.state.ShadowLock;
 import rr.state.ShadowThread;
 import rr.state.ShadowVar;
@@ -28,13 +36,37 @@ import rr.tool.RR;
 
 public class EventNode implements Iterable<EventNode> {
 
-	long eventNumber;
+	/*
+	 * Edges are added without locks.  sinkOrSinks and sourceOrSources move from
+	 * EMPTY_NODES to a single EventNode to an EdgeList by CAS.  Removals move
+	 * them back once an EdgeList is mostly tombstones, see EdgeList.  eventNumber
+	 * only increases, and is final once the node is published as the source of an
+	 * edge.  numberState makes raising and publishing atomic with respect to each
+	 * other: a raise holds RAISING while it writes eventNumber, and publishing
+	 * moves OPEN to PUBLISHED by CAS before any sink is added, so no raise can
+	 * follow the read of eventNumber that numbers the new sink.
+	 */
+	volatile long eventNumber;
 	final AcqRelNode surroundingCriticalSection;
 	final int threadID;
 	static final boolean DEBUG_GRAPH = false;
 
-	Iterable<EventNode> sinkOrSinks = EMPTY_NODES;
-	Iterable<EventNode> sourceOrSources = EMPTY_NODES;
+	volatile Iterable<EventNode> sinkOrSinks = EMPTY_NODES;
+	volatile Iterable<EventNode> sourceOrSources = EMPTY_NODES;
+
+	@SuppressWarnings("rawtypes")
+	static final AtomicReferenceFieldUpdater<EventNode,Iterable> SINKS =
+			AtomicReferenceFieldUpdater.newUpdater(EventNode.class, Iterable.class, "sinkOrSinks");
+	@SuppressWarnings("rawtypes")
+	static final AtomicReferenceFieldUpdater<EventNode,Iterable> SOURCES =
+			AtomicReferenceFieldUpdater.newUpdater(EventNode.class, Iterable.class, "sourceOrSources");
+
+	private static final int OPEN = 0;
+	private static final int RAISING = 1;
+	private static final int PUBLISHED = 2;
+	private volatile int numberState = OPEN;
+	private static final AtomicIntegerFieldUpdater<EventNode> NUMBER_STATE =
+			AtomicIntegerFieldUpdater.newUpdater(EventNode.class, "numberState");
 
 	static final Iterable<EventNode> EMPTY_NODES =
 		new Iterable<EventNode>() {
@@ -86,55 +118,98 @@ public class EventNode implements Iterable<EventNode> {
 	
 	public static void addEdge(EventNode sourceNode, EventNode sinkNode) {
 		if (DEBUG_GRAPH) Assert.assertTrue(sourceNode != sinkNode);
-		synchronized(sourceNode) {
-			sourceNode.sinkOrSinks = addNode(sourceNode.sinkOrSinks, sinkNode);
-		}
-		sinkNode.sourceOrSources = addNode(sinkNode.sourceOrSources, sourceNode);
-		//Only update sinkNode's eventNumber if it has no sources (as in, before fini() is called)
-		if (sinkNode.sinkOrSinks.equals(EMPTY_NODES) && sourceNode.eventNumber >= sinkNode.eventNumber) {
-			sinkNode.eventNumber = sourceNode.eventNumber + 1;
+		publish(sourceNode);
+		addNode(SINKS, sourceNode, sinkNode);
+		addNode(SOURCES, sinkNode, sourceNode);
+		//Only update sinkNode's eventNumber if it has not been published (as in, before fini() is called)
+		if (raiseEventNumber(sinkNode, sourceNode.eventNumber + 1)) {
 			if (DEBUG_GRAPH) addEventToThreadToItsFirstEventsMap(sinkNode);
-		} else {
-			if (DEBUG_GRAPH) Assert.assertTrue(sinkNode.eventNumber >= 0);
+			return;
+		}
+		if (DEBUG_GRAPH) Assert.assertTrue(sinkNode.eventNumber >= 0);
+	}
+
+	/* Makes node's eventNumber final, waiting for a raise in progress. */
+	private static void publish(EventNode node) {
+		int state;
+		while ((state = node.numberState) != PUBLISHED) {
+			if (state == OPEN && NUMBER_STATE.compareAndSet(node, OPEN, PUBLISHED)) return;
+		}
+	}
+
+	/* Raises node's eventNumber to number unless it is final.  Returns whether it was raised. */
+	static boolean raiseEventNumber(EventNode node, long number) {
+		while (true) {
+			final int state = node.numberState;
+			if (state == PUBLISHED) return false;
+			if (state == OPEN && NUMBER_STATE.compareAndSet(node, OPEN, RAISING)) {
+				final boolean raised = node.eventNumber < number;
+				if (raised) node.eventNumber = number;
+				node.numberState = OPEN;
+				return raised;
+			}
 		}
 	}
 	
-	static Iterable<EventNode> addNode(Iterable<EventNode> nodeOrNodes, EventNode newNode) {
-		if (DEBUG_GRAPH) Assert.assertTrue(!containsNode(nodeOrNodes, newNode));
-		if (nodeOrNodes == EMPTY_NODES) {
-			return newNode;
-		} else if (nodeOrNodes instanceof EventNode) {
-			LinkedList<EventNode> nodes = new LinkedList<EventNode>();
-			nodes.add((EventNode)nodeOrNodes);
-			nodes.add(newNode);
-			return nodes;
-		} else {
-			((LinkedList<EventNode>)nodeOrNodes).add(newNode);
-			return nodeOrNodes;
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void addNode(AtomicReferenceFieldUpdater<EventNode,Iterable> nodes, EventNode node, EventNode newNode) {
+		while (true) {
+			final Iterable<EventNode> nodeOrNodes = nodes.get(node);
+			if (DEBUG_GRAPH) Assert.assertTrue(!containsNode(nodeOrNodes, newNode));
+			if (nodeOrNodes == EMPTY_NODES) {
+				if (nodes.compareAndSet(node, EMPTY_NODES, newNode)) return;
+			} else if (nodeOrNodes instanceof EventNode) {
+				if (nodes.compareAndSet(node, nodeOrNodes, new EdgeList((EventNode)nodeOrNodes, newNode))) return;
+			} else {
+				final EdgeList list = (EdgeList)nodeOrNodes;
+				if (list.add(newNode)) return;
+				awaitReplacement(nodes, node, list);
+			}
+		}
+	}
+
+	/* Waits until the thread that sealed list has installed its replacement. */
+	@SuppressWarnings("rawtypes")
+	private static void awaitReplacement(AtomicReferenceFieldUpdater<EventNode,Iterable> nodes, EventNode node, EdgeList list) {
+		while (nodes.get(node) == list) {
+			Thread.yield();
 		}
 	}
 	
 	public static void removeEdge(EventNode sourceNode, EventNode sinkNode) {
-		synchronized(sourceNode) {
-			sourceNode.sinkOrSinks = removeNode(sourceNode.sinkOrSinks, sinkNode);
-		}
-		sinkNode.sourceOrSources = removeNode(sinkNode.sourceOrSources, sourceNode);
+		boolean removed = removeNode(SINKS, sourceNode, sinkNode);
+		removed &= removeNode(SOURCES, sinkNode, sourceNode);
+		if (DEBUG_GRAPH) Assert.assertTrue(removed);
 	}
 	
-	static Iterable<EventNode> removeNode(Iterable<EventNode> nodeOrNodes, EventNode nodeToRemove) {
-		if (DEBUG_GRAPH) Assert.assertTrue(containsNode(nodeOrNodes, nodeToRemove));
-		if (DEBUG_GRAPH) Assert.assertTrue(nodeOrNodes != EMPTY_NODES);
-		if (nodeOrNodes instanceof EventNode) {
-			if (DEBUG_GRAPH) Assert.assertTrue(nodeOrNodes == nodeToRemove);
-			return EMPTY_NODES;
-		} else {
-			LinkedList<EventNode> nodes = (LinkedList<EventNode>)nodeOrNodes;
-			boolean removed = ((LinkedList<EventNode>)nodeOrNodes).remove(nodeToRemove);
-			if (DEBUG_GRAPH) Assert.assertTrue(removed);
-			if (nodes.size() > 1) {
-				return nodes;
-			} else {
-				return nodes.getFirst();
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static boolean removeNode(AtomicReferenceFieldUpdater<EventNode,Iterable> nodes, EventNode node, EventNode nodeToRemove) {
+		while (true) {
+			final Iterable<EventNode> nodeOrNodes = nodes.get(node);
+			if (nodeOrNodes instanceof EdgeList) {
+				final EdgeList list = (EdgeList)nodeOrNodes;
+				if (!list.remove(nodeToRemove)) {
+					if (!list.isSealed()) return false;
+					awaitReplacement(nodes, node, list); // nodeToRemove may have been added to the replacement
+					continue;
+				}
+				if (list.isSealed()) {
+					// The replacement may have copied nodeToRemove before it was removed
+					awaitReplacement(nodes, node, list);
+					removeNode(nodes, node, nodeToRemove);
+					return true;
+				}
+				final Iterable<EventNode> replacement = list.replacement();
+				if (replacement != null) {
+					nodes.set(node, replacement); // only the thread that sealed list replaces it
+				}
+				return true;
+			}
+			if (nodeOrNodes != nodeToRemove) {
+				return false;
+			}
+			if (nodes.compareAndSet(node, nodeToRemove, EMPTY_NODES)) {
+				return true;
 			}
 		}
 	}
@@ -188,6 +263,7 @@ public class EventNode implements Iterable<EventNode> {
 		grayNodes.addLast(startNode);
 		while (!grayNodes.isEmpty()) {
 			EventNode node = grayNodes.removeFirst();
+			VindicationBudget.charge();
 			if (node.myLatestTraversal != traversal) {
 				node.myLatestTraversal = traversal;
 				for (EventNode sink : node.sinkOrSinks) {
@@ -211,11 +287,26 @@ public class EventNode implements Iterable<EventNode> {
 	// (2) Rather than finding acq m^j -> rel m^i paths (and adding a corresponding rel m^j -> acq m^i back edge),
 	//     the implementation assumes a acq m^j -> rel m^i path exists if
 	//     (a) rel m^i reaches any back edge source and (b) any back edge sink reaches acq m^j.
-	public static boolean crazyNewEdges(RdWrNode firstNode, RdWrNode secondNode, boolean traverseFromAllEdges, boolean precision, boolean waitForRuleB, File commandDir) {
-		LinkedList<Edge> initialEdges = new LinkedList<Edge>();
+	// shared, if not null, holds reachability answers shared with the other races of a batch.
+	public static boolean crazyNewEdges(RdWrNode firstNode, RdWrNode secondNode, boolean traverseFromAllEdges, boolean precision, boolean waitForRuleB, File commandDir, ReachabilityMemo shared) {
 		LinkedList<Edge> initialEdgesToRemove = new LinkedList<Edge>(); // We don't add or remove initial edges that already exist
 		LinkedList<Edge> additionalBackEdges = new LinkedList<Edge>();
 		LinkedList<Edge> additionalForwardEdges = new LinkedList<Edge>();
+		try {
+			return crazyNewEdges(firstNode, secondNode, traverseFromAllEdges, precision, waitForRuleB, commandDir, shared, initialEdgesToRemove, additionalBackEdges, additionalForwardEdges);
+		} finally {
+			// Finally remove all of the added edges, also when the vindication budget ran out
+			removeEdges(initialEdgesToRemove);
+			removeEdges(additionalBackEdges);
+			removeEdges(additionalForwardEdges);
+		}
+	}
+
+	private static boolean crazyNewEdges(RdWrNode firstNode, RdWrNode secondNode, boolean traverseFromAllEdges, boolean precision, boolean waitForRuleB, File commandDir, ReachabilityMemo shared,
+			LinkedList<Edge> initialEdgesToRemove, LinkedList<Edge> additionalBackEdges, LinkedList<Edge> additionalForwardEdges) {
+		LinkedList<Edge> initialEdges = new LinkedList<Edge>();
+		// The edges added below, which answers shared with other races must not use
+		final ReachabilityMemo.AddedEdges added = shared == null ? null : new ReachabilityMemo.AddedEdges();
 		
 		// Here are some sanity checks
 		if (DEBUG_GRAPH) {
@@ -253,6 +344,7 @@ public class EventNode implements Iterable<EventNode> {
 			if ((! edgeExists(source, firstNode)) && (! firstNode.equals(source))) { // This edge might already exist
 				initialEdgesToRemove.add(backEdge);
 				EventNode.addEdge(source, firstNode);
+				if (added != null) added.add(source, firstNode);
 			}
 		}
 		for (EventNode source : firstNode.sourceOrSources) {
@@ -261,6 +353,7 @@ public class EventNode implements Iterable<EventNode> {
 			if ((!edgeExists(source, secondNode)) && (! secondNode.equals(source))) { // This edge might already exist
 				initialEdgesToRemove.add(forwardEdge);
 				EventNode.addEdge(source, secondNode);
+				if (added != null) added.add(source, secondNode);
 			}
 		}
 		
@@ -271,6 +364,12 @@ public class EventNode implements Iterable<EventNode> {
 		long windowMin = firstNode.eventNumber;//.lastEventNumber; // everything WDC-after the first node must be totally ordered after the first node's access(es)
 		long windowMax = secondNode.eventNumber; // everything WDC-before the second node must be totally ordered before the second node's access(es)
 		
+		// Reused by every traversal of this vindication
+		AcqRelTable reachableAcqNodes = new AcqRelTable();
+		AcqRelTable reachableRelNodes = new AcqRelTable();
+		// Nodes known to reach either conflicting access, each with the window it was found in
+		IdentityHashMap<EventNode,long[]> reached = new IdentityHashMap<EventNode,long[]>();
+		
 		do {
 			
 			addedBackEdge = false;
@@ -278,6 +377,7 @@ public class EventNode implements Iterable<EventNode> {
 
 			++iteration;
 			Util.println("Iteration = " + iteration);
+			VindicationBudget.iteration();
 
 			LinkedList<Edge> separateInitNodes = new LinkedList<Edge>();
 			for (Edge initialEdge : initialEdges) {
@@ -293,117 +393,19 @@ public class EventNode implements Iterable<EventNode> {
 			}
 			for (Edge edge : separateInitNodes) {
 				// First do a reverse traversal from the second access and possibly from other edge sources
-				HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>> reachableAcqNodes = new HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>>();
-				ArrayDeque<EventNode> grayNodes = new ArrayDeque<EventNode>();
-				int traversal = prepUniqueTraversal();
-				grayNodes.add(edge.source);
-				while (!grayNodes.isEmpty()) {
-					EventNode node = grayNodes.removeFirst();
-					if (node.myLatestTraversal != traversal) {
-						// We don't care about nodes outside the window
-						if (node.eventNumber >= windowMin) {
-							// If this is an acquire, let's record it,
-							// to figure out if it can reach an earlier (in total order) release of the same lock
-							if (node instanceof AcqRelNode) {
-								AcqRelNode acqRelNode = (AcqRelNode)node;
-								if (acqRelNode.isAcquire()) {
-									HashMap<ShadowThread,AcqRelNode> acqNodesForLock = reachableAcqNodes.get(acqRelNode.shadowLock);
-									if (acqNodesForLock == null) {
-										acqNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableAcqNodes.put(acqRelNode.shadowLock, acqNodesForLock);
-									}
-									// We want the acq node that's latest in total order,
-									// since earlier acq nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentAcqNodeForThread = acqNodesForLock.get(acqRelNode.getShadowThread());
-									if (currentAcqNodeForThread == null || acqRelNode.eventNumber > currentAcqNodeForThread.eventNumber) {
-										acqNodesForLock.put(acqRelNode.getShadowThread(), acqRelNode);
-									}
-								}
-							} else if (node.surroundingCriticalSection != null) {
-								AcqRelNode surroundingAcq = node.surroundingCriticalSection;
-								while (surroundingAcq != null) {
-									HashMap<ShadowThread,AcqRelNode> acqNodesForLock = reachableAcqNodes.get(surroundingAcq.shadowLock);
-									if (acqNodesForLock == null) {
-										acqNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableAcqNodes.put(surroundingAcq.shadowLock, acqNodesForLock);
-									}
-									// We want the acq node that's latest in total order,
-									// since earlier acq nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentAcqNodeForThread = acqNodesForLock.get(surroundingAcq.getShadowThread());
-									if (currentAcqNodeForThread == null || surroundingAcq.eventNumber > currentAcqNodeForThread.eventNumber) {
-										acqNodesForLock.put(surroundingAcq.getShadowThread(), surroundingAcq);
-									}
-									surroundingAcq = surroundingAcq.surroundingCriticalSection;
-								}
-							}
-							node.myLatestTraversal = traversal;
-							for (EventNode source : node.sourceOrSources) {
-								grayNodes.add(source);
-							}
-						}
-					}
-				}
-				
+				collectReachableAcquires(edge.source, windowMin, reachableAcqNodes);
 				// Second do a forward traversal from the first access and possibly from other edge sinks
-				HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>> reachableRelNodes = new HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>>();
-				traversal = prepUniqueTraversal();
-				grayNodes.add(edge.sink);
-				while (!grayNodes.isEmpty()) {
-					EventNode node = grayNodes.removeFirst();
-					if (node.myLatestTraversal != traversal) {
-						// We don't care about nodes outside the window
-						if (node.eventNumber <= windowMax) {
-							// If this is a release, let's record it,
-							// to figure out if it it's reached by a later (in total order) acquire of the same lock
-							if (node instanceof AcqRelNode) {
-								AcqRelNode acqRelNode = (AcqRelNode)node;
-								if (!acqRelNode.isAcquire()) {
-									HashMap<ShadowThread,AcqRelNode> relNodesForLock = reachableRelNodes.get(acqRelNode.shadowLock);
-									if (relNodesForLock == null) {
-										relNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableRelNodes.put(acqRelNode.shadowLock, relNodesForLock);
-									}
-									// We want the rel node that's earliest in total order,
-									// since later rel nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentRelNodeForThread = relNodesForLock.get(acqRelNode.getShadowThread());
-									if (currentRelNodeForThread == null || acqRelNode.eventNumber < currentRelNodeForThread.eventNumber) {
-										relNodesForLock.put(acqRelNode.getShadowThread(), acqRelNode);
-									}
-								}
-							} else if (node.surroundingCriticalSection != null) {
-								AcqRelNode surroundingAcq = node.surroundingCriticalSection;
-								AcqRelNode surroundingRel = null;
-								while (surroundingAcq != null) {
-									surroundingRel = surroundingAcq.otherCriticalSectionNode;
-									HashMap<ShadowThread,AcqRelNode> relNodesForLock = reachableRelNodes.get(surroundingRel.shadowLock);
-									if (relNodesForLock == null) {
-										relNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableRelNodes.put(surroundingRel.shadowLock, relNodesForLock);
-									}
-									// We want the rel node that's earliest in total order,
-									// since later rel nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentRelNodeForThread = relNodesForLock.get(surroundingRel.getShadowThread());
-									if (currentRelNodeForThread == null || surroundingRel.eventNumber < currentRelNodeForThread.eventNumber) {
-										relNodesForLock.put(surroundingRel.getShadowThread(), surroundingRel);
-									}
-									surroundingAcq = surroundingAcq.surroundingCriticalSection;
-								}
-							}
-							node.myLatestTraversal = traversal;
-							for (EventNode sink : node.sinkOrSinks) {
-								grayNodes.add(sink);
-							}
-						}
-					}
-				}
+				collectReachableReleases(edge.sink, windowMax, reachableRelNodes);
 	
 				// Now check for edges that indicate a back edge w.r.t. total order
-				for (ShadowLock shadowLock : reachableAcqNodes.keySet()) {
-					HashMap<ShadowThread,AcqRelNode> acqNodesForLock = reachableAcqNodes.get(shadowLock);
-					HashMap<ShadowThread,AcqRelNode> relNodesForLock = reachableRelNodes.get(shadowLock);
+				for (ShadowLock shadowLock : reachableAcqNodes.locks()) {
+					AcqRelNode[] acqNodesForLock = reachableAcqNodes.get(shadowLock);
+					AcqRelNode[] relNodesForLock = reachableRelNodes.get(shadowLock);
 					if (relNodesForLock != null) {
-						for (AcqRelNode acqNode : acqNodesForLock.values()) {
-							for (AcqRelNode relNode : relNodesForLock.values()) {
+						for (AcqRelNode acqNode : acqNodesForLock) {
+							if (acqNode == null) continue;
+							for (AcqRelNode relNode : relNodesForLock) {
+								if (relNode == null) continue;
 								//Back Edges
 								if (acqNode.eventNumber > relNode.eventNumber &&
 									!containsNode(acqNode.otherCriticalSectionNode.sinkOrSinks, relNode.otherCriticalSectionNode)) {
@@ -413,12 +415,13 @@ public class EventNode implements Iterable<EventNode> {
 									long tempWindowMax = Math.max(windowMax, acqNode.otherCriticalSectionNode.eventNumber);
 									tempWindowMax = Math.max(tempWindowMax, acqNode.eventNumber);
 									// Back edge found, but the acquire of both critical sections of the backedge need to reach either conflicting access
-									if (!precision || (bfsTraversal(relNode.otherCriticalSectionNode, firstNode, secondNode, tempWindowMin, tempWindowMax, false) && bfsTraversal(acqNode, firstNode, secondNode, tempWindowMin, tempWindowMax, false))) {
+									if (!precision || (reachesAccess(reached, shared, added, relNode.otherCriticalSectionNode, firstNode, secondNode, tempWindowMin, tempWindowMax) && reachesAccess(reached, shared, added, acqNode, firstNode, secondNode, tempWindowMin, tempWindowMax))) {
 										if (precision && DEBUG_GRAPH) Assert.assertTrue(bfsTraversal(acqNode, relNode, null, tempWindowMin, tempWindowMax, false));//, "tempWindowMin: " + tempWindowMin + " | tempWindowMax: " + tempWindowMax + " | acqNode: " + acqNode.getNodeLabel() + ", eventNumber: " + acqNode.eventNumber + " | relNode: " + relNode.getNodeLabel() + ", eventNumber: " + relNode.eventNumber); // Assert a path actually exists from acqNode -> relNode
 										// Add back edge and signal we should repeat this whole process
 										Util.println("Found acq->rel that needs back edge: " + shadowLock + ", " + acqNode + "->" + relNode);
 										EventNode.addEdge(acqNode.otherCriticalSectionNode, relNode.otherCriticalSectionNode);
 										additionalBackEdges.add(new Edge(acqNode.otherCriticalSectionNode, relNode.otherCriticalSectionNode));
+										if (added != null) added.add(acqNode.otherCriticalSectionNode, relNode.otherCriticalSectionNode);
 										windowMin = Math.min(windowMin, relNode.otherCriticalSectionNode.eventNumber);
 										windowMax = Math.max(windowMax, acqNode.otherCriticalSectionNode.eventNumber);
 										windowMin = Math.min(windowMin, relNode.eventNumber);
@@ -435,12 +438,13 @@ public class EventNode implements Iterable<EventNode> {
 									long tempWindowMax = Math.max(windowMax, relNode.otherCriticalSectionNode.eventNumber);
 									tempWindowMax = Math.max(tempWindowMax, relNode.eventNumber);
 									// Forward edge found, but the acquire of both critical sections of the forwardedge need to reach either conflicting access
-									if (!precision || (bfsTraversal(relNode.otherCriticalSectionNode, firstNode, secondNode, tempWindowMin, tempWindowMax, false) && bfsTraversal(acqNode, firstNode, secondNode, tempWindowMin, tempWindowMax, false))) {
+									if (!precision || (reachesAccess(reached, shared, added, relNode.otherCriticalSectionNode, firstNode, secondNode, tempWindowMin, tempWindowMax) && reachesAccess(reached, shared, added, acqNode, firstNode, secondNode, tempWindowMin, tempWindowMax))) {
 										if (precision && DEBUG_GRAPH) Assert.assertTrue(bfsTraversal(acqNode, relNode, null, tempWindowMin, tempWindowMax, false));//, "tempWindowMin: " + tempWindowMin + " | tempWindowMax: " + tempWindowMax + " | acqNode: " + acqNode.getNodeLabel() + ", eventNumber: " + acqNode.eventNumber + " | relNode: " + relNode.getNodeLabel() + ", eventNumber: " + relNode.eventNumber); // Assert a path actually exists from acqNode -> relNode
 										// Add forward edge and signal we should repeat this whole process
 										Util.println("Found rel->acq that needs forward edge: " + shadowLock + ", " + acqNode.otherCriticalSectionNode + "->" + relNode.otherCriticalSectionNode);
 										EventNode.addEdge(acqNode.otherCriticalSectionNode, relNode.otherCriticalSectionNode);
 										additionalForwardEdges.add(new Edge(acqNode.otherCriticalSectionNode, relNode.otherCriticalSectionNode));
+										if (added != null) added.add(acqNode.otherCriticalSectionNode, relNode.otherCriticalSectionNode);
 										//Window Size should not have to be modified.
 										//Since release nodes are found traversing forward and acquire nodes are found traversing backward
 										//and release execution later than acquire means an added forward edge from release's acquire to acquire's release will already be within the window
@@ -509,12 +513,14 @@ public class EventNode implements Iterable<EventNode> {
 			if (total_random_reorders > 0) {Util.log("Doing " + total_random_reorders + " random reorderings");}
 			
 			for (int reorders = 0; reorders <= total_random_reorders; reorders++) {
+				VindicationBudget.iteration();
 				missingRelease = new HashSet<AcqRelNode>();
 				reorder_white = black+2; //The next bfsTraversal will increment black by 2 [Will include gray nodes from second bfsTraversal. More nodes to process than necessary, but not a correctness issue.]
 				black = black+4;
 				buildR(firstNode, secondNode, missingRelease, windowless, windowMin, windowMax, reorder_white);
 				
 				while (trPrime.isEmpty()) {
+					VindicationBudget.iteration();
 					black = black+1;
 					trPrime = backReorderTrace(firstNode, secondNode, trPrime, reorder_white, reorders != 0, missingRelease);
 					if (trPrime.isEmpty()) {
@@ -555,18 +561,111 @@ public class EventNode implements Iterable<EventNode> {
 			}
 		}
 		
-		// Finally remove all of the added edges
-		for (Edge e : initialEdgesToRemove) {
+		return secondCycleDetected || firstCycleDetected;
+	}
+
+	private static void removeEdges(LinkedList<Edge> edges) {
+		for (Edge e : edges) {
 			EventNode.removeEdge(e.source, e.sink);
 		}
-		for (Edge e : additionalBackEdges) {
-			EventNode.removeEdge(e.source, e.sink);
+	}
+	
+	/* Reverse traversal from start over the events at or after windowMin. Keeps, per lock and thread, the latest acquire
+	 * reached either directly or as a critical section surrounding a reached event. */
+	private static void collectReachableAcquires(EventNode start, long windowMin, AcqRelTable reachableAcqNodes) {
+		reachableAcqNodes.clear();
+		ArrayDeque<EventNode> grayNodes = new ArrayDeque<EventNode>();
+		int traversal = prepUniqueTraversal();
+		grayNodes.add(start);
+		while (!grayNodes.isEmpty()) {
+			EventNode node = grayNodes.removeFirst();
+			VindicationBudget.charge();
+			if (node.myLatestTraversal != traversal) {
+				// We don't care about nodes outside the window
+				if (node.eventNumber >= windowMin) {
+					// If this is an acquire, let's record it,
+					// to figure out if it can reach an earlier (in total order) release of the same lock
+					if (node instanceof AcqRelNode) {
+						AcqRelNode acqRelNode = (AcqRelNode)node;
+						if (acqRelNode.isAcquire()) {
+							// We want the acq node that's latest in total order,
+							// since earlier acq nodes on the same thread will be WDC ordered by definition.
+							reachableAcqNodes.keepLatest(acqRelNode);
+						}
+					} else if (node.surroundingCriticalSection != null) {
+						AcqRelNode surroundingAcq = node.surroundingCriticalSection;
+						while (surroundingAcq != null) {
+							reachableAcqNodes.keepLatest(surroundingAcq);
+							surroundingAcq = surroundingAcq.surroundingCriticalSection;
+						}
+					}
+					node.myLatestTraversal = traversal;
+					for (EventNode source : node.sourceOrSources) {
+						grayNodes.add(source);
+					}
+				}
+			}
 		}
-		for (Edge e : additionalForwardEdges) {
-			EventNode.removeEdge(e.source, e.sink);
+	}
+
+	/* Forward traversal from start over the events at or before windowMax. Keeps, per lock and thread, the earliest release
+	 * reached either directly or as the end of a critical section surrounding a reached event. */
+	private static void collectReachableReleases(EventNode start, long windowMax, AcqRelTable reachableRelNodes) {
+		reachableRelNodes.clear();
+		ArrayDeque<EventNode> grayNodes = new ArrayDeque<EventNode>();
+		int traversal = prepUniqueTraversal();
+		grayNodes.add(start);
+		while (!grayNodes.isEmpty()) {
+			EventNode node = grayNodes.removeFirst();
+			VindicationBudget.charge();
+			if (node.myLatestTraversal != traversal) {
+				// We don't care about nodes outside the window
+				if (node.eventNumber <= windowMax) {
+					// If this is a release, let's record it,
+					// to figure out if it it's reached by a later (in total order) acquire of the same lock
+					if (node instanceof AcqRelNode) {
+						AcqRelNode acqRelNode = (AcqRelNode)node;
+						if (!acqRelNode.isAcquire()) {
+							// We want the rel node that's earliest in total order,
+							// since later rel nodes on the same thread will be WDC ordered by definition.
+							reachableRelNodes.keepEarliest(acqRelNode);
+						}
+					} else if (node.surroundingCriticalSection != null) {
+						AcqRelNode surroundingAcq = node.surroundingCriticalSection;
+						while (surroundingAcq != null) {
+							reachableRelNodes.keepEarliest(surroundingAcq.otherCriticalSectionNode);
+							surroundingAcq = surroundingAcq.surroundingCriticalSection;
+						}
+					}
+					node.myLatestTraversal = traversal;
+					for (EventNode sink : node.sinkOrSinks) {
+						grayNodes.add(sink);
+					}
+				}
+			}
 		}
-		
-		return secondCycleDetected || firstCycleDetected;
+	}
+
+	/* bfsTraversal toward the conflicting accesses, remembering positive answers. During one vindication edges are only added
+	 * and windows only grow, so a node that reaches an access within a window also does within any window enclosing it.
+	 * Answers whose path avoids the added edges are also kept in shared for the later races of a batch. */
+	private static boolean reachesAccess(IdentityHashMap<EventNode,long[]> reached, ReachabilityMemo shared, ReachabilityMemo.AddedEdges added,
+			EventNode node, EventNode firstNode, EventNode secondNode, long windowMin, long windowMax) {
+		final long[] window = reached.get(node);
+		if (window != null && window[0] >= windowMin && window[1] <= windowMax) {
+			return true;
+		}
+		final boolean reaches;
+		if (shared == null) {
+			reaches = bfsTraversal(node, firstNode, secondNode, windowMin, windowMax, false);
+		} else {
+			reaches = shared.reaches(node, firstNode, secondNode, windowMin, windowMax) || shared.search(node, firstNode, secondNode, windowMin, windowMax, added);
+		}
+		if (reaches) {
+			reached.put(node, new long[] { windowMin, windowMax });
+			return true;
+		}
+		return false;
 	}
 	
 	static void buildR (EventNode firstNode, EventNode secondNode, HashSet<AcqRelNode> missingRelease, boolean windowless, long windowMin, long windowMax, int reorder_white) {
@@ -636,6 +735,7 @@ public class EventNode implements Iterable<EventNode> {
 		HashSet<Integer> attemptedEvents = new HashSet<>(); // Keys for events that we attempted to add to trace but failed
 		while (!traverse.isEmpty()) {
 			EventNode e;
+			VindicationBudget.charge();
 			if (randomReordering) {
 				e = reorderRandom(traverse, attemptedEvents);
 			} else {
@@ -848,9 +948,20 @@ public class EventNode implements Iterable<EventNode> {
 	}
 	
 	public static boolean addRuleB(RdWrNode firstNode, RdWrNode secondNode, boolean traverseFromAllEdges, boolean precision, File commandDir) {
-		LinkedList<Edge> initialEdges = new LinkedList<Edge>();
 		LinkedList<Edge> initialEdgesToRemove = new LinkedList<Edge>(); // We don't add or remove initial edges that already exist
 		LinkedList<Edge> additionalRuleBEdges = new LinkedList<Edge>();
+		try {
+			return addRuleB(firstNode, secondNode, traverseFromAllEdges, precision, commandDir, initialEdgesToRemove, additionalRuleBEdges);
+		} finally {
+			// Finally remove all of the added edges, also when the vindication budget ran out
+			removeEdges(initialEdgesToRemove);
+			removeEdges(additionalRuleBEdges);
+		}
+	}
+
+	private static boolean addRuleB(RdWrNode firstNode, RdWrNode secondNode, boolean traverseFromAllEdges, boolean precision, File commandDir,
+			LinkedList<Edge> initialEdgesToRemove, LinkedList<Edge> additionalRuleBEdges) {
+		LinkedList<Edge> initialEdges = new LinkedList<Edge>();
 		
 		// Create edges from one node's predecessors to the other node
 		for (EventNode source : secondNode.sourceOrSources) {
@@ -876,12 +987,19 @@ public class EventNode implements Iterable<EventNode> {
 		long windowMin = firstNode.eventNumber;//.lastEventNumber; // everything WDC-after the first node must be totally ordered after the first node's access(es)
 		long windowMax = secondNode.eventNumber; // everything WDC-before the second node must be totally ordered before the second node's access(es)
 		
+		// Reused by every traversal of this vindication
+		AcqRelTable reachableAcqNodes = new AcqRelTable();
+		AcqRelTable reachableRelNodes = new AcqRelTable();
+		// Nodes known to reach either conflicting access, each with the window it was found in
+		IdentityHashMap<EventNode,long[]> reached = new IdentityHashMap<EventNode,long[]>();
+		
 		do {
 			
 			addedRuleBEdge = false;
 
 			++iteration;
 			Util.println("Iteration = " + iteration);
+			VindicationBudget.iteration();
 
 			LinkedList<Edge> separateInitNodes = new LinkedList<Edge>();
 			for (Edge initialEdge : initialEdges) {
@@ -894,117 +1012,19 @@ public class EventNode implements Iterable<EventNode> {
 			}
 			for (Edge edge : separateInitNodes) {
 				// First do a reverse traversal from the second access and possibly from other edge sources
-				HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>> reachableAcqNodes = new HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>>();
-				ArrayDeque<EventNode> grayNodes = new ArrayDeque<EventNode>();
-				int traversal = prepUniqueTraversal();
-				grayNodes.add(edge.source);
-				while (!grayNodes.isEmpty()) {
-					EventNode node = grayNodes.removeFirst();
-					if (node.myLatestTraversal != traversal) {
-						// We don't care about nodes outside the window
-						if (node.eventNumber >= windowMin) {
-							// If this is an acquire, let's record it,
-							// to figure out if it can reach an earlier (in total order) release of the same lock
-							if (node instanceof AcqRelNode) {
-								AcqRelNode acqRelNode = (AcqRelNode)node;
-								if (acqRelNode.isAcquire()) {
-									HashMap<ShadowThread,AcqRelNode> acqNodesForLock = reachableAcqNodes.get(acqRelNode.shadowLock);
-									if (acqNodesForLock == null) {
-										acqNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableAcqNodes.put(acqRelNode.shadowLock, acqNodesForLock);
-									}
-									// We want the acq node that's latest in total order,
-									// since earlier acq nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentAcqNodeForThread = acqNodesForLock.get(acqRelNode.getShadowThread());
-									if (currentAcqNodeForThread == null || acqRelNode.eventNumber > currentAcqNodeForThread.eventNumber) {
-										acqNodesForLock.put(acqRelNode.getShadowThread(), acqRelNode);
-									}
-								}
-							} else if (node.surroundingCriticalSection != null) {
-								AcqRelNode surroundingAcq = node.surroundingCriticalSection;
-								while (surroundingAcq != null) {
-									HashMap<ShadowThread,AcqRelNode> acqNodesForLock = reachableAcqNodes.get(surroundingAcq.shadowLock);
-									if (acqNodesForLock == null) {
-										acqNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableAcqNodes.put(surroundingAcq.shadowLock, acqNodesForLock);
-									}
-									// We want the acq node that's latest in total order,
-									// since earlier acq nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentAcqNodeForThread = acqNodesForLock.get(surroundingAcq.getShadowThread());
-									if (currentAcqNodeForThread == null || surroundingAcq.eventNumber > currentAcqNodeForThread.eventNumber) {
-										acqNodesForLock.put(surroundingAcq.getShadowThread(), surroundingAcq);
-									}
-									surroundingAcq = surroundingAcq.surroundingCriticalSection;
-								}
-							}
-							node.myLatestTraversal = traversal;
-							for (EventNode source : node.sourceOrSources) {
-								grayNodes.add(source);
-							}
-						}
-					}
-				}
-				
+				collectReachableAcquires(edge.source, windowMin, reachableAcqNodes);
 				// Second do a forward traversal from the first access and possibly from other edge sinks
-				HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>> reachableRelNodes = new HashMap<ShadowLock,HashMap<ShadowThread,AcqRelNode>>();
-				traversal = prepUniqueTraversal();
-				grayNodes.add(edge.sink);
-				while (!grayNodes.isEmpty()) {
-					EventNode node = grayNodes.removeFirst();
-					if (node.myLatestTraversal != traversal) {
-						// We don't care about nodes outside the window
-						if (node.eventNumber <= windowMax) {
-							// If this is a release, let's record it,
-							// to figure out if it it's reached by a later (in total order) acquire of the same lock
-							if (node instanceof AcqRelNode) {
-								AcqRelNode acqRelNode = (AcqRelNode)node;
-								if (!acqRelNode.isAcquire()) {
-									HashMap<ShadowThread,AcqRelNode> relNodesForLock = reachableRelNodes.get(acqRelNode.shadowLock);
-									if (relNodesForLock == null) {
-										relNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableRelNodes.put(acqRelNode.shadowLock, relNodesForLock);
-									}
-									// We want the rel node that's earliest in total order,
-									// since later rel nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentRelNodeForThread = relNodesForLock.get(acqRelNode.getShadowThread());
-									if (currentRelNodeForThread == null || acqRelNode.eventNumber < currentRelNodeForThread.eventNumber) {
-										relNodesForLock.put(acqRelNode.getShadowThread(), acqRelNode);
-									}
-								}
-							} else if (node.surroundingCriticalSection != null) {
-								AcqRelNode surroundingAcq = node.surroundingCriticalSection;
-								AcqRelNode surroundingRel = null;
-								while (surroundingAcq != null) {
-									surroundingRel = surroundingAcq.otherCriticalSectionNode;
-									HashMap<ShadowThread,AcqRelNode> relNodesForLock = reachableRelNodes.get(surroundingRel.shadowLock);
-									if (relNodesForLock == null) {
-										relNodesForLock = new HashMap<ShadowThread,AcqRelNode>();
-										reachableRelNodes.put(surroundingRel.shadowLock, relNodesForLock);
-									}
-									// We want the rel node that's earliest in total order,
-									// since later rel nodes on the same thread will be WDC ordered by definition.
-									AcqRelNode currentRelNodeForThread = relNodesForLock.get(surroundingRel.getShadowThread());
-									if (currentRelNodeForThread == null || surroundingRel.eventNumber < currentRelNodeForThread.eventNumber) {
-										relNodesForLock.put(surroundingRel.getShadowThread(), surroundingRel);
-									}
-									surroundingAcq = surroundingAcq.surroundingCriticalSection;
-								}
-							}
-							node.myLatestTraversal = traversal;
-							for (EventNode sink : node.sinkOrSinks) {
-								grayNodes.add(sink);
-							}
-						}
-					}
-				}
+				collectReachableReleases(edge.sink, windowMax, reachableRelNodes);
 	
 				// Now check for edges that indicate a back edge w.r.t. total order
-				for (ShadowLock shadowLock : reachableAcqNodes.keySet()) {
-					HashMap<ShadowThread,AcqRelNode> acqNodesForLock = reachableAcqNodes.get(shadowLock);
-					HashMap<ShadowThread,AcqRelNode> relNodesForLock = reachableRelNodes.get(shadowLock);
+				for (ShadowLock shadowLock : reachableAcqNodes.locks()) {
+					AcqRelNode[] acqNodesForLock = reachableAcqNodes.get(shadowLock);
+					AcqRelNode[] relNodesForLock = reachableRelNodes.get(shadowLock);
 					if (relNodesForLock != null) {
-						for (AcqRelNode acqNode : acqNodesForLock.values()) {
-							for (AcqRelNode relNode : relNodesForLock.values()) {
+						for (AcqRelNode acqNode : acqNodesForLock) {
+							if (acqNode == null) continue;
+							for (AcqRelNode relNode : relNodesForLock) {
+								if (relNode == null) continue;
 								//Rule B Edges
 								if (relNode.eventNumber > acqNode.eventNumber &&
 									!relNode.otherCriticalSectionNode.equals(acqNode) && //make sure the relNode and acqNode are not the same critical section
@@ -1014,7 +1034,7 @@ public class EventNode implements Iterable<EventNode> {
 									long tempWindowMax = Math.max(windowMax, relNode.otherCriticalSectionNode.eventNumber);
 									tempWindowMax = Math.max(tempWindowMax, relNode.eventNumber);
 									// Forward edge found, but the acquire of both critical sections of the forwardedge need to reach either conflicting access
-									if (!precision || (bfsTraversal(relNode.otherCriticalSectionNode, firstNode, secondNode, tempWindowMin, tempWindowMax, false) && bfsTraversal(acqNode, firstNode, secondNode, tempWindowMin, tempWindowMax, false))) {
+									if (!precision || (reachesAccess(reached, null, null, relNode.otherCriticalSectionNode, firstNode, secondNode, tempWindowMin, tempWindowMax) && reachesAccess(reached, null, null, acqNode, firstNode, secondNode, tempWindowMin, tempWindowMax))) {
 										if (precision && DEBUG_GRAPH) Assert.assertTrue(bfsTraversal(acqNode, relNode, null, tempWindowMin, tempWindowMax, false));//, "tempWindowMin: " + tempWindowMin + " | tempWindowMax: " + tempWindowMax + " | acqNode: " + acqNode.getNodeLabel() + ", eventNumber: " + acqNode.eventNumber + " | relNode: " + relNode.getNodeLabel() + ", eventNumber: " + relNode.eventNumber); // Assert a path actually exists from acqNode -> relNode
 										// Add forward edge and signal we should repeat this whole process
 										Util.println("Found rel->rel that needs Rule B edge: " + shadowLock + ", " + acqNode.otherCriticalSectionNode + "->" + relNode);
@@ -1039,15 +1059,6 @@ public class EventNode implements Iterable<EventNode> {
 		
 		//Check if there is a forward DC path between the two conflicting accesses.
 		boolean DCOrdered = bfsTraversal(firstNode, secondNode, null, Long.MIN_VALUE, Long.MAX_VALUE, false);
-		
-		// Finally remove all of the added edges
-		for (Edge e : initialEdgesToRemove) {
-			EventNode.removeEdge(e.source, e.sink);
-		}
-		for (Edge e : additionalRuleBEdges) {
-			EventNode.removeEdge(e.source, e.sink);
-		}
-
 		return DCOrdered;
 	}
 		
@@ -1061,6 +1072,7 @@ public class EventNode implements Iterable<EventNode> {
 		
 		while (!WDCBGraph.isEmpty()) {
 			EventNode node = WDCBGraph.pop();
+			VindicationBudget.charge();
 			if (node.myLatestTraversal != black) {
 				if (node.eventNumber >= windowMin && node.eventNumber <= windowMax) {
 					if ((firstNode != null && (reorderMark ? containsNode(node.sourceOrSources, firstNode) : containsNode(node.sinkOrSinks, firstNode))) || (secondNode != null && (reorderMark ? containsNode(node.sourceOrSources, secondNode) : containsNode(node.sinkOrSinks, secondNode)))) {
@@ -1122,6 +1134,7 @@ public class EventNode implements Iterable<EventNode> {
 			while (iter.hasNext()) {
 				EventNode predOrSucc = iter.next();
 				if (predOrSucc.eventNumber >= windowMin && predOrSucc.eventNumber <= windowMax) {
+					VindicationBudget.charge();
 					nodeStack.push(node);
 					iterStack.push(iter);
 					node = predOrSucc;
@@ -1151,6 +1164,7 @@ public class EventNode implements Iterable<EventNode> {
 		stack.push(new EventNodeDepth(node, 1));
 		while (!stack.isEmpty()) {
 			EventNodeDepth currentNodeDepth = stack.pop();
+			VindicationBudget.charge();
 			EventNode currentNode = currentNodeDepth.node;
 			
 			if (currentNode.eventNumber >= windowMin && currentNode.eventNumber <= windowMax) {
@@ -1452,36 +1466,110 @@ public class EventNode implements Iterable<EventNode> {
 /** An instance of RdWr Node can represent multiple consecutive read-write events that aren't interrupted by incoming (outgoing are impossible) WDC edges */
 class RdWrNode extends EventNode {
 
-	RdWrNode(long eventNumber, int threadID, AcqRelNode currentCriticalSection) {
+	/* Id of the first access this node represents: a field access id, or the complement of an array access id, or NO_ACCESS. */
+	final int accessId;
+
+	/* Summary of the accesses merged into this node: distinct access ids in order of first occurrence, each with
+	 * the number of dynamic accesses it stands for. Allocated on the first merge and only modified by the owning thread. */
+	private int[] accessIds;
+	private int[] accessCounts;
+	private int accessKinds;
+
+	static final int NO_ACCESS = Integer.MIN_VALUE;
+
+	RdWrNode(long eventNumber, int threadID, AcqRelNode currentCriticalSection, int accessId) {
 		super(eventNumber, threadID, currentCriticalSection);
+		this.accessId = accessId;
+	}
+
+	static int accessId(AccessInfo info) {
+		if (info == null) return NO_ACCESS;
+		return info instanceof ArrayAccessInfo ? ~info.getId() : info.getId();
+	}
+
+	static AccessInfo accessInfo(int accessId) {
+		if (accessId == NO_ACCESS) return null;
+		return accessId >= 0 ? MetaDataInfoMaps.getFieldAccesses().get(accessId) : MetaDataInfoMaps.getArrayAccesses().get(~accessId);
 	}
 
 	boolean isWrite() {
-		return false; // TODO: this is a confusing answer when debugging info is off
+		final AccessInfo info = accessInfo(accessId);
+		return info != null && info.isWrite();
 	}
 	
 	String getFieldName() {
+		return accessName(accessInfo(accessId));
+	}
+
+	private static String accessName(AccessInfo info) {
+		if (info instanceof FieldAccessInfo) {
+			return ((FieldAccessInfo)info).getField().getName();
+		} else if (info != null) {
+			return "[]@" + info.getLoc();
+		}
 		return "?";
 	}
 
+	/** Number of dynamic accesses represented by this node. */
+	int getAccessCount() {
+		if (accessIds == null) return 1;
+		int count = 0;
+		for (int i = 0; i < accessKinds; i++) {
+			count += accessCounts[i];
+		}
+		return count;
+	}
+
+	/** Folds the summary of a node that is being merged into this one. */
+	private void addAccesses(RdWrNode merged) {
+		if (merged.accessIds == null) {
+			addAccess(merged.accessId, 1);
+		} else {
+			for (int i = 0; i < merged.accessKinds; i++) {
+				addAccess(merged.accessIds[i], merged.accessCounts[i]);
+			}
+		}
+	}
+
+	private void addAccess(int id, int count) {
+		if (accessIds == null) {
+			accessIds = new int[] { accessId, 0, 0, 0 };
+			accessCounts = new int[] { 1, 0, 0, 0 };
+			accessKinds = 1;
+		}
+		// Loop bodies repeat the same few sites, so the most recent entries are the likeliest match
+		for (int i = accessKinds - 1; i >= 0; i--) {
+			if (accessIds[i] == id) {
+				accessCounts[i] += count;
+				return;
+			}
+		}
+		if (accessKinds == accessIds.length) {
+			accessIds = Arrays.copyOf(accessIds, accessKinds * 2);
+			accessCounts = Arrays.copyOf(accessCounts, accessKinds * 2);
+		}
+		accessIds[accessKinds] = id;
+		accessCounts[accessKinds] = count;
+		accessKinds++;
+	}
+
 	/** Called when a merge is about to happen, only if DEBUG_ACCESS_INFO is set. To be overridden by subclasses. */
 	void mergeWithPriorHook(RdWrDebugNode prior) {}
 
 	/** Can combine two consecutive write/read nodes that have the same VC */
 	RdWrNode tryToMergeWithPrior() {
-		if (this.sourceOrSources instanceof EventNode) {
-			EventNode priorEventNode = (EventNode)this.sourceOrSources;
-			if (priorEventNode instanceof RdWrNode) {
-				// If a non-PO outgoing edge has already been created from the prior node, then let's not try to do merging.
-				synchronized (priorEventNode) {
-					if (priorEventNode.sinkOrSinks instanceof EventNode && priorEventNode.threadID == this.threadID) {
-						if (DEBUG_ACCESS_INFO) {
-							mergeWithPriorHook((RdWrDebugNode) priorEventNode);
-						}
-						EventNode.removeEdge(priorEventNode, this);
-						return (RdWrNode)priorEventNode;
-					}
+		final Iterable<EventNode> sources = this.sourceOrSources;
+		if (sources instanceof RdWrNode) {
+			RdWrNode priorEventNode = (RdWrNode)sources;
+			// If a non-PO outgoing edge has already been created from the prior node, then let's not try to do merging.
+			// The CAS fails if another thread has added such an edge since.
+			if (priorEventNode.threadID == this.threadID && SINKS.compareAndSet(priorEventNode, this, EMPTY_NODES)) {
+				if (DEBUG_ACCESS_INFO) {
+					mergeWithPriorHook((RdWrDebugNode) priorEventNode);
 				}
+				priorEventNode.addAccesses(this);
+				removeNode(SOURCES, this, priorEventNode);
+				return priorEventNode;
 			}
 		}
 		return this;
@@ -1494,7 +1582,29 @@ class RdWrNode extends EventNode {
 	
 	@Override
 	public String getNodeLabel(){
-		return "rd(?) by T"+ threadID;
+		StringBuilder sb = new StringBuilder();
+		if (accessIds == null) {
+			appendAccess(sb, accessId, 1);
+		} else {
+			for (int i = 0; i < accessKinds; i++) {
+				appendAccess(sb, accessIds[i], accessCounts[i]);
+			}
+		}
+		sb.append("by T");
+		sb.append(threadID);
+		return sb.toString();
+	}
+
+	private static void appendAccess(StringBuilder sb, int id, int count) {
+		final AccessInfo info = accessInfo(id);
+		sb.append(info != null && info.isWrite() ? "wr(" : "rd(");
+		sb.append(accessName(info));
+		sb.append(")");
+		if (count > 1) {
+			sb.append("x");
+			sb.append(count);
+		}
+		sb.append(" ");
 	}
 }
 
@@ -1531,8 +1641,8 @@ class RdWrDebugNode extends RdWrNode {
 		return accesses;
 	}
 
-	RdWrDebugNode(long eventNumber, boolean isWrite, String fieldName, ShadowVar var, int threadID, AcqRelNode currentCriticalSection) {
-		super(eventNumber, threadID, currentCriticalSection);
+	RdWrDebugNode(long eventNumber, boolean isWrite, String fieldName, ShadowVar var, int threadID, AcqRelNode currentCriticalSection, int accessId) {
+		super(eventNumber, threadID, currentCriticalSection, accessId);
 		accesses.add(new Access(fieldName, var, isWrite, this));
 	}
 
@@ -0,0 +1,133 @@
+package tools.wdc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Reachability answers shared by the races of a batched vindication (RR.wdcBatchVindicationOption).
+ * An answer records that a node reaches a conflicting access within a window.  It is kept only
+ * if its path uses no edge that a vindication added, so it holds in the event graph each race
+ * starts from.  A vindication only adds edges and grows its window, so the answer also holds
+ * for any later race with that access and an enclosing window.  The answers for an access are
+ * dropped once no race left in the batch has that access.
+ */
+final class ReachabilityMemo {
+
+	/** The edges one vindication added to the event graph, which shared answers must not use. */
+	static final class AddedEdges {
+
+		private final IdentityHashMap<EventNode,ArrayList<EventNode>> sinksBySource = new IdentityHashMap<EventNode,ArrayList<EventNode>>();
+
+		void add(EventNode source, EventNode sink) {
+			ArrayList<EventNode> sinks = sinksBySource.get(source);
+			if (sinks == null) {
+				sinks = new ArrayList<EventNode>(2);
+				sinksBySource.put(source, sinks);
+			}
+			sinks.add(sink);
+		}
+
+		boolean contains(EventNode source, EventNode sink) {
+			final ArrayList<EventNode> sinks = sinksBySource.get(source);
+			return sinks != null && sinks.contains(sink);
+		}
+	}
+
+	// For each access, the nodes known to reach it and the window of the path
+	private final IdentityHashMap<EventNode,IdentityHashMap<EventNode,long[]>> reachedByAccess = new IdentityHashMap<EventNode,IdentityHashMap<EventNode,long[]>>();
+	// For each access, the races left in the batch that have it
+	private final IdentityHashMap<EventNode,int[]> usesLeft = new IdentityHashMap<EventNode,int[]>();
+
+	void addUse(EventNode access) {
+		final int[] uses = usesLeft.get(access);
+		if (uses == null) {
+			usesLeft.put(access, new int[] { 1 });
+		} else {
+			uses[0]++;
+		}
+	}
+
+	void releaseUse(EventNode access) {
+		final int[] uses = usesLeft.get(access);
+		if (uses != null && --uses[0] == 0) {
+			usesLeft.remove(access);
+			reachedByAccess.remove(access);
+		}
+	}
+
+	/* Whether node is known to reach either access within the window. */
+	boolean reaches(EventNode node, EventNode firstNode, EventNode secondNode, long windowMin, long windowMax) {
+		return reaches(node, firstNode, windowMin, windowMax) || reaches(node, secondNode, windowMin, windowMax);
+	}
+
+	private boolean reaches(EventNode node, EventNode access, long windowMin, long windowMax) {
+		final IdentityHashMap<EventNode,long[]> reached = reachedByAccess.get(access);
+		if (reached == null) return false;
+		final long[] window = reached.get(node);
+		return window != null && window[0] >= windowMin && window[1] <= windowMax;
+	}
+
+	private void put(EventNode node, EventNode access, long windowMin, long windowMax) {
+		if (!usesLeft.containsKey(access)) return;
+		IdentityHashMap<EventNode,long[]> reached = reachedByAccess.get(access);
+		if (reached == null) {
+			reached = new IdentityHashMap<EventNode,long[]>();
+			reachedByAccess.put(access, reached);
+		}
+		final long[] window = reached.get(node);
+		// A narrower window answers for more later races
+		if (window == null || (windowMin >= window[0] && windowMax <= window[1])) {
+			reached.put(node, new long[] { windowMin, windowMax });
+		}
+	}
+
+	/*
+	 * EventNode.bfsTraversal from start toward either access, preferring paths without added edges.
+	 * Nodes reached only through an added edge are visited after all the others, so an answer is
+	 * shared whenever a path without added edges exists.
+	 */
+	boolean search(EventNode start, EventNode firstNode, EventNode secondNode, long windowMin, long windowMax, AddedEdges added) {
+		final int clean = EventNode.prepUniqueTraversal(2);
+		final int tainted = clean - 1;
+		final ArrayDeque<EventNode> cleanNodes = new ArrayDeque<EventNode>();
+		final ArrayDeque<EventNode> taintedNodes = new ArrayDeque<EventNode>();
+
+		cleanNodes.add(start);
+		start.myLatestTraversal = clean;
+
+		while (!cleanNodes.isEmpty() || !taintedNodes.isEmpty()) {
+			final boolean isClean = !cleanNodes.isEmpty();
+			final EventNode node = isClean ? cleanNodes.removeFirst() : taintedNodes.removeFirst();
+			if (!isClean && node.myLatestTraversal == clean) continue; // also reached without added edges
+			VindicationBudget.charge();
+			if (node.eventNumber >= windowMin && node.eventNumber <= windowMax) {
+				final EventNode access = accessSink(node, firstNode, secondNode);
+				if (access != null) {
+					if (isClean && !added.contains(node, access)) {
+						put(start, access, windowMin, windowMax);
+					}
+					return true;
+				}
+				for (EventNode sink : node.sinkOrSinks) {
+					if (isClean && !added.contains(node, sink)) {
+						if (sink.myLatestTraversal != clean) {
+							sink.myLatestTraversal = clean;
+							cleanNodes.add(sink);
+						}
+					} else if (sink.myLatestTraversal < tainted) {
+						sink.myLatestTraversal = tainted;
+						taintedNodes.add(sink);
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private static EventNode accessSink(EventNode node, EventNode firstNode, EventNode secondNode) {
+		if (firstNode != null && EventNode.containsNode(node.sinkOrSinks, firstNode)) return firstNode;
+		if (secondNode != null && EventNode.containsNode(node.sinkOrSinks, secondNode)) return secondNode;
+		return null;
+	}
+}
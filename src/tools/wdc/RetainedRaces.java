@@ -0,0 +1,87 @@
+package tools.wdc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import acme.util.count.Counter;
+
+/*
+ * Dynamic races kept for vindication in fini().  By default every instance is kept.
+ * With a positive perStaticRace, at most that many instances of each static race are
+ * kept: the ones with the shortest event distance between the conflicting accesses,
+ * which are also the cheapest to vindicate.  fini() stops at the first instance of a
+ * static race it verifies, so a bound only changes the result for static races whose
+ * kept instances are all refuted or unknown.
+ * An evicted instance drops its references to its event nodes, but that rarely frees
+ * any of the graph: sourceOrSources links every node to the events before it, so the
+ * nodes stay reachable from the kept races and the threads' latest nodes.  The bound
+ * limits the number of races vindicated, not the size of the graph.
+ * Iteration visits static races in the order first seen, each by increasing distance,
+ * or in the order found when every instance is kept.
+ */
+class RetainedRaces implements Iterable<StaticRace> {
+
+	private static final Counter retained = new Counter("DC", "Dynamic Races Retained");
+	private static final Counter evicted = new Counter("DC", "Dynamic Races Evicted");
+
+	private final int perStaticRace;
+	private final LinkedHashMap<StaticRace,ArrayList<StaticRace>> instances = new LinkedHashMap<StaticRace,ArrayList<StaticRace>>();
+
+	/* perStaticRace <= 0 keeps every instance. */
+	RetainedRaces(int perStaticRace) {
+		this.perStaticRace = perStaticRace > 0 ? perStaticRace : Integer.MAX_VALUE;
+	}
+
+	synchronized void add(StaticRace race) {
+		ArrayList<StaticRace> list = instances.get(race);
+		if (list == null) {
+			list = new ArrayList<StaticRace>(Math.min(perStaticRace, 8));
+			instances.put(race, list);
+		}
+		if (perStaticRace == Integer.MAX_VALUE) {
+			list.add(race);
+			retained.inc();
+			return;
+		}
+		final long distance = race.distance();
+		int i = list.size();
+		while (i > 0 && list.get(i - 1).distance() > distance) {
+			i--;
+		}
+		if (i == perStaticRace) {
+			race.release();
+			evicted.inc();
+			return;
+		}
+		list.add(i, race);
+		retained.inc();
+		if (list.size() > perStaticRace) {
+			list.remove(list.size() - 1).release();
+			retained.add(-1);
+			evicted.inc();
+		}
+	}
+
+	synchronized boolean remove(StaticRace race) {
+		ArrayList<StaticRace> list = instances.get(race);
+		if (list != null) {
+			for (int i = 0; i < list.size(); i++) {
+				if (list.get(i) == race) {
+					list.remove(i);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/* Iterates over a snapshot, so remove() may be called while iterating. */
+	public synchronized Iterator<StaticRace> iterator() {
+		ArrayList<StaticRace> all = new ArrayList<StaticRace>();
+		for (ArrayList<StaticRace> list : instances.values()) {
+			all.addAll(list);
+		}
+		return all.iterator();
+	}
+}
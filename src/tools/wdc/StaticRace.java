@@ -4,17 +4,19 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
 
 import acme.util.Util;
 import rr.meta.MethodInfo;
 import rr.meta.SourceLocation;
+import rr.tool.RR;
 
 class StaticRace {
 	HashSet<SourceLocation> locations; // Might contain just one location, which means the location races with itself
 	//RdWrNodes needed for identifying conflicting event nodes for vindication
-	final RdWrNode firstNode;
-	final RdWrNode secondNode;
+	//Cleared when the instance is evicted from races.  The nodes usually stay reachable through the graph's edges
+	RdWrNode firstNode;
+	RdWrNode secondNode;
 	final RaceType raceType;
 	final MethodInfo firstNodeMI;
 	final MethodInfo secondNodeMI;
@@ -41,6 +43,15 @@ class StaticRace {
 		this.secondNodeMI = secondNodeMI;
 	}
 	
+	long distance() {
+		return secondNode.eventNumber - firstNode.eventNumber;
+	}
+	
+	void release() {
+		firstNode = null;
+		secondNode = null;
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		return this.locations.equals(((StaticRace)o).locations);
@@ -69,7 +80,7 @@ class StaticRace {
 		return "(" + firstClass + ":" + firstMethod + ":" + first + " -> " + secondClass + ":" + secondMethod + ":" + second + ")";
 	}
 	
-	static ConcurrentLinkedQueue<StaticRace> races = new ConcurrentLinkedQueue<StaticRace>();
+	static RetainedRaces races = new RetainedRaces(RR.wdcRetainedRacesOption.get());
 	static HashMap<RaceType,HashMap<StaticRace,Integer>> static_unordered_pairs_RaceMap = new HashMap<RaceType,HashMap<StaticRace,Integer>>();
 	static HashMap<RaceType,HashMap<StaticRace,Integer>> static_second_site_RaceMap = new HashMap<RaceType,HashMap<StaticRace,Integer>>();
 
@@ -87,6 +98,43 @@ class StaticRace {
 		}
 	}
 	
+	/*
+	 * Adds the races found by WDCLane to the application threads' races.  The application
+	 * threads counted each such dynamic race as a DC- or WDC-race at the same access, so
+	 * that count moves to the lane's HB- or WCP-race.  Lane races beyond the DC- and
+	 * WDC-races at that access are dropped, since HB- and WCP-races are always DC-races.
+	 */
+	static void mergeRaces(HashMap<RaceType,HashMap<StaticRace,Integer>> laneRaceMap, HashMap<RaceType,HashMap<StaticRace,Integer>> staticRaceMap) {
+		for (Map.Entry<RaceType,HashMap<StaticRace,Integer>> typeEntry : laneRaceMap.entrySet()) {
+			for (Map.Entry<StaticRace,Integer> raceEntry : typeEntry.getValue().entrySet()) {
+				final StaticRace race = raceEntry.getKey();
+				int left = raceEntry.getValue();
+				for (RaceType weaker : new RaceType[] { RaceType.DCRace, RaceType.WDCRace }) {
+					HashMap<StaticRace,Integer> counts = staticRaceMap.get(weaker);
+					Integer weakerCount = counts == null ? null : counts.get(race);
+					if (weakerCount != null && left > 0) {
+						final int moved = Math.min(left, weakerCount);
+						left -= moved;
+						if (moved == weakerCount) {
+							counts.remove(race);
+						} else {
+							counts.put(race, weakerCount - moved);
+						}
+					}
+				}
+				final int count = raceEntry.getValue() - left;
+				if (count == 0) continue;
+				HashMap<StaticRace,Integer> counts = staticRaceMap.get(typeEntry.getKey());
+				if (counts == null) {
+					counts = new HashMap<StaticRace,Integer>();
+					staticRaceMap.put(typeEntry.getKey(), counts);
+				}
+				final Integer prior = counts.get(race);
+				counts.put(race, prior == null ? count : prior + count);
+			}
+		}
+	}
+	
 	/**
 	* @param(static_race_identifier true = use second site to id a race | false = use unordered pairs to id a race 
 	*/
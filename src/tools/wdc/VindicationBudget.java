@@ -0,0 +1,125 @@
+package tools.wdc;
+
+import rr.tool.RR;
+
+/*
+ * Work and time one race's vindication in fini() may use.  Graph traversals charge a
+ * unit per node visited and the fixed point and reordering loops charge an iteration.
+ * When the race's node or iteration budget, its timeout, or the deadline for all of
+ * vindication runs out, the charge throws Exhausted and the race is reported as unknown.
+ * A limit of zero means none.  Vindication runs on a single thread, so the budget in
+ * force is a plain static that is null outside of vindication.
+ */
+final class VindicationBudget {
+
+	/* Unwinds a vindication whose budget ran out.  Callers remove any edges they added on the way out. */
+	static final class Exhausted extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Exhausted(String reason) {
+			super(reason, null, false, false);
+		}
+	}
+
+	// Time is only looked at every so many nodes
+	private static final int CLOCK_CHECK_INTERVAL = 1 << 10;
+
+	private static long deadline = Long.MAX_VALUE;
+	private static VindicationBudget current;
+
+	private final long maxNodes = RR.wdcVindicationNodes.get();
+	private final int maxIterations = RR.wdcVindicationIterations.get();
+	private final long started;
+	private final long raceDeadline;
+	private long nodes;
+	private int iterations;
+
+	private VindicationBudget() {
+		started = System.nanoTime();
+		final long timeout = RR.wdcVindicationTimeout.get();
+		raceDeadline = timeout > 0 ? started + timeout * 1000000L : Long.MAX_VALUE;
+	}
+
+	/** Starts the clock for the deadline shared by all races vindicated from now on. */
+	static void startDeadline() {
+		final long millis = RR.wdcVindicationDeadline.get();
+		deadline = millis > 0 ? System.nanoTime() + millis * 1000000L : Long.MAX_VALUE;
+	}
+
+	static boolean pastDeadline() {
+		return System.nanoTime() - deadline >= 0 && deadline != Long.MAX_VALUE;
+	}
+
+	/** Makes a fresh budget the one charged until stop(). */
+	static VindicationBudget start() {
+		current = new VindicationBudget();
+		return current;
+	}
+
+	void stop() {
+		if (current == this) {
+			current = null;
+		}
+	}
+
+	/** Charges one visited node to the budget in force, if any. */
+	static void charge() {
+		final VindicationBudget budget = current;
+		if (budget != null) {
+			budget.spendNode();
+		}
+	}
+
+	/** Charges one iteration of a fixed point or reordering loop to the budget in force, if any. */
+	static void iteration() {
+		final VindicationBudget budget = current;
+		if (budget != null) {
+			budget.spendIteration();
+		}
+	}
+
+	private void spendNode() {
+		nodes++;
+		if (maxNodes > 0 && nodes > maxNodes) {
+			throw new Exhausted("visited " + maxNodes + " nodes");
+		}
+		if ((nodes & (CLOCK_CHECK_INTERVAL - 1)) == 0) {
+			checkClock();
+		}
+	}
+
+	private void spendIteration() {
+		iterations++;
+		if (maxIterations > 0 && iterations > maxIterations) {
+			throw new Exhausted("ran " + maxIterations + " iterations");
+		}
+		checkClock();
+	}
+
+	private void checkClock() {
+		final long now = System.nanoTime();
+		if (now - raceDeadline >= 0 && raceDeadline != Long.MAX_VALUE) {
+			throw new Exhausted("timed out after " + RR.wdcVindicationTimeout.get() + " ms");
+		}
+		if (now - deadline >= 0 && deadline != Long.MAX_VALUE) {
+			throw new Exhausted("vindication deadline passed");
+		}
+	}
+
+	long nodes() {
+		return nodes;
+	}
+
+	int iterations() {
+		return iterations;
+	}
+
+	long millis() {
+		return (System.nanoTime() - started) / 1000000L;
+	}
+
+	@Override
+	public String toString() {
+		return nodes + " nodes, " + iterations + " iterations, " + millis() + " ms";
+	}
+}
@@ -38,11 +38,39 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package tools.wdc;
 
+import acme.util.count.Counter;
 import rr.state.ShadowVar;
-import rr.tool.RR;
 
+/**
+ * Shadow state for a field or array element.  A variable accessed by a single
+ * thread only records that thread's clocks and a (shared) snapshot of its
+ * vector clocks at its last read and write.  The full per-relation clocks and
+ * the per-thread read sites are allocated when a second thread touches the
+ * variable.  All updates happen while holding the lock on this object.
+ *
+ * Under WDCTool.EPOCH_HB_WCP the shared HB and WCP races are checked against
+ * only the last write's epoch (hbWriteEpoch of lastWriteTid) and each thread's
+ * last read in hbRead.  WCP shares both since it stamps accesses with the HB
+ * clock.  The HB clock at the last write and the join of the reads' clocks are
+ * still kept for race edges, since joining only the epochs would order less
+ * than DC's race edge does and break HB ⊆ WCP ⊆ DC.
+ */
 public class WDCGuardState implements ShadowVar {
-	
+
+	static final int UNOWNED = -1;
+	static final int SHARED = -2;
+
+	// Indices of the per-thread snapshots, see WDCTool.snapshot().
+	static final int HB_SNAPSHOT = 0;
+	static final int WCP_SNAPSHOT = 1;
+	static final int DC_SNAPSHOT = 2;
+	static final int WDC_SNAPSHOT = 3;
+
+	private static final Counter inflated = new Counter("DC", "Shadow States Inflated");
+
+	// tid of the only thread to access the variable so far, UNOWNED, or SHARED
+	private volatile int owner = UNOWNED;
+
 	//HB
 	public volatile CV hbRead;
 	public CV hbReadsJoined;
@@ -65,91 +93,232 @@ public class WDCGuardState implements ShadowVar {
 	
 	public int lastWriteTid; // the thread of the last write
 
-	public DynamicSourceLocation[] lastReadEvents; 
+	public DynamicSourceLocation[] lastReadEvents; // only allocated once SHARED
 	public DynamicSourceLocation lastWriteEvent;
 
-	public WDCGuardState(CV relation) {
-		if (WDCTool.HB) {
-			hbRead = new CV(WDCTool.INIT_CV_SIZE);
-			hbReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-			hbWrite = new CV(WDCTool.INIT_CV_SIZE);
+	// HB and WCP state, kept by the lane under WDCTool.LANES
+	WDCLane.VarState lane;
+
+	// Single-owner record: the owner's clock at its last read/write and a snapshot
+	// of its vector clock at that point.  The snapshots' entries for the owner are stale.
+	private int hbReadEpoch, hbWriteEpoch;
+	private CV hbReadSnapshot, hbWriteSnapshot;
+	private int wcpReadEpoch, wcpWriteEpoch;
+	private CV wcpReadSnapshot, wcpWriteSnapshot;
+	private int dcReadEpoch, dcWriteEpoch;
+	private CV dcReadSnapshot, dcWriteSnapshot;
+	private int wdcReadEpoch, wdcWriteEpoch;
+	private CV wdcReadSnapshot, wdcWriteSnapshot;
+	private DynamicSourceLocation lastOwnerReadEvent;
+
+	public WDCGuardState() {
+		lastWriteTid = -1;
+	}
+
+	/*
+	 * Returns true if tid is the only thread to have accessed the variable,
+	 * claiming it for tid on the first access.  Inflates the state if tid is
+	 * the second thread to access it.  Requires the lock on this.
+	 */
+	final boolean claim(int tid) {
+		final int o = owner;
+		if (o == tid) return true;
+		if (o == UNOWNED) {
+			owner = tid;
+			return true;
 		}
-		// WCP maintains both hb and wcp CV so a different constructor is used.
-		if (WDCTool.DC) {
-			dcRead = new CV(WDCTool.INIT_CV_SIZE);
-			dcReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-			dcWrite = new CV(WDCTool.INIT_CV_SIZE);
+		if (o != SHARED) inflate(o, tid);
+		return false;
+	}
+
+	final boolean isShared() {
+		return owner == SHARED;
+	}
+
+	private void inflate(int o, int tid) {
+		if (WDCTool.HB || WDCTool.WCP || WDCTool.INLINE_HB_WCP) { // hbWriteEpoch stays the last write's clock
+			hbRead = expand(null, o, hbReadSnapshot == null ? 0 : hbReadEpoch);
+			hbReadsJoined = expand(hbReadSnapshot, o, hbReadEpoch);
+			hbWrite = expand(hbWriteSnapshot, o, hbWriteEpoch);
 		}
-		if (WDCTool.WDC) {
-			wdcRead = new CV(WDCTool.INIT_CV_SIZE);
-			wdcReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-			wdcWrite = new CV(WDCTool.INIT_CV_SIZE);
+		if ((WDCTool.WCP || WDCTool.INLINE_HB_WCP) && !WDCTool.EPOCH_HB_WCP) {
+			wcpRead = expand(null, o, wcpReadSnapshot == null ? 0 : wcpReadEpoch);
+			wcpReadsJoined = expand(wcpReadSnapshot, o, wcpReadEpoch);
+			wcpWrite = expand(wcpWriteSnapshot, o, wcpWriteEpoch);
 		}
-		
-		lastWriteTid = -1;
-		lastReadEvents = new DynamicSourceLocation[RR.maxTidOption.get()];
+		if (WDCTool.DC || WDCTool.HB_WCP_DC || WDCTool.HB_WCP_DC_WDC) {
+			dcRead = expand(null, o, dcReadSnapshot == null ? 0 : dcReadEpoch);
+			dcReadsJoined = expand(dcReadSnapshot, o, dcReadEpoch);
+			dcWrite = expand(dcWriteSnapshot, o, dcWriteEpoch);
+		}
+		if (WDCTool.WDC || WDCTool.HB_WCP_WDC || WDCTool.HB_WCP_DC_WDC) {
+			wdcRead = expand(null, o, wdcReadSnapshot == null ? 0 : wdcReadEpoch);
+			wdcReadsJoined = expand(wdcReadSnapshot, o, wdcReadEpoch);
+			wdcWrite = expand(wdcWriteSnapshot, o, wdcWriteEpoch);
+		}
+		lastReadEvents = new DynamicSourceLocation[Math.max(o, tid) + 1];
+		lastReadEvents[o] = lastOwnerReadEvent;
+
+		hbReadSnapshot = hbWriteSnapshot = null;
+		wcpReadSnapshot = wcpWriteSnapshot = null;
+		dcReadSnapshot = dcWriteSnapshot = null;
+		wdcReadSnapshot = wdcWriteSnapshot = null;
+		lastOwnerReadEvent = null;
+
+		inflated.inc();
+		owner = SHARED; // publish the clocks to the fast paths
 	}
-	
-	public WDCGuardState(CV hb, CV wcp) {
-		hbRead = new CV(WDCTool.INIT_CV_SIZE);
-		hbReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		hbWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		wcpRead = new CV(WDCTool.INIT_CV_SIZE);
-		wcpReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		wcpWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		lastWriteTid = -1;
-		lastReadEvents = new DynamicSourceLocation[RR.maxTidOption.get()];
+
+	/* The snapshot with tid's entry set to clock, or an empty CV if snapshot is null and clock is 0. */
+	private static CV expand(CV snapshot, int tid, int clock) {
+		final CV cv = snapshot == null ? new CV(WDCTool.INIT_CV_SIZE) : new CV(snapshot);
+		if (snapshot != null || clock != 0) cv.set(tid, clock);
+		return cv;
 	}
-	
-	public WDCGuardState(CV hb, CV wcp, CV dc) {
-		hbRead = new CV(WDCTool.INIT_CV_SIZE);
-		hbReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		hbWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		wcpRead = new CV(WDCTool.INIT_CV_SIZE);
-		wcpReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		wcpWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		if (WDCTool.HB_WCP_DC) {
-			dcRead = new CV(WDCTool.INIT_CV_SIZE);
-			dcReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-			dcWrite = new CV(WDCTool.INIT_CV_SIZE);
+
+	// Owner updates.  Require the lock on this and that the caller owns the variable.
+
+	final void setHB(boolean isWrite, CV snapshot, int clock) {
+		if (isWrite) {
+			hbWriteSnapshot = snapshot;
+			hbWriteEpoch = clock;
+		} else {
+			hbReadSnapshot = snapshot;
+			hbReadEpoch = clock;
 		}
-		if (WDCTool.HB_WCP_WDC) {
-			wdcRead = new CV(WDCTool.INIT_CV_SIZE);
-			wdcReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-			wdcWrite = new CV(WDCTool.INIT_CV_SIZE);
+	}
+
+	final void setWCP(boolean isWrite, CV snapshot, int clock) {
+		if (isWrite) {
+			wcpWriteSnapshot = snapshot;
+			wcpWriteEpoch = clock;
+		} else {
+			wcpReadSnapshot = snapshot;
+			wcpReadEpoch = clock;
 		}
-		
-		lastWriteTid = -1;
-		lastReadEvents = new DynamicSourceLocation[RR.maxTidOption.get()];
 	}
-	
-	public WDCGuardState(CV hb, CV wcp, CV dc, CV wdc) {
-		hbRead = new CV(WDCTool.INIT_CV_SIZE);
-		hbReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		hbWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		wcpRead = new CV(WDCTool.INIT_CV_SIZE);
-		wcpReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		wcpWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		dcRead = new CV(WDCTool.INIT_CV_SIZE);
-		dcReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		dcWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		wdcRead = new CV(WDCTool.INIT_CV_SIZE);
-		wdcReadsJoined = new CV(WDCTool.INIT_CV_SIZE);
-		wdcWrite = new CV(WDCTool.INIT_CV_SIZE);
-		
-		lastWriteTid = -1;
-		lastReadEvents = new DynamicSourceLocation[RR.maxTidOption.get()];
+
+	final void setDC(boolean isWrite, CV snapshot, int clock) {
+		if (isWrite) {
+			dcWriteSnapshot = snapshot;
+			dcWriteEpoch = clock;
+		} else {
+			dcReadSnapshot = snapshot;
+			dcReadEpoch = clock;
+		}
+	}
+
+	final void setWDC(boolean isWrite, CV snapshot, int clock) {
+		if (isWrite) {
+			wdcWriteSnapshot = snapshot;
+			wdcWriteEpoch = clock;
+		} else {
+			wdcReadSnapshot = snapshot;
+			wdcReadEpoch = clock;
+		}
+	}
+
+	final void setLastReadEvent(int tid, DynamicSourceLocation dl) {
+		if (owner != SHARED) {
+			lastOwnerReadEvent = dl;
+			return;
+		}
+		if (tid >= lastReadEvents.length) {
+			DynamicSourceLocation[] events = new DynamicSourceLocation[tid + 1];
+			System.arraycopy(lastReadEvents, 0, events, 0, lastReadEvents.length);
+			lastReadEvents = events;
+		}
+		lastReadEvents[tid] = dl;
+	}
+
+	// Fast path queries: tid's entry in the read/write clocks.  May be called without the lock on this.
+
+	final int getHBRead(int tid) {
+		final int o = owner;
+		if (o == SHARED) return hbRead.get(tid);
+		return o == tid ? hbReadEpoch : 0;
+	}
+
+	final int getHBWrite(int tid) {
+		final int o = owner;
+		if (o == SHARED && !WDCTool.EPOCH_HB_WCP) return hbWrite.get(tid);
+		if (o == SHARED) return lastWriteTid == tid ? hbWriteEpoch : 0;
+		return o == tid ? hbWriteEpoch : 0;
+	}
+
+	final int getDCRead(int tid) {
+		final int o = owner;
+		if (o == SHARED) return dcRead.get(tid);
+		return o == tid ? dcReadEpoch : 0;
+	}
+
+	final int getDCWrite(int tid) {
+		final int o = owner;
+		if (o == SHARED) return dcWrite.get(tid);
+		return o == tid ? dcWriteEpoch : 0;
+	}
+
+	final int getWDCRead(int tid) {
+		final int o = owner;
+		if (o == SHARED) return wdcRead.get(tid);
+		return o == tid ? wdcReadEpoch : 0;
+	}
+
+	final int getWDCWrite(int tid) {
+		final int o = owner;
+		if (o == SHARED) return wdcWrite.get(tid);
+		return o == tid ? wdcWriteEpoch : 0;
+	}
+
+	// Shared HB and WCP state.  Require the lock on this and that the variable is SHARED.
+
+	/* Whether the last write is unordered with the clock: HB compares the thread's HB clock and WCP its WCP clock union PO. */
+	final boolean hbWriteGt(CV hb) {
+		if (WDCTool.EPOCH_HB_WCP) return lastWriteTid >= 0 && hbWriteEpoch > hb.get(lastWriteTid);
+		return hbWrite.anyGt(hb);
+	}
+
+	final boolean wcpWriteGt(CV wcpUnionPO) {
+		if (WDCTool.EPOCH_HB_WCP) return lastWriteTid >= 0 && hbWriteEpoch > wcpUnionPO.get(lastWriteTid);
+		return wcpWrite.anyGt(wcpUnionPO);
+	}
+
+	/* Each thread's clock at its last read, for WCP. */
+	final CV wcpReads() {
+		return WDCTool.EPOCH_HB_WCP ? hbRead : wcpRead;
+	}
+
+	/* What a write must be ordered after: the join of the prior reads. */
+	final CV hbJoinedReads() {
+		return hbReadsJoined;
+	}
+
+	final CV wcpJoinedReads() {
+		return WDCTool.EPOCH_HB_WCP ? hbReadsJoined : wcpReadsJoined;
+	}
+
+	/* Joins the last write into the HB or WCP clock, as for a race edge. */
+	final void joinHBWrite(CV cv) {
+		cv.max(hbWrite);
+	}
+
+	/* Records an access by tid with HB clock hb.  Epoch form only. */
+	final void setSharedHB(boolean isWrite, int tid, CV hb) {
+		if (isWrite) {
+			hbWriteEpoch = hb.get(tid); // lastWriteTid is set with the write's source location
+			hbWrite.assignWithResize(hb);
+		} else {
+			hbRead.set(tid, hb.get(tid));
+			hbReadsJoined.max(hb);
+		}
 	}
 
 	@Override
 	public String toString() {
+		final int o = owner;
+		if (o != SHARED) {
+			return String.format("[T%d HBw=%d HBr=%d WCPw=%d WCPr=%d DCw=%d DCr=%d WDCw=%d WDCr=%d]", o, hbWriteEpoch, hbReadEpoch, wcpWriteEpoch, wcpReadEpoch, dcWriteEpoch, dcReadEpoch, wdcWriteEpoch, wdcReadEpoch);
+		}
 		return String.format("[HBw=%s HBr=%s WCPw=%s WCPr=%s DCw=%s DCr=%s WDCw=%s WDCr=%s]", hbWrite, hbRead, wcpWrite, wcpRead, dcWrite, dcRead, wdcWrite, wdcRead);
 	}
 }
@@ -0,0 +1,420 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+ * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+ * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+ * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+ ******************************************************************************/
+
+package tools.wdc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.WeakHashMap;
+
+import rr.meta.AccessInfo;
+import rr.state.ShadowThread;
+import rr.state.ShadowVar;
+import tools.util.EventLog;
+import tools.util.LogReplayer;
+
+/**
+ * HB and WCP for the multiple relation analyses (WDCTool.LANES), computed on a
+ * replay thread from the events the application threads append to their
+ * EventLogs.  The application threads only maintain DC and WDC and the
+ * constraint graph.  HB and WCP are one lane because WCP is defined in terms
+ * of HB.
+ * 
+ * The lane keeps its own thread clocks and HB/WCP variable state (VarState).
+ * Races are checked against epochs, as in WDCGuardState under EPOCH_HB_WCP,
+ * but a race edge joins the HB clocks of the last write and of the prior
+ * reads, as the inline analysis does, so the lane orders the same later
+ * accesses the inline analysis would.  It also owns the HB and
+ * WCP fields of WDCLockData and WDCVolatileData, which the application threads
+ * leave alone then.  Lock, volatile and JUC/class initialization records are
+ * replayed in the order of their laneOrder, so the lane sees each lock's
+ * critical sections in the order they ran.
+ * 
+ * The lane records its races in its own maps.  finish() adds them to
+ * StaticRace's maps, where they reclassify the DC- and WDC-races the
+ * application threads found at the same accesses.  A lane race with no such
+ * DC- or WDC-race is dropped, so lanes never change the number of races.
+ */
+final class WDCLane implements LogReplayer.Handler {
+
+	// Record kinds
+	static final int ACCESS = 0;         // arg = isWrite, a = WDCGuardState, b = AccessInfo
+	static final int ACQUIRE = 1;        // arg = after wait, a = WDCLockData
+	static final int RELEASE = 2;        // arg = before wait, a = WDCLockData
+	static final int VOLATILE = 3;       // arg = isWrite, a = WDCVolatileData
+	static final int SHARED_RELEASE = 4; // JUC shared release or class initialization, a = WDCVolatileData
+	static final int SHARED_ACQUIRE = 5; // JUC shared acquire or class access, a = WDCVolatileData
+	static final int START = 6;          // fork, or parentless fork from main, a = the forked thread's EventLog
+	static final int JOIN = 7;           // a = the joined thread's EventLog
+	static final int EXIT_JOIN = 8;      // a pool thread's exit joined into main, in main's log, a = the thread's EventLog
+	static final int EXITED = 9;         // orders the thread's later records after its EXIT_JOIN
+	static final int STOP = 10;
+
+	static final class VarState {
+		int writeTid = -1;
+		int writeClock;
+		AccessInfo writeInfo;
+		final CV write = new CV(WDCTool.INIT_CV_SIZE); // HB clock at the last write
+		final CV reads = new CV(WDCTool.INIT_CV_SIZE);
+		final CV readsJoined = new CV(WDCTool.INIT_CV_SIZE); // join of the HB clocks at the prior reads
+		AccessInfo[] readInfos = new AccessInfo[WDCTool.INIT_CV_SIZE];
+	}
+
+	private static final class LaneThread {
+		final ShadowThread td;
+		final int tid;
+		final CV hb = new CV(WDCTool.INIT_CV_SIZE);
+		final CV wcp = new CV(WDCTool.INIT_CV_SIZE);
+		final ArrayList<WDCLockData> heldLocks = new ArrayList<WDCLockData>();
+
+		LaneThread(EventLog log) {
+			this.td = log.td;
+			this.tid = log.tid;
+			hb.inc(tid);
+		}
+
+		CV wcpUnionPO() {
+			final CV wcpUnionPO = new CV(wcp);
+			wcpUnionPO.set(tid, hb.get(tid));
+			return wcpUnionPO;
+		}
+	}
+
+	private final LogReplayer replayer = new LogReplayer("WDC HB/WCP Lane", 1, this);
+
+	// Only touched by the replay thread
+	private final WeakHashMap<EventLog,LaneThread> threads = new WeakHashMap<EventLog,LaneThread>();
+	private final ArrayList<LaneThread> liveThreads = new ArrayList<LaneThread>();
+	private final HashMap<RaceType,HashMap<StaticRace,Integer>> secondSiteRaceMap = new HashMap<RaceType,HashMap<StaticRace,Integer>>();
+	private final HashMap<RaceType,HashMap<StaticRace,Integer>> unorderedPairsRaceMap = new HashMap<RaceType,HashMap<StaticRace,Integer>>();
+
+	/*
+	 * The log for a new thread.  Forked and parentless threads start with a
+	 * START record in their parent's or main's log, which opens their log.
+	 */
+	EventLog newLog(ShadowThread td) {
+		final boolean open = td.getParent() == null && (td.getTid() == 0 || "Finalizer".equals(td.getThread().getName()));
+		return replayer.newLog(td, open);
+	}
+
+	/* Waits for the lane to replay everything and adds its races to StaticRace's maps. */
+	void finish() {
+		replayer.finish();
+		StaticRace.mergeRaces(secondSiteRaceMap, StaticRace.static_second_site_RaceMap);
+		if (WDCTool.UNORDERED_PAIRS) StaticRace.mergeRaces(unorderedPairsRaceMap, StaticRace.static_unordered_pairs_RaceMap);
+	}
+
+	private LaneThread thread(EventLog log) {
+		LaneThread t = threads.get(log);
+		if (t == null) {
+			t = new LaneThread(log);
+			threads.put(log, t);
+			liveThreads.add(t);
+		}
+		return t;
+	}
+
+	public void replay(EventLog log, int kind, int arg, Object a, Object b) {
+		final LaneThread t = thread(log);
+		switch (kind) {
+		case ACCESS:
+			access(t, arg != 0, (WDCGuardState)a, (AccessInfo)b);
+			break;
+		case ACQUIRE:
+			acquire(t, (WDCLockData)a, arg != 0);
+			break;
+		case RELEASE:
+			release(t, (WDCLockData)a, arg != 0);
+			break;
+		case VOLATILE:
+			volatileAccess(t, (WDCVolatileData)a, arg != 0);
+			break;
+		case SHARED_RELEASE: {
+			final WDCVolatileData sync = (WDCVolatileData)a;
+			sync.hbWrite.max(t.hb);
+			sync.wcpWrite.max(t.wcp);
+			t.hb.inc(t.tid);
+			break;
+		}
+		case SHARED_ACQUIRE: {
+			final WDCVolatileData sync = (WDCVolatileData)a;
+			t.hb.max(sync.hbWrite);
+			t.wcp.max(sync.hbWrite); // union with HB since this is effectively a hard WCP edge
+			break;
+		}
+		case START: {
+			final EventLog forkedLog = (EventLog)a;
+			final LaneThread forked = thread(forkedLog);
+			// Compute WCP before modifying HB
+			forked.wcp.max(t.hb); // Use HB here because this is a hard WCP edge
+			forked.hb.max(t.hb);
+			t.hb.inc(t.tid);
+			forkedLog.open();
+			break;
+		}
+		case JOIN: {
+			final LaneThread joined = thread((EventLog)a);
+			t.hb.max(joined.hb);
+			t.wcp.max(joined.hb); // Use HB since this is a hard WCP edge
+			break;
+		}
+		case EXIT_JOIN: {
+			final LaneThread exited = thread((EventLog)a);
+			t.hb.max(exited.hb);
+			t.wcp.max(exited.hb);
+			exited.hb.inc(exited.tid); // Don't increment WCP since it doesn't include PO
+			break;
+		}
+		case EXITED:
+			break;
+		case STOP:
+			liveThreads.remove(t);
+			break;
+		}
+	}
+
+	private void acquire(LaneThread t, WDCLockData lockData, boolean afterWait) {
+		final CV hb = t.hb;
+		final CV wcp = t.wcp;
+		hb.max(lockData.hb);
+		if (afterWait) {
+			wcp.max(lockData.hb); // If a hard edge, union WCP with HB
+		} else {
+			wcp.max(lockData.wcp);
+		}
+
+		final CV wcpUnionPO = t.wcpUnionPO();
+		for (LaneThread other : liveThreads) {
+			if (other != t) {
+				ArrayDeque<CV> queue = lockData.wcpAcqQueueMap.get(other.td);
+				if (queue == null) {
+					queue = lockData.wcpAcqQueueGlobal.clone(); // Include any stuff that didn't get added because other hadn't been created yet
+					lockData.wcpAcqQueueMap.put(other.td, queue);
+				}
+				queue.addLast(wcpUnionPO);
+			}
+		}
+
+		// Also add to the queue that we'll use for any threads that haven't been created yet.
+		// But before doing that, be sure to initialize *this thread's* queues for the lock using the global queues.
+		if (!lockData.wcpAcqQueueMap.containsKey(t.td)) {
+			lockData.wcpAcqQueueMap.put(t.td, lockData.wcpAcqQueueGlobal.clone());
+		}
+		if (!lockData.wcpRelQueueMap.containsKey(t.td)) {
+			lockData.wcpRelQueueMap.put(t.td, lockData.wcpRelQueueGlobal.clone());
+		}
+		lockData.wcpAcqQueueGlobal.addLast(wcpUnionPO);
+
+		if (!afterWait) {
+			t.heldLocks.add(lockData);
+			hb.inc(t.tid); // Don't increment WCP since it doesn't include PO
+		}
+	}
+
+	private void release(LaneThread t, WDCLockData lockData, boolean beforeWait) {
+		final CV hb = t.hb;
+		final CV wcp = t.wcp;
+		final CV wcpUnionPO = t.wcpUnionPO();
+
+		// Process queue elements
+		final ArrayDeque<CV> acqQueue = lockData.wcpAcqQueueMap.get(t.td);
+		final ArrayDeque<CV> relQueue = lockData.wcpRelQueueMap.get(t.td);
+		while (!acqQueue.isEmpty() && !acqQueue.peekFirst().anyGt(wcpUnionPO)) {
+			acqQueue.removeFirst();
+			wcp.max(relQueue.removeFirst());
+		}
+
+		// Rule (a)
+		for (ShadowVar var : lockData.laneReadVars) {
+			CV cv = lockData.wcpReadMap.get(var);
+			if (cv == null) {
+				cv = new CV(WDCTool.INIT_CV_SIZE);
+				lockData.wcpReadMap.put(var, cv);
+			}
+			cv.max(hb);
+		}
+		for (ShadowVar var : lockData.laneWriteVars) {
+			CV cv = lockData.wcpWriteMap.get(var);
+			if (cv == null) {
+				cv = new CV(WDCTool.INIT_CV_SIZE);
+				lockData.wcpWriteMap.put(var, cv);
+			}
+			cv.max(hb);
+		}
+
+		// Assign to lock
+		lockData.hb.assignWithResize(hb);
+		lockData.wcp.assignWithResize(wcp);
+
+		// Add to release queues
+		final CV hbCopy = new CV(hb);
+		for (LaneThread other : liveThreads) {
+			if (other != t) {
+				ArrayDeque<CV> queue = lockData.wcpRelQueueMap.get(other.td);
+				if (queue == null) {
+					queue = lockData.wcpRelQueueGlobal.clone(); // Include any stuff that didn't get added because other hadn't been created yet
+					lockData.wcpRelQueueMap.put(other.td, queue);
+				}
+				queue.addLast(hbCopy);
+			}
+		}
+		// Also add to the queue that we'll use for any threads that haven't been created yet
+		lockData.wcpRelQueueGlobal.addLast(hbCopy);
+
+		// Clear read/write maps and vars
+		lockData.wcpReadMap = WDCTool.getPotentiallyShrunkMap(lockData.wcpReadMap);
+		lockData.wcpWriteMap = WDCTool.getPotentiallyShrunkMap(lockData.wcpWriteMap);
+		lockData.laneReadVars = new HashSet<ShadowVar>();
+		lockData.laneWriteVars = new HashSet<ShadowVar>();
+
+		if (!beforeWait) {
+			t.heldLocks.remove(t.heldLocks.lastIndexOf(lockData));
+		}
+		hb.inc(t.tid); // Don't increment WCP since it doesn't include PO
+	}
+
+	private void volatileAccess(LaneThread t, WDCVolatileData vd, boolean isWrite) {
+		final CV hb = t.hb;
+		final CV wcp = t.wcp;
+		if (isWrite) {
+			//incoming rd-wr edge
+			hb.max(vd.hbReadsJoined);
+			wcp.max(vd.hbReadsJoined);
+		}
+		//incoming wr-wr (if isWrite) edge or incoming wr-rd (if !isWrite) edge
+		hb.max(vd.hbWrite);
+		wcp.max(vd.hbWrite); // Union with HB since a volatile write-read edge is effectively a hard WCP edge
+
+		if (isWrite) {
+			//outgoing wr-wr and wr-rd edge
+			vd.hbWrite.max(hb);
+			vd.wcpWrite.max(hb); // Don't increment since WCP doesn't include PO
+		} else {
+			//outgoing rd-wr edge
+			vd.hbReadsJoined.max(hb);
+			vd.wcpReadsJoined.max(hb);
+		}
+		hb.inc(t.tid);
+	}
+
+	private void access(LaneThread t, boolean isWrite, WDCGuardState x, AccessInfo info) {
+		final int tid = t.tid;
+		final CV hb = t.hb;
+		final CV wcp = t.wcp;
+
+		// Account for conflicts with prior critical section instances, and keep track of accesses within ongoing critical sections for rule (a)
+		for (int i = t.heldLocks.size() - 1; i >= 0; i--) {
+			final WDCLockData lockData = t.heldLocks.get(i);
+			final CV priorCriticalSectionAfterWrite = lockData.wcpWriteMap.get(x);
+			if (priorCriticalSectionAfterWrite != null) {
+				wcp.max(priorCriticalSectionAfterWrite);
+			}
+			if (isWrite) {
+				final CV priorCriticalSectionAfterRead = lockData.wcpReadMap.get(x);
+				if (priorCriticalSectionAfterRead != null) {
+					wcp.max(priorCriticalSectionAfterRead);
+				}
+				lockData.laneWriteVars.add(x);
+			} else {
+				lockData.laneReadVars.add(x);
+			}
+		}
+
+		VarState v = x.lane;
+		if (v == null) {
+			v = new VarState();
+			x.lane = v;
+		}
+
+		// Check for races: HB ⊆ WCP.  Without event numbers, the last race found is the one recorded.
+		final CV wcpUnionPO = t.wcpUnionPO();
+		int raceTid = -1;
+		boolean raceIsWrite = false;
+		RaceType raceType = RaceType.DCOrdered;
+		if (v.writeTid >= 0 && v.writeClock > wcpUnionPO.get(v.writeTid)) {
+			raceTid = v.writeTid;
+			raceIsWrite = true;
+			raceType = v.writeClock > hb.get(v.writeTid) ? RaceType.HBRace : RaceType.WCPRace;
+		}
+		if (isWrite) {
+			int index = -1;
+			while ((index = v.reads.nextGt(wcpUnionPO, index + 1)) != -1) {
+				raceTid = index;
+				raceIsWrite = false;
+				raceType = v.reads.get(index) > hb.get(index) ? RaceType.HBRace : RaceType.WCPRace;
+			}
+		}
+		if (raceTid >= 0) {
+			recordRace(raceIsWrite ? v.writeInfo : v.readInfos[raceTid], info, raceType);
+			// Update thread VCs as the application threads do for the edge added to the constraint graph
+			if (!WDCTool.DISABLE_EVENT_GRAPH) {
+				hb.max(v.write);
+				wcp.max(v.write);
+				if (isWrite) {
+					hb.max(v.readsJoined);
+					wcp.max(v.readsJoined);
+				}
+			}
+		}
+
+		// Update the variable
+		if (isWrite) {
+			v.writeTid = tid;
+			v.writeClock = hb.get(tid);
+			v.writeInfo = info;
+			v.write.assignWithResize(hb);
+		} else {
+			v.reads.set(tid, hb.get(tid));
+			v.readsJoined.max(hb);
+			if (tid >= v.readInfos.length) {
+				final AccessInfo[] infos = new AccessInfo[Math.max(tid + 1, 2 * v.readInfos.length)];
+				System.arraycopy(v.readInfos, 0, infos, 0, v.readInfos.length);
+				v.readInfos = infos;
+			}
+			v.readInfos[tid] = info;
+		}
+		hb.inc(tid); // Don't increment WCP since it doesn't include PO
+	}
+
+	private void recordRace(AccessInfo prior, AccessInfo info, RaceType type) {
+		StaticRace.addRace(new StaticRace(null, info.getLoc()), type, secondSiteRaceMap);
+		if (WDCTool.UNORDERED_PAIRS) StaticRace.addRace(new StaticRace(prior.getLoc(), info.getLoc()), type, unorderedPairsRaceMap);
+	}
+}
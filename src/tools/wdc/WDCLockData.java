@@ -49,6 +49,7 @@ import acme.util.identityhash.WeakIdentityHashSet;
 import rr.state.ShadowLock;
 import rr.state.ShadowThread;
 import rr.state.ShadowVar;
+import tools.util.ReplayOrder;
 
 public class WDCLockData {
 
@@ -75,6 +76,11 @@ public class WDCLockData {
 	public final ArrayDeque<CV> wcpAcqQueueGlobal;
 	public final ArrayDeque<CV> wcpRelQueueGlobal;
 	
+	//HB and WCP lane, see WDCLane.  The WCP fields above belong to the lane then.
+	public final ReplayOrder laneOrder;
+	public HashSet<ShadowVar> laneReadVars;
+	public HashSet<ShadowVar> laneWriteVars;
+	
 	//DC
 	public WeakIdentityHashMap<ShadowVar,CVE> dcReadMap;
 	public WeakIdentityHashMap<ShadowVar,CVE> dcWriteMap;
@@ -111,6 +117,15 @@ public class WDCLockData {
 		this.wcpAcqQueueGlobal = new ArrayDeque<CV>();
 		this.wcpRelQueueGlobal = new ArrayDeque<CV>();
 		
+		//HB and WCP lane
+		if (WDCTool.LANES) {
+			this.laneOrder = new ReplayOrder();
+			this.laneReadVars = new HashSet<ShadowVar>();
+			this.laneWriteVars = new HashSet<ShadowVar>();
+		} else {
+			this.laneOrder = null;
+		}
+		
 		//DC
 		this.dcReadMap = new WeakIdentityHashMap<ShadowVar,CVE>();
 		this.dcWriteMap = new WeakIdentityHashMap<ShadowVar,CVE>();
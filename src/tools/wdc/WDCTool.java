@@ -42,6 +42,9 @@ package tools.wdc;
 
 import java.io.File;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -52,7 +55,7 @@ import acme.util.Assert;
 import acme.util.Util;
 import acme.util.Yikes;
 import acme.util.count.AggregateCounter;
-import acme.util.count.ThreadLocalCounter;
+import acme.util.count.LatencyHistogram;
 import acme.util.decorations.Decoration;
 import acme.util.decorations.DecorationFactory;
 import acme.util.decorations.DecorationFactory.Type;
@@ -65,6 +68,9 @@ import rr.annotations.Abbrev;
 import rr.barrier.BarrierEvent;
 import rr.barrier.BarrierListener;
 import rr.barrier.BarrierMonitor;
+import rr.juc.JUCEvent;
+import rr.juc.JUCListener;
+import rr.juc.JUCMonitor;
 import rr.error.ErrorMessage;
 import rr.error.ErrorMessages;
 import rr.event.AccessEvent;
@@ -92,11 +98,14 @@ import rr.state.ShadowLock;
 import rr.state.ShadowThread;
 import rr.state.ShadowVar;
 import rr.state.ShadowVolatile;
+import rr.state.ThreadCounter;
 import rr.tool.RR;
 import rr.tool.Tool;
+import tools.util.EventLog;
+import tools.util.VolatileJoinCache;
 
 @Abbrev("WDC")
-public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, Opcodes {
+public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, JUCListener<WDCVolatileData>, Opcodes {
 
 	private static final boolean COUNT_EVENT = true;
 	private static final boolean PRINT_EVENT = RR.printEventOption.get();
@@ -115,44 +124,62 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 	public static final boolean HB_WCP_WDC = RR.dcWCP_CAPOOption.get();
 	public static final boolean HB_WCP_DC_WDC = RR.dcCAPOFullOption.get();
 	
+	// HB and WCP analyzed by a replay thread instead of the application threads in the multiple relation analyses, see WDCLane
+	public static final boolean LANES = RR.dcLanesOption.get() && (HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC);
+	static final boolean INLINE_HB_WCP = (HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) && !LANES;
+	
+	// The relation of the thread epochs (eTd) for the fast paths and race edges, HB otherwise
+	static final boolean ETD_DC = DC || (LANES && HB_WCP_DC);
+	static final boolean ETD_WDC = WDC || (LANES && (HB_WCP_WDC || HB_WCP_DC_WDC));
+	
+	// HB and WCP races checked against epochs in the multiple relation analyses, see WDCGuardState
+	public static final boolean EPOCH_HB_WCP = RR.dcFTOOption.get() && INLINE_HB_WCP;
+	
 	// Enable/Disable Event Graph G Generation
-	private static final boolean DISABLE_EVENT_GRAPH = RR.disableEventGraph.get();
+	static final boolean DISABLE_EVENT_GRAPH = RR.disableEventGraph.get();
 	private static final boolean DISABLE_MERGING = RR.disableMerging.get();
 	
 	// Race Counting 
-	private static final boolean UNORDERED_PAIRS = RR.unorderedPairs.get();
-	private static final boolean SHORTEST_RACEEDGE = RR.shortestRaceEdge.get();
+	static final boolean UNORDERED_PAIRS = RR.unorderedPairs.get();
+	static final boolean SHORTEST_RACEEDGE = RR.shortestRaceEdge.get();
 	
 	// Counters for relative frequencies of each access type
-	private static final ThreadLocalCounter read = new ThreadLocalCounter("DC", "Read", RR.maxTidOption.get());
-	private static final ThreadLocalCounter write = new ThreadLocalCounter("DC", "Write", RR.maxTidOption.get());
-	private static final ThreadLocalCounter acquire = new ThreadLocalCounter("DC", "Acquire", RR.maxTidOption.get());
-	private static final ThreadLocalCounter release = new ThreadLocalCounter("DC", "Release", RR.maxTidOption.get());
-	private static final ThreadLocalCounter fork = new ThreadLocalCounter("DC", "Fork", RR.maxTidOption.get());
-	private static final ThreadLocalCounter join = new ThreadLocalCounter("DC", "Join", RR.maxTidOption.get());
-	private static final ThreadLocalCounter barrier = new ThreadLocalCounter("DC", "Barrier", RR.maxTidOption.get());
-	private static final ThreadLocalCounter preWait = new ThreadLocalCounter("DC", "Pre Wait", RR.maxTidOption.get());
-	private static final ThreadLocalCounter postWait = new ThreadLocalCounter("DC", "Post Wait", RR.maxTidOption.get());
-	private static final ThreadLocalCounter classInit = new ThreadLocalCounter("DC", "Class Initialized", RR.maxTidOption.get());
-	private static final ThreadLocalCounter classAccess = new ThreadLocalCounter("DC", "Class Accessed", RR.maxTidOption.get());
-	private static final ThreadLocalCounter volatile_write = new ThreadLocalCounter("DC", "Volatile Write", RR.maxTidOption.get());
-	private static final ThreadLocalCounter volatile_read = new ThreadLocalCounter("DC", "Volatile Read", RR.maxTidOption.get());
+	private static final ThreadCounter read = new ThreadCounter("DC", "Read");
+	private static final ThreadCounter write = new ThreadCounter("DC", "Write");
+	private static final ThreadCounter acquire = new ThreadCounter("DC", "Acquire");
+	private static final ThreadCounter release = new ThreadCounter("DC", "Release");
+	private static final ThreadCounter fork = new ThreadCounter("DC", "Fork");
+	private static final ThreadCounter join = new ThreadCounter("DC", "Join");
+	private static final ThreadCounter barrier = new ThreadCounter("DC", "Barrier");
+	private static final ThreadCounter preWait = new ThreadCounter("DC", "Pre Wait");
+	private static final ThreadCounter postWait = new ThreadCounter("DC", "Post Wait");
+	private static final ThreadCounter classInit = new ThreadCounter("DC", "Class Initialized");
+	private static final ThreadCounter classAccess = new ThreadCounter("DC", "Class Accessed");
+	private static final ThreadCounter volatile_write = new ThreadCounter("DC", "Volatile Write");
+	private static final ThreadCounter volatile_read = new ThreadCounter("DC", "Volatile Read");
+	private static final ThreadCounter volatile_read_joined = new ThreadCounter("DC", "Volatile Read Already Joined");
+	private static final ThreadCounter juc_acquire = new ThreadCounter("DC", "JUC Shared Acquire");
+	private static final ThreadCounter juc_release = new ThreadCounter("DC", "JUC Shared Release");
 	
-	private static final ThreadLocalCounter exit = new ThreadLocalCounter("DC", "Exit", RR.maxTidOption.get());
-	private static final ThreadLocalCounter dummy = new ThreadLocalCounter("DC", "Dummy", RR.maxTidOption.get());
-	private static final ThreadLocalCounter fake_fork = new ThreadLocalCounter("DC", "Fake Fork", RR.maxTidOption.get());
+	private static final ThreadCounter exit = new ThreadCounter("DC", "Exit");
+	private static final ThreadCounter dummy = new ThreadCounter("DC", "Dummy");
+	private static final ThreadCounter fake_fork = new ThreadCounter("DC", "Fake Fork");
 	
-	private static final ThreadLocalCounter writeFP = new ThreadLocalCounter("DC", "WriteFastPath", RR.maxTidOption.get());
-	private static final ThreadLocalCounter readFP = new ThreadLocalCounter("DC", "ReadFastPath", RR.maxTidOption.get());
+	private static final ThreadCounter writeFP = new ThreadCounter("DC", "WriteFastPath");
+	private static final ThreadCounter readFP = new ThreadCounter("DC", "ReadFastPath");
 	
-	private static final ThreadLocalCounter access_inside = new ThreadLocalCounter("DC", "Accesses Inside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter access_outside = new ThreadLocalCounter("DC", "Accesses Outside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter write_inside = new ThreadLocalCounter("DC", "Write accesses Inside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter write_outside = new ThreadLocalCounter("DC", "Write accesses Outside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter read_inside = new ThreadLocalCounter("DC", "Read accesses Inside Critical Sections", RR.maxTidOption.get());
-	private static final ThreadLocalCounter read_outside = new ThreadLocalCounter("DC", "Read accesses Outside Critical Sections", RR.maxTidOption.get());
+	private static final ThreadCounter access_inside = new ThreadCounter("DC", "Accesses Inside Critical Sections");
+	private static final ThreadCounter access_outside = new ThreadCounter("DC", "Accesses Outside Critical Sections");
+	private static final ThreadCounter write_inside = new ThreadCounter("DC", "Write accesses Inside Critical Sections");
+	private static final ThreadCounter write_outside = new ThreadCounter("DC", "Write accesses Outside Critical Sections");
+	private static final ThreadCounter read_inside = new ThreadCounter("DC", "Read accesses Inside Critical Sections");
+	private static final ThreadCounter read_outside = new ThreadCounter("DC", "Read accesses Outside Critical Sections");
 	
-	private static final ThreadLocalCounter other = new ThreadLocalCounter("DC", "Other", RR.maxTidOption.get());
+	private static final ThreadCounter other = new ThreadCounter("DC", "Other");
+	
+	private static final ThreadCounter merged_access = new ThreadCounter("DC", "Accesses Merged Into Prior Event Node");
+	
+	private static final LatencyHistogram vindicationTime = new LatencyHistogram("DC", "Vindication Time per Race");
 	
 	static {
 		AggregateCounter reads = new AggregateCounter("DC", "Total Reads", read);
@@ -163,9 +190,14 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		new AggregateCounter("DC", "Total Fast Path Taken", readFP, writeFP);
 	}
 	
+	// Outcome and cost of each race vindicated by fini(), in the order vindicated
+	private final LinkedList<String> vindicationVerdicts = new LinkedList<String>();
+	
 	public final ErrorMessage<FieldInfo> fieldErrors = ErrorMessages.makeFieldErrorMessage("WDC");
 	public final ErrorMessage<ArrayAccessInfo> arrayErrors = ErrorMessages.makeArrayErrorMessage("WDC");
 	
+	private final WDCLane lane = LANES ? new WDCLane() : null;
+	
 	// Can use the same data for class initialization synchronization as for volatiles
 	public static final Decoration<ClassInfo,WDCVolatileData> classInitTime = MetaDataInfoMaps.getClasses().makeDecoration("WDC:InitTime", Type.MULTIPLE, 
 			new DefaultValue<ClassInfo,WDCVolatileData>() {
@@ -181,6 +213,11 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				return new WDCBarrierState(ShadowLock.get(k));
 			}
 		});
+		new JUCMonitor<WDCVolatileData>(this, new DefaultValue<Object,WDCVolatileData>() {
+			public WDCVolatileData get(Object k) {
+				return new WDCVolatileData(null);
+			}
+		});
 		//Remove error reporting limit for comparison with PIP tools
 		fieldErrors.setMax(Integer.MAX_VALUE);
 		arrayErrors.setMax(Integer.MAX_VALUE);
@@ -210,6 +247,18 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 	static int/*epoch*/ ts_get_eTd(ShadowThread ts) { Assert.panic("Bad");	return -1; }
 	static void ts_set_eTd(ShadowThread ts, int/*epoch*/ e) { Assert.panic("Bad");  }
 
+	// Snapshots of the thread's CVs shared by the variables it owns, indexed by WDCGuardState.*_SNAPSHOT
+	static CV[] ts_get_snapshots(ShadowThread ts) { Assert.panic("Bad"); return null; }
+	static void ts_set_snapshots(ShadowThread ts, CV[] snapshots) { Assert.panic("Bad"); }
+
+	// Write versions of the volatiles the thread last joined
+	static VolatileJoinCache ts_get_volJoins(ShadowThread ts) { Assert.panic("Bad"); return null; }
+	static void ts_set_volJoins(ShadowThread ts, VolatileJoinCache volJoins) { Assert.panic("Bad"); }
+
+	// The thread's events for the HB and WCP lane
+	static EventLog ts_get_laneLog(ShadowThread ts) { Assert.panic("Bad"); return null; }
+	static void ts_set_laneLog(ShadowThread ts, EventLog laneLog) { Assert.panic("Bad"); }
+
 	static final Decoration<ShadowLock,WDCLockData> dcLockData = ShadowLock.makeDecoration("WDC:ShadowLock", DecorationFactory.Type.MULTIPLE,
 			new DefaultValue<ShadowLock,WDCLockData>() { public WDCLockData get(final ShadowLock ld) { return new WDCLockData(ld); }});
 
@@ -230,34 +279,8 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			WDCVolatileData vd = get(((VolatileAccessEvent)fae).getShadowVolatile());
 			return super.makeShadowVar(fae);
 		} else {
-			ShadowThread td = fae.getThread();
-			int tid = td.getTid();
-			if (HB) return new WDCGuardState(ts_get_hb(td));
-			if (WCP) {
-				CV wcpUnionPO = new CV(ts_get_wcp(td));
-				wcpUnionPO.set(tid, ts_get_hb(td).get(tid));
-				return new WDCGuardState(ts_get_hb(td), wcpUnionPO);
-			}
-			if (DC) return new WDCGuardState(ts_get_dc(td));
-			if (WDC) return new WDCGuardState(ts_get_wdc(td));
-			if (HB_WCP_DC) {
-				CV wcpUnionPO = new CV(ts_get_wcp(td));
-				wcpUnionPO.set(tid, ts_get_hb(td).get(tid));
-				return new WDCGuardState(ts_get_hb(td), wcpUnionPO, ts_get_dc(td));
-			}
-			if (HB_WCP_WDC) {
-				CV wcpUnionPO = new CV(ts_get_wcp(td));
-				wcpUnionPO.set(tid, ts_get_hb(td).get(tid));
-				return new WDCGuardState(ts_get_hb(td), wcpUnionPO, ts_get_wdc(td));
-			}
-			if (HB_WCP_DC_WDC) {
-				CV wcpUnionPO = new CV(ts_get_wcp(td));
-				wcpUnionPO.set(tid, ts_get_hb(td).get(tid));
-				return new WDCGuardState(ts_get_hb(td), wcpUnionPO, ts_get_dc(td), ts_get_wdc(td));
-			}
-		}
-		Assert.assertTrue(false); //Should never reach here
-		return null;
+			return new WDCGuardState();
+		}
 	}
 
 	@Override
@@ -273,7 +296,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					hb.inc(tid);
 				}
 			}
-			if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+			if (WCP || INLINE_HB_WCP) {
 				CV hb = ts_get_hb(currentThread);
 				if (hb == null) {
 					hb = new CV(INIT_CV_SIZE);
@@ -300,11 +323,14 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					wdc.inc(tid);
 				}
 			}
+			if (LANES && ts_get_laneLog(currentThread) == null) {
+				ts_set_laneLog(currentThread, lane.newLog(currentThread));
+			}
 			
 			// Handle race edges
-			if (DC) {
+			if (ETD_DC) {
 				ts_set_eTd(currentThread, ts_get_dc(currentThread).get(tid));
-			} else if (WDC) {
+			} else if (ETD_WDC) {
 				ts_set_eTd(currentThread, ts_get_wdc(currentThread).get(tid));
 			} else {
 				ts_set_eTd(currentThread, ts_get_hb(currentThread).get(tid));
@@ -325,8 +351,8 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				synchronized(td) {
 					final int tid = td.getTid();
 					
-					if (COUNT_EVENT) other.inc(tid);
-					if (COUNT_EVENT) exit.inc(tid);
+					if (COUNT_EVENT) other.inc(td);
+					if (COUNT_EVENT) exit.inc(td);
 					
 					//Get the main thread
 					ShadowThread main = ShadowThread.get(0);
@@ -344,8 +370,8 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 							handleEvent(me, thisEventNode);
 							if (DEBUG && !DISABLE_EVENT_GRAPH) Assert.assertTrue(thisEventNode.eventNumber > -2 || td.getThread().getName().equals("Finalizer"));
 							//Build dummy eventNode
-							if (COUNT_EVENT) other.inc(td.getTid());
-							if (COUNT_EVENT) dummy.inc(td.getTid());
+							if (COUNT_EVENT) other.inc(td);
+							if (COUNT_EVENT) dummy.inc(td);
 							currentCriticalSection = getCurrentCriticalSection(main);
 							dummyEventNode = new EventNode(ts_get_lastEventNode(main).eventNumber+1, main_tid, currentCriticalSection, "exit [dummy event]");
 							//PO last event node in main to dummy node
@@ -367,7 +393,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						if (HB) {	
 							ts_get_hb(main).max(ts_get_hb(td));
 						}
-						if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+						if (WCP || INLINE_HB_WCP) {
 							ts_get_hb(main).max(ts_get_hb(td));
 							ts_get_wcp(main).max(ts_get_hb(td));
 						}
@@ -379,7 +405,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						}
 						
 						//Increment joining thread since it is an outgoing edge
-						if (HB || WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+						if (HB || WCP || INLINE_HB_WCP) {
 							ts_get_hb(td).inc(tid); // Don't increment WCP since it doesn't include PO
 						}
 						if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
@@ -388,6 +414,14 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
 							ts_get_wdc(td).inc(tid);
 						}
+						
+						//The lane joins this thread into main once it has replayed this thread so far, and this thread continues after that
+						if (LANES) {
+							final EventLog log = ts_get_laneLog(td);
+							final EventLog mainLog = ts_get_laneLog(main);
+							mainLog.appendAfter(WDCLane.EXIT_JOIN, 0, log, null, log);
+							log.appendAfter(WDCLane.EXITED, 0, null, null, mainLog);
+						}
 					}
 				}
 			}
@@ -407,6 +441,8 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		Util.log("WCP + DC analysis: " + HB_WCP_DC);
 		Util.log("WCP + WDC analysis: " + HB_WCP_WDC);
 		Util.log("WCP + DC + WDC analysis: " + HB_WCP_DC_WDC);
+		Util.log("HB and WCP epochs: " + EPOCH_HB_WCP);
+		Util.log("HB and WCP lane: " + LANES);
 		
 		//Disable event graph generation for HB and WCP configurations
 		if (HB || WCP) {
@@ -416,6 +452,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 	
 	@Override
 	public void fini() {
+		if (LANES) {
+			lane.finish();
+		}
 		Util.log("Single Second Site Race Counts");
 		StaticRace.reportRaces(StaticRace.static_second_site_RaceMap); //Second Site
 		if (UNORDERED_PAIRS) {
@@ -434,6 +473,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			HashSet<StaticRace> verifiedRaces = new HashSet<StaticRace>();
 			LinkedList<StaticRace> staticOnlyCheck = new LinkedList<StaticRace>();
 			long start = System.currentTimeMillis();
+			VindicationBudget.startDeadline();
 			// Only Vindicate non HB- or WCP-races
 			HashMap<RaceType,HashMap<StaticRace,Integer>> staticRaceMap;
 			if (UNORDERED_PAIRS) { //unordered pairs (UP)
@@ -441,21 +481,61 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			} else { //second site (SS)
 				staticRaceMap = StaticRace.static_second_site_RaceMap;
 			}
+			ArrayList<StaticRace> dcRaces = new ArrayList<StaticRace>();
 			for (StaticRace dcRace : StaticRace.races) {
 				if (!dcRace.raceType.isWCPRace() && 
 						(staticRaceMap.get(RaceType.WCPRace) == null || (staticRaceMap.get(RaceType.WCPRace) != null && !staticRaceMap.get(RaceType.WCPRace).containsKey(dcRace))) &&
 						(staticRaceMap.get(RaceType.HBRace) == null || (staticRaceMap.get(RaceType.HBRace) != null && !staticRaceMap.get(RaceType.HBRace).containsKey(dcRace)))) {
-					vindicateRace(dcRace, verifiedRaces, staticOnlyCheck, true, true, commandDir);
+					dcRaces.add(dcRace);
+				}
+			}
+			// Batched: races with overlapping windows are vindicated one after another and share reachability answers
+			ReachabilityMemo shared = null;
+			if (RR.wdcBatchVindicationOption.get()) {
+				Collections.sort(dcRaces, new Comparator<StaticRace>() {
+					public int compare(StaticRace a, StaticRace b) {
+						final int c = Long.compare(a.firstNode.eventNumber, b.firstNode.eventNumber);
+						return c != 0 ? c : Long.compare(a.secondNode.eventNumber, b.secondNode.eventNumber);
+					}
+				});
+				if (!RR.wdcRemoveRaceEdge.get()) {
+					shared = new ReachabilityMemo();
+					for (StaticRace dcRace : dcRaces) {
+						shared.addUse(dcRace.firstNode);
+						shared.addUse(dcRace.secondNode);
+					}
+				}
+			}
+			for (StaticRace dcRace : dcRaces) {
+				vindicateRace(dcRace, verifiedRaces, staticOnlyCheck, true, true, commandDir, shared);
+				if (shared != null) {
+					shared.releaseUse(dcRace.firstNode);
+					shared.releaseUse(dcRace.secondNode);
 				}
 			}
 			Util.log("Static DC Race Check Time: " + (System.currentTimeMillis() - start));
+			if (!vindicationVerdicts.isEmpty()) {
+				Util.log("Vindication Verdicts");
+				for (String verdict : vindicationVerdicts) {
+					Util.log(verdict);
+				}
+			}
 			for (StaticRace singleStaticRace : staticOnlyCheck) {
 				StaticRace.races.remove(singleStaticRace);
 			}
 		}
 	}
 	
-	public void vindicateRace(StaticRace DCrace, HashSet<StaticRace> verifiedRaces, LinkedList<StaticRace> staticOnlyCheck, boolean staticDCRacesOnly, boolean vindicateRace, File commandDir) {
+	public void vindicateRace(StaticRace DCrace, HashSet<StaticRace> verifiedRaces, LinkedList<StaticRace> staticOnlyCheck, boolean staticDCRacesOnly, boolean vindicateRace, File commandDir, ReachabilityMemo shared) {
+		final long start = vindicationTime.start();
+		try {
+			vindicateRaceTimed(DCrace, verifiedRaces, staticOnlyCheck, staticDCRacesOnly, vindicateRace, commandDir, shared);
+		} finally {
+			vindicationTime.stop(start);
+		}
+	}
+	
+	private void vindicateRaceTimed(StaticRace DCrace, HashSet<StaticRace> verifiedRaces, LinkedList<StaticRace> staticOnlyCheck, boolean staticDCRacesOnly, boolean vindicateRace, File commandDir, ReachabilityMemo shared) {
 		RdWrNode startNode = DCrace.firstNode;
 		RdWrNode endNode = DCrace.secondNode;
 		String desc = DCrace.raceType + " " + DCrace.description();
@@ -470,23 +550,50 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			}
 			if ((staticDCRacesOnly && !verifiedRaces.contains(DCrace)) || !staticDCRacesOnly) {
 				Util.println("Checking " + desc + " for event pair " + startNode + " -> " + endNode + " | distance: " + (endNode.eventNumber - startNode.eventNumber));
-				Util.println("Next trying with traverseFromAllEdges = true and precision = true");
-				boolean detectedCycle = false;
-				if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-					detectedCycle = EventNode.crazyNewEdges(startNode, endNode, true, true, true, commandDir);
-				} else {
-					detectedCycle = EventNode.crazyNewEdges(startNode, endNode, true, true, false, commandDir);
-				}
-				 
-				if (staticDCRacesOnly) {
-					if (!detectedCycle) {
-						verifiedRaces.add(DCrace);
+				if (VindicationBudget.pastDeadline()) {
+					Util.println("Vindication deadline passed, not checking " + desc);
+					vindicationVerdicts.add("unknown (vindication deadline passed) | not checked | " + desc);
+					if (staticDCRacesOnly) {
+						staticOnlyCheck.add(DCrace);
 					}
-					if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC){
-						boolean checkDCOrder = EventNode.addRuleB(startNode, endNode, true, true, commandDir);
-						Util.println("Race pair " + desc + " is" + (checkDCOrder ? " " : " NOT ") + "DC ordered.");
+				} else {
+					Util.println("Next trying with traverseFromAllEdges = true and precision = true");
+					final VindicationBudget budget = VindicationBudget.start();
+					try {
+						String verdict;
+						boolean verified = false;
+						try {
+							boolean detectedCycle = false;
+							if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+								detectedCycle = EventNode.crazyNewEdges(startNode, endNode, true, true, true, commandDir, shared);
+							} else {
+								detectedCycle = EventNode.crazyNewEdges(startNode, endNode, true, true, false, commandDir, shared);
+							}
+							verified = !detectedCycle;
+							verdict = detectedCycle ? "refuted" : "verified";
+						} catch (VindicationBudget.Exhausted e) {
+							Util.println("Vindication of " + desc + " stopped: " + e.getMessage());
+							verdict = "unknown (" + e.getMessage() + ")";
+						}
+						 
+						if (staticDCRacesOnly) {
+							if (verified) {
+								verifiedRaces.add(DCrace);
+							}
+							if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC){
+								try {
+									boolean checkDCOrder = EventNode.addRuleB(startNode, endNode, true, true, commandDir);
+									Util.println("Race pair " + desc + " is" + (checkDCOrder ? " " : " NOT ") + "DC ordered.");
+								} catch (VindicationBudget.Exhausted e) {
+									Util.println("Race pair " + desc + " has unknown DC order: " + e.getMessage());
+								}
+							}
+							staticOnlyCheck.add(DCrace);
+						}
+						vindicationVerdicts.add(verdict + " | " + budget + " | " + desc);
+					} finally {
+						budget.stop();
 					}
-					staticOnlyCheck.add(DCrace);
 				}
 			}
 			//Add edge between conflicting accesses of current race back to WDC-B graph
@@ -517,8 +624,14 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 	
 	AcqRelNode updateCurrentCriticalSectionAtRelease(ShadowThread td, AcqRelNode relNode) {
 		Stack<AcqRelNode> locksHeld = ts_get_holdingLocks(td);
-		AcqRelNode poppedNode = locksHeld.pop();
-		return poppedNode;
+		// j.u.c. locks may be released out of nesting order, so remove the matching acquire rather than the top
+		for (int i = locksHeld.size() - 1; i >= 0; i--) {
+			if (locksHeld.get(i).shadowLock == relNode.shadowLock) {
+				return locksHeld.remove(i);
+			}
+		}
+		if (DEBUG) Assert.panic("No held critical section for " + relNode.shadowLock);
+		return null;
 	}
 	
 	void handleEvent(Event e, EventNode thisEventNode) {
@@ -542,7 +655,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					if (tid != 0 
 							&& !td.getThread().getName().equals("Finalizer")) {
 						if (PRINT_EVENT) Util.log("parentless fork to T"+tid);
-						if (COUNT_EVENT) fake_fork.inc(tid);
+						if (COUNT_EVENT) fake_fork.inc(td);
 						//Get the main thread
 						final ShadowThread main = ShadowThread.get(0);
 						synchronized(main) { //Will this deadlock? Same as exit, I don't think main will lock on this thread.
@@ -552,9 +665,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 							final int main_tid = main.getTid();
 						
 							// Handle race edges
-							if (DC) {
+							if (ETD_DC) {
 								ts_set_eTd(main, ts_get_dc(main).get(main_tid));
-							} else if (WDC) {
+							} else if (ETD_WDC) {
 								ts_set_eTd(main, ts_get_wdc(main).get(main_tid));
 							} else {
 								ts_set_eTd(main, ts_get_dc(main).get(main_tid));//ts_get_hb(main).get(main_tid));
@@ -567,7 +680,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 								hb.max(main_hb);
 								main_hb.inc(main_tid);
 							}
-							if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+							if (WCP || INLINE_HB_WCP) {
 								final CV main_hb = ts_get_hb(main);
 								final CV hb = ts_get_hb(td);
 								final CV wcp = ts_get_wcp(td);
@@ -589,6 +702,10 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 								main_wdc.inc(main_tid);
 							}
 							
+							if (LANES) {
+								ts_get_laneLog(main).append(WDCLane.START, 0, ts_get_laneLog(td), null);
+							}
+							
 							//For generating event node graph
 							if (HB) {
 								ts_set_hb(td, new CVE(ts_get_hb(td), ts_get_lastEventNode(main)));
@@ -639,11 +756,11 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				&& !td.getThread().getName().equals("Finalizer")) {
 			//Path for DISABLED_EVENT_GRAPH
 			//If this is the first event in the parentless thread
-			if ((!DC && !WDC && ts_get_hb(td).get(0) == 0) 
-					|| (DC && ts_get_dc(td).get(0) == 0) 
-					|| (WDC && ts_get_wdc(td).get(0) == 0)) {
+			if ((!ETD_DC && !ETD_WDC && ts_get_hb(td).get(0) == 0) 
+					|| (ETD_DC && ts_get_dc(td).get(0) == 0) 
+					|| (ETD_WDC && ts_get_wdc(td).get(0) == 0)) {
 				if (PRINT_EVENT) Util.log("parentless fork to T"+tid);
-				if (COUNT_EVENT) fake_fork.inc(tid);
+				if (COUNT_EVENT) fake_fork.inc(td);
 				//Get the main thread
 				final ShadowThread main = ShadowThread.get(0);
 				synchronized(main) {
@@ -658,7 +775,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						hb.max(main_hb);
 						main_hb.inc(main_tid);
 					}
-					if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+					if (WCP || INLINE_HB_WCP) {
 						final CV main_hb = ts_get_hb(main);
 						final CV hb = ts_get_hb(td);
 						final CV wcp = ts_get_wcp(td);
@@ -679,11 +796,14 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						wdc.max(main_wdc);
 						main_wdc.inc(main_tid);
 					}
+					if (LANES) {
+						ts_get_laneLog(main).append(WDCLane.START, 0, ts_get_laneLog(td), null);
+					}
 					
 					// Handle race edges
-					if (DC) {
+					if (ETD_DC) {
 						ts_set_eTd(main, ts_get_dc(main).get(main_tid));
-					} else if (WDC) {
+					} else if (ETD_WDC) {
 						ts_set_eTd(main, ts_get_wdc(main).get(main_tid));
 					} else {
 						ts_set_eTd(main, ts_get_hb(main).get(main_tid));
@@ -700,7 +820,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			final ShadowLock shadowLock = ae.getLock();
 			final int tid = td.getTid();
 			
-			if (COUNT_EVENT) acquire.inc(tid);
+			if (COUNT_EVENT) acquire.inc(td);
 	
 			AcqRelNode thisEventNode = null;
 			if (!DISABLE_EVENT_GRAPH) {
@@ -713,9 +833,13 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			if (DEBUG && !DISABLE_EVENT_GRAPH) Assert.assertTrue(thisEventNode.eventNumber > -2 || td.getThread().getName().equals("Finalizer"));
 			
 			handleAcquire(td, shadowLock, thisEventNode, false);
+			if (LANES) {
+				final WDCLockData lockData = get(shadowLock);
+				ts_get_laneLog(td).appendOrdered(WDCLane.ACQUIRE, 0, lockData, null, lockData.laneOrder);
+			}
 			
 			//Inc at acquire
-			if (HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+			if (INLINE_HB_WCP) {
 				ts_get_hb(td).inc(tid); // Don't increment WCP since it doesn't include PO
 			}
 			if (DC || HB_WCP_DC) {
@@ -726,9 +850,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			}
 			
 			// Handle race edges
-			if (DC) {
+			if (ETD_DC) {
 				ts_set_eTd(td, ts_get_dc(td).get(tid));
-			} else if (WDC) {
+			} else if (ETD_WDC) {
 				ts_set_eTd(td, ts_get_wdc(td).get(tid));
 			} else {
 				ts_set_eTd(td, ts_get_hb(td).get(tid));
@@ -746,7 +870,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		final int tid = td.getTid();
 		
 		if (!DISABLE_EVENT_GRAPH) {
-			thisEventNode.eventNumber = lockData.latestRelNode == null ? thisEventNode.eventNumber : Math.max(thisEventNode.eventNumber, lockData.latestRelNode.eventNumber+1);
+			if (lockData.latestRelNode != null) EventNode.raiseEventNumber(thisEventNode, lockData.latestRelNode.eventNumber+1);
 		}
 		
 		if (HB) {
@@ -757,7 +881,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		// WCP, DC, WDC
 		if (DEBUG) Assert.assertTrue(lockData.readVars.isEmpty() && lockData.writeVars.isEmpty());
 		
-		if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+		if (WCP || INLINE_HB_WCP) {
 			final CV hb = ts_get_hb(td);
 			final CV wcp = ts_get_wcp(td);
 			hb.max(lockData.hb);
@@ -842,7 +966,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		synchronized(td) {
 			final ShadowLock shadowLock = re.getLock();
 			
-			if (COUNT_EVENT) release.inc(td.getTid());
+			if (COUNT_EVENT) release.inc(td);
 
 			AcqRelNode thisEventNode = null;
 			AcqRelNode matchingAcqNode = null;
@@ -858,6 +982,10 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			if (PRINT_EVENT) Util.log("rel("+Util.objectToIdentityString(shadowLock.getLock())+") by T"+td.getTid()+(!DISABLE_EVENT_GRAPH ? ", event count:"+thisEventNode.eventNumber : ""));
 
 			handleRelease(td, shadowLock, thisEventNode);
+			if (LANES) {
+				final WDCLockData lockData = get(shadowLock);
+				ts_get_laneLog(td).appendOrdered(WDCLane.RELEASE, 0, lockData, null, lockData.laneOrder);
+			}
 			if (DEBUG && !DISABLE_EVENT_GRAPH) {
 				Assert.assertTrue(matchingAcqNode == thisEventNode.otherCriticalSectionNode);
 			}
@@ -872,9 +1000,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		int tid = td.getTid();
 
 		// Handle race edges
-		if (DC) {
+		if (ETD_DC) {
 			ts_set_eTd(td, ts_get_dc(td).get(tid));
-		} else if (WDC) {
+		} else if (ETD_WDC) {
 			ts_set_eTd(td, ts_get_wdc(td).get(tid));
 		} else {
 			ts_set_eTd(td, ts_get_hb(td).get(tid));
@@ -894,7 +1022,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			// Assign to lock
 			lockData.hb.assignWithResize(hb);
 		}
-		if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+		if (WCP || INLINE_HB_WCP) {
 			final CV hb = ts_get_hb(td);
 			final CV wcp = ts_get_wcp(td);
 			final CV wcpUnionPO = new CV(wcp);
@@ -1060,7 +1188,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		
 		// Do the increments last
 		// Safe since accessed by only this thread
-		if (HB || WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+		if (HB || WCP || INLINE_HB_WCP) {
 			ts_get_hb(td).inc(tid); // Don't increment WCP since it doesn't include PO
 		}
 		if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
@@ -1082,530 +1210,658 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		return map;
 	}
 	
+	/*
+	 * Whether other threads' handlers may update td's analysis state, in which case td's
+	 * handlers must hold the lock on td.  Only main is affected: parentless threads are
+	 * forked from and joined to it (see handleEvent() and exit()).  Every other thread's
+	 * state is only written by the thread itself, by its parent before it starts, and
+	 * read by joiners after it ends.
+	 */
+	static boolean sharesThreadState(ShadowThread td) {
+		return td.getTid() == 0;
+	}
+
 	public static boolean readFastPath(final ShadowVar orig, final ShadowThread td) {
-		WDCGuardState x = (WDCGuardState)orig;
-		
-		synchronized(td) {
-			if (HB || WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-				final CV hb = ts_get_hb(td);
-				if (x.hbRead.get(td.getTid()) >= ts_get_eTd(td)) {
-					if (COUNT_EVENT) readFP.inc(td.getTid());
-					return true;
-				}
+		final WDCGuardState x = (WDCGuardState)orig;
+		if (sharesThreadState(td)) {
+			synchronized(td) {
+				return checkReadFastPath(x, td);
 			}
-			if (DC) {
-				final CV dc = ts_get_dc(td);
-				if (x.dcRead.get(td.getTid()) >= ts_get_eTd(td)) {
-					if (COUNT_EVENT) readFP.inc(td.getTid());
-					return true;
-				}
+		}
+		return checkReadFastPath(x, td);
+	}
+
+	private static boolean checkReadFastPath(final WDCGuardState x, final ShadowThread td) {
+		if (HB || WCP || INLINE_HB_WCP) {
+			final CV hb = ts_get_hb(td);
+			if (x.getHBRead(td.getTid()) >= ts_get_eTd(td)) {
+				if (COUNT_EVENT) readFP.inc(td);
+				return true;
 			}
-			if (WDC) {
-				final CV wdc = ts_get_wdc(td);
-				if (x.wdcRead.get(td.getTid()) >= ts_get_eTd(td)) {
-					if (COUNT_EVENT) readFP.inc(td.getTid());
-					return true;
-				}
+		}
+		if (ETD_DC) {
+			final CV dc = ts_get_dc(td);
+			if (x.getDCRead(td.getTid()) >= ts_get_eTd(td)) {
+				if (COUNT_EVENT) readFP.inc(td);
+				return true;
+			}
+		}
+		if (ETD_WDC) {
+			final CV wdc = ts_get_wdc(td);
+			if (x.getWDCRead(td.getTid()) >= ts_get_eTd(td)) {
+				if (COUNT_EVENT) readFP.inc(td);
+				return true;
 			}
 		}
 		return false;
 	}
 	
 	public static boolean writeFastPath(final ShadowVar orig, final ShadowThread td) {
-		WDCGuardState x = (WDCGuardState)orig;
-			
-		synchronized(td) {
-			if (HB || WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-				final CV hb = ts_get_hb(td);
-				if (x.hbWrite.get(td.getTid()) >= ts_get_eTd(td)) {
-					if (COUNT_EVENT) writeFP.inc(td.getTid());
-					return true;
-				}
+		final WDCGuardState x = (WDCGuardState)orig;
+		if (sharesThreadState(td)) {
+			synchronized(td) {
+				return checkWriteFastPath(x, td);
 			}
-			if (DC) {
-				final CV dc = ts_get_dc(td);
-				if (x.dcWrite.get(td.getTid()) >= ts_get_eTd(td)) {
-					if (COUNT_EVENT) writeFP.inc(td.getTid());
-					return true;
-				}
+		}
+		return checkWriteFastPath(x, td);
+	}
+
+	private static boolean checkWriteFastPath(final WDCGuardState x, final ShadowThread td) {
+		if (HB || WCP || INLINE_HB_WCP) {
+			final CV hb = ts_get_hb(td);
+			if (x.getHBWrite(td.getTid()) >= ts_get_eTd(td)) {
+				if (COUNT_EVENT) writeFP.inc(td);
+				return true;
 			}
-			if (WDC) {
-				final CV wdc = ts_get_wdc(td);
-				if (x.wdcWrite.get(td.getTid()) >= ts_get_eTd(td)) {
-					if (COUNT_EVENT) writeFP.inc(td.getTid());
-					return true;
-				}
+		}
+		if (ETD_DC) {
+			final CV dc = ts_get_dc(td);
+			if (x.getDCWrite(td.getTid()) >= ts_get_eTd(td)) {
+				if (COUNT_EVENT) writeFP.inc(td);
+				return true;
+			}
+		}
+		if (ETD_WDC) {
+			final CV wdc = ts_get_wdc(td);
+			if (x.getWDCWrite(td.getTid()) >= ts_get_eTd(td)) {
+				if (COUNT_EVENT) writeFP.inc(td);
+				return true;
 			}
 		}
 		return false;
 	}
 
+	@Override
+	public void stop(ShadowThread td) {
+		if (LANES) {
+			final EventLog log = ts_get_laneLog(td);
+			log.append(WDCLane.STOP, 0, null, null);
+			if (!sharesThreadState(td)) {
+				log.close(); // Parentless threads keep forking from and joining to main, see exit()
+			}
+		}
+		super.stop(td);
+	}
+
+	// The constraint graph and vindication tell threads apart by tid, and new threads' clocks start over, so tids are never reused
+	@Override
+	public boolean mayReuseTid(int tid, ShadowThread parent) {
+		return false;
+	}
+
 	@Override
 	public void access(final AccessEvent fae) {
 		final ShadowVar orig = fae.getOriginalShadow();
 		final ShadowThread td = fae.getThread();
 
 		if (orig instanceof WDCGuardState) {
+			// Accesses by different threads to different variables do not serialize: they only
+			// need the lock on the variable and the event node locks taken by EventNode.addEdge.
+			if (sharesThreadState(td)) {
+				synchronized(td) {
+					access(fae, td, (WDCGuardState)orig);
+				}
+			} else {
+				access(fae, td, (WDCGuardState)orig);
+			}
+		} else {
+			if (VERBOSE) Util.log("Not expecting to reach here for access event: " + fae.getClass() + " | original shadow: " + fae.getOriginalShadow());
+			if (DEBUG) Assert.assertTrue(false); // Not expecting to reach here
+			super.access(fae);
+		}
+	}
 
-			synchronized(td) {
+	private void access(final AccessEvent fae, final ShadowThread td, final WDCGuardState x) {
+		if (COUNT_EVENT) {
+			if (fae.isWrite()) {
+				if (COUNT_EVENT) write.inc(td);
 				if (COUNT_EVENT) {
-					if (fae.isWrite()) {
-						if (COUNT_EVENT) write.inc(td.getTid());
-						if (COUNT_EVENT) {
-							if (getCurrentCriticalSection(td) != null) {
-								write_inside.inc(td.getTid());
-							} else {
-								write_outside.inc(td.getTid());
-							}
-						}
+					if (getCurrentCriticalSection(td) != null) {
+						write_inside.inc(td);
 					} else {
-						if (COUNT_EVENT) read.inc(td.getTid());
-						if (COUNT_EVENT) {
-							if (getCurrentCriticalSection(td) != null) {
-								read_inside.inc(td.getTid());
-							} else {
-								read_outside.inc(td.getTid());
-							}
-						}
+						write_outside.inc(td);
 					}
 				}
+			} else {
+				if (COUNT_EVENT) read.inc(td);
 				if (COUNT_EVENT) {
 					if (getCurrentCriticalSection(td) != null) {
-						access_inside.inc(td.getTid());
+						read_inside.inc(td);
 					} else {
-						access_outside.inc(td.getTid());
+						read_outside.inc(td);
 					}
 				}
+			}
+		}
+		if (COUNT_EVENT) {
+			if (getCurrentCriticalSection(td) != null) {
+				access_inside.inc(td);
+			} else {
+				access_outside.inc(td);
+			}
+		}
 
-				WDCGuardState x = (WDCGuardState)orig;
-				int tid = td.getTid();
-				
-				String fieldName = "";
-				if (PRINT_EVENT || !DISABLE_EVENT_GRAPH) {
-					if (EventNode.DEBUG_ACCESS_INFO) {
-						if (fae instanceof FieldAccessEvent) {
-							fieldName = ((FieldAccessEvent)fae).getInfo().getField().getName();						
-						} else if (fae instanceof ArrayAccessEvent) {
-							fieldName = Util.objectToIdentityString(fae.getTarget()) + "[" + ((ArrayAccessEvent)fae).getIndex() + "]";						
-						}
-					}
+		int tid = td.getTid();
+		
+		String fieldName = "";
+		if (PRINT_EVENT || !DISABLE_EVENT_GRAPH) {
+			if (EventNode.DEBUG_ACCESS_INFO) {
+				if (fae instanceof FieldAccessEvent) {
+					fieldName = ((FieldAccessEvent)fae).getInfo().getField().getName();						
+				} else if (fae instanceof ArrayAccessEvent) {
+					fieldName = Util.objectToIdentityString(fae.getTarget()) + "[" + ((ArrayAccessEvent)fae).getIndex() + "]";						
 				}
-				
-				RdWrNode thisEventNode = null;
-				if (!DISABLE_EVENT_GRAPH) {
-					AcqRelNode currentCriticalSection = getCurrentCriticalSection(td);
-					if (EventNode.DEBUG_ACCESS_INFO) {
-						thisEventNode = new RdWrDebugNode(-2, fae.isWrite(), fieldName, x, td.getTid(), currentCriticalSection);
-					} else {
-						thisEventNode = new RdWrNode(-2, td.getTid(), currentCriticalSection);
-					}
+			}
+		}
+		
+		RdWrNode thisEventNode = null;
+		if (!DISABLE_EVENT_GRAPH) {
+			AcqRelNode currentCriticalSection = getCurrentCriticalSection(td);
+			int accessId = RdWrNode.accessId(fae.getAccessInfo());
+			if (EventNode.DEBUG_ACCESS_INFO) {
+				thisEventNode = new RdWrDebugNode(-2, fae.isWrite(), fieldName, x, td.getTid(), currentCriticalSection, accessId);
+			} else {
+				thisEventNode = new RdWrNode(-2, td.getTid(), currentCriticalSection, accessId);
+			}
+		}
+		
+		handleEvent(fae, thisEventNode);
+		if (DEBUG && !DISABLE_EVENT_GRAPH) Assert.assertTrue(thisEventNode.eventNumber > -2 || td.getThread().getName().equals("Finalizer"));
+
+		// Even though we capture clinit edges via classAccessed(), it doesn't seem to capture quite everything.
+		// In any case, FT2 also does the following in access() in addition to classAccessed().
+		Object target = fae.getTarget();
+		if (target == null) {
+			synchronized(classInitTime) { //Not sure what we discussed for classInit, but FT synchronizes on it so I assume the program executing does not protect accesses to classInit.
+				WDCVolatileData initTime = classInitTime.get(((FieldAccessEvent)fae).getInfo().getField().getOwner());
+				if (LANES) ts_get_laneLog(td).appendOrdered(WDCLane.SHARED_ACQUIRE, 0, initTime, null, initTime.laneOrder);
+				if (HB) ts_get_hb(td).max(initTime.hbWrite);
+				if (WCP || INLINE_HB_WCP) {
+					ts_get_hb(td).max(initTime.hbWrite);
+					ts_get_wcp(td).max(initTime.hbWrite); // union with HB since this is effectively a hard WCP edge
+				}
+				if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
+					ts_get_dc(td).max(initTime.dcWrite);
+				}
+				if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+					ts_get_wdc(td).max(initTime.wdcWrite);
 				}
 				
-				handleEvent(fae, thisEventNode);
-				if (DEBUG && !DISABLE_EVENT_GRAPH) Assert.assertTrue(thisEventNode.eventNumber > -2 || td.getThread().getName().equals("Finalizer"));
-
-				// Even though we capture clinit edges via classAccessed(), it doesn't seem to capture quite everything.
-				// In any case, FT2 also does the following in access() in addition to classAccessed().
-				Object target = fae.getTarget();
-				if (target == null) {
-					synchronized(classInitTime) { //Not sure what we discussed for classInit, but FT synchronizes on it so I assume the program executing does not protect accesses to classInit.
-						WDCVolatileData initTime = classInitTime.get(((FieldAccessEvent)fae).getInfo().getField().getOwner());
-						if (HB) ts_get_hb(td).max(initTime.hbWrite);
-						if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-							ts_get_hb(td).max(initTime.hbWrite);
-							ts_get_wcp(td).max(initTime.hbWrite); // union with HB since this is effectively a hard WCP edge
-						}
-						if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
-							ts_get_dc(td).max(initTime.dcWrite);
-						}
-						if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-							ts_get_wdc(td).max(initTime.wdcWrite);
+				if (!DISABLE_EVENT_GRAPH) {
+					//No need to add edges to an event graph HB and WCP since these relations are sound, only the eventNumber is needed.
+					if (DC || HB_WCP_DC) {
+						if (initTime.dcWrite.anyGt(ts_get_dc(td))) {
+							EventNode.addEdge(initTime.dcWrite.eventNode, thisEventNode);
 						}
-						
-						if (!DISABLE_EVENT_GRAPH) {
-							//No need to add edges to an event graph HB and WCP since these relations are sound, only the eventNumber is needed.
-							if (DC || HB_WCP_DC) {
-								if (initTime.dcWrite.anyGt(ts_get_dc(td))) {
-									EventNode.addEdge(initTime.dcWrite.eventNode, thisEventNode);
-								}
-							} else if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-								if (initTime.wdcWrite.anyGt(ts_get_wdc(td))) {
-									EventNode.addEdge(initTime.wdcWrite.eventNode, thisEventNode);
-								}
-							}
+					} else if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+						if (initTime.wdcWrite.anyGt(ts_get_wdc(td))) {
+							EventNode.addEdge(initTime.wdcWrite.eventNode, thisEventNode);
 						}
 					}
 				}
-				
+			}
+		}
+		
 
-				// Update variables accessed in critical sections for rule (a)
-				for (int i = td.getNumLocksHeld() - 1; i >= 0; i--) {
-					ShadowLock lock = td.getHeldLock(i);
-					WDCLockData lockData = get(lock);
+		// Update variables accessed in critical sections for rule (a)
+		for (int i = td.getNumLocksHeld() - 1; i >= 0; i--) {
+			ShadowLock lock = td.getHeldLock(i);
+			WDCLockData lockData = get(lock);
 
-					// Account for conflicts with prior critical section instances
-					if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-						final CV wcp = ts_get_wcp(td);
-						final CV priorCriticalSectionAfterWrite = lockData.wcpWriteMap.get(x);
-						if (priorCriticalSectionAfterWrite != null) {
-							wcp.max(priorCriticalSectionAfterWrite);
-						}
-						if (fae.isWrite()) {
-							CV priorCriticalSectionAfterRead = lockData.wcpReadMap.get(x);
-							if (priorCriticalSectionAfterRead != null) {
-								wcp.max(priorCriticalSectionAfterRead);
-							}
-						}
+			// Account for conflicts with prior critical section instances
+			if (WCP || INLINE_HB_WCP) {
+				final CV wcp = ts_get_wcp(td);
+				final CV priorCriticalSectionAfterWrite = lockData.wcpWriteMap.get(x);
+				if (priorCriticalSectionAfterWrite != null) {
+					wcp.max(priorCriticalSectionAfterWrite);
+				}
+				if (fae.isWrite()) {
+					CV priorCriticalSectionAfterRead = lockData.wcpReadMap.get(x);
+					if (priorCriticalSectionAfterRead != null) {
+						wcp.max(priorCriticalSectionAfterRead);
 					}
-					if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
-						final CV dc = ts_get_dc(td);
-						final CV priorCriticalSectionAfterWrite = lockData.dcWriteMap.get(x);
-						if (priorCriticalSectionAfterWrite != null) {
-							
-							if (!DISABLE_EVENT_GRAPH && (DC || HB_WCP_DC)) {
-								if (priorCriticalSectionAfterWrite.anyGt(dc)) {
-									EventNode.addEdge(((CVE)priorCriticalSectionAfterWrite).eventNode, thisEventNode);
-								}
-							}
-							
-							dc.max(priorCriticalSectionAfterWrite);
-						}
-						if (fae.isWrite()) {
-							CVE priorCriticalSectionAfterRead = lockData.dcReadMap.get(x);
-							if (priorCriticalSectionAfterRead != null) {
-	
-								if (!DISABLE_EVENT_GRAPH && (DC || HB_WCP_DC)) {
-									if (priorCriticalSectionAfterRead.anyGt(dc)) {
-										//Changed
-										EventNode.addEdge(((CVE)priorCriticalSectionAfterRead).eventNode, thisEventNode);
-									}
-								}
-	
-								dc.max(priorCriticalSectionAfterRead);
-							}
+				}
+			}
+			if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
+				final CV dc = ts_get_dc(td);
+				final CV priorCriticalSectionAfterWrite = lockData.dcWriteMap.get(x);
+				if (priorCriticalSectionAfterWrite != null) {
+					
+					if (!DISABLE_EVENT_GRAPH && (DC || HB_WCP_DC)) {
+						if (priorCriticalSectionAfterWrite.anyGt(dc)) {
+							EventNode.addEdge(((CVE)priorCriticalSectionAfterWrite).eventNode, thisEventNode);
 						}
 					}
-					if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-						final CV wdc = ts_get_wdc(td);
-						final CV priorCriticalSectionAfterWrite = lockData.wdcWriteMap.get(x);
-						if (priorCriticalSectionAfterWrite != null) {
-							
-							if (!DISABLE_EVENT_GRAPH && (WDC || HB_WCP_WDC || HB_WCP_DC_WDC)) {
-								if (priorCriticalSectionAfterWrite.anyGt(wdc)) {
-									EventNode.addEdge(((CVE)priorCriticalSectionAfterWrite).eventNode, thisEventNode);
-								}
-							}
-							
-							wdc.max(priorCriticalSectionAfterWrite);
-						}
-						if (fae.isWrite()) {
-							CVE priorCriticalSectionAfterRead = lockData.wdcReadMap.get(x);
-							if (priorCriticalSectionAfterRead != null) {
-	
-								if (!DISABLE_EVENT_GRAPH && (WDC || HB_WCP_WDC || HB_WCP_DC_WDC)) {
-									if (priorCriticalSectionAfterRead.anyGt(wdc)) {
-										//Changed
-										EventNode.addEdge(((CVE)priorCriticalSectionAfterRead).eventNode, thisEventNode);
-									}
-								}
-	
-								wdc.max(priorCriticalSectionAfterRead);
+					
+					dc.max(priorCriticalSectionAfterWrite);
+				}
+				if (fae.isWrite()) {
+					CVE priorCriticalSectionAfterRead = lockData.dcReadMap.get(x);
+					if (priorCriticalSectionAfterRead != null) {
+
+						if (!DISABLE_EVENT_GRAPH && (DC || HB_WCP_DC)) {
+							if (priorCriticalSectionAfterRead.anyGt(dc)) {
+								//Changed
+								EventNode.addEdge(((CVE)priorCriticalSectionAfterRead).eventNode, thisEventNode);
 							}
 						}
+
+						dc.max(priorCriticalSectionAfterRead);
 					}
+				}
+			}
+			if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+				final CV wdc = ts_get_wdc(td);
+				final CV priorCriticalSectionAfterWrite = lockData.wdcWriteMap.get(x);
+				if (priorCriticalSectionAfterWrite != null) {
 					
-					// Keep track of accesses within ongoing critical section
-					if (!HB) { // HB analysis does not use read/write Vars
-						if (fae.isWrite()) {
-							lockData.writeVars.add(x);
-						} else {
-							lockData.readVars.add(x);
+					if (!DISABLE_EVENT_GRAPH && (WDC || HB_WCP_WDC || HB_WCP_DC_WDC)) {
+						if (priorCriticalSectionAfterWrite.anyGt(wdc)) {
+							EventNode.addEdge(((CVE)priorCriticalSectionAfterWrite).eventNode, thisEventNode);
 						}
 					}
+					
+					wdc.max(priorCriticalSectionAfterWrite);
 				}
-				
-				// Have to lock on variable x here until the end of the access event
-				synchronized(x) {
-					boolean foundRace = false;
-					// Check for races: HB ⊆ WCP ⊆ DC ⊆ WDC, HB ⊆ DC
-					if (HB) {
-						final CV hb = ts_get_hb(td);
-						foundRace = checkForRacesHB(fae.isWrite(), x, fae, tid, hb, thisEventNode);
-						// Update thread VCs if race detected (to correspond with edge being added)
-						if (foundRace && !DISABLE_EVENT_GRAPH) {
-							hb.max(x.hbWrite);
-							if (fae.isWrite()) {
-								hb.max(x.hbReadsJoined);
-							}
-						} else { // Check that we don't need to update CVs if there was no race)
-							if (DEBUG) {
-								Assert.assertTrue(!x.hbWrite.anyGt(hb));
-								if (fae.isWrite()) {
-									Assert.assertTrue(!x.hbReadsJoined.anyGt(hb));
-								}
+				if (fae.isWrite()) {
+					CVE priorCriticalSectionAfterRead = lockData.wdcReadMap.get(x);
+					if (priorCriticalSectionAfterRead != null) {
+
+						if (!DISABLE_EVENT_GRAPH && (WDC || HB_WCP_WDC || HB_WCP_DC_WDC)) {
+							if (priorCriticalSectionAfterRead.anyGt(wdc)) {
+								//Changed
+								EventNode.addEdge(((CVE)priorCriticalSectionAfterRead).eventNode, thisEventNode);
 							}
 						}
+
+						wdc.max(priorCriticalSectionAfterRead);
 					}
-					if (WCP) {
-						final CV hb = ts_get_hb(td);
-						final CV wcp = ts_get_wcp(td);
-						foundRace = checkForRacesWCP(fae.isWrite(), x, fae, tid, hb, wcp, thisEventNode);
-						// Update thread VCs if race detected (to correspond with edge being added)
-						if (foundRace && !DISABLE_EVENT_GRAPH) {
-							hb.max(x.hbWrite);
-							wcp.max(x.hbWrite);
-							if (fae.isWrite()) {
-								hb.max(x.hbReadsJoined);
-								wcp.max(x.hbReadsJoined);
-							}
-						} else { // Check that we don't need to update CVs if there was no race)
-							if (DEBUG) {
-								Assert.assertTrue(!x.hbWrite.anyGt(hb));
-								final CV wcpUnionPO = new CV(wcp);
-								wcpUnionPO.set(tid, hb.get(tid));
-								Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-								if (fae.isWrite()) {
-									Assert.assertTrue(!x.hbReadsJoined.anyGt(hb));
-									Assert.assertTrue(!x.wcpReadsJoined.anyGt(wcpUnionPO));
-								}
-							}
-						}
+				}
+			}
+			
+			// Keep track of accesses within ongoing critical section
+			if (!HB) { // HB analysis does not use read/write Vars
+				if (fae.isWrite()) {
+					lockData.writeVars.add(x);
+				} else {
+					lockData.readVars.add(x);
+				}
+			}
+		}
+		
+		if (LANES) {
+			ts_get_laneLog(td).append(WDCLane.ACCESS, fae.isWrite() ? 1 : 0, x, fae.getAccessInfo());
+		}
+		
+		// Have to lock on variable x here until the end of the access event
+		synchronized(x) {
+			// A variable accessed by a single thread cannot race, so only its owner record is updated
+			final boolean owned = x.claim(tid);
+			boolean foundRace = false;
+			// Check for races: HB ⊆ WCP ⊆ DC ⊆ WDC, HB ⊆ DC
+			if (HB && !owned) {
+				final CV hb = ts_get_hb(td);
+				foundRace = checkForRacesHB(fae.isWrite(), x, fae, tid, hb, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					x.joinHBWrite(hb);
+					if (fae.isWrite()) {
+						hb.max(x.hbJoinedReads());
 					}
-					if (DC) {
-						final CV dc = ts_get_dc(td);
-						foundRace = checkForRacesDC(fae.isWrite(), x, fae, tid, dc, thisEventNode);
-						// Update thread VCs if race detected (to correspond with edge being added)
-						if (foundRace && !DISABLE_EVENT_GRAPH) {
-							dc.max(x.dcWrite);
-							if (fae.isWrite()) {
-								dc.max(x.dcReadsJoined);
-							}
-						} else { // Check that we don't need to update CVs if there was no race)
-							if (DEBUG) {
-								Assert.assertTrue(!x.dcWrite.anyGt(dc));
-								if (fae.isWrite()) {
-									Assert.assertTrue(!x.dcReadsJoined.anyGt(dc));
-								}
-							}
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.hbWriteGt(hb));
+						if (fae.isWrite()) {
+							Assert.assertTrue(!x.hbJoinedReads().anyGt(hb));
 						}
 					}
-					if (HB_WCP_DC) {
-						final CV hb = ts_get_hb(td);
-						final CV wcp = ts_get_wcp(td);
-						final CV dc = ts_get_dc(td);
-						foundRace = checkForRacesDC(fae.isWrite(), x, fae, tid, hb, wcp, dc, thisEventNode);
-						// Update thread VCs if race detected (to correspond with edge being added)
-						if (foundRace && !DISABLE_EVENT_GRAPH) {
-							hb.max(x.hbWrite);
-							wcp.max(x.hbWrite);
-							dc.max(x.dcWrite);
-							if (fae.isWrite()) {
-								hb.max(x.hbReadsJoined);
-								wcp.max(x.hbReadsJoined);
-								dc.max(x.dcReadsJoined);
-							}
-						} else { // Check that we don't need to update CVs if there was no race)
-							if (DEBUG) {
-								Assert.assertTrue(!x.hbWrite.anyGt(hb));
-								final CV wcpUnionPO = new CV(wcp);
-								wcpUnionPO.set(tid, hb.get(tid));
-								Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-								Assert.assertTrue(!x.dcWrite.anyGt(dc));
-								if (fae.isWrite()) {
-									Assert.assertTrue(!x.hbReadsJoined.anyGt(hb));
-									Assert.assertTrue(!x.wcpReadsJoined.anyGt(wcpUnionPO));
-									Assert.assertTrue(!x.dcReadsJoined.anyGt(dc));
-								}
-							}
-						}
+				}
+			}
+			if (WCP && !owned) {
+				final CV hb = ts_get_hb(td);
+				final CV wcp = ts_get_wcp(td);
+				foundRace = checkForRacesWCP(fae.isWrite(), x, fae, tid, hb, wcp, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					x.joinHBWrite(hb);
+					x.joinHBWrite(wcp);
+					if (fae.isWrite()) {
+						hb.max(x.hbJoinedReads());
+						wcp.max(x.hbJoinedReads());
 					}
-					if (WDC) {
-						final CV wdc = ts_get_wdc(td);
-						foundRace = checkForRacesWDC(fae.isWrite(), x, fae, tid, wdc, thisEventNode);
-						// Update thread VCs if race detected (to correspond with edge being added)
-						if (foundRace && !DISABLE_EVENT_GRAPH) {
-							wdc.max(x.wdcWrite);
-							if (fae.isWrite()) {
-								wdc.max(x.wdcReadsJoined);
-							}
-						} else { // Check that we don't need to update CVs if there was no race)
-							if (DEBUG) {
-								Assert.assertTrue(!x.wdcWrite.anyGt(wdc));
-								if (fae.isWrite()) {
-									Assert.assertTrue(!x.wdcReadsJoined.anyGt(wdc));
-								}
-							}
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.hbWriteGt(hb));
+						final CV wcpUnionPO = new CV(wcp);
+						wcpUnionPO.set(tid, hb.get(tid));
+						Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+						if (fae.isWrite()) {
+							Assert.assertTrue(!x.hbJoinedReads().anyGt(hb));
+							Assert.assertTrue(!x.wcpJoinedReads().anyGt(wcpUnionPO));
 						}
 					}
-					if (HB_WCP_WDC) {
-						final CV hb = ts_get_hb(td);
-						final CV wcp = ts_get_wcp(td);
-						final CV wdc = ts_get_wdc(td);
-						foundRace = checkForRacesWDC(fae.isWrite(), x, fae, tid, hb, wcp, wdc, thisEventNode);
-						// Update thread VCs if race detected (to correspond with edge being added)
-						if (foundRace && !DISABLE_EVENT_GRAPH) {
-							hb.max(x.hbWrite);
-							wcp.max(x.hbWrite);
-							wdc.max(x.wdcWrite);
-							if (fae.isWrite()) {
-								hb.max(x.hbReadsJoined);
-								wcp.max(x.hbReadsJoined);
-								wdc.max(x.wdcReadsJoined);
-							}
-						} else { // Check that we don't need to update CVs if there was no race)
-							if (DEBUG) {
-								Assert.assertTrue(!x.hbWrite.anyGt(hb));
-								final CV wcpUnionPO = new CV(wcp);
-								wcpUnionPO.set(tid, hb.get(tid));
-								Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-								Assert.assertTrue(!x.wdcWrite.anyGt(wdc));
-								if (fae.isWrite()) {
-									Assert.assertTrue(!x.hbReadsJoined.anyGt(hb));
-									Assert.assertTrue(!x.wcpReadsJoined.anyGt(wcpUnionPO));
-									Assert.assertTrue(!x.wdcReadsJoined.anyGt(wdc));
-								}
-							}
-						}
+				}
+			}
+			if (ETD_DC && !owned) {
+				final CV dc = ts_get_dc(td);
+				foundRace = checkForRacesDC(fae.isWrite(), x, fae, tid, dc, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					dc.max(x.dcWrite);
+					if (fae.isWrite()) {
+						dc.max(x.dcReadsJoined);
 					}
-					if (HB_WCP_DC_WDC) {
-						final CV hb = ts_get_hb(td);
-						final CV wcp = ts_get_wcp(td);
-						final CV dc = ts_get_dc(td);
-						final CV wdc = ts_get_wdc(td);
-						foundRace = checkForRacesWDC(fae.isWrite(), x, fae, tid, hb, wcp, dc, wdc, thisEventNode);
-						// Update thread VCs if race detected (to correspond with edge being added)
-						if (foundRace && !DISABLE_EVENT_GRAPH) {
-							hb.max(x.hbWrite);
-							wcp.max(x.hbWrite);
-							dc.max(x.dcWrite);
-							wdc.max(x.wdcWrite);
-							if (fae.isWrite()) {
-								hb.max(x.hbReadsJoined);
-								wcp.max(x.hbReadsJoined);
-								dc.max(x.dcReadsJoined);
-								wdc.max(x.wdcReadsJoined);
-							}
-						} else { // Check that we don't need to update CVs if there was no race)
-							if (DEBUG) {
-								Assert.assertTrue(!x.hbWrite.anyGt(hb));
-								final CV wcpUnionPO = new CV(wcp);
-								wcpUnionPO.set(tid, hb.get(tid));
-								Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-								Assert.assertTrue(!x.dcWrite.anyGt(dc));
-								Assert.assertTrue(!x.wdcWrite.anyGt(wdc));
-								if (fae.isWrite()) {
-									Assert.assertTrue(!x.hbReadsJoined.anyGt(hb));
-									Assert.assertTrue(!x.wcpReadsJoined.anyGt(wcpUnionPO));
-									Assert.assertTrue(!x.dcReadsJoined.anyGt(dc));
-									Assert.assertTrue(!x.wdcReadsJoined.anyGt(wdc));
-								}
-							}
-						}
-					}					
-	
-					if (!DISABLE_EVENT_GRAPH && !DISABLE_MERGING) {
-						// Can combine two consecutive write/read nodes that have the same VC.
-						// We might later add an outgoing edge from the prior node, but that's okay.
-						EventNode oldThisEventNode = thisEventNode;
-						thisEventNode = thisEventNode.tryToMergeWithPrior();
-						// If merged, undo prior increment
-						if (thisEventNode != oldThisEventNode) {
-							if (HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-								ts_get_hb(td).inc(tid, -1);
-							}
-							if (DC || HB_WCP_DC) {
-								ts_get_dc(td).inc(tid, -1);
-							}
-							if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-								ts_get_wdc(td).inc(tid, -1);
-							}
-							ts_set_lastEventNode(td, thisEventNode);
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.dcWrite.anyGt(dc));
+						if (fae.isWrite()) {
+							Assert.assertTrue(!x.dcReadsJoined.anyGt(dc));
 						}
 					}
-					
-						// Update vector clocks
-						if (HB) {
-							final CV hb = ts_get_hb(td);
-							if (fae.isWrite()) {
-								x.hbWrite.assignWithResize(hb);
-							} else {
-								x.hbRead.set(tid, hb.get(tid));
-								x.hbReadsJoined.max(hb);
-							}
-						}
-						if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-							final CV hb = ts_get_hb(td);
-							final CV wcp = ts_get_wcp(td);
-							final CV wcpUnionPO = new CV(wcp);
-							wcpUnionPO.set(tid, hb.get(tid));
-							
-							if (fae.isWrite()) {
-								x.hbWrite.assignWithResize(hb);
-								x.wcpWrite.assignWithResize(wcpUnionPO);
-							} else {
-								x.hbRead.set(tid, hb.get(tid));
-								x.hbReadsJoined.max(hb);
-								x.wcpRead.set(tid, hb.get(tid));
-								x.wcpReadsJoined.max(wcpUnionPO);
-							}
-						}
-						if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
-							final CV dc = ts_get_dc(td);
-							if (fae.isWrite()) {
-								x.dcWrite.assignWithResize(dc);
-							} else {
-								x.dcRead.set(tid, dc.get(tid));
-								x.dcReadsJoined.max(dc);
-							}
-						}
-						if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-							final CV wdc = ts_get_wdc(td);
-							if (fae.isWrite()) {
-								x.wdcWrite.assignWithResize(wdc);
-							} else {
-								x.wdcRead.set(tid, wdc.get(tid));
-								x.wdcReadsJoined.max(wdc);
-							}
+				}
+			}
+			if (HB_WCP_DC && INLINE_HB_WCP && !owned) {
+				final CV hb = ts_get_hb(td);
+				final CV wcp = ts_get_wcp(td);
+				final CV dc = ts_get_dc(td);
+				foundRace = checkForRacesDC(fae.isWrite(), x, fae, tid, hb, wcp, dc, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					x.joinHBWrite(hb);
+					x.joinHBWrite(wcp);
+					dc.max(x.dcWrite);
+					if (fae.isWrite()) {
+						hb.max(x.hbJoinedReads());
+						wcp.max(x.hbJoinedReads());
+						dc.max(x.dcReadsJoined);
+					}
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.hbWriteGt(hb));
+						final CV wcpUnionPO = new CV(wcp);
+						wcpUnionPO.set(tid, hb.get(tid));
+						Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+						Assert.assertTrue(!x.dcWrite.anyGt(dc));
+						if (fae.isWrite()) {
+							Assert.assertTrue(!x.hbJoinedReads().anyGt(hb));
+							Assert.assertTrue(!x.wcpJoinedReads().anyGt(wcpUnionPO));
+							Assert.assertTrue(!x.dcReadsJoined.anyGt(dc));
 						}
-					
-						// Update last event
-						final MethodEvent me = td.getBlockDepth() <= 0 ? null : td.getBlock(td.getBlockDepth()-1); //This is how RREventGenerator retrieves a method event
-						DynamicSourceLocation dl = new DynamicSourceLocation(fae, thisEventNode, (me == null ? null : me.getInfo()));
-						
+					}
+				}
+			}
+			if ((WDC || (LANES && HB_WCP_WDC)) && !owned) {
+				final CV wdc = ts_get_wdc(td);
+				foundRace = checkForRacesWDC(fae.isWrite(), x, fae, tid, wdc, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					wdc.max(x.wdcWrite);
+					if (fae.isWrite()) {
+						wdc.max(x.wdcReadsJoined);
+					}
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.wdcWrite.anyGt(wdc));
 						if (fae.isWrite()) {
-							x.lastWriteTid = tid;
-							x.lastWriteEvent = dl;
-						} else {
-							x.lastReadEvents[tid] = dl;
+							Assert.assertTrue(!x.wdcReadsJoined.anyGt(wdc));
 						}
-						
-						// These increments are needed because we might end up creating an outgoing WDC edge from this access event
-						// (if it turns out to be involved in a WDC-race).
-						// Only if there is an outgoing WDC edge should the thread's CV be updated.
-						if (HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-							ts_get_hb(td).inc(tid); // Don't increment WCP since it doesn't include PO
+					}
+				}
+			}
+			if (HB_WCP_WDC && INLINE_HB_WCP && !owned) {
+				final CV hb = ts_get_hb(td);
+				final CV wcp = ts_get_wcp(td);
+				final CV wdc = ts_get_wdc(td);
+				foundRace = checkForRacesWDC(fae.isWrite(), x, fae, tid, hb, wcp, wdc, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					x.joinHBWrite(hb);
+					x.joinHBWrite(wcp);
+					wdc.max(x.wdcWrite);
+					if (fae.isWrite()) {
+						hb.max(x.hbJoinedReads());
+						wcp.max(x.hbJoinedReads());
+						wdc.max(x.wdcReadsJoined);
+					}
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.hbWriteGt(hb));
+						final CV wcpUnionPO = new CV(wcp);
+						wcpUnionPO.set(tid, hb.get(tid));
+						Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+						Assert.assertTrue(!x.wdcWrite.anyGt(wdc));
+						if (fae.isWrite()) {
+							Assert.assertTrue(!x.hbJoinedReads().anyGt(hb));
+							Assert.assertTrue(!x.wcpJoinedReads().anyGt(wcpUnionPO));
+							Assert.assertTrue(!x.wdcReadsJoined.anyGt(wdc));
 						}
-						if (DC || HB_WCP_DC) {
-							ts_get_dc(td).inc(tid);
+					}
+				}
+			}
+			if (HB_WCP_DC_WDC && LANES && !owned) {
+				final CV dc = ts_get_dc(td);
+				final CV wdc = ts_get_wdc(td);
+				foundRace = checkForRacesWDC(fae.isWrite(), x, fae, tid, dc, wdc, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					dc.max(x.dcWrite);
+					wdc.max(x.wdcWrite);
+					if (fae.isWrite()) {
+						dc.max(x.dcReadsJoined);
+						wdc.max(x.wdcReadsJoined);
+					}
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.dcWrite.anyGt(dc));
+						Assert.assertTrue(!x.wdcWrite.anyGt(wdc));
+						if (fae.isWrite()) {
+							Assert.assertTrue(!x.dcReadsJoined.anyGt(dc));
+							Assert.assertTrue(!x.wdcReadsJoined.anyGt(wdc));
 						}
-						if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
-							ts_get_wdc(td).inc(tid);
+					}
+				}
+			}
+			if (HB_WCP_DC_WDC && INLINE_HB_WCP && !owned) {
+				final CV hb = ts_get_hb(td);
+				final CV wcp = ts_get_wcp(td);
+				final CV dc = ts_get_dc(td);
+				final CV wdc = ts_get_wdc(td);
+				foundRace = checkForRacesWDC(fae.isWrite(), x, fae, tid, hb, wcp, dc, wdc, thisEventNode);
+				// Update thread VCs if race detected (to correspond with edge being added)
+				if (foundRace && !DISABLE_EVENT_GRAPH) {
+					x.joinHBWrite(hb);
+					x.joinHBWrite(wcp);
+					dc.max(x.dcWrite);
+					wdc.max(x.wdcWrite);
+					if (fae.isWrite()) {
+						hb.max(x.hbJoinedReads());
+						wcp.max(x.hbJoinedReads());
+						dc.max(x.dcReadsJoined);
+						wdc.max(x.wdcReadsJoined);
+					}
+				} else { // Check that we don't need to update CVs if there was no race)
+					if (DEBUG) {
+						Assert.assertTrue(!x.hbWriteGt(hb));
+						final CV wcpUnionPO = new CV(wcp);
+						wcpUnionPO.set(tid, hb.get(tid));
+						Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+						Assert.assertTrue(!x.dcWrite.anyGt(dc));
+						Assert.assertTrue(!x.wdcWrite.anyGt(wdc));
+						if (fae.isWrite()) {
+							Assert.assertTrue(!x.hbJoinedReads().anyGt(hb));
+							Assert.assertTrue(!x.wcpJoinedReads().anyGt(wcpUnionPO));
+							Assert.assertTrue(!x.dcReadsJoined.anyGt(dc));
+							Assert.assertTrue(!x.wdcReadsJoined.anyGt(wdc));
 						}
+					}
 				}
-				
-				if (PRINT_EVENT) {		
+			}					
+
+			if (!DISABLE_EVENT_GRAPH && !DISABLE_MERGING) {
+				// Can combine two consecutive write/read nodes that have the same VC.
+				// We might later add an outgoing edge from the prior node, but that's okay.
+				EventNode oldThisEventNode = thisEventNode;
+				thisEventNode = thisEventNode.tryToMergeWithPrior();
+				// If merged, undo prior increment
+				if (thisEventNode != oldThisEventNode) {
+					if (COUNT_EVENT) merged_access.inc(td);
+					if (INLINE_HB_WCP) {
+						ts_get_hb(td).inc(tid, -1);
+					}
+					if (DC || HB_WCP_DC) {
+						ts_get_dc(td).inc(tid, -1);
+					}
+					if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+						ts_get_wdc(td).inc(tid, -1);
+					}
+					ts_set_lastEventNode(td, thisEventNode);
+				}
+			}
+			
+			// Update vector clocks
+			if (owned) {
+				updateOwner(fae.isWrite(), x, td, tid);
+			} else {
+				if (HB) {
+					final CV hb = ts_get_hb(td);
+					if (fae.isWrite()) {
+						x.hbWrite.assignWithResize(hb);
+					} else {
+						x.hbRead.set(tid, hb.get(tid));
+						x.hbReadsJoined.max(hb);
+					}
+				}
+				if (EPOCH_HB_WCP) {
+					x.setSharedHB(fae.isWrite(), tid, ts_get_hb(td));
+				} else if (WCP || INLINE_HB_WCP) {
+					final CV hb = ts_get_hb(td);
+					final CV wcp = ts_get_wcp(td);
+					final CV wcpUnionPO = new CV(wcp);
+					wcpUnionPO.set(tid, hb.get(tid));
+					
+					if (fae.isWrite()) {
+						x.hbWrite.assignWithResize(hb);
+						x.wcpWrite.assignWithResize(wcpUnionPO);
+					} else {
+						x.hbRead.set(tid, hb.get(tid));
+						x.hbReadsJoined.max(hb);
+						x.wcpRead.set(tid, hb.get(tid));
+						x.wcpReadsJoined.max(wcpUnionPO);
+					}
+				}
+				if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
+					final CV dc = ts_get_dc(td);
 					if (fae.isWrite()) {
-						Util.log("wr("+ fieldName +") by T"+td.getTid()+(!DISABLE_EVENT_GRAPH ? ", event count:"+thisEventNode.eventNumber : ""));
+						x.dcWrite.assignWithResize(dc);
 					} else {
-						Util.log("rd("+ fieldName +") by T"+td.getTid()+(!DISABLE_EVENT_GRAPH ? ", event count:"+thisEventNode.eventNumber : ""));
+						x.dcRead.set(tid, dc.get(tid));
+						x.dcReadsJoined.max(dc);
+					}
+				}
+				if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+					final CV wdc = ts_get_wdc(td);
+					if (fae.isWrite()) {
+						x.wdcWrite.assignWithResize(wdc);
+					} else {
+						x.wdcRead.set(tid, wdc.get(tid));
+						x.wdcReadsJoined.max(wdc);
 					}
 				}
 			}
-		} else {
-			if (VERBOSE) Util.log("Not expecting to reach here for access event: " + fae.getClass() + " | original shadow: " + fae.getOriginalShadow());
-			if (DEBUG) Assert.assertTrue(false); // Not expecting to reach here
-			super.access(fae);
+			
+				// Update last event
+				final MethodEvent me = td.getBlockDepth() <= 0 ? null : td.getBlock(td.getBlockDepth()-1); //This is how RREventGenerator retrieves a method event
+				DynamicSourceLocation dl = new DynamicSourceLocation(fae, thisEventNode, (me == null ? null : me.getInfo()));
+				
+				if (fae.isWrite()) {
+					x.lastWriteTid = tid;
+					x.lastWriteEvent = dl;
+				} else {
+					x.setLastReadEvent(tid, dl);
+				}
+				
+				// These increments are needed because we might end up creating an outgoing WDC edge from this access event
+				// (if it turns out to be involved in a WDC-race).
+				// Only if there is an outgoing WDC edge should the thread's CV be updated.
+				if (INLINE_HB_WCP) {
+					ts_get_hb(td).inc(tid); // Don't increment WCP since it doesn't include PO
+				}
+				if (DC || HB_WCP_DC) {
+					ts_get_dc(td).inc(tid);
+				}
+				if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+					ts_get_wdc(td).inc(tid);
+				}
+		}
+		
+		if (PRINT_EVENT) {		
+			if (fae.isWrite()) {
+				Util.log("wr("+ fieldName +") by T"+td.getTid()+(!DISABLE_EVENT_GRAPH ? ", event count:"+thisEventNode.eventNumber : ""));
+			} else {
+				Util.log("rd("+ fieldName +") by T"+td.getTid()+(!DISABLE_EVENT_GRAPH ? ", event count:"+thisEventNode.eventNumber : ""));
+			}
+		}
+	}
+
+	// NOTE: This should be protected by the lock on variable x in the access event
+	static void updateOwner(boolean isWrite, WDCGuardState x, ShadowThread td, int tid) {
+		if (EPOCH_HB_WCP) {
+			final CV hb = ts_get_hb(td);
+			x.setHB(isWrite, snapshot(td, WDCGuardState.HB_SNAPSHOT, hb), hb.get(tid)); // WCP shares the HB epochs
+		} else if (HB || WCP || INLINE_HB_WCP) {
+			final CV hb = ts_get_hb(td);
+			x.setHB(isWrite, snapshot(td, WDCGuardState.HB_SNAPSHOT, hb), hb.get(tid));
+			if (!HB) {
+				x.setWCP(isWrite, snapshot(td, WDCGuardState.WCP_SNAPSHOT, ts_get_wcp(td)), hb.get(tid));
+			}
 		}
+		if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
+			final CV dc = ts_get_dc(td);
+			x.setDC(isWrite, snapshot(td, WDCGuardState.DC_SNAPSHOT, dc), dc.get(tid));
+		}
+		if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+			final CV wdc = ts_get_wdc(td);
+			x.setWDC(isWrite, snapshot(td, WDCGuardState.WDC_SNAPSHOT, wdc), wdc.get(tid));
+		}
+	}
+
+	/*
+	 * Returns a copy of the thread's cv that is never modified.  The copy is shared
+	 * until an entry other than the thread's own changes, so the many variables a
+	 * thread owns between synchronization operations point to the same snapshot.
+	 */
+	static CV snapshot(ShadowThread td, int index, CV cv) {
+		CV[] snapshots = ts_get_snapshots(td);
+		if (snapshots == null) {
+			snapshots = new CV[4];
+			ts_set_snapshots(td, snapshots);
+		}
+		CV s = snapshots[index];
+		if (s == null || !s.equalsExcept(cv, td.getTid())) {
+			s = new CV(cv);
+			snapshots[index] = s;
+		}
+		return s;
 	}
 
 	public boolean recordRace(WDCGuardState x, AccessEvent ae, int tid, int shortestRaceTid, boolean shortestRaceIsWrite, RaceType shortestRaceType, RdWrNode thisEventNode) {
@@ -1654,7 +1910,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		RaceType shortestRaceType = RaceType.DCOrdered; // only valid if shortestRaceTid != -1
 		
 		// First check for race with prior write
-		if (x.hbWrite.anyGt(hb)) {
+		if (x.hbWriteGt(hb)) {
 			RaceType type = RaceType.HBRace;
 			shortestRaceTid = x.lastWriteTid;
 			shortestRaceIsWrite = true;
@@ -1693,22 +1949,22 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		RaceType shortestRaceType = RaceType.DCOrdered; // only valid if shortestRaceTid != -1
 		
 		// First check for race with prior write
-		if (x.wcpWrite.anyGt(wcpUnionPO)) {
+		if (x.wcpWriteGt(wcpUnionPO)) {
 			RaceType type = RaceType.WCPRace;
-			if (x.hbWrite.anyGt(hb)) {
+			if (x.hbWriteGt(hb)) {
 				type = RaceType.HBRace;
 			}
 			shortestRaceTid = x.lastWriteTid;
 			shortestRaceIsWrite = true;
 			shortestRaceType = type;
 		} else {
-			if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+			if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 		}
 		// Next check for races with prior reads
 		if (isWrite) {
-			if (x.wcpRead.anyGt(wcpUnionPO)) {
+			if (x.wcpReads().anyGt(wcpUnionPO)) {
 				int index = -1;
-				while ((index = x.wcpRead.nextGt(wcpUnionPO, index + 1)) != -1) {
+				while ((index = x.wcpReads().nextGt(wcpUnionPO, index + 1)) != -1) {
 					RaceType type = RaceType.WCPRace;
 					if (x.hbRead.get(index) > hb.get(index)) {
 						type = RaceType.HBRace;
@@ -1789,13 +2045,13 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		// First check for race with prior write
 		if (x.dcWrite.anyGt(dc)) {
 			RaceType type = RaceType.DCRace;
-			if (x.wcpWrite.anyGt(wcpUnionPO)) {
+			if (x.wcpWriteGt(wcpUnionPO)) {
 				type = RaceType.WCPRace;
-				if (x.hbWrite.anyGt(hb)) {
+				if (x.hbWriteGt(hb)) {
 					type = RaceType.HBRace;
 				}
 			} else {
-				if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+				if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 			}
 			shortestRaceTid = x.lastWriteTid;
 			shortestRaceIsWrite = true;
@@ -1805,8 +2061,8 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				EventNode.addEdge(x.lastWriteEvent.eventNode, thisEventNode);
 			}
 		} else {
-			if (DEBUG) Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-			if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+			if (DEBUG) Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+			if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 		}
 		// Next check for races with prior reads
 		if (isWrite) {
@@ -1814,7 +2070,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				int index = -1;
 				while ((index = x.dcRead.nextGt(dc, index + 1)) != -1) {
 					RaceType type = RaceType.DCRace;
-					if (x.wcpRead.get(index) > wcpUnionPO.get(index)) {
+					if (x.wcpReads().get(index) > wcpUnionPO.get(index)) {
 						type = RaceType.WCPRace;
 						if (x.hbRead.get(index) > hb.get(index)) {
 							type = RaceType.HBRace;
@@ -1841,7 +2097,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					}
 				}
 			} else {
-				if (DEBUG) Assert.assertTrue(!x.wcpRead.anyGt(wcpUnionPO));
+				if (DEBUG) Assert.assertTrue(!x.wcpReads().anyGt(wcpUnionPO));
 				if (DEBUG) Assert.assertTrue(!x.hbRead.anyGt(hb));
 			}
 		}
@@ -1903,13 +2159,13 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		// First check for race with prior write
 		if (x.wdcWrite.anyGt(wdc)) {
 			RaceType type = RaceType.WDCRace;
-			if (x.wcpWrite.anyGt(wcpUnionPO)) {
+			if (x.wcpWriteGt(wcpUnionPO)) {
 				type = RaceType.WCPRace;
-				if (x.hbWrite.anyGt(hb)) {
+				if (x.hbWriteGt(hb)) {
 					type = RaceType.HBRace;
 				}
 			} else {
-				if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+				if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 			}
 			shortestRaceTid = x.lastWriteTid;
 			shortestRaceIsWrite = true;
@@ -1919,8 +2175,8 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				EventNode.addEdge(x.lastWriteEvent.eventNode, thisEventNode);
 			}
 		} else {
-			if (DEBUG) Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-			if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+			if (DEBUG) Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+			if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 		}
 		// Next check for races with prior reads
 		if (isWrite) {
@@ -1928,7 +2184,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				int index = -1;
 				while ((index = x.wdcRead.nextGt(wdc, index + 1)) != -1) {
 					RaceType type = RaceType.WDCRace;
-					if (x.wcpRead.get(index) > wcpUnionPO.get(index)) {
+					if (x.wcpReads().get(index) > wcpUnionPO.get(index)) {
 						type = RaceType.WCPRace;
 						if (x.hbRead.get(index) > hb.get(index)) {
 							type = RaceType.HBRace;
@@ -1955,13 +2211,69 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					}
 				}
 			} else {
-				if (DEBUG) Assert.assertTrue(!x.wcpRead.anyGt(wcpUnionPO));
+				if (DEBUG) Assert.assertTrue(!x.wcpReads().anyGt(wcpUnionPO));
 				if (DEBUG) Assert.assertTrue(!x.hbRead.anyGt(hb));
 			}
 		}
 		return recordRace(x, ae, tid, shortestRaceTid, shortestRaceIsWrite, shortestRaceType, thisEventNode);
 	}
 	
+	// DC and WDC only: the HB and WCP lane classifies HB- and WCP-races, see WDCLane
+	boolean checkForRacesWDC(boolean isWrite, WDCGuardState x, AccessEvent ae, int tid, CV dc, CV wdc, RdWrNode thisEventNode) {
+		int shortestRaceTid = -1;
+		boolean shortestRaceIsWrite = false; // only valid if shortestRaceTid != -1
+		RaceType shortestRaceType = RaceType.DCOrdered; // only valid if shortestRaceTid != -1
+		
+		// First check for race with prior write
+		if (x.wdcWrite.anyGt(wdc)) {
+			RaceType type = RaceType.WDCRace;
+			if (x.dcWrite.anyGt(dc)) {
+				type = RaceType.DCRace;
+			}
+			shortestRaceTid = x.lastWriteTid;
+			shortestRaceIsWrite = true;
+			shortestRaceType = type;
+			// Add event node edge
+			if (!DISABLE_EVENT_GRAPH) {
+				EventNode.addEdge(x.lastWriteEvent.eventNode, thisEventNode);
+			}
+		} else {
+			if (DEBUG) Assert.assertTrue(!x.dcWrite.anyGt(dc));
+		}
+		// Next check for races with prior reads
+		if (isWrite) {
+			if (x.wdcRead.anyGt(wdc)) {
+				int index = -1;
+				while ((index = x.wdcRead.nextGt(wdc, index + 1)) != -1) {
+					RaceType type = RaceType.WDCRace;
+					if (x.dcRead.get(index) > dc.get(index)) {
+						type = RaceType.DCRace;
+					}
+					//Update the latest race with the current race since we only want to report one race per access event
+					DynamicSourceLocation dl = shortestRaceTid >= 0 ? (shortestRaceIsWrite ? x.lastWriteEvent : x.lastReadEvents[shortestRaceTid]) : null;
+					if (DISABLE_EVENT_GRAPH || (dl == null || x.lastReadEvents[index].eventNode.eventNumber > dl.eventNode.eventNumber)) {
+						shortestRaceTid = index;
+						shortestRaceIsWrite = false;
+						shortestRaceType = type;
+					}
+					if (DEBUG) Assert.assertTrue(x.lastReadEvents[index] != null);
+					if (!DISABLE_EVENT_GRAPH && DEBUG) Assert.assertTrue(x.lastReadEvents[index].eventNode != null);
+					if (!DISABLE_EVENT_GRAPH) {
+						// This thread's last reader node might be same as the last writer node, due to merging
+						if (x.lastWriteEvent != null && x.lastReadEvents[index].eventNode == x.lastWriteEvent.eventNode) {
+							if (DEBUG) Assert.assertTrue(EventNode.edgeExists(x.lastWriteEvent.eventNode, thisEventNode));
+						} else {
+							EventNode.addEdge(x.lastReadEvents[index].eventNode, thisEventNode);
+						}
+					}
+				}
+			} else {
+				if (DEBUG) Assert.assertTrue(!x.dcRead.anyGt(dc));
+			}
+		}
+		return recordRace(x, ae, tid, shortestRaceTid, shortestRaceIsWrite, shortestRaceType, thisEventNode);
+	}
+	
 	boolean checkForRacesWDC(boolean isWrite, WDCGuardState x, AccessEvent ae, int tid, CV hb, CV wcp, CV dc, CV wdc, RdWrNode thisEventNode) {
 		final CV wcpUnionPO = new CV(wcp);
 		wcpUnionPO.set(tid, hb.get(tid));
@@ -1974,17 +2286,17 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			RaceType type = RaceType.WDCRace;
 			if (x.dcWrite.anyGt(dc)) {
 				type = RaceType.DCRace;
-				if (x.wcpWrite.anyGt(wcpUnionPO)) {
+				if (x.wcpWriteGt(wcpUnionPO)) {
 					type = RaceType.WCPRace;
-					if (x.hbWrite.anyGt(hb)) {
+					if (x.hbWriteGt(hb)) {
 						type = RaceType.HBRace;
 					}
 				} else {
-					if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+					if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 				}
 			} else {
-				if (DEBUG) Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-				if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+				if (DEBUG) Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+				if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 			}
 			shortestRaceTid = x.lastWriteTid;
 			shortestRaceIsWrite = true;
@@ -1995,8 +2307,8 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			}
 		} else {
 			if (DEBUG) Assert.assertTrue(!x.dcWrite.anyGt(dc));
-			if (DEBUG) Assert.assertTrue(!x.wcpWrite.anyGt(wcpUnionPO));
-			if (DEBUG) Assert.assertTrue(!x.hbWrite.anyGt(hb));
+			if (DEBUG) Assert.assertTrue(!x.wcpWriteGt(wcpUnionPO));
+			if (DEBUG) Assert.assertTrue(!x.hbWriteGt(hb));
 		}
 		// Next check for races with prior reads
 		if (isWrite) {
@@ -2006,7 +2318,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					RaceType type = RaceType.WDCRace;
 					if (x.dcRead.get(index) > dc.get(index)) {
 						type = RaceType.DCRace;
-						if (x.wcpRead.get(index) > wcpUnionPO.get(index)) {
+						if (x.wcpReads().get(index) > wcpUnionPO.get(index)) {
 							type = RaceType.WCPRace;
 							if (x.hbRead.get(index) > hb.get(index)) {
 								type = RaceType.HBRace;
@@ -2015,7 +2327,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 							if (DEBUG) Assert.assertTrue(x.hbRead.get(index) <= hb.get(index));
 						}
 					} else {
-						if (DEBUG) Assert.assertTrue(!x.wcpRead.anyGt(wcpUnionPO));
+						if (DEBUG) Assert.assertTrue(!x.wcpReads().anyGt(wcpUnionPO));
 						if (DEBUG) Assert.assertTrue(!x.hbRead.anyGt(hb));
 					}
 					//Update the latest race with the current race since we only want to report one race per access event
@@ -2038,7 +2350,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				}
 			} else {
 				if (DEBUG) Assert.assertTrue(!x.dcRead.anyGt(dc));
-				if (DEBUG) Assert.assertTrue(!x.wcpRead.anyGt(wcpUnionPO));
+				if (DEBUG) Assert.assertTrue(!x.wcpReads().anyGt(wcpUnionPO));
 				if (DEBUG) Assert.assertTrue(!x.hbRead.anyGt(hb));
 			}
 		}
@@ -2053,9 +2365,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			
 			if (COUNT_EVENT) {
 				if (fae.isWrite()) {
-					volatile_write.inc(tid);
+					volatile_write.inc(td);
 				} else {
-					volatile_read.inc(tid);
+					volatile_read.inc(td);
 				}
 			}			
 			
@@ -2081,10 +2393,23 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			//Lock on the volatile variable vd
 			WDCVolatileData vd = get(fae.getShadowVolatile());
 			synchronized(vd) {
+				// A read that already joined the latest write has no new incoming edge from it
+				VolatileJoinCache volJoins = null;
+				boolean writeJoined = false;
+				if (!fae.isWrite()) {
+					volJoins = ts_get_volJoins(td);
+					if (volJoins == null) {
+						volJoins = new VolatileJoinCache();
+						ts_set_volJoins(td, volJoins);
+					}
+					writeJoined = volJoins.joined(vd, vd.id, vd.writeVersion);
+					if (COUNT_EVENT && writeJoined) volatile_read_joined.inc(td);
+				}
+				
 				// Handle race edges
-				if (DC) {
+				if (ETD_DC) {
 					ts_set_eTd(td, ts_get_dc(td).get(tid));
-				} else if (WDC) {
+				} else if (ETD_WDC) {
 					ts_set_eTd(td, ts_get_wdc(td).get(tid));
 				} else {
 					ts_set_eTd(td, ts_get_hb(td).get(tid));
@@ -2105,7 +2430,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 							}
 						}
 						// Add edge from last write node to this event node
-						if (vd.dcWrites.anyGt(dc)) {
+						if (!writeJoined && vd.dcWrites.anyGt(dc)) {
 							int index = -1;
 							while ((index = vd.dcWrites.nextGt(dc, index + 1)) != -1) {
 								EventNode.addEdge(vd.lastWriteEvents[index], thisEventNode);
@@ -2123,7 +2448,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 							}
 						}
 						// Add edge from last write node to this event node
-						if (vd.wdcWrites.anyGt(wdc)) {
+						if (!writeJoined && vd.wdcWrites.anyGt(wdc)) {
 							int index = -1;
 							while ((index = vd.wdcWrites.nextGt(wdc, index + 1)) != -1) {
 								EventNode.addEdge(vd.lastWriteEvents[index], thisEventNode);
@@ -2140,9 +2465,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						hb.max(vd.hbReadsJoined);
 					}
 					//incoming wr-wr (if fae.isWrite()) edge or incoming wr-rd (if fae.isRead()) edge
-					hb.max(vd.hbWrite);
+					if (!writeJoined) hb.max(vd.hbWrite);
 				}
-				if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+				if (WCP || INLINE_HB_WCP) {
 					final CV hb = ts_get_hb(td);
 					final CV wcp = ts_get_wcp(td);
 					if (fae.isWrite()) {
@@ -2151,8 +2476,10 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						wcp.max(vd.hbReadsJoined);
 					}
 					//incoming wr-wr (if fae.isWrite()) edge or incoming wr-rd (if fae.isRead()) edge
-					hb.max(vd.hbWrite);
-					wcp.max(vd.hbWrite); // Union with HB since a volatile write-read edge is effectively a hard WCP edge
+					if (!writeJoined) {
+						hb.max(vd.hbWrite);
+						wcp.max(vd.hbWrite); // Union with HB since a volatile write-read edge is effectively a hard WCP edge
+					}
 				}
 				if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
 					final CV dc = ts_get_dc(td);
@@ -2161,7 +2488,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						dc.max(vd.dcReadsJoined);
 					}
 					//incoming wr-wr (if fae.isWrite()) edge or incoming wr-rd (if fae.isRead()) edge
-					dc.max(vd.dcWrite);
+					if (!writeJoined) dc.max(vd.dcWrite);
 				}
 				if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
 					final CV wdc = ts_get_wdc(td);
@@ -2170,7 +2497,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						wdc.max(vd.wdcReadsJoined);
 					}
 					//incoming wr-wr (if fae.isWrite()) edge or incoming wr-rd (if fae.isRead()) edge
-					wdc.max(vd.wdcWrite);
+					if (!writeJoined) wdc.max(vd.wdcWrite);
 				}
 				
 				// Update volatile VC by joining with current thread's VC
@@ -2184,7 +2511,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 						vd.hbReadsJoined.max(hb);
 					}
 				}
-				if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+				if (WCP || INLINE_HB_WCP) {
 					final CV hb = ts_get_hb(td);
 					final CV wcp = ts_get_wcp(td);
 					if (fae.isWrite()) {
@@ -2223,7 +2550,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				}
 						
 				// Increment for outgoing edge
-				if (HB || WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+				if (HB || WCP || INLINE_HB_WCP) {
 					final CV hb = ts_get_hb(td);
 					//outgoing wr-wr and wr-rd race (if fae.isWrite()) or outgoing rd-wr edge (if fae.isRead())
 					hb.inc(tid);
@@ -2239,10 +2566,16 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					wdc.inc(tid);
 				}
 				
+				if (LANES) {
+					ts_get_laneLog(td).appendOrdered(WDCLane.VOLATILE, fae.isWrite() ? 1 : 0, vd, null, vd.laneOrder);
+				}
+				
 				if (fae.isWrite()) {
 					vd.lastWriteEvents[tid] = thisEventNode;
+					vd.writeVersion++;
 				} else {
 					vd.lastReadEvents[tid] = thisEventNode;
+					if (!writeJoined) volJoins.record(vd, vd.id, vd.writeVersion);
 				}
 			}
 		}
@@ -2280,16 +2613,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					"Stack",						ShadowThread.stackDumpForErrorMessage(currentThread) 
 			);
 		} else {
-			fieldErrors.errorQuite(currentThread,
-					fd,
-					"Relation",						relation,
-					"Current Thread",				toString(currentThread), 
-					"Class",						target==null?fd.getOwner():target.getClass(),
-					"Field",						Util.objectToIdentityString(target) + "." + fd, 
-					"Prev Op",						prevOp + " " + ShadowThread.get(prevTid),
-					"Cur Op",						curOp + " " + ShadowThread.get(curTid),
-					"Stack",						ShadowThread.stackDumpForErrorMessage(currentThread) 
-			);
+			fieldErrors.record(currentThread, fd, relation, prevTid);
 		}
 			
 		if (DEBUG) Assert.assertTrue(prevTid != curTid);
@@ -2315,15 +2639,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					"Stack",						ShadowThread.stackDumpForErrorMessage(currentThread) 
 			);
 		} else {
-			arrayErrors.errorQuite(currentThread,
-					aae.getInfo(),
-					"Alloc Site", 					ArrayAllocSiteTracker.get(aae.getTarget()),
-					"Current Thread",				toString(currentThread), 
-					"Array",						Util.objectToIdentityString(target) + "[" + aae.getIndex() + "]",
-					"Prev Op",						prevOp + " " + ShadowThread.get(prevTid),
-					"Cur Op",						curOp + " " + ShadowThread.get(curTid),
-					"Stack",						ShadowThread.stackDumpForErrorMessage(currentThread) 
-			);
+			arrayErrors.record(currentThread, aae.getInfo(), relation, prevTid);
 		}
 		
 		if (DEBUG) Assert.assertTrue(prevTid != curTid);
@@ -2337,7 +2653,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			
 			final int tid = td.getTid();
 			
-			if (COUNT_EVENT) fork.inc(tid);			
+			if (COUNT_EVENT) fork.inc(td);			
 
 			EventNode thisEventNode = null;
 			if (!DISABLE_EVENT_GRAPH) { //preStart is handled the same as rd/wr accesses
@@ -2355,9 +2671,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			final ShadowThread forked = se.getNewThread();
 			
 			// Handle race edges
-			if (DC) {
+			if (ETD_DC) {
 				ts_set_eTd(td, ts_get_dc(td).get(tid));
-			} else if (WDC) {
+			} else if (ETD_WDC) {
 				ts_set_eTd(td, ts_get_wdc(td).get(tid));
 			} else {
 				ts_set_eTd(td, ts_get_hb(td).get(tid));
@@ -2369,7 +2685,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				forked_hb.max(hb);
 				hb.inc(tid);
 			}
-			if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+			if (WCP || INLINE_HB_WCP) {
 				final CV hb = ts_get_hb(td);
 				final CV forked_hb = ts_get_hb(forked);
 				final CV forked_wcp = ts_get_wcp(forked);
@@ -2391,6 +2707,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 				forked_wdc.max(wdc);
 				wdc.inc(tid);
 			}
+			if (LANES) {
+				ts_get_laneLog(td).append(WDCLane.START, 0, ts_get_laneLog(forked), null);
+			}
 			//For generating event node graph
 			if (!DISABLE_EVENT_GRAPH) {
 				if (HB) {
@@ -2414,7 +2733,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		synchronized(td) {
 			final int tid = td.getTid();
 			
-			if (COUNT_EVENT) join.inc(tid);
+			if (COUNT_EVENT) join.inc(td);
 
 			EventNode thisEventNode = null;
 			if (!DISABLE_EVENT_GRAPH) { //postJoin is handled the same as rd/wr accesses
@@ -2447,7 +2766,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			if (HB) {
 				ts_get_hb(td).max(ts_get_hb(joining));
 			}
-			if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+			if (WCP || INLINE_HB_WCP) {
 				ts_get_hb(td).max(ts_get_hb(joining));
 				ts_get_wcp(td).max(ts_get_hb(joining)); // Use HB since this is a hard WCP edge
 			}
@@ -2457,6 +2776,10 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
 				ts_get_wdc(td).max(ts_get_wdc(joining));
 			}
+			if (LANES) {
+				final EventLog joiningLog = ts_get_laneLog(joining);
+				ts_get_laneLog(td).appendAfter(WDCLane.JOIN, 0, joiningLog, null, joiningLog);
+			}
 		}
 
 		super.postJoin(je);	
@@ -2466,7 +2789,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 	public void preWait(WaitEvent we) {
 		final ShadowThread td = we.getThread();
 		synchronized (td) {
-			if (COUNT_EVENT) preWait.inc(td.getTid());
+			if (COUNT_EVENT) preWait.inc(td);
 			
 			AcqRelNode thisEventNode = null;
 			if (!DISABLE_EVENT_GRAPH) {
@@ -2483,6 +2806,10 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			
 			// lock is already held
 			handleRelease(td, we.getLock(), thisEventNode);
+			if (LANES) {
+				final WDCLockData lockData = get(we.getLock());
+				ts_get_laneLog(td).appendOrdered(WDCLane.RELEASE, 1, lockData, null, lockData.laneOrder);
+			}
 		}
 		
 		super.preWait(we);
@@ -2492,7 +2819,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 	public void postWait(WaitEvent we) {
 		final ShadowThread td = we.getThread();
 		synchronized (td) {
-			if (COUNT_EVENT) postWait.inc(td.getTid());
+			if (COUNT_EVENT) postWait.inc(td);
 			
 			AcqRelNode thisEventNode = null;
 			if (!DISABLE_EVENT_GRAPH) {
@@ -2511,13 +2838,17 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			// Considering wait--notify to be a hard WCP and WDC edge.
 			// (If wait--notify is used properly, won't it already be a hard edge?)
 			handleAcquire(td, we.getLock(), thisEventNode, true);
+			if (LANES) {
+				final WDCLockData lockData = get(we.getLock());
+				ts_get_laneLog(td).appendOrdered(WDCLane.ACQUIRE, 1, lockData, null, lockData.laneOrder);
+			}
 		}
 
 		super.postWait(we);
 	}
 
 	public static String toString(final ShadowThread td) {
-		return String.format("[tid=%-2d   hb=%s   wcp=%s   dc=%s	wdc=%s]", td.getTid(), ((HB || WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) ? ts_get_hb(td) : "N/A"), ((WCP || HB_WCP_DC || HB_WCP_WDC ||HB_WCP_DC_WDC) ? ts_get_wcp(td) : "N/A"), ((DC || HB_WCP_DC || HB_WCP_DC_WDC) ? ts_get_dc(td) : "N/A"), ((WDC || HB_WCP_WDC || HB_WCP_DC_WDC) ? ts_get_wdc(td) : "N/A"));
+		return String.format("[tid=%-2d   hb=%s   wcp=%s   dc=%s	wdc=%s]", td.getTid(), ((HB || WCP || INLINE_HB_WCP) ? ts_get_hb(td) : "N/A"), ((WCP || INLINE_HB_WCP) ? ts_get_wcp(td) : "N/A"), ((DC || HB_WCP_DC || HB_WCP_DC_WDC) ? ts_get_dc(td) : "N/A"), ((WDC || HB_WCP_WDC || HB_WCP_DC_WDC) ? ts_get_wdc(td) : "N/A"));
 	}
 
 	private final Decoration<ShadowThread, CV> cvForExit = 
@@ -2541,7 +2872,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		if (HB) {
 			ts_get_hb(currentThread).max(old);
 		}
-		if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+		if (WCP || INLINE_HB_WCP) {
 			ts_get_hb(currentThread).max(old);
 			ts_get_wcp(currentThread).max(old); // Also update WCP since a barrier is basically an all-to-all hard WCP edge
 		}
@@ -2553,13 +2884,142 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		}
 	}
 
+	//A shared release of a JUC synchronizer is handled like class initialization and a shared acquire like a class access
+	public void preReleaseShared(JUCEvent<WDCVolatileData> je) {
+		final ShadowThread td = je.getThread();
+		synchronized (td) {
+			final int tid = td.getTid();
+			
+			if (COUNT_EVENT) juc_release.inc(td);
+			
+			EventNode thisEventNode = null;
+			if (!DISABLE_EVENT_GRAPH) {
+				AcqRelNode currentCriticalSection = getCurrentCriticalSection(td);
+				thisEventNode = new EventNode(-2, tid, currentCriticalSection, "juc_release");
+			}
+			handleEvent(je, thisEventNode);
+			if (DEBUG && !DISABLE_EVENT_GRAPH) Assert.assertTrue(thisEventNode.eventNumber > -2 || td.getThread().getName().equals("Finalizer"));
+			
+			if (PRINT_EVENT) {
+				Util.log("juc release by T"+tid+(!DISABLE_EVENT_GRAPH ? ", event count:"+thisEventNode.eventNumber : ""));
+			}
+			
+			final WDCVolatileData sync = je.getSync();
+			synchronized(sync) {
+				// Handle race edges
+				if (ETD_DC) {
+					ts_set_eTd(td, ts_get_dc(td).get(tid));
+				} else if (ETD_WDC) {
+					ts_set_eTd(td, ts_get_wdc(td).get(tid));
+				} else {
+					ts_set_eTd(td, ts_get_hb(td).get(tid));
+				}
+				
+				if (HB) {
+					final CV hb = ts_get_hb(td);
+					sync.hbWrite.max(hb);
+					hb.inc(tid);
+				}
+				if (WCP || INLINE_HB_WCP) {
+					final CV hb = ts_get_hb(td);
+					final CV wcp = ts_get_wcp(td);
+					sync.hbWrite.max(hb);
+					sync.wcpWrite.max(wcp);
+					hb.inc(tid);
+				}
+				if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
+					final CV dc = ts_get_dc(td);
+					sync.dcWrite.max(dc);
+					if (!DISABLE_EVENT_GRAPH) sync.dcWrites.set(tid, dc.get(tid));
+					dc.inc(tid);
+				}
+				if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+					final CV wdc = ts_get_wdc(td);
+					sync.wdcWrite.max(wdc);
+					if (!DISABLE_EVENT_GRAPH) sync.wdcWrites.set(tid, wdc.get(tid));
+					wdc.inc(tid);
+				}
+				if (LANES) {
+					ts_get_laneLog(td).appendOrdered(WDCLane.SHARED_RELEASE, 0, sync, null, sync.laneOrder);
+				}
+				
+				//For generating event node graph: each releasing thread's last release, as for volatile writes
+				if (!DISABLE_EVENT_GRAPH) {
+					sync.lastWriteEvents[tid] = thisEventNode;
+				}
+			}
+		}
+	}
+	
+	public void postAcquireShared(JUCEvent<WDCVolatileData> je) {
+		final ShadowThread td = je.getThread();
+		synchronized(td) {
+			final int tid = td.getTid();
+			
+			if (COUNT_EVENT) juc_acquire.inc(td);
+			
+			EventNode thisEventNode = null;
+			if (!DISABLE_EVENT_GRAPH) {
+				AcqRelNode currentCriticalSection = getCurrentCriticalSection(td);
+				thisEventNode = new EventNode(-2, tid, currentCriticalSection, "juc_acquire");
+			}
+			handleEvent(je, thisEventNode);
+			if (DEBUG && !DISABLE_EVENT_GRAPH) Assert.assertTrue(thisEventNode.eventNumber > -2 || td.getThread().getName().equals("Finalizer"));
+			
+			if (PRINT_EVENT) {
+				Util.log("juc acquire by T"+tid+(!DISABLE_EVENT_GRAPH ? ", event count:"+thisEventNode.eventNumber : ""));
+			}
+			
+			final WDCVolatileData sync = je.getSync();
+			synchronized(sync) {
+				//For generating event node graph, before the joins below hide the incoming edges: one from each release not yet ordered before this acquire
+				if (!DISABLE_EVENT_GRAPH) {
+					if (DC || HB_WCP_DC) {
+						final CV dc = ts_get_dc(td);
+						int index = -1;
+						while ((index = sync.dcWrites.nextGt(dc, index + 1)) != -1) {
+							EventNode.addEdge(sync.lastWriteEvents[index], thisEventNode);
+						}
+					} else if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+						final CV wdc = ts_get_wdc(td);
+						int index = -1;
+						while ((index = sync.wdcWrites.nextGt(wdc, index + 1)) != -1) {
+							EventNode.addEdge(sync.lastWriteEvents[index], thisEventNode);
+						}
+					}
+				}
+				if (HB) {
+					final CV hb = ts_get_hb(td);
+					hb.max(sync.hbWrite);
+				}
+				if (WCP || INLINE_HB_WCP) {
+					final CV hb = ts_get_hb(td);
+					final CV wcp = ts_get_wcp(td);
+					hb.max(sync.hbWrite);
+					wcp.max(sync.hbWrite); // union with HB since this is effectively a hard WCP edge
+				}
+				if (DC || HB_WCP_DC || HB_WCP_DC_WDC) {
+					final CV dc = ts_get_dc(td);
+					dc.max(sync.dcWrite);
+				}
+				if (WDC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+					final CV wdc = ts_get_wdc(td);
+					wdc.max(sync.wdcWrite);
+				}
+				if (LANES) {
+					ts_get_laneLog(td).appendOrdered(WDCLane.SHARED_ACQUIRE, 0, sync, null, sync.laneOrder);
+				}
+			}
+		}
+	}
+
 	@Override
 	public void classInitialized(ClassInitializedEvent e) {
 		final ShadowThread td = e.getThread();
 		synchronized (td) {
 			final int tid = td.getTid();
 			
-			if (COUNT_EVENT) classInit.inc(tid);
+			if (COUNT_EVENT) classInit.inc(td);
 			
 			EventNode thisEventNode = null;
 			if (!DISABLE_EVENT_GRAPH) { //classInitialized is handled the same as rd/wr accesses
@@ -2575,9 +3035,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 			
 			synchronized(classInitTime) { //Not sure what we discussed for classInit, but FT synchronizes on it so I assume the program executing does not protect accesses to classInit.
 				// Handle race edges
-				if (DC) {
+				if (ETD_DC) {
 					ts_set_eTd(td, ts_get_dc(td).get(tid));
-				} else if (WDC) {
+				} else if (ETD_WDC) {
 					ts_set_eTd(td, ts_get_wdc(td).get(tid));
 				} else {
 					ts_set_eTd(td, ts_get_hb(td).get(tid));
@@ -2588,7 +3048,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					classInitTime.get(e.getRRClass()).hbWrite.max(hb);
 					hb.inc(tid);
 				}
-				if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+				if (WCP || INLINE_HB_WCP) {
 					final CV hb = ts_get_hb(td);
 					final CV wcp = ts_get_wcp(td);
 					classInitTime.get(e.getRRClass()).hbWrite.max(hb);
@@ -2605,6 +3065,10 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					classInitTime.get(e.getRRClass()).wdcWrite.max(wdc);
 					wdc.inc(tid);
 				}
+				if (LANES) {
+					final WDCVolatileData initTime = classInitTime.get(e.getRRClass());
+					ts_get_laneLog(td).appendOrdered(WDCLane.SHARED_RELEASE, 0, initTime, null, initTime.laneOrder);
+				}
 				
 				//For generating event node graph
 				if (!DISABLE_EVENT_GRAPH) {
@@ -2627,7 +3091,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 		synchronized(td) {
 			final int tid = td.getTid();
 			
-			if (COUNT_EVENT) classAccess.inc(tid);
+			if (COUNT_EVENT) classAccess.inc(td);
 			
 			EventNode thisEventNode = null;
 			if (!DISABLE_EVENT_GRAPH) { //classInitialized is handled the same as rd/wr accesses
@@ -2647,7 +3111,7 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					final CV hb = ts_get_hb(td);
 					hb.max(initTime.hbWrite);
 				}
-				if (WCP || HB_WCP_DC || HB_WCP_WDC || HB_WCP_DC_WDC) {
+				if (WCP || INLINE_HB_WCP) {
 					final CV hb = ts_get_hb(td);
 					final CV wcp = ts_get_wcp(td);
 					hb.max(initTime.hbWrite);
@@ -2661,6 +3125,9 @@ public class WDCTool extends Tool implements BarrierListener<WDCBarrierState>, O
 					final CV wdc = ts_get_wdc(td);
 					wdc.max(initTime.wdcWrite);
 				}
+				if (LANES) {
+					ts_get_laneLog(td).appendOrdered(WDCLane.SHARED_ACQUIRE, 0, initTime, null, initTime.laneOrder);
+				}
 				//For generating event node graph	
 				if (!DISABLE_EVENT_GRAPH) {
 					//No need to add edges to an event graph HB and WCP since these relations are sound, only the eventNumber is needed.
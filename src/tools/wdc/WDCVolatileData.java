@@ -40,6 +40,8 @@ package tools.wdc;
 
 import rr.state.ShadowVolatile;
 import rr.tool.RR;
+import tools.util.ReplayOrder;
+import tools.util.VolatileJoinCache;
 
 public class WDCVolatileData {
 
@@ -70,6 +72,13 @@ public class WDCVolatileData {
 
 	public EventNode[] lastWriteEvents;
 	public EventNode[] lastReadEvents;
+
+	//Bumped after each write, so readers can tell whether they already joined the write clocks. Guarded by this.
+	public int writeVersion;
+	public final int id = VolatileJoinCache.nextId();
+	
+	//Orders the HB and WCP lane's replay of the accesses, see WDCLane.  The HB and WCP fields above belong to the lane then.
+	public final ReplayOrder laneOrder = WDCTool.LANES ? new ReplayOrder() : null;
 	
 	public WDCVolatileData(ShadowVolatile ld) {
 		this.peer = ld;
@@ -0,0 +1,102 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package test;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Dump the instrumented classes and meta data, then run again from the dump:
+// rrrun -dump=/tmp/rrdump -dcHB -tool=WDC test.CachedThunk
+// RR_META_DATA=/tmp/rrdump rrrun -dcHB -tool=WDC test.CachedThunk
+public class CachedThunk extends Thread {
+
+	static int x;
+	static int y;
+	static final ReentrantLock m = new ReentrantLock();
+	static final CyclicBarrier barrier = new CyclicBarrier(2);
+	
+	//Predictable races: none
+	//The lock and await calls are hooked through thunk classes, which the second run
+	//must define from the dump.  Both runs should report no races.
+	
+	static void sleepSec(float sec) {
+		try{
+			Thread.sleep((long)(sec * 1000));
+		} catch(InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void run() {
+		m.lock();
+		x = 1;
+		m.unlock();
+		y = 1;
+		try {
+			barrier.await();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public static class Test2 extends Thread implements Runnable {
+		public void run() {
+			sleepSec(1);
+			m.lock();
+			x = 2;
+			m.unlock();
+			try {
+				barrier.await();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			y = 2;
+		}
+	}
+
+	public static void main(String args[]) throws Exception {
+		final CachedThunk t1 = new CachedThunk();
+		final Test2 t2 = new Test2();
+		t1.start();
+		t2.start();
+		t1.join();
+		t2.join();
+	}
+}
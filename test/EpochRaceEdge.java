@@ -0,0 +1,85 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package test;
+
+// rrrun -dcWCP_DC -tool=WDC test.EpochRaceEdge
+// rrrun -dcWCP_DC -dcFTO -DEBUG -tool=WDC test.EpochRaceEdge
+public class EpochRaceEdge extends Thread {
+
+	static int x;
+	static int a;
+	
+	//Predictable races: x
+	//HB: race on x.  The race edge on x joins main's clock at the fork of T1, which is after main's write of a
+	//WCP: race on x, as for HB
+	//DC: race on x, as for HB, since the fork is a hard edge
+	//-dcFTO: the same single HB race on x.  Joining only T1's epoch at the race edge would leave a
+	//unordered in HB but ordered in DC, so the race on a would be dropped (and -DEBUG would fail)
+	
+	static void sleepSec(float sec) {
+		try{
+			Thread.sleep((long)(sec * 1000));
+		} catch(InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void run() {
+		x = 1;
+	}
+	
+	public static class Test2 extends Thread implements Runnable {
+		public void run() {
+			sleepSec(1);
+			int t = x;
+			t = a;
+		}
+	}
+
+	public static void main(String args[]) throws Exception {
+		final EpochRaceEdge t1 = new EpochRaceEdge();
+		final Test2 t2 = new Test2();
+		t2.start();
+		a = 1;
+		t1.start();
+		t1.join();
+		t2.join();
+	}
+}
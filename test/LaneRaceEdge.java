@@ -0,0 +1,96 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package test;
+
+// rrrun -dcWCP_DC -tool=WDC test.LaneRaceEdge
+// rrrun -dcWCP_DC -dcLanes -tool=WDC test.LaneRaceEdge
+public class LaneRaceEdge extends Thread {
+
+	static int x;
+	static int a;
+	static volatile int v;
+	
+	//Predictable races: x
+	//HB: race on x.  The race edge on x joins T2's clock, which is ordered after T1's write of a through v
+	//WCP: race on x, as for HB
+	//DC: race on x, as for HB
+	//-dcLanes: the same single HB race on x.  Joining only T2's epoch at the race edge would also report a
+	
+	static void sleepSec(float sec) {
+		try{
+			Thread.sleep((long)(sec * 1000));
+		} catch(InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void run() {
+		a = 1;
+		v = 1;
+	}
+	
+	public static class Test2 extends Thread implements Runnable {
+		public void run() {
+			sleepSec(1);
+			int t = v;
+			x = t;
+		}
+	}
+	
+	public static class Test3 extends Thread implements Runnable {
+		public void run() {
+			sleepSec(2);
+			int t = x;
+			t = a;
+		}
+	}
+
+	public static void main(String args[]) throws Exception {
+		final LaneRaceEdge t1 = new LaneRaceEdge();
+		final Test2 t2 = new Test2();
+		final Test3 t3 = new Test3();
+		t1.start();
+		t2.start();
+		t3.start();
+		t1.join();
+		t2.join();
+		t3.join();
+	}
+}
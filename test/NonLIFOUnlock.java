@@ -0,0 +1,97 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package test;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// rrrun -tool=HB test.NonLIFOUnlock
+// rrrun -dcWDC -tool=WDC test.NonLIFOUnlock
+public class NonLIFOUnlock extends Thread {
+
+	static int x;
+	static int y;
+	static final ReentrantLock a = new ReentrantLock();
+	static final ReentrantLock b = new ReentrantLock();
+	
+	//Predictable races: none
+	//T1 releases a before b, so a is not the innermost held lock when it is released.
+	//x and y are only accessed while b is held, so no tool should report a race,
+	//and the held-lock stack must still hold b after a is released.
+	
+	static void sleepSec(float sec) {
+		try{
+			Thread.sleep((long)(sec * 1000));
+		} catch(InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void run() {
+		a.lock();
+		b.lock();
+		x = 1;
+		a.unlock();
+		y = 1;
+		b.unlock();
+	}
+	
+	public static class Test2 extends Thread implements Runnable {
+		public void run() {
+			sleepSec(1);
+			b.lock();
+			a.lock();
+			x = 2;
+			b.unlock();
+			a.unlock();
+			b.lock();
+			y = 2;
+			b.unlock();
+		}
+	}
+
+	public static void main(String args[]) throws Exception {
+		final NonLIFOUnlock t1 = new NonLIFOUnlock();
+		final Test2 t2 = new Test2();
+		t1.start();
+		t2.start();
+		t1.join();
+		t2.join();
+	}
+}